@@ -8,6 +8,7 @@ package com.teamscale.jacoco.agent;
 import com.teamscale.jacoco.agent.options.AgentOptions;
 import com.teamscale.jacoco.agent.upload.IUploader;
 import com.teamscale.jacoco.agent.upload.UploaderException;
+import com.teamscale.jacoco.agent.upload.delay.DelayedUploader;
 import com.teamscale.jacoco.agent.util.Benchmark;
 import com.teamscale.jacoco.agent.util.Timer;
 import com.teamscale.report.jacoco.CoverageFile;
@@ -43,6 +44,12 @@ public class Agent extends AgentBase {
 	/** Stores the XML files. */
 	protected final IUploader uploader;
 
+	/** Converts and uploads the dumps in the background. */
+	private final DumpPipeline dumpPipeline;
+
+	/** The {@link #uploader} if it caches dumps until the commit to upload to is known, otherwise null. */
+	private DelayedUploader<?> delayedUploader;
+
 	/** Constructor. */
 	public Agent(AgentOptions options,
 				 Instrumentation instrumentation) throws IllegalStateException, UploaderException {
@@ -53,7 +60,14 @@ public class Agent extends AgentBase {
 
 		generator = new JaCoCoXmlReportGenerator(options.getClassDirectoriesOrZips(),
 				options.getLocationIncludeFilter(),
-				options.getDuplicateClassFileBehavior(), options.shouldIgnoreUncoveredClasses(), wrap(logger));
+				options.getDuplicateClassFileBehavior(), options.shouldIgnoreUncoveredClasses(),
+				options.getAnalysisThreads(), wrap(logger));
+		dumpPipeline = new DumpPipeline(options.getMaxPendingDumps(), options.getDumpBackpressurePolicy(),
+				this::convert, controller::recycle, uploader);
+		if (uploader instanceof DelayedUploader) {
+			delayedUploader = (DelayedUploader<?>) uploader;
+			delayedUploader.setCachedDumpConsumer(this::submitDump);
+		}
 
 		if (options.shouldDumpInIntervals()) {
 			timer = new Timer(this::dumpReport, Duration.ofMinutes(options.getDumpIntervalInMinutes()));
@@ -138,6 +152,12 @@ public class Agent extends AgentBase {
 		if (options.shouldDumpOnExit()) {
 			dumpReport();
 		}
+		try {
+			dumpPipeline.close();
+		} catch (InterruptedException e) {
+			logger.error("Interrupted while waiting for the conversion and upload of the last dumps", e);
+			Thread.currentThread().interrupt();
+		}
 
 		try {
 			com.teamscale.jacoco.agent.util.FileSystemUtils.deleteDirectoryIfEmpty(options.getOutputDirectory());
@@ -150,8 +170,9 @@ public class Agent extends AgentBase {
 	}
 
 	/**
-	 * Dumps the current execution data, converts it, writes it to the output directory defined in {@link #options} and
-	 * uploads it if an uploader is configured. Logs any errors, never throws an exception.
+	 * Dumps the current execution data and passes it to the {@link #dumpPipeline}, which converts it, writes it to the
+	 * output directory defined in {@link #options} and uploads it if an uploader is configured. Logs any errors, never
+	 * throws an exception.
 	 */
 	private void dumpReport() {
 		logger.debug("Starting dump");
@@ -166,12 +187,35 @@ public class Agent extends AgentBase {
 
 	private void dumpReportUnsafe() {
 		Dump dump;
-		try {
+		try (Benchmark ignored = new Benchmark("Dumping the coverage")) {
 			dump = controller.dumpAndReset();
 		} catch (JacocoRuntimeController.DumpException e) {
 			logger.error("Dumping failed, retrying later", e);
 			return;
 		}
+		submitDump(dump);
+	}
+
+	/** Passes the dump to the {@link #dumpPipeline}. */
+	private void submitDump(Dump dump) {
+		try {
+			dumpPipeline.submit(dump);
+		} catch (InterruptedException e) {
+			logger.error("Interrupted while waiting for the conversion of previous dumps. Coverage is lost.", e);
+			controller.recycle(dump);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Converts the given dump to an XML file in the output directory. Returns null if the dump could not be converted
+	 * or was cached by the {@link #delayedUploader}, since the commit to upload to is not known yet. Called by the
+	 * {@link #dumpPipeline}.
+	 */
+	private CoverageFile convert(Dump dump) {
+		if (delayedUploader != null && delayedUploader.cacheDump(dump)) {
+			return null;
+		}
 
 		CoverageFile coverageFile;
 		long currentTime = System.currentTimeMillis();
@@ -182,11 +226,11 @@ public class Agent extends AgentBase {
 			coverageFile = generator.convert(dump, outputPath);
 		} catch (IOException e) {
 			logger.error("Converting binary dump to XML failed", e);
-			return;
+			return null;
 		} catch (EmptyReportException e) {
 			logger.warn("No coverage was collected.", e);
-			return;
+			return null;
 		}
-		uploader.upload(coverageFile);
+		return coverageFile;
 	}
 }
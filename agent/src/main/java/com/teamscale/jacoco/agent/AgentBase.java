@@ -169,6 +169,7 @@ public abstract class AgentBase {
 		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
 			stopServer();
 			prepareShutdown();
+			logger.debug("HTTP requests sent by the agent:\n{}", HttpUtils.getMetrics());
 			logger.info("CQSE JaCoCo agent successfully shut down.");
 			loggingResources.close();
 		}));
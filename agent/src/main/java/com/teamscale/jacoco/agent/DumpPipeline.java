@@ -0,0 +1,238 @@
+package com.teamscale.jacoco.agent;
+
+import com.teamscale.jacoco.agent.options.EDumpBackpressurePolicy;
+import com.teamscale.jacoco.agent.upload.IUploader;
+import com.teamscale.jacoco.agent.util.Benchmark;
+import com.teamscale.jacoco.agent.util.LoggingUtils;
+import com.teamscale.report.jacoco.CoverageFile;
+import com.teamscale.report.jacoco.dump.Dump;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.SessionInfo;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Converts and uploads the dumps of the {@link Agent} in the background, so neither the next interval dump nor the
+ * caller of an HTTP dump has to wait for a slow conversion or upload.
+ * <p>
+ * Dumps wait in memory until the conversion stage picks them up. Since dumps can be large, only a limited number of
+ * them may wait. If the conversion falls behind, the {@link EDumpBackpressurePolicy} decides what happens with new
+ * dumps. Converted coverage files are written to disk by the conversion, so only references to them wait for the
+ * upload stage. Thus, an upload stage that falls behind does not increase the memory usage.
+ * <p>
+ * Each stage runs on its own daemon thread. {@link #close()} waits until all dumps have been processed, but at most
+ * for a bounded time, since it runs in the shutdown hook of the profiled JVM.
+ */
+public class DumpPipeline implements AutoCloseable {
+
+	/** How long {@link #close()} waits for the stages by default. */
+	private static final Duration DEFAULT_SHUTDOWN_TIMEOUT = Duration.ofMinutes(1);
+
+	/** The logger. */
+	private final Logger logger = LoggingUtils.getLogger(this);
+
+	/** The maximum number of dumps that wait for the conversion. */
+	private final int maxPendingDumps;
+
+	/** What to do with a new dump if {@link #maxPendingDumps} dumps are waiting already. */
+	private final EDumpBackpressurePolicy backpressurePolicy;
+
+	/** Converts a dump to a coverage file. Returns null if the dump could not be converted. */
+	private final Function<Dump, CoverageFile> converter;
+
+	/** Receives dumps once they are not needed anymore, so their memory can be reused. */
+	private final Consumer<Dump> recycler;
+
+	/** Uploads the coverage files. */
+	private final IUploader uploader;
+
+	/** How long {@link #close()} waits for both stages together before it discards the remaining work. */
+	private final Duration shutdownTimeout;
+
+	/** The dumps that wait for the conversion, oldest first. Guarded by this. */
+	private final Deque<PendingDump> pendingDumps = new ArrayDeque<>();
+
+	/** Runs the conversion stage. */
+	private final ExecutorService conversionExecutor = createSingleThreadExecutor("Coverage conversion");
+
+	/** Runs the upload stage. */
+	private final ExecutorService uploadExecutor = createSingleThreadExecutor("Coverage upload");
+
+	/** Constructor. */
+	public DumpPipeline(int maxPendingDumps, EDumpBackpressurePolicy backpressurePolicy,
+						Function<Dump, CoverageFile> converter, Consumer<Dump> recycler, IUploader uploader) {
+		this(maxPendingDumps, backpressurePolicy, converter, recycler, uploader, DEFAULT_SHUTDOWN_TIMEOUT);
+	}
+
+	/** Constructor. */
+	/* package */ DumpPipeline(int maxPendingDumps, EDumpBackpressurePolicy backpressurePolicy,
+								Function<Dump, CoverageFile> converter, Consumer<Dump> recycler, IUploader uploader,
+								Duration shutdownTimeout) {
+		this.maxPendingDumps = maxPendingDumps;
+		this.backpressurePolicy = backpressurePolicy;
+		this.converter = converter;
+		this.recycler = recycler;
+		this.uploader = uploader;
+		this.shutdownTimeout = shutdownTimeout;
+	}
+
+	private static ExecutorService createSingleThreadExecutor(String threadName) {
+		return Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, threadName);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Passes the given dump to the conversion stage. Returns immediately unless the conversion has fallen behind and
+	 * the {@link #backpressurePolicy} is {@link EDumpBackpressurePolicy#BLOCK}.
+	 */
+	public void submit(Dump dump) throws InterruptedException {
+		synchronized (this) {
+			if (pendingDumps.size() >= maxPendingDumps) {
+				switch (backpressurePolicy) {
+					case BLOCK:
+						logger.debug("Conversion of dumps has fallen behind, waiting");
+						while (pendingDumps.size() >= maxPendingDumps) {
+							wait();
+						}
+						break;
+					case DROP_OLDEST:
+						PendingDump droppedDump = pendingDumps.removeFirst();
+						logger.warn("Conversion of dumps has fallen behind. Discarding the coverage dumped at {}",
+								droppedDump.dump.info.getDumpTimeStamp());
+						recycler.accept(droppedDump.dump);
+						break;
+					case MERGE:
+						PendingDump newestDump = pendingDumps.removeLast();
+						logger.debug("Conversion of dumps has fallen behind, merging the dump into the previous one");
+						pendingDumps.addLast(new PendingDump(merge(newestDump.dump, dump), newestDump.submitTime));
+						return;
+				}
+			}
+			pendingDumps.addLast(new PendingDump(dump, System.nanoTime()));
+		}
+		conversionExecutor.execute(this::convertNextDump);
+	}
+
+	/**
+	 * Merges the execution data of the second dump into the first one. The second dump must not be recycled afterwards,
+	 * since the first one may now contain its execution data.
+	 */
+	private static Dump merge(Dump target, Dump source) {
+		for (ExecutionData executionData : source.store.getContents()) {
+			target.store.put(executionData);
+		}
+		SessionInfo mergedInfo = new SessionInfo(source.info.getId(),
+				Math.min(target.info.getStartTimeStamp(), source.info.getStartTimeStamp()),
+				Math.max(target.info.getDumpTimeStamp(), source.info.getDumpTimeStamp()));
+		return new Dump(mergedInfo, target.store);
+	}
+
+	/** Converts the oldest waiting dump and passes the coverage file to the upload stage. */
+	private void convertNextDump() {
+		PendingDump pendingDump;
+		synchronized (this) {
+			// The dump of this task may have been merged into or dropped in favor of another one
+			if (pendingDumps.isEmpty()) {
+				return;
+			}
+			pendingDump = pendingDumps.removeFirst();
+			notifyAll();
+		}
+		logger.debug("Dump waited {}ms for the conversion", toMillis(System.nanoTime() - pendingDump.submitTime));
+
+		CoverageFile coverageFile;
+		try {
+			coverageFile = converter.apply(pendingDump.dump);
+		} catch (Throwable t) {
+			// we want to catch anything in order to avoid crashing the whole system under test
+			logger.error("Converting the dump failed with an exception", t);
+			return;
+		} finally {
+			recycler.accept(pendingDump.dump);
+		}
+		if (coverageFile != null) {
+			long convertedTime = System.nanoTime();
+			try {
+				uploadExecutor.execute(() -> upload(coverageFile, convertedTime));
+			} catch (RejectedExecutionException e) {
+				logger.warn("The upload stage has already been stopped. Not uploading the coverage file {}",
+						coverageFile);
+			}
+		}
+	}
+
+	private void upload(CoverageFile coverageFile, long convertedTime) {
+		logger.debug("Coverage file {} waited {}ms for the upload", coverageFile,
+				toMillis(System.nanoTime() - convertedTime));
+		try (Benchmark ignored = new Benchmark("Uploading the coverage file")) {
+			uploader.upload(coverageFile);
+		} catch (Throwable t) {
+			// we want to catch anything in order to avoid crashing the whole system under test
+			logger.error("Uploading the coverage file {} failed with an exception", coverageFile, t);
+		}
+	}
+
+	private static long toMillis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	/**
+	 * Waits until all submitted dumps have been converted and uploaded and stops the stages. If this takes longer than
+	 * the {@link #shutdownTimeout}, the remaining dumps and coverage files are discarded and the running conversion or
+	 * upload is interrupted.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+		conversionExecutor.shutdown();
+		if (!conversionExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+			conversionExecutor.shutdownNow();
+			discardPendingDumps();
+		}
+		uploadExecutor.shutdown();
+		if (!uploadExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+			List<Runnable> discardedUploads = uploadExecutor.shutdownNow();
+			logger.warn("Uploading the coverage did not finish within {}ms. Not uploading {} more coverage files",
+					shutdownTimeout.toMillis(), discardedUploads.size());
+		}
+	}
+
+	/** Recycles the dumps that still wait for the conversion and logs which coverage is lost. */
+	private synchronized void discardPendingDumps() {
+		logger.warn("Converting the dumps did not finish within {}ms. Discarding {} more dumps",
+				shutdownTimeout.toMillis(), pendingDumps.size());
+		for (PendingDump pendingDump : pendingDumps) {
+			logger.warn("Discarding the coverage dumped at {}", pendingDump.dump.info.getDumpTimeStamp());
+			recycler.accept(pendingDump.dump);
+		}
+		pendingDumps.clear();
+		notifyAll();
+	}
+
+	/** A dump that waits for the conversion. */
+	private static class PendingDump {
+
+		private final Dump dump;
+
+		/** The value of {@link System#nanoTime()} when the dump was submitted. */
+		private final long submitTime;
+
+		private PendingDump(Dump dump, long submitTime) {
+			this.dump = dump;
+			this.submitTime = submitTime;
+		}
+	}
+}
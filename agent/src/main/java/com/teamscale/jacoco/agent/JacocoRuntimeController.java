@@ -40,18 +40,41 @@ public class JacocoRuntimeController {
 	/** JaCoCo's {@link RT} agent instance */
 	private final IAgent agent;
 
+	/**
+	 * Copies the probes directly from JaCoCo's runtime data. May be null if the agent does not expose its runtime data,
+	 * in which case we fall back to JaCoCo's exec format.
+	 */
+	private final ProbeSnapshotter snapshotter;
+
 	/** Constructor. */
 	public JacocoRuntimeController(IAgent agent) {
 		this.agent = agent;
+		if (agent instanceof org.jacoco.agent.rt.internal_43f5073.Agent) {
+			this.snapshotter = new ProbeSnapshotter(((org.jacoco.agent.rt.internal_43f5073.Agent) agent).getData());
+		} else {
+			this.snapshotter = null;
+		}
 	}
 
 	/**
-	 * Dumps execution data and resets it.
+	 * Dumps execution data and resets it. The returned {@link Dump} may be handed back via {@link #recycle(Dump)} once
+	 * it has been processed to reduce the allocations of subsequent dumps.
 	 *
 	 * @throws DumpException if dumping fails. This should never happen in real life. Dumping
 	 *                       should simply be retried later if this ever happens.
 	 */
 	public Dump dumpAndReset() throws DumpException {
+		if (snapshotter != null) {
+			return snapshotter.snapshotAndReset();
+		}
+		return dumpAndResetViaExecFormat();
+	}
+
+	/**
+	 * Dumps execution data by serializing it to JaCoCo's exec format and reading it back in. This is slower and
+	 * allocates much more memory than {@link ProbeSnapshotter}, so we only use it if the latter is not available.
+	 */
+	/* package */ Dump dumpAndResetViaExecFormat() throws DumpException {
 		byte[] binaryData = agent.getExecutionData(true);
 
 		try (ByteArrayInputStream inputStream = new ByteArrayInputStream(binaryData)) {
@@ -71,7 +94,18 @@ public class JacocoRuntimeController {
 	}
 
 	/**
-	 * Dumps execution data to a file and resets it.
+	 * Hands a {@link Dump} returned by {@link #dumpAndReset()} back to the controller so its memory can be reused by
+	 * later dumps. The dump must not be used by the caller anymore afterwards.
+	 */
+	public void recycle(Dump dump) {
+		if (snapshotter != null) {
+			snapshotter.recycle(dump);
+		}
+	}
+
+	/**
+	 * Dumps execution data to a file and resets it. JaCoCo writes and resets the probes while holding the lock of its
+	 * execution data store, so no probes that are hit during the dump are lost.
 	 *
 	 * @throws DumpException if dumping fails. This should never happen in real life. Dumping
 	 *                       should simply be retried later if this ever happens.
@@ -86,7 +120,11 @@ public class JacocoRuntimeController {
 
 	/** Resets already collected coverage. */
 	public void reset() {
-		agent.reset();
+		if (snapshotter != null) {
+			snapshotter.reset();
+		} else {
+			agent.reset();
+		}
 	}
 
 	/** Returns the current sessionId. */
@@ -0,0 +1,100 @@
+package com.teamscale.jacoco.agent;
+
+import com.teamscale.report.jacoco.dump.Dump;
+import org.jacoco.agent.rt.internal_43f5073.core.runtime.RuntimeData;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Takes snapshots of the probe arrays held by JaCoCo's {@link RuntimeData} directly in memory, i.e. without encoding
+ * them in JaCoCo's binary exec format and parsing them back.
+ * <p>
+ * Snapshots and resets only write to the classes that have been hit since the last reset. JaCoCo's own reset clears
+ * the probe arrays of all loaded classes. Since instrumented code writes to the probe arrays directly without notifying
+ * the runtime, we still have to check every array for hits with {@link ExecutionData#hasHits()}. A snapshot or reset
+ * therefore still reads all probes of all loaded classes, i.e. its cost remains linear in the total number of probes.
+ * Only the copying, the clearing and the allocations are restricted to the touched classes.
+ * <p>
+ * The {@link ExecutionData} objects of a snapshot can be handed back via {@link #recycle(Dump)} once the {@link Dump}
+ * has been processed. Their probe arrays are then reused for the next snapshot of the same class, so repeated dumps
+ * don't allocate new probe arrays for every class that has been hit.
+ */
+/* package */ class ProbeSnapshotter {
+
+	/** JaCoCo's runtime data which holds the live probe arrays. */
+	private final RuntimeData runtimeData;
+
+	/** Execution data of recycled dumps by class ID, which can be reused by the next snapshot. */
+	private final Map<Long, ExecutionData> pool = new HashMap<>();
+
+	/**
+	 * The time of our last reset. JaCoCo only updates its session start timestamp when it resets the probes itself,
+	 * which we no longer do.
+	 */
+	private long lastResetTimestamp = 0;
+
+	/** Constructor. */
+	/* package */ ProbeSnapshotter(RuntimeData runtimeData) {
+		this.runtimeData = runtimeData;
+	}
+
+	/**
+	 * Copies the probes of all classes that have been hit into a new {@link Dump} and resets them afterwards. JaCoCo
+	 * holds the lock of its execution data store while we copy and reset, so both happen atomically with respect to
+	 * other dumps and newly registered classes.
+	 */
+	/* package */ synchronized Dump snapshotAndReset() {
+		ExecutionDataStore store = new ExecutionDataStore();
+		SessionInfo[] sessionInfo = new SessionInfo[1];
+		runtimeData.collect(data -> {
+			// JaCoCo's ExecutionDataWriter skips classes without hits as well
+			if (data.hasHits()) {
+				boolean[] probes = data.getProbes();
+				store.put(copyProbes(data.getId(), data.getName(), probes));
+				Arrays.fill(probes, false);
+			}
+		}, info -> sessionInfo[0] = new SessionInfo(info.getId(),
+				Math.max(info.getStartTimeStamp(), lastResetTimestamp), info.getDumpTimeStamp()), false);
+		lastResetTimestamp = sessionInfo[0].getDumpTimeStamp();
+		return new Dump(sessionInfo[0], store);
+	}
+
+	/** Resets the probes of all classes that have been hit since the last reset. */
+	/* package */ synchronized void reset() {
+		runtimeData.collect(data -> {
+			if (data.hasHits()) {
+				Arrays.fill(data.getProbes(), false);
+			}
+		}, info -> {
+			// session info is not needed for a reset
+		}, false);
+		lastResetTimestamp = System.currentTimeMillis();
+	}
+
+	/**
+	 * Copies the given probes into a pooled {@link ExecutionData} object if there is a matching one or into a new one
+	 * otherwise.
+	 */
+	private ExecutionData copyProbes(long classId, String className, boolean[] probes) {
+		ExecutionData data = pool.remove(classId);
+		if (data == null || data.getProbes().length != probes.length || !data.getName().equals(className)) {
+			data = new ExecutionData(classId, className, probes.length);
+		}
+		System.arraycopy(probes, 0, data.getProbes(), 0, probes.length);
+		return data;
+	}
+
+	/**
+	 * Hands the execution data of the given dump back to the pool. The dump must not be used anymore afterwards.
+	 */
+	/* package */ synchronized void recycle(Dump dump) {
+		for (ExecutionData data : dump.store.getContents()) {
+			pool.put(data.getId(), data);
+		}
+	}
+}
@@ -14,12 +14,15 @@ import com.teamscale.jacoco.agent.options.AgentOptionParseException;
 import com.teamscale.jacoco.agent.options.ClasspathUtils;
 import com.teamscale.jacoco.agent.options.FilePatternResolver;
 import com.teamscale.report.EDuplicateClassFileBehavior;
+import com.teamscale.report.testwise.jacoco.cache.PersistentLookupCache;
 import com.teamscale.report.util.CommandLineLogger;
+import com.teamscale.report.util.ILogger;
 import org.conqat.lib.commons.assertion.CCSMAssert;
 import org.conqat.lib.commons.filesystem.FileSystemUtils;
 import org.conqat.lib.commons.string.StringUtils;
 
 import java.io.File;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -60,8 +63,9 @@ public class ConvertCommand implements ICommand {
 	/* package */ List<String> locationExcludeFilters = new ArrayList<>();
 
 	/** The directory to write the XML traces to. */
-	@Parameter(names = {"--in", "-i"}, required = true, description = "" + "The binary .exec file(s), test details and " +
-			"test executions to read. Can be a single file or a directory that is recursively scanned for relevant files.")
+	@Parameter(names = {"--in", "-i"}, required = true, description = "" + "The binary .exec or .sexec file(s), " +
+			"test details and test executions to read. Can be a single file or a directory that is recursively " +
+			"scanned for relevant files. .sexec files are only read when converting testwise coverage.")
 	/* package */ List<String> inputFiles = new ArrayList<>();
 
 	/** The directory to write the XML traces to. */
@@ -92,6 +96,41 @@ public class ConvertCommand implements ICommand {
 			"testwise coverage should be split into multiple reports (Default is 5000).")
 	private int splitAfter = 5000;
 
+	/** The number of threads to use for analyzing the class files. */
+	@Parameter(names = {"--analysis-threads"}, required = false, arity = 1, description = "The number of threads " +
+			"to use for analyzing the class files (Default is the number of available processors).")
+	/* package */ int analysisThreads = Runtime.getRuntime().availableProcessors();
+
+	/** The number of threads to use for converting the sessions of testwise coverage. */
+	@Parameter(names = {"--conversion-threads"}, required = false, arity = 1, description = "The number of threads " +
+			"to use for reading and converting the tests in a testwise .exec file. The tests are written to the " +
+			"report in the same order regardless of the number of threads (Default is the number of available " +
+			"processors).")
+	/* package */ int conversionThreads = Runtime.getRuntime().availableProcessors();
+
+	/** Whether the index of the tests in a testwise .exec file should be persisted next to it. */
+	@Parameter(names = {"--persist-exec-index"}, required = false, arity = 0, description = "Whether to store the " +
+			"offsets of the tests in a testwise .exec file in a .exec.index file next to it, so later conversions of " +
+			"the same file can skip indexing it. Only used with more than one conversion thread.")
+	/* package */ boolean shouldPersistExecIndex = false;
+
+	/** Directory in which the analysis results of class files are persisted for later conversions. */
+	@Parameter(names = {"--probe-cache-dir"}, required = false, arity = 1, description = "Directory in which the " +
+			"analysis results of class files are persisted, so later testwise conversions only need to analyze " +
+			"changed class files. The directory can be shared between conversions running in parallel.")
+	/* package */ String probeCacheDirectory = null;
+
+	/** The maximum size of the probe cache directory in MB. */
+	@Parameter(names = {"--probe-cache-size"}, required = false, arity = 1, description = "The maximum size of the " +
+			"probe cache directory in MB (Default is 512).")
+	/* package */ int probeCacheSizeInMb = 512;
+
+	/** Whether classes are only analyzed once coverage of them is converted. */
+	@Parameter(names = {"--lazy-class-analysis"}, required = false, arity = 0, description = "Whether class files " +
+			"should only be analyzed once coverage of them is converted instead of analyzing all class files upfront. " +
+			"Speeds up testwise conversions that only cover a small part of the application.")
+	/* package */ boolean shouldAnalyzeClassesLazily = false;
+
 	/** @see #classDirectoriesOrZips */
 	public List<File> getClassDirectoriesOrZips() throws AgentOptionParseException {
 		return ClasspathUtils
@@ -129,6 +168,39 @@ public class ConvertCommand implements ICommand {
 		return duplicateClassFileBehavior;
 	}
 
+	/** @see #analysisThreads */
+	public int getAnalysisThreads() {
+		return analysisThreads;
+	}
+
+	/** @see #conversionThreads */
+	public int getConversionThreads() {
+		return conversionThreads;
+	}
+
+	/** @see #shouldPersistExecIndex */
+	public boolean shouldPersistExecIndex() {
+		return shouldPersistExecIndex;
+	}
+
+	/** @see #shouldAnalyzeClassesLazily */
+	public boolean shouldAnalyzeClassesLazily() {
+		return shouldAnalyzeClassesLazily;
+	}
+
+	/**
+	 * Creates the persistent cache for the analysis results of class files or returns null if none is configured.
+	 *
+	 * @see #probeCacheDirectory
+	 */
+	public PersistentLookupCache createPersistentLookupCache(ILogger logger) {
+		if (probeCacheDirectory == null) {
+			return null;
+		}
+		return new PersistentLookupCache(Paths.get(probeCacheDirectory), probeCacheSizeInMb * 1024L * 1024L,
+				logger);
+	}
+
 	/** Makes sure the arguments are valid. */
 	@Override
 	public Validator validate() {
@@ -143,6 +215,10 @@ public class ConvertCommand implements ICommand {
 			validator.isTrue(path.canRead(), "Path '" + path + "' is not readable");
 		}
 
+		validator.isTrue(analysisThreads >= 1, "The number of analysis threads must be at least 1");
+		validator.isTrue(conversionThreads >= 1, "The number of conversion threads must be at least 1");
+		validator.isTrue(probeCacheSizeInMb > 0, "The size of the probe cache must be positive");
+
 		for (File inputFile : getInputFiles()) {
 			validator.isTrue(inputFile.exists() && inputFile.canRead(),
 					"Cannot read the input file " + inputFile);
@@ -57,7 +57,7 @@ public class Converter {
 		Logger logger = LoggingUtils.getLogger(this);
 		JaCoCoXmlReportGenerator generator = new JaCoCoXmlReportGenerator(arguments.getClassDirectoriesOrZips(),
 				getWildcardIncludeExcludeFilter(), arguments.getDuplicateClassFileBehavior(), arguments.shouldIgnoreUncoveredClasses,
-				wrap(logger));
+				arguments.getAnalysisThreads(), wrap(logger));
 
 		try (Benchmark benchmark = new Benchmark("Generating the XML report")) {
 			generator.convert(new Dump(sessionInfo, executionDataStore), Paths.get(arguments.outputFile));
@@ -75,25 +75,25 @@ public class Converter {
 
 		List<File> jacocoExecutionDataList = ReportUtils
 				.listFiles(ETestArtifactFormat.JACOCO, arguments.getInputFiles());
+		jacocoExecutionDataList.addAll(ReportUtils.listFiles(ETestArtifactFormat.SPARSE_JACOCO,
+				arguments.getInputFiles()));
 		ILogger logger = new CommandLineLogger();
 
-		JaCoCoTestwiseReportGenerator generator = new JaCoCoTestwiseReportGenerator(
-				arguments.getClassDirectoriesOrZips(),
-				getWildcardIncludeExcludeFilter(),
-				arguments.getDuplicateClassFileBehavior(),
-				logger
-		);
-
 		TestInfoFactory testInfoFactory = new TestInfoFactory(testDetails, testExecutions);
 
-		try (Benchmark benchmark = new Benchmark("Generating the testwise coverage report")) {
+		try (JaCoCoTestwiseReportGenerator generator = new JaCoCoTestwiseReportGenerator(
+				arguments.getClassDirectoriesOrZips(), getWildcardIncludeExcludeFilter(),
+				arguments.getDuplicateClassFileBehavior(), arguments.getAnalysisThreads(),
+				arguments.createPersistentLookupCache(logger), arguments.shouldAnalyzeClassesLazily(), logger);
+			 Benchmark benchmark = new Benchmark("Generating the testwise coverage report")) {
 			logger.info(
 					"Writing report with " + testDetails.size() + " Details/" + testExecutions.size() + " Results");
 
 			try (TestwiseCoverageReportWriter coverageWriter = new TestwiseCoverageReportWriter(testInfoFactory,
 					arguments.getOutputFile(), arguments.getSplitAfter())) {
 				for (File executionDataFile : jacocoExecutionDataList) {
-					generator.convertAndConsume(executionDataFile, coverageWriter);
+					generator.convertAndConsume(executionDataFile, coverageWriter, arguments.getConversionThreads(),
+							arguments.shouldPersistExecIndex());
 				}
 			}
 		}
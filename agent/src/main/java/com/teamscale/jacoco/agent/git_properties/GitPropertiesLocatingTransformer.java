@@ -7,23 +7,45 @@ import org.slf4j.Logger;
 
 import java.io.File;
 import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
 import java.net.URL;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * {@link ClassFileTransformer} that doesn't change the loaded classes but searches their corresponding Jar/War/Ear/...
  * files for a git.properties file.
+ * <p>
+ * This runs for every loaded class, so classes from code sources that have been handled already are skipped before
+ * the class name is matched against the include filter. Most classes of a code source share the same
+ * {@link CodeSource} instance, whose {@link CodeSource#equals(Object)} returns early for identical instances.
  */
 public class GitPropertiesLocatingTransformer implements ClassFileTransformer {
 
 	private final Logger logger = LoggingUtils.getLogger(this);
 	private final Set<String> seenJars = new ConcurrentSkipListSet<>();
+
+	/**
+	 * Code sources that need not be looked at anymore, since they have been searched already or cannot contain a
+	 * git.properties file. Unlike their protection domains, code sources do not reference their class loader, so
+	 * this does not prevent class loaders from being garbage collected.
+	 */
+	private final Set<CodeSource> handledCodeSources = ConcurrentHashMap.newKeySet();
+
 	private final GitPropertiesLocator<?> locator;
 	private final ClasspathWildcardIncludeFilter locationIncludeFilter;
 
+	/** The cumulative time spent in {@link #transform}. */
+	private final LongAdder transformNanos = new LongAdder();
+
+	/** The number of calls of {@link #transform}. */
+	private final LongAdder transformCalls = new LongAdder();
+
 	public GitPropertiesLocatingTransformer(GitPropertiesLocator<?> locator,
 											ClasspathWildcardIncludeFilter locationIncludeFilter) {
 		this.locator = locator;
@@ -33,15 +55,20 @@ public class GitPropertiesLocatingTransformer implements ClassFileTransformer {
 	@Override
 	public byte[] transform(ClassLoader classLoader, String className, Class<?> aClass,
 							ProtectionDomain protectionDomain, byte[] classFileContent) {
+		long startTime = System.nanoTime();
+		try {
+			searchCodeSource(className, protectionDomain);
+		} finally {
+			transformNanos.add(System.nanoTime() - startTime);
+			transformCalls.increment();
+		}
+		return null;
+	}
 
+	private void searchCodeSource(String className, ProtectionDomain protectionDomain) {
 		if (protectionDomain == null) {
 			// happens for e.g. java.lang. We can ignore these classes
-			return null;
-		}
-
-		if (StringUtils.isEmpty(className) || !locationIncludeFilter.isIncluded(className)) {
-			// only search in jar files of included classes
-			return null;
+			return;
 		}
 
 		try {
@@ -50,30 +77,58 @@ public class GitPropertiesLocatingTransformer implements ClassFileTransformer {
 				// unknown when this can happen, we suspect when code is generated at runtime
 				// but there's nothing else we can do here in either case.
 				// codeSource.getLocation() is null e.g. when executing Pixelitor with Java14 for class sun/reflect/misc/Trampoline
-				return null;
+				return;
+			}
+			if (handledCodeSources.contains(codeSource)) {
+				return;
 			}
 
 			URL jarOrClassFolderUrl = codeSource.getLocation();
-			if (hasJarAlreadyBeenSearched(jarOrClassFolderUrl)) {
-				return null;
+			if (!isSearchableJar(jarOrClassFolderUrl)) {
+				handledCodeSources.add(codeSource);
+				return;
 			}
 
-			if (jarOrClassFolderUrl.getProtocol().toLowerCase().equals("file") &&
-					StringUtils.endsWithOneOf(
-							jarOrClassFolderUrl.getPath().toLowerCase(), ".jar", ".war", ".ear", ".aar")) {
-				// we do this asynchronously so that we don't unnecessarily block JVM startup
-				locator.searchJarFileForGitPropertiesAsync(new File(jarOrClassFolderUrl.toURI()));
+			if (StringUtils.isEmpty(className) || !locationIncludeFilter.isIncluded(className)) {
+				// only search in jar files of included classes
+				return;
 			}
+
+			handledCodeSources.add(codeSource);
+			if (hasJarAlreadyBeenSearched(jarOrClassFolderUrl)) {
+				return;
+			}
+
+			// we do this asynchronously so that we don't unnecessarily block JVM startup
+			locator.searchJarFileForGitPropertiesAsync(new File(jarOrClassFolderUrl.toURI()));
 		} catch (Throwable e) {
 			// we catch Throwable to be sure that we log all errors as anything thrown from this method is
 			// silently discarded by the JVM
 			logger.error("Failed to process class {} in search of git.properties", className, e);
 		}
-		return null;
+	}
+
+	private static boolean isSearchableJar(URL jarOrClassFolderUrl) {
+		return jarOrClassFolderUrl.getProtocol().toLowerCase().equals("file") &&
+				StringUtils.endsWithOneOf(
+						jarOrClassFolderUrl.getPath().toLowerCase(), ".jar", ".war", ".ear", ".aar");
 	}
 
 	private boolean hasJarAlreadyBeenSearched(URL jarOrClassFolderUrl) {
 		return !seenJars.add(jarOrClassFolderUrl.toString());
 	}
 
+	/**
+	 * Registers this transformer and removes it again once the {@link #locator} has found a git.properties file, since
+	 * the remaining classes need not be searched anymore.
+	 */
+	public void register(Instrumentation instrumentation) {
+		locator.setDataFoundListener(() -> {
+			instrumentation.removeTransformer(this);
+			logger.debug("Stopped searching for git.properties files. Spent {}ms in {} calls of the transformer",
+					TimeUnit.NANOSECONDS.toMillis(transformNanos.sum()), transformCalls.sum());
+		});
+		instrumentation.addTransformer(this);
+	}
+
 }
@@ -11,12 +11,22 @@ import org.slf4j.Logger;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 
 /**
  * Searches a Jar/War/Ear/... file for a git.properties file in order to enable upload for the commit described therein,
@@ -35,6 +45,22 @@ public class GitPropertiesLocator<T> {
 	/** The git.properties key that holds the commit branch. */
 	public static final String GIT_PROPERTIES_GIT_BRANCH = "git.branch";
 
+	/** The maximum number of searched files whose results are cached in {@link #SEARCH_RESULTS}. */
+	private static final int MAX_CACHED_SEARCH_RESULTS = 256;
+
+	/**
+	 * The results of {@link #findGitPropertiesInJar(File)} by the path, size and modification time of the searched
+	 * file. Absent results are cached as well. Only the most recently used results are kept, so archives that are
+	 * modified over and over again do not fill the memory.
+	 */
+	private static final Map<String, Optional<Pair<String, Properties>>> SEARCH_RESULTS = Collections.synchronizedMap(
+			new LinkedHashMap<String, Optional<Pair<String, Properties>>>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Optional<Pair<String, Properties>>> eldest) {
+					return size() > MAX_CACHED_SEARCH_RESULTS;
+				}
+			});
+
 	private final Logger logger = LoggingUtils.getLogger(GitPropertiesLocator.class);
 	private final Executor executor;
 	private T foundData = null;
@@ -43,6 +69,10 @@ public class GitPropertiesLocator<T> {
 	private final DelayedUploader<T> uploader;
 	private final DataExtractor<T> dataExtractor;
 
+	/** Called once the first git.properties file has been found. */
+	private volatile Runnable dataFoundListener = () -> {
+	};
+
 	public GitPropertiesLocator(DelayedUploader<T> uploader, DataExtractor<T> dataExtractor) {
 		// using a single threaded executor allows this class to be lock-free
 		this(uploader, dataExtractor, Executors
@@ -60,6 +90,11 @@ public class GitPropertiesLocator<T> {
 		this.executor = executor;
 	}
 
+	/** Sets the listener that is called once the first git.properties file has been found. */
+	public void setDataFoundListener(Runnable dataFoundListener) {
+		this.dataFoundListener = dataFoundListener;
+	}
+
 	/**
 	 * Asynchronously searches the given jar file for a git.properties file.
 	 */
@@ -95,6 +130,7 @@ public class GitPropertiesLocator<T> {
 			foundData = data;
 			jarFileWithGitProperties = jarFile;
 			uploader.setCommitAndTriggerAsynchronousUpload(data);
+			dataFoundListener.run();
 		} catch (IOException | InvalidGitPropertiesException e) {
 			logger.error("Error during asynchronous search for git.properties in {}", jarFile.toString(), e);
 		}
@@ -116,16 +152,76 @@ public class GitPropertiesLocator<T> {
 				entryWithProperties.getFirst(), jarFile);
 	}
 
-	/** Returns a pair of the zipfile entry name and parsed properties, or null if no git.properties were found. */
+	/**
+	 * Returns a pair of the zipfile entry name and parsed properties, or null if no git.properties were found. If the
+	 * file itself does not contain a git.properties file, the application's own nested archives are searched as well,
+	 * e.g. the modules of an EAR. Libraries, e.g. BOOT-INF/lib/*.jar in Spring Boot jars, are not searched, since their
+	 * git.properties files describe the commit of the library, not of the application. The entry name of a
+	 * git.properties file in a nested archive is prefixed with the name of the nested archive, e.g.
+	 * <code>app.war!/git.properties</code>. The results are cached until the file is modified.
+	 */
 	public static Pair<String, Properties> findGitPropertiesInJar(
 			File jarFile) throws IOException {
-		try (JarInputStream jarStream = new JarInputStream(
-				new BashFileSkippingInputStream(new FileInputStream(jarFile)))) {
-			return findGitPropertiesInJar(jarStream);
+		String cacheKey = jarFile.getAbsolutePath() + ":" + jarFile.length() + ":" + jarFile.lastModified();
+		Optional<Pair<String, Properties>> cachedResult = SEARCH_RESULTS.get(cacheKey);
+		if (cachedResult != null) {
+			return cachedResult.orElse(null);
+		}
+
+		Pair<String, Properties> result;
+		try {
+			result = findGitPropertiesInZipFile(jarFile);
 		} catch (IOException e) {
 			throw new IOException("Reading jar " + jarFile.getAbsolutePath() + " for obtaining commit " +
 					"descriptor from git.properties failed", e);
 		}
+		SEARCH_RESULTS.put(cacheKey, Optional.ofNullable(result));
+		return result;
+	}
+
+	/**
+	 * Searches the central directory of the zip file for a git.properties file, so only the git.properties file itself
+	 * is read and inflated. Zip files with a prepended bash script are handled by {@link ZipFile} as well, since it
+	 * locates the central directory from the end of the file. Falls back to reading the whole file if it cannot be
+	 * opened as {@link ZipFile}.
+	 */
+	private static Pair<String, Properties> findGitPropertiesInZipFile(File jarFile) throws IOException {
+		ZipFile zipFile;
+		try {
+			zipFile = new ZipFile(jarFile);
+		} catch (ZipException e) {
+			try (JarInputStream jarStream = new JarInputStream(
+					new BashFileSkippingInputStream(new FileInputStream(jarFile)))) {
+				return findGitPropertiesInJar(jarStream);
+			}
+		}
+
+		try (ZipFile ignored = zipFile) {
+			List<ZipEntry> nestedArchives = new ArrayList<>();
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				if (isGitPropertiesFile(entry.getName())) {
+					try (InputStream inputStream = zipFile.getInputStream(entry)) {
+						return Pair.createPair(entry.getName(), loadProperties(inputStream));
+					}
+				}
+				if (isNestedApplicationArchive(entry.getName())) {
+					nestedArchives.add(entry);
+				}
+			}
+
+			// Nested archives are read from the zip file directly without extracting them to disk
+			for (ZipEntry nestedArchive : nestedArchives) {
+				try (JarInputStream nestedStream = new JarInputStream(zipFile.getInputStream(nestedArchive))) {
+					Pair<String, Properties> result = findGitPropertiesInJar(nestedStream);
+					if (result != null) {
+						return Pair.createPair(nestedArchive.getName() + "!/" + result.getFirst(), result.getSecond());
+					}
+				}
+			}
+		}
+		return null;
 	}
 
 	/** Returns a pair of the zipfile entry name and parsed properties, or null if no git.properties were found. */
@@ -133,10 +229,8 @@ public class GitPropertiesLocator<T> {
 			JarInputStream jarStream) throws IOException {
 		JarEntry entry = jarStream.getNextJarEntry();
 		while (entry != null) {
-			if (Paths.get(entry.getName()).getFileName().toString().toLowerCase().equals(GIT_PROPERTIES_FILE_NAME)) {
-				Properties gitProperties = new Properties();
-				gitProperties.load(jarStream);
-				return Pair.createPair(entry.getName(), gitProperties);
+			if (isGitPropertiesFile(entry.getName())) {
+				return Pair.createPair(entry.getName(), loadProperties(jarStream));
 			}
 			entry = jarStream.getNextJarEntry();
 		}
@@ -144,6 +238,29 @@ public class GitPropertiesLocator<T> {
 		return null;
 	}
 
+	private static boolean isGitPropertiesFile(String entryName) {
+		String lowerCaseName = entryName.toLowerCase();
+		return lowerCaseName.equals(GIT_PROPERTIES_FILE_NAME) || lowerCaseName.endsWith("/" + GIT_PROPERTIES_FILE_NAME);
+	}
+
+	/**
+	 * Whether the entry is a nested archive that belongs to the application itself. Archives in lib directories, e.g.
+	 * BOOT-INF/lib, WEB-INF/lib or the lib directory of an EAR, are third-party libraries.
+	 */
+	private static boolean isNestedApplicationArchive(String entryName) {
+		String lowerCaseName = entryName.toLowerCase();
+		if (lowerCaseName.startsWith("lib/") || lowerCaseName.contains("/lib/")) {
+			return false;
+		}
+		return lowerCaseName.endsWith(".jar") || lowerCaseName.endsWith(".war");
+	}
+
+	private static Properties loadProperties(InputStream inputStream) throws IOException {
+		Properties gitProperties = new Properties();
+		gitProperties.load(inputStream);
+		return gitProperties;
+	}
+
 	/** Returns a value from a git properties file. */
 	public static String getGitPropertiesValue(
 			Properties gitProperties, String key, String entryName, File jarFile) throws InvalidGitPropertiesException {
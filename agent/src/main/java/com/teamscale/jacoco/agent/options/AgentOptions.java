@@ -23,7 +23,9 @@ import com.teamscale.jacoco.agent.upload.teamscale.TeamscaleUploader;
 import com.teamscale.jacoco.agent.util.AgentUtils;
 import com.teamscale.jacoco.agent.util.LoggingUtils;
 import com.teamscale.report.EDuplicateClassFileBehavior;
+import com.teamscale.report.testwise.jacoco.cache.PersistentLookupCache;
 import com.teamscale.report.util.ClasspathWildcardIncludeFilter;
+import com.teamscale.report.util.ILogger;
 import okhttp3.HttpUrl;
 import org.conqat.lib.commons.assertion.CCSMAssert;
 import org.conqat.lib.commons.collections.PairList;
@@ -41,6 +43,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
 
 /**
  * Parses agent command line options.
@@ -50,7 +53,7 @@ public class AgentOptions {
 	/**
 	 * Can be used to format {@link LocalDate} to the format "yyyy-MM-dd-HH-mm-ss.SSS"
 	 */
-	/* package */ static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter
+	public static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter
 			.ofPattern("yyyy-MM-dd-HH-mm-ss.SSS", Locale.ENGLISH);
 
 	/** Option name that allows to specify to which branch coverage should be uploaded to (branch:timestamp). */
@@ -122,11 +125,38 @@ public class AgentOptions {
 	 */
 	/* package */ boolean validateSsl = false;
 
+	/**
+	 * The minimum size in bytes of requests to Teamscale that are compressed with gzip. Negative to never compress
+	 * them.
+	 */
+	/* package */ int teamscaleCompressionThreshold = -1;
+
 	/**
 	 * Whether to ignore duplicate, non-identical class files.
 	 */
 	/* package */ EDuplicateClassFileBehavior duplicateClassFileBehavior = EDuplicateClassFileBehavior.WARN;
 
+	/**
+	 * The number of threads to use for analyzing the class files when converting coverage. Defaults to 1 so the
+	 * conversion does not compete with the profiled application for CPU time.
+	 */
+	/* package */ int analysisThreads = 1;
+
+	/**
+	 * Directory in which the analysis results of class files are persisted for later conversions or null if they
+	 * should not be persisted. Only used in testwise mode.
+	 */
+	/* package */ Path probeCacheDirectory = null;
+
+	/** The maximum size of the {@link #probeCacheDirectory} in MB. */
+	/* package */ int probeCacheSizeInMb = 512;
+
+	/**
+	 * Whether classes are only analyzed once coverage of them is converted instead of analyzing all class files when
+	 * the first coverage is converted. Only used in testwise mode.
+	 */
+	/* package */ boolean analyzeClassesLazily = false;
+
 	/**
 	 * Include patterns for fully qualified class names to pass on to JaCoCo. See {@link WildcardMatcher} for the
 	 * pattern syntax. Individual patterns must be separated by ":".
@@ -164,12 +194,41 @@ public class AgentOptions {
 	 */
 	/* package */ ETestwiseCoverageMode testwiseCoverageMode = ETestwiseCoverageMode.EXEC_FILE;
 
+	/** The number of threads that convert the coverage of finished tests if the coverage is uploaded to Teamscale. */
+	/* package */ int testConversionThreads = 1;
+
+	/**
+	 * The maximum number of finished tests whose coverage waits for or is in its conversion. Ending another test waits
+	 * until a conversion has finished. 0 converts the coverage while the test end request is handled.
+	 */
+	/* package */ int maxPendingTestConversions = 16;
+
+	/**
+	 * Whether tests may run at the same time. If so, the coverage of a test is the union of the coverage of all tests
+	 * that overlapped with it in time, since JaCoCo cannot tell which thread covered a line.
+	 */
+	/* package */ boolean supportParallelTests = false;
+
+	/** The maximum number of tests in a segment of the sparse exec file. */
+	/* package */ int sparseExecSegmentTests = 10000;
+
+	/** The size in MB after which a new segment of the sparse exec file is started. */
+	/* package */ int sparseExecSegmentSizeInMb = 256;
 
 	/**
 	 * Whether classes without coverage should be skipped from the XML report.
 	 */
 	/* package */ boolean ignoreUncoveredClasses = false;
 
+	/** The maximum number of dumps that wait in memory for their conversion to XML. */
+	/* package */ int maxPendingDumps = 2;
+
+	/** What happens with a new dump if {@link #maxPendingDumps} dumps are waiting for their conversion already. */
+	/* package */ EDumpBackpressurePolicy dumpBackpressurePolicy = EDumpBackpressurePolicy.MERGE;
+
+	/** The compression level of the zips that are uploaded via HTTP, Artifactory or Azure, see {@link Deflater}. */
+	/* package */ int uploadCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+
 	/**
 	 * The configuration necessary to upload files to an azure file storage
 	 */
@@ -201,6 +260,18 @@ public class AgentOptions {
 			validator.isTrue(path.canRead(), "Path '" + path + "' is not readable");
 		}
 
+		validator.isTrue(analysisThreads >= 1, "The number of analysis threads must be at least 1");
+		validator.isTrue(probeCacheSizeInMb > 0, "The size of the probe cache must be positive");
+		validator.isTrue(maxPendingDumps >= 1, "The dump queue size must be at least 1");
+		validator.isTrue(testConversionThreads >= 1, "The number of test conversion threads must be at least 1");
+		validator.isTrue(maxPendingTestConversions >= 0, "The test conversion queue size must not be negative");
+		validator.isTrue(sparseExecSegmentTests >= 1,
+				"The number of tests in a sparse exec segment must be at least 1");
+		validator.isTrue(sparseExecSegmentSizeInMb >= 1, "The size of a sparse exec segment must be at least 1 MB");
+		validator.isTrue(uploadCompressionLevel >= Deflater.DEFAULT_COMPRESSION
+						&& uploadCompressionLevel <= Deflater.BEST_COMPRESSION,
+				"The upload compression level must be between -1 and 9");
+
 		if (loggingConfig != null) {
 			validator.ensure(() -> {
 				CCSMAssert.isTrue(Files.exists(loggingConfig),
@@ -264,6 +335,9 @@ public class AgentOptions {
 				"You use 'tia-mode=teamscale-upload' but did not set all required 'teamscale-' fields to facilitate" +
 						" a connection to Teamscale!");
 
+		validator.isFalse(supportParallelTests && testwiseCoverageMode == ETestwiseCoverageMode.EXEC_FILE,
+				"'tia-parallel-tests' is incompatible with 'tia-mode=exec-file'!");
+
 		validator.isFalse(!useTestwiseCoverageMode() && testEnvironmentVariable != null,
 				"You use 'test-env' but did not set 'mode' to 'TESTWISE'!");
 	}
@@ -276,7 +350,7 @@ public class AgentOptions {
 	public TeamscaleClient createTeamscaleClient() {
 		if (teamscaleServer.hasAllRequiredFieldsSet()) {
 			return new TeamscaleClient(teamscaleServer.url.toString(), teamscaleServer.userName,
-					teamscaleServer.userAccessToken, teamscaleServer.project);
+					teamscaleServer.userAccessToken, teamscaleServer.project, teamscaleCompressionThreshold);
 		}
 		return null;
 	}
@@ -286,7 +360,7 @@ public class AgentOptions {
 	 */
 	public IUploader createUploader(Instrumentation instrumentation) throws UploaderException {
 		if (uploadUrl != null) {
-			return new HttpUploader(uploadUrl, additionalMetaDataFiles);
+			return new HttpUploader(uploadUrl, additionalMetaDataFiles, uploadCompressionLevel);
 		}
 		if (teamscaleServer.hasAllRequiredFieldsSet()) {
 			if (!teamscaleServer.hasCommitOrRevision()) {
@@ -294,7 +368,7 @@ public class AgentOptions {
 						" auto-detect it by searching all profiled Jar/War/Ear/... files for a git.properties file.");
 				return createDelayedTeamscaleUploader(instrumentation);
 			}
-			return new TeamscaleUploader(teamscaleServer);
+			return new TeamscaleUploader(teamscaleServer, teamscaleCompressionThreshold);
 		}
 
 		if (artifactoryConfig.hasAllRequiredFieldsSet()) {
@@ -304,12 +378,12 @@ public class AgentOptions {
 				return createDelayedArtifactoryUploader(instrumentation);
 			}
 			return new ArtifactoryUploader(artifactoryConfig,
-					additionalMetaDataFiles);
+					additionalMetaDataFiles, uploadCompressionLevel);
 		}
 
 		if (azureFileStorageConfig.hasAllRequiredFieldsSet()) {
 			return new AzureFileStorageUploader(azureFileStorageConfig,
-					additionalMetaDataFiles);
+					additionalMetaDataFiles, uploadCompressionLevel);
 		}
 
 		return new LocalDiskUploader();
@@ -319,11 +393,11 @@ public class AgentOptions {
 		DelayedUploader<String> uploader = new DelayedUploader<>(
 				revision -> {
 					teamscaleServer.revision = revision;
-					return new TeamscaleUploader(teamscaleServer);
+					return new TeamscaleUploader(teamscaleServer, teamscaleCompressionThreshold);
 				}, outputDirectory);
 		GitPropertiesLocator<?> locator = new GitPropertiesLocator<>(uploader,
 				GitPropertiesLocator::getRevisionFromGitProperties);
-		instrumentation.addTransformer(new GitPropertiesLocatingTransformer(locator, getLocationIncludeFilter()));
+		new GitPropertiesLocatingTransformer(locator, getLocationIncludeFilter()).register(instrumentation);
 		return uploader;
 	}
 
@@ -331,12 +405,12 @@ public class AgentOptions {
 		DelayedUploader<ArtifactoryConfig.CommitInfo> uploader = new DelayedUploader<>(
 				commitInfo -> {
 					artifactoryConfig.commitInfo = commitInfo;
-					return new ArtifactoryUploader(artifactoryConfig, additionalMetaDataFiles);
+					return new ArtifactoryUploader(artifactoryConfig, additionalMetaDataFiles, uploadCompressionLevel);
 				}, outputDirectory);
 		GitPropertiesLocator<ArtifactoryConfig.CommitInfo> locator = new GitPropertiesLocator<>(uploader,
 				jar -> ArtifactoryConfig.parseGitProperties(
 						jar, artifactoryConfig.gitPropertiesCommitTimeFormat));
-		instrumentation.addTransformer(new GitPropertiesLocatingTransformer(locator, getLocationIncludeFilter()));
+		new GitPropertiesLocatingTransformer(locator, getLocationIncludeFilter()).register(instrumentation);
 		return uploader;
 	}
 
@@ -381,6 +455,30 @@ public class AgentOptions {
 		return duplicateClassFileBehavior;
 	}
 
+	/**
+	 * @see #analysisThreads
+	 */
+	public int getAnalysisThreads() {
+		return analysisThreads;
+	}
+
+	/** @see #analyzeClassesLazily */
+	public boolean shouldAnalyzeClassesLazily() {
+		return analyzeClassesLazily;
+	}
+
+	/**
+	 * Creates the persistent cache for the analysis results of class files or returns null if none is configured.
+	 *
+	 * @see #probeCacheDirectory
+	 */
+	public PersistentLookupCache createPersistentLookupCache(ILogger logger) {
+		if (probeCacheDirectory == null) {
+			return null;
+		}
+		return new PersistentLookupCache(probeCacheDirectory, probeCacheSizeInMb * 1024L * 1024L, logger);
+	}
+
 	/** Returns whether the config indicates to use Test Impact mode. */
 	/* package */ boolean useTestwiseCoverageMode() {
 		return mode == EMode.TESTWISE;
@@ -414,6 +512,11 @@ public class AgentOptions {
 		return validateSsl;
 	}
 
+	/** @see #teamscaleCompressionThreshold */
+	public int getTeamscaleCompressionThreshold() {
+		return teamscaleCompressionThreshold;
+	}
+
 	/**
 	 * @see #jacocoIncludes
 	 * @see #jacocoExcludes
@@ -441,4 +544,39 @@ public class AgentOptions {
 	public boolean shouldIgnoreUncoveredClasses() {
 		return ignoreUncoveredClasses;
 	}
+
+	/** @see #maxPendingDumps */
+	public int getMaxPendingDumps() {
+		return maxPendingDumps;
+	}
+
+	/** @see #dumpBackpressurePolicy */
+	public EDumpBackpressurePolicy getDumpBackpressurePolicy() {
+		return dumpBackpressurePolicy;
+	}
+
+	/** @see #testConversionThreads */
+	public int getTestConversionThreads() {
+		return testConversionThreads;
+	}
+
+	/** @see #maxPendingTestConversions */
+	public int getMaxPendingTestConversions() {
+		return maxPendingTestConversions;
+	}
+
+	/** @see #supportParallelTests */
+	public boolean shouldSupportParallelTests() {
+		return supportParallelTests;
+	}
+
+	/** @see #sparseExecSegmentTests */
+	public int getSparseExecSegmentTests() {
+		return sparseExecSegmentTests;
+	}
+
+	/** @see #sparseExecSegmentSizeInMb */
+	public int getSparseExecSegmentSizeInMb() {
+		return sparseExecSegmentSizeInMb;
+	}
 }
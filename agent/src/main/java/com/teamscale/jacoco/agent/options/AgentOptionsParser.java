@@ -160,12 +160,33 @@ public class AgentOptionsParser {
 		case "duplicates":
 			options.duplicateClassFileBehavior = parseEnumValue(key, value, EDuplicateClassFileBehavior.class);
 			return true;
+		case "analysis-threads":
+			options.analysisThreads = parseInt(key, value);
+			return true;
+		case "probe-cache-dir":
+			options.probeCacheDirectory = filePatternResolver.parsePath(key, value);
+			return true;
+		case "probe-cache-size":
+			options.probeCacheSizeInMb = parseInt(key, value);
+			return true;
+		case "lazy-class-analysis":
+			options.analyzeClassesLazily = Boolean.parseBoolean(value);
+			return true;
 		case "ignore-uncovered-classes":
 			options.ignoreUncoveredClasses = Boolean.parseBoolean(value);
 			return true;
 		case "dump-on-exit":
 			options.shouldDumpOnExit = Boolean.parseBoolean(value);
 			return true;
+		case "dump-queue-size":
+			options.maxPendingDumps = parseInt(key, value);
+			return true;
+		case "dump-backpressure":
+			options.dumpBackpressurePolicy = parseEnumValue(key, value, EDumpBackpressurePolicy.class);
+			return true;
+		case "upload-compression-level":
+			options.uploadCompressionLevel = parseInt(key, value);
+			return true;
 		case "mode":
 			options.mode = parseEnumValue(key, value, EMode.class);
 			return true;
@@ -262,6 +283,9 @@ public class AgentOptionsParser {
 		case "teamscale-message":
 			options.teamscaleServer.setMessage(value);
 			return true;
+		case "teamscale-compression-threshold":
+			options.teamscaleCompressionThreshold = parseInt(key, value);
+			return true;
 		case AgentOptions.TEAMSCALE_REVISION_OPTION:
 			options.teamscaleServer.revision = value;
 			return true;
@@ -283,6 +307,21 @@ public class AgentOptionsParser {
 		case "test-env":
 			options.testEnvironmentVariable = value;
 			return true;
+		case "tia-conversion-threads":
+			options.testConversionThreads = parseInt(key, value);
+			return true;
+		case "tia-conversion-queue-size":
+			options.maxPendingTestConversions = parseInt(key, value);
+			return true;
+		case "tia-parallel-tests":
+			options.supportParallelTests = Boolean.parseBoolean(value);
+			return true;
+		case "tia-sparse-segment-tests":
+			options.sparseExecSegmentTests = parseInt(key, value);
+			return true;
+		case "tia-sparse-segment-size-mb":
+			options.sparseExecSegmentSizeInMb = parseInt(key, value);
+			return true;
 		default:
 			return false;
 		}
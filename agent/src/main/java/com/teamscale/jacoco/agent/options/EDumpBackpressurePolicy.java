@@ -0,0 +1,19 @@
+package com.teamscale.jacoco.agent.options;
+
+import com.teamscale.jacoco.agent.DumpPipeline;
+
+/** Decides what the {@link DumpPipeline} does with a new dump if too many dumps are still waiting for conversion. */
+public enum EDumpBackpressurePolicy {
+
+	/** Waits until the conversion has caught up, i.e. the dump (e.g. the HTTP request) blocks. */
+	BLOCK,
+
+	/** Discards the oldest waiting dump. Its coverage is lost. */
+	DROP_OLDEST,
+
+	/**
+	 * Merges the new dump into the newest waiting dump. No coverage is lost, but the report of the merged dump covers a
+	 * longer time span.
+	 */
+	MERGE
+}
@@ -8,6 +8,8 @@ public enum ETestwiseCoverageMode {
 	TEAMSCALE_UPLOAD,
 	/** Writes testwise coverage to disk as .exec files. */
 	EXEC_FILE,
+	/** Writes testwise coverage to disk as .sexec files, which only contain the covered probes of each test. */
+	SPARSE_EXEC_FILE,
 	/** Returns testwise coverage to the caller via HTTP. */
 	HTTP
 }
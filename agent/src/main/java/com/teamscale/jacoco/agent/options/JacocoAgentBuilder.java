@@ -40,8 +40,10 @@ public class JacocoAgentBuilder {
 			builder.append(",excludes=").append(agentOptions.jacocoExcludes);
 		}
 
-		// Don't dump class files in testwise mode when coverage is written to an exec file
-		boolean needsClassFiles = agentOptions.mode == EMode.NORMAL || agentOptions.testwiseCoverageMode != ETestwiseCoverageMode.EXEC_FILE;
+		// Don't dump class files in testwise mode when coverage is written to an exec or sparse exec file
+		boolean needsClassFiles = agentOptions.mode == EMode.NORMAL
+				|| (agentOptions.testwiseCoverageMode != ETestwiseCoverageMode.EXEC_FILE
+				&& agentOptions.testwiseCoverageMode != ETestwiseCoverageMode.SPARSE_EXEC_FILE);
 		if (agentOptions.classDirectoriesOrZips.isEmpty() && needsClassFiles) {
 			Path tempDir = createTemporaryDumpDirectory();
 			tempDir.toFile().deleteOnExit();
@@ -88,7 +90,9 @@ public class JacocoAgentBuilder {
 		if (agentOptions.useTestwiseCoverageMode()) {
 			JaCoCoTestwiseReportGenerator reportGenerator = new JaCoCoTestwiseReportGenerator(
 					agentOptions.getClassDirectoriesOrZips(), agentOptions.getLocationIncludeFilter(),
-					agentOptions.getDuplicateClassFileBehavior(), LoggingUtils.wrap(logger));
+					agentOptions.getDuplicateClassFileBehavior(), agentOptions.getAnalysisThreads(),
+					agentOptions.createPersistentLookupCache(LoggingUtils.wrap(logger)),
+					agentOptions.shouldAnalyzeClassesLazily(), LoggingUtils.wrap(logger));
 			return new TestwiseCoverageAgent(agentOptions,
 					new TestExecutionWriter(getTempFile("test-execution", "json")),
 					reportGenerator);
@@ -0,0 +1,138 @@
+package com.teamscale.jacoco.agent.testimpact;
+
+import com.teamscale.jacoco.agent.util.LoggingUtils;
+import com.teamscale.report.jacoco.dump.Dump;
+import com.teamscale.report.testwise.jacoco.cache.CoverageGenerationException;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts the dumps of finished tests on a pool of background threads, so the request that ends a test does not have
+ * to wait for the conversion.
+ * <p>
+ * Dumps wait in memory until a conversion thread picks them up. Since a test runner can end tests faster than they are
+ * converted, only a limited number of dumps may wait or be in their conversion. Submitting another dump blocks until
+ * one of them has been converted. With a limit of 0, dumps are converted by the submitting thread.
+ * <p>
+ * Errors of background conversions are logged and the first one is rethrown by {@link #awaitConversions()}, so the
+ * coverage of a test run is not uploaded if the coverage of some of its tests is missing.
+ */
+public class AsyncTestCoverageConverter {
+
+	/** The logger. */
+	private final Logger logger = LoggingUtils.getLogger(this);
+
+	/** Converts the dump of a single test. */
+	private final IDumpConverter converter;
+
+	/** The maximum number of dumps that wait for or are in their conversion. */
+	private final int maxPendingDumps;
+
+	/** Runs the conversions. Null if {@link #maxPendingDumps} is 0. */
+	private final ExecutorService executor;
+
+	/** The number of dumps that wait for or are in their conversion. Guarded by this. */
+	private int pendingDumps = 0;
+
+	/**
+	 * The first error of a background conversion since the last call of {@link #awaitConversions()}. Null if there was
+	 * none. Guarded by this.
+	 */
+	private IOException firstFailure = null;
+
+	/** Constructor. */
+	public AsyncTestCoverageConverter(int threads, int maxPendingDumps, IDumpConverter converter) {
+		this.converter = converter;
+		this.maxPendingDumps = maxPendingDumps;
+		if (maxPendingDumps == 0) {
+			this.executor = null;
+		} else {
+			AtomicInteger threadCounter = new AtomicInteger();
+			this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+				Thread thread = new Thread(runnable, "Test coverage conversion " + threadCounter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Passes the given dump to a conversion thread. Returns immediately unless {@link #maxPendingDumps} dumps are
+	 * pending already, in which case this waits until one of them has been converted. If the waiting thread is
+	 * interrupted or there are no conversion threads, the dump is converted by the calling thread.
+	 */
+	public void submit(Dump dump) throws CoverageGenerationException, IOException {
+		if (executor == null) {
+			converter.convert(dump);
+			return;
+		}
+
+		try {
+			awaitFreeSlot();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			converter.convert(dump);
+			return;
+		}
+		executor.execute(() -> convert(dump));
+	}
+
+	/** Waits until less than {@link #maxPendingDumps} dumps are pending and counts the new dump as pending. */
+	private synchronized void awaitFreeSlot() throws InterruptedException {
+		if (pendingDumps >= maxPendingDumps) {
+			logger.debug("Conversion of test coverage has fallen behind, waiting");
+			while (pendingDumps >= maxPendingDumps) {
+				wait();
+			}
+		}
+		pendingDumps++;
+	}
+
+	private void convert(Dump dump) {
+		try {
+			converter.convert(dump);
+		} catch (Throwable t) {
+			// we want to catch anything in order to avoid crashing the whole system under test
+			logger.error("Converting the coverage of test {} failed with an exception", dump.info.getId(), t);
+			synchronized (this) {
+				if (firstFailure == null) {
+					firstFailure = new IOException(
+							"Converting the coverage of test " + dump.info.getId() + " failed", t);
+				}
+			}
+		} finally {
+			synchronized (this) {
+				pendingDumps--;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until all submitted dumps have been converted.
+	 *
+	 * @throws IOException if a background conversion failed since the last call. The failure is only reported once.
+	 */
+	public synchronized void awaitConversions() throws InterruptedException, IOException {
+		while (pendingDumps > 0) {
+			wait();
+		}
+		IOException failure = firstFailure;
+		firstFailure = null;
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/** Converts the dump of a single test. */
+	@FunctionalInterface
+	public interface IDumpConverter {
+
+		/** Converts the given dump. The dump must not be used by the caller anymore afterwards. */
+		void convert(Dump dump) throws CoverageGenerationException, IOException;
+	}
+}
@@ -28,7 +28,7 @@ public class CoverageToExecFileStrategy extends TestEventHandlerStrategyBase {
 
 	@Override
 	public String testEnd(String test,
-						  TestExecution testExecution) throws JacocoRuntimeController.DumpException, CoverageGenerationException {
+						  TestExecution testExecution) throws JacocoRuntimeController.DumpException, CoverageGenerationException, IOException {
 		logger.debug("Test {} ended with execution {}. Writing exec file and test execution", test, testExecution);
 		super.testEnd(test, testExecution);
 		controller.dump();
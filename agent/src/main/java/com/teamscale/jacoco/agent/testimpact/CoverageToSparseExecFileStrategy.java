@@ -0,0 +1,70 @@
+package com.teamscale.jacoco.agent.testimpact;
+
+import com.teamscale.jacoco.agent.JacocoRuntimeController;
+import com.teamscale.jacoco.agent.options.AgentOptions;
+import com.teamscale.jacoco.agent.util.LoggingUtils;
+import com.teamscale.report.jacoco.dump.Dump;
+import com.teamscale.report.testwise.jacoco.SparseExecutionDataWriter;
+import com.teamscale.report.testwise.jacoco.cache.CoverageGenerationException;
+import com.teamscale.report.testwise.model.TestExecution;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Strategy for writing the coverage of every test as one session to sparse exec files, which only contain the covered
+ * probes, see {@link SparseExecutionDataWriter}. Test executions are appended into a single file like in {@link
+ * CoverageToExecFileStrategy}.
+ */
+public class CoverageToSparseExecFileStrategy extends TestEventHandlerStrategyBase {
+
+	private final Logger logger = LoggingUtils.getLogger(this);
+
+	/** Helper for writing test executions to disk. */
+	private final TestExecutionWriter testExecutionWriter;
+
+	/** Writes the coverage of the tests. */
+	private final SparseExecutionDataWriter executionDataWriter;
+
+	public CoverageToSparseExecFileStrategy(JacocoRuntimeController controller, AgentOptions agentOptions,
+											TestExecutionWriter testExecutionWriter) {
+		super(agentOptions, controller);
+		this.testExecutionWriter = testExecutionWriter;
+		this.executionDataWriter = new SparseExecutionDataWriter(agentOptions.getOutputDirectory().toFile(),
+				"jacoco-" + LocalDateTime.now().format(AgentOptions.DATE_TIME_FORMATTER),
+				agentOptions.getSparseExecSegmentTests(), agentOptions.getSparseExecSegmentSizeInMb() * 1024L * 1024L);
+	}
+
+	@Override
+	public String testEnd(String test,
+						  TestExecution testExecution) throws JacocoRuntimeController.DumpException, CoverageGenerationException, IOException {
+		logger.debug("Test {} ended with execution {}. Writing sparse exec file and test execution", test,
+				testExecution);
+		super.testEnd(test, testExecution);
+		Dump dump = dumpCoverageOfTest(test);
+		try {
+			executionDataWriter.write(dump);
+		} finally {
+			controller.recycle(dump);
+		}
+		if (testExecution != null) {
+			try {
+				testExecutionWriter.append(testExecution);
+				logger.debug("Successfully wrote test execution for {}", test);
+			} catch (IOException e) {
+				logger.error("Failed to store test execution: " + e.getMessage(), e);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void prepareShutdown() {
+		try {
+			executionDataWriter.close();
+		} catch (IOException e) {
+			logger.error("Failed to close the sparse exec file", e);
+		}
+	}
+}
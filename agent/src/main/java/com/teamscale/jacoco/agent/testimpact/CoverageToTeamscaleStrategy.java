@@ -1,23 +1,23 @@
 package com.teamscale.jacoco.agent.testimpact;
 
-import com.squareup.moshi.JsonAdapter;
-import com.squareup.moshi.Moshi;
+import com.squareup.moshi.JsonWriter;
 import com.teamscale.client.ClusteredTestDetails;
 import com.teamscale.client.EReportFormat;
 import com.teamscale.jacoco.agent.JacocoRuntimeController;
 import com.teamscale.jacoco.agent.options.AgentOptions;
 import com.teamscale.jacoco.agent.util.LoggingUtils;
 import com.teamscale.report.jacoco.dump.Dump;
+import com.teamscale.report.testwise.DiskBackedTestwiseCoverage;
 import com.teamscale.report.testwise.jacoco.JaCoCoTestwiseReportGenerator;
 import com.teamscale.report.testwise.jacoco.cache.CoverageGenerationException;
 import com.teamscale.report.testwise.model.TestExecution;
-import com.teamscale.report.testwise.model.TestwiseCoverage;
-import com.teamscale.report.testwise.model.TestwiseCoverageReport;
-import com.teamscale.report.testwise.model.builder.TestCoverageBuilder;
 import com.teamscale.report.testwise.model.builder.TestwiseCoverageReportBuilder;
+import okio.Okio;
 import org.slf4j.Logger;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,23 +26,31 @@ import static java.util.stream.Collectors.toList;
 /**
  * Strategy that records test-wise coverage and uploads the resulting report to Teamscale. Also handles the {@link
  * #testRunStart(List, boolean, Long)} event by retrieving tests to run from Teamscale.
+ * <p>
+ * The coverage of every test is converted in the background once the test ends, see {@link AsyncTestCoverageConverter},
+ * and appended to a temporary file. At the end of the test run, the report is written to another temporary file one
+ * test after the other and streamed to Teamscale, so the memory usage does not grow with the number of tests.
  */
 public class CoverageToTeamscaleStrategy extends TestEventHandlerStrategyBase {
 
 	private final Logger logger = LoggingUtils.getLogger(this);
 
-	private final JsonAdapter<TestwiseCoverageReport> testwiseCoverageReportJsonAdapter = new Moshi.Builder().build()
-			.adapter(TestwiseCoverageReport.class);
+	/** The coverage of the finished tests. Created once the first test ends. */
+	private DiskBackedTestwiseCoverage testwiseCoverage;
 
-	private final TestwiseCoverage testwiseCoverage = new TestwiseCoverage();
 	private final List<TestExecution> testExecutions = new ArrayList<>();
 	private List<ClusteredTestDetails> availableTests = new ArrayList<>();
 	private final JaCoCoTestwiseReportGenerator reportGenerator;
 
+	/** Converts the coverage of finished tests and appends it to the {@link #testwiseCoverage}. */
+	private final AsyncTestCoverageConverter converter;
+
 	public CoverageToTeamscaleStrategy(JacocoRuntimeController controller, AgentOptions agentOptions,
 									   JaCoCoTestwiseReportGenerator reportGenerator) {
 		super(agentOptions, controller);
 		this.reportGenerator = reportGenerator;
+		this.converter = new AsyncTestCoverageConverter(agentOptions.getTestConversionThreads(),
+				agentOptions.getMaxPendingTestConversions(), this::convert);
 
 		if (!agentOptions.getTeamscaleServerOptions().hasCommitOrRevision()) {
 			throw new UnsupportedOperationException(
@@ -63,29 +71,67 @@ public class CoverageToTeamscaleStrategy extends TestEventHandlerStrategyBase {
 	}
 
 	@Override
-	public void testStart(String uniformPath) {
+	public void testStart(String uniformPath) throws JacocoRuntimeController.DumpException {
 		super.testStart(uniformPath);
 
-		if (availableTests.stream().noneMatch(test -> test.uniformPath.equals(uniformPath))) {
-			// ensure that we can at least generate a report for the tests that were actually run,
-			// even if the caller did not provide a list of tests up-front in testRunStart
-			availableTests.add(new ClusteredTestDetails(uniformPath, uniformPath, null, null));
+		// tests may start and end concurrently if they run in parallel
+		synchronized (this) {
+			if (availableTests.stream().noneMatch(test -> test.uniformPath.equals(uniformPath))) {
+				// ensure that we can at least generate a report for the tests that were actually run,
+				// even if the caller did not provide a list of tests up-front in testRunStart
+				availableTests.add(new ClusteredTestDetails(uniformPath, uniformPath, null, null));
+			}
 		}
 	}
 
 	@Override
 	public String testEnd(String test,
-						  TestExecution testExecution) throws JacocoRuntimeController.DumpException, CoverageGenerationException {
+						  TestExecution testExecution) throws JacocoRuntimeController.DumpException, CoverageGenerationException, IOException {
 		super.testEnd(test, testExecution);
 
-		testExecutions.add(testExecution);
-		Dump dump = controller.dumpAndReset();
-		testwiseCoverage.add(reportGenerator.convert(dump));
+		synchronized (this) {
+			testExecutions.add(testExecution);
+		}
+		converter.submit(dumpCoverageOfTest(test));
 		return null;
 	}
 
+	/** Converts the given dump of a finished test and stores its coverage. */
+	private void convert(Dump dump) throws CoverageGenerationException, IOException {
+		try {
+			getTestwiseCoverage().add(reportGenerator.convert(dump));
+		} finally {
+			controller.recycle(dump);
+		}
+	}
+
+	private synchronized DiskBackedTestwiseCoverage getTestwiseCoverage() throws IOException {
+		if (testwiseCoverage == null) {
+			File file = Files.createTempFile("testwise-coverage", ".bin").toFile();
+			file.deleteOnExit();
+			testwiseCoverage = new DiskBackedTestwiseCoverage(file);
+		}
+		return testwiseCoverage;
+	}
+
 	@Override
 	public void testRunEnd() throws IOException {
+		try {
+			uploadTestwiseCoverage();
+		} finally {
+			resetTestRun();
+		}
+	}
+
+	/** Waits for the pending conversions and uploads the report of the test run. */
+	private void uploadTestwiseCoverage() throws IOException {
+		try {
+			converter.awaitConversions();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the conversion of the test coverage", e);
+		}
+
 		List<String> executionUniformPaths = testExecutions.stream().map(execution -> {
 			if (execution == null) {
 				return null;
@@ -93,20 +139,43 @@ public class CoverageToTeamscaleStrategy extends TestEventHandlerStrategyBase {
 				return execution.getUniformPath();
 			}
 		}).collect(toList());
+		DiskBackedTestwiseCoverage testwiseCoverage = getTestwiseCoverage();
 		logger.debug("Creating testwise coverage for available tests `{}`, test executions `{}` and coverage for `{}`",
 				availableTests.stream().map(test -> test.uniformPath).collect(toList()),
 				executionUniformPaths,
-				testwiseCoverage.getTests().stream().map(TestCoverageBuilder::getUniformPath).collect(toList()));
+				testwiseCoverage.getUniformPaths());
 
-		TestwiseCoverageReport report = TestwiseCoverageReportBuilder
-				.createFrom(availableTests, testwiseCoverage.getTests(), testExecutions);
+		File reportFile = Files.createTempFile("testwise-coverage", ".json").toFile();
+		try {
+			try (JsonWriter writer = JsonWriter.of(Okio.buffer(Okio.sink(reportFile)))) {
+				TestwiseCoverageReportBuilder.writeTo(writer, availableTests, testwiseCoverage.getUniformPaths(),
+						testwiseCoverage::load, testExecutions);
+			}
+			teamscaleClient.uploadReport(EReportFormat.TESTWISE_COVERAGE, reportFile,
+					agentOptions.getTeamscaleServerOptions().commit,
+					agentOptions.getTeamscaleServerOptions().revision,
+					agentOptions.getTeamscaleServerOptions().partition,
+					agentOptions.getTeamscaleServerOptions().getMessage());
+		} finally {
+			Files.deleteIfExists(reportFile.toPath());
+		}
+	}
 
-		String json = testwiseCoverageReportJsonAdapter.toJson(report);
-		teamscaleClient
-				.uploadReport(EReportFormat.TESTWISE_COVERAGE, json, agentOptions.getTeamscaleServerOptions().commit,
-						agentOptions.getTeamscaleServerOptions().revision,
-						agentOptions.getTeamscaleServerOptions().partition,
-						agentOptions.getTeamscaleServerOptions().getMessage());
+	/**
+	 * Forgets the tests, executions and coverage of the finished test run, so the next report only contains the tests
+	 * of the next test run. The coverage file is closed and deleted.
+	 */
+	private synchronized void resetTestRun() throws IOException {
+		testExecutions.clear();
+		availableTests = new ArrayList<>();
+		if (testwiseCoverage == null) {
+			return;
+		}
+		try {
+			testwiseCoverage.close();
+		} finally {
+			testwiseCoverage = null;
+		}
 	}
 
 }
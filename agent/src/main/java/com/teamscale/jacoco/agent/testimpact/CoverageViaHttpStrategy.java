@@ -13,6 +13,8 @@ import com.teamscale.report.testwise.model.TestInfo;
 import com.teamscale.report.testwise.model.builder.TestInfoBuilder;
 import org.slf4j.Logger;
 
+import java.io.IOException;
+
 /**
  * Strategy which directly converts the collected coverage into a JSON object in place and returns the result to the
  * caller as response to the http request. If a test execution is given it is merged into the representation and
@@ -34,12 +36,16 @@ public class CoverageViaHttpStrategy extends TestEventHandlerStrategyBase {
 
 	@Override
 	public String testEnd(String test, TestExecution testExecution)
-			throws JacocoRuntimeController.DumpException, CoverageGenerationException {
+			throws JacocoRuntimeController.DumpException, CoverageGenerationException, IOException {
 		super.testEnd(test, testExecution);
 
 		TestInfoBuilder builder = new TestInfoBuilder(test);
-		Dump dump = controller.dumpAndReset();
-		builder.setCoverage(reportGenerator.convert(dump));
+		Dump dump = dumpCoverageOfTest(test);
+		try {
+			builder.setCoverage(reportGenerator.convert(dump));
+		} finally {
+			controller.recycle(dump);
+		}
 		if (testExecution != null) {
 			builder.setExecution(testExecution);
 		}
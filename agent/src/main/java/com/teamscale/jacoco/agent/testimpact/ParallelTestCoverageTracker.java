@@ -0,0 +1,125 @@
+package com.teamscale.jacoco.agent.testimpact;
+
+import com.teamscale.jacoco.agent.JacocoRuntimeController;
+import com.teamscale.jacoco.agent.util.LoggingUtils;
+import com.teamscale.report.jacoco.dump.Dump;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the coverage of tests that may run at the same time, e.g. with JUnit 5's parallel execution. JaCoCo's probes
+ * are shared by all threads, so the coverage cannot be separated by thread or worker. Instead, the probes are collected
+ * whenever a test ends and everything that was covered since the previous test ended is attributed to every test that
+ * is running. A test thus gets the union of the coverage of all tests that overlapped with it in time, including the
+ * coverage those tests produced shortly before it started. This over-approximates the coverage of each single test,
+ * which is safe for test selection: no test is missed because of changes that it covers.
+ * <p>
+ * The probes are only collected once per test. When a test starts while no other test is running, they are just reset,
+ * so tests that do not overlap get exactly their own coverage.
+ * <p>
+ * The coverage of a test is only kept until the test ends, so the memory usage grows with the number of tests that
+ * run at the same time, not with the total number of tests.
+ */
+/* package */ class ParallelTestCoverageTracker {
+
+	private final Logger logger = LoggingUtils.getLogger(this);
+
+	/** Controls the JaCoCo runtime. */
+	private final JacocoRuntimeController controller;
+
+	/** The currently running tests by their uniform path, in the order in which they started. Guarded by this. */
+	private final Map<String, RunningTest> runningTests = new LinkedHashMap<>();
+
+	/** Constructor. */
+	/* package */ ParallelTestCoverageTracker(JacocoRuntimeController controller) {
+		this.controller = controller;
+	}
+
+	/** Starts recording coverage for the test with the given uniform path. */
+	/* package */ synchronized void testStart(String test) {
+		if (runningTests.isEmpty()) {
+			// Coverage that is produced while no test is running is discarded
+			controller.reset();
+		}
+		if (runningTests.put(test, new RunningTest(System.currentTimeMillis())) != null) {
+			logger.warn("Test {} was started again before it ended. Discarding the coverage recorded so far.", test);
+		}
+	}
+
+	/**
+	 * Ends the test with the given uniform path and returns its coverage. The returned dump may be handed back via
+	 * {@link JacocoRuntimeController#recycle(Dump)} once it has been processed.
+	 */
+	/* package */ synchronized Dump testEnd(String test) throws JacocoRuntimeController.DumpException {
+		long endTimestamp = System.currentTimeMillis();
+		if (!runningTests.containsKey(test)) {
+			logger.warn("Test {} ended without having been started. No coverage is recorded for it.", test);
+			return new Dump(new SessionInfo(test, endTimestamp, endTimestamp), new ExecutionDataStore());
+		}
+		distributeCoverage();
+		RunningTest runningTest = runningTests.remove(test);
+		return new Dump(new SessionInfo(test, runningTest.startTimestamp, endTimestamp), runningTest.store);
+	}
+
+	/** Returns the time at which the given test started or -1 if it is not running. */
+	/* package */ synchronized long getStartTimestamp(String test) {
+		RunningTest runningTest = runningTests.get(test);
+		if (runningTest == null) {
+			return -1;
+		}
+		return runningTest.startTimestamp;
+	}
+
+	/** Returns the uniform paths of the currently running tests. */
+	/* package */ synchronized List<String> getRunningTests() {
+		return new ArrayList<>(runningTests.keySet());
+	}
+
+	/** Collects and resets the probes and adds them to the coverage of all running tests. */
+	private void distributeCoverage() throws JacocoRuntimeController.DumpException {
+		Dump dump = controller.dumpAndReset();
+		try {
+			for (RunningTest runningTest : runningTests.values()) {
+				for (ExecutionData data : dump.store.getContents()) {
+					runningTest.add(data);
+				}
+			}
+		} finally {
+			controller.recycle(dump);
+		}
+	}
+
+	/** A test that has started but not ended yet. */
+	private static class RunningTest {
+
+		/** The time at which the test started. */
+		private final long startTimestamp;
+
+		/** The coverage recorded while the test was running. */
+		private final ExecutionDataStore store = new ExecutionDataStore();
+
+		private RunningTest(long startTimestamp) {
+			this.startTimestamp = startTimestamp;
+		}
+
+		/**
+		 * Adds the given probes to the coverage of the test. The probes are copied since the given data is recycled
+		 * and may be added to several tests.
+		 */
+		private void add(ExecutionData data) {
+			ExecutionData existingData = store.get(data.getId());
+			if (existingData == null) {
+				store.put(new ExecutionData(data.getId(), data.getName(), data.getProbes().clone()));
+			} else {
+				existingData.merge(data);
+			}
+		}
+	}
+}
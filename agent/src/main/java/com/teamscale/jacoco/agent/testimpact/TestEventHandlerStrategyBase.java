@@ -10,12 +10,14 @@ import com.teamscale.client.TeamscaleClient;
 import com.teamscale.jacoco.agent.JacocoRuntimeController;
 import com.teamscale.jacoco.agent.options.AgentOptions;
 import com.teamscale.jacoco.agent.util.LoggingUtils;
+import com.teamscale.report.jacoco.dump.Dump;
 import com.teamscale.report.testwise.jacoco.cache.CoverageGenerationException;
 import com.teamscale.report.testwise.model.TestExecution;
 import org.slf4j.Logger;
 import retrofit2.Response;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
 /** Base class for strategies to handle test events. */
@@ -29,6 +31,12 @@ public abstract class TestEventHandlerStrategyBase {
 	/** The timestamp at which the /test/start endpoint has been called last time. */
 	private long startTimestamp = -1;
 
+	/** The test that has started but not ended yet, if tests do not run in parallel. Null if there is none. */
+	private volatile String runningTest = null;
+
+	/** Records the coverage of the running tests if tests may run in parallel, null otherwise. */
+	private final ParallelTestCoverageTracker parallelTestCoverageTracker;
+
 	/** The options the user has configured for the agent. */
 	protected final AgentOptions agentOptions;
 
@@ -43,15 +51,25 @@ public abstract class TestEventHandlerStrategyBase {
 		this.controller = controller;
 		this.agentOptions = agentOptions;
 		this.teamscaleClient = agentOptions.createTeamscaleClient();
+		if (agentOptions.shouldSupportParallelTests()) {
+			this.parallelTestCoverageTracker = new ParallelTestCoverageTracker(controller);
+		} else {
+			this.parallelTestCoverageTracker = null;
+		}
 	}
 
 	/** Called when test test with the given name is about to start. */
-	public void testStart(String test) {
+	public void testStart(String test) throws JacocoRuntimeController.DumpException {
 		logger.debug("Test {} started", test);
+		if (parallelTestCoverageTracker != null) {
+			parallelTestCoverageTracker.testStart(test);
+			return;
+		}
 		// Reset coverage so that we only record coverage that belongs to this particular test case.
 		controller.reset();
 		controller.setSessionId(test);
 		startTimestamp = System.currentTimeMillis();
+		runningTest = test;
 	}
 
 	/**
@@ -64,9 +82,14 @@ public abstract class TestEventHandlerStrategyBase {
 	 * as a json response.
 	 */
 	public String testEnd(String test,
-						  TestExecution testExecution) throws JacocoRuntimeController.DumpException, CoverageGenerationException {
+						  TestExecution testExecution) throws JacocoRuntimeController.DumpException, CoverageGenerationException, IOException {
+		runningTest = null;
 		if (testExecution != null) {
 			testExecution.setUniformPath(test);
+			long startTimestamp = this.startTimestamp;
+			if (parallelTestCoverageTracker != null) {
+				startTimestamp = parallelTestCoverageTracker.getStartTimestamp(test);
+			}
 			if (startTimestamp != -1) {
 				long endTimestamp = System.currentTimeMillis();
 				testExecution.setDurationMillis(endTimestamp - startTimestamp);
@@ -76,6 +99,29 @@ public abstract class TestEventHandlerStrategyBase {
 		return null;
 	}
 
+	/**
+	 * Returns the coverage of the given test, which has just ended, and resets the coverage. The returned dump may be
+	 * handed back via {@link JacocoRuntimeController#recycle(Dump)} once it has been processed.
+	 */
+	protected Dump dumpCoverageOfTest(String test) throws JacocoRuntimeController.DumpException {
+		if (parallelTestCoverageTracker != null) {
+			return parallelTestCoverageTracker.testEnd(test);
+		}
+		return controller.dumpAndReset();
+	}
+
+	/** Returns the uniform paths of the tests that have started but not ended yet. */
+	public List<String> getRunningTests() {
+		if (parallelTestCoverageTracker != null) {
+			return parallelTestCoverageTracker.getRunningTests();
+		}
+		String test = runningTest;
+		if (test == null) {
+			return Collections.emptyList();
+		}
+		return Collections.singletonList(test);
+	}
+
 	/**
 	 * Retrieves impacted tests from Teamscale, if a {@link #teamscaleClient} has been configured.
 	 *
@@ -121,6 +167,11 @@ public abstract class TestEventHandlerStrategyBase {
 		}
 	}
 
+	/** Called when the agent shuts down. */
+	public void prepareShutdown() {
+		// Template method to be overridden by subclasses.
+	}
+
 	/**
 	 * Signals that the test run has ended. Strategies that support this can upload a report via the {@link
 	 * #teamscaleClient} here.
@@ -3,20 +3,45 @@ package com.teamscale.jacoco.agent.testimpact;
 import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
 import com.teamscale.jacoco.agent.util.LoggingUtils;
+import com.teamscale.report.ReportUtils;
 import com.teamscale.report.testwise.model.TestExecution;
 import org.slf4j.Logger;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 
 /**
  * Helper class for writing a list of test executions to a file. This class ensures that we never have to hold all test
  * executions in memory but rather incrementally append to the output file. This ensures that we don't use unnecessary
  * amounts of memory during profiling.
+ * <p>
+ * The file is written in the JSON Lines format, i.e. every test execution is a JSON object on its own line, which
+ * {@link ReportUtils#readObjects} reads just like a JSON array. The file is only ever appended to, so a crash can at
+ * most leave an incomplete last line, which the reader ignores.
+ * <p>
+ * Writing and forcing the file to the disk is expensive on network file systems, so the test executions are buffered
+ * and group-committed once {@link #MAX_UNCOMMITTED_EXECUTIONS} executions have been appended or
+ * {@link #MAX_UNCOMMITTED_MILLIS} have passed since the last commit, and when the writer is closed. If the JVM
+ * crashes, the executions that have been appended since the last commit are lost.
  */
-public class TestExecutionWriter {
+public class TestExecutionWriter implements Closeable {
+
+	/** The maximum number of test executions that are buffered before they are committed. */
+	private static final int MAX_UNCOMMITTED_EXECUTIONS = 64;
+
+	/** The maximum time in milliseconds during which test executions are buffered before they are committed. */
+	private static final long MAX_UNCOMMITTED_MILLIS = TimeUnit.SECONDS.toMillis(1);
 
 	private final Logger logger = LoggingUtils.getLogger(this);
 
@@ -24,7 +49,23 @@ public class TestExecutionWriter {
 			.adapter(TestExecution.class);
 
 	private final File testExecutionFile;
-	private boolean hasWrittenAtLeastOneExecution = false;
+
+	/** The open file. Null before the first commit and after closing. */
+	private FileChannel channel;
+
+	/**
+	 * Whether this writer has created the file. Until then, an existing file, e.g. from a previous run, is replaced.
+	 */
+	private boolean hasCreatedFile = false;
+
+	/** The test executions that have not been committed yet, one per line. */
+	private final ByteArrayOutputStream uncommittedExecutions = new ByteArrayOutputStream();
+
+	/** The number of test executions in {@link #uncommittedExecutions}. */
+	private int uncommittedExecutionCount = 0;
+
+	/** The time of the last commit. */
+	private long lastCommitTimestamp = System.currentTimeMillis();
 
 	public TestExecutionWriter(File testExecutionFile) {
 		this.testExecutionFile = testExecutionFile;
@@ -33,25 +74,52 @@ public class TestExecutionWriter {
 
 	/** Appends the given {@link TestExecution} to the test execution list file. */
 	public synchronized void append(TestExecution testExecution) throws IOException {
-		String json = testExecutionAdapter.toJson(testExecution);
-
-		// the file contains a JSON array if it exists and to append to it, we strip the trailing "]" and append
-		// our new entry and a closing "]"
-		// "rwd" means open for read-write and flush all changes directly to disk
-		try (RandomAccessFile file = new RandomAccessFile(testExecutionFile, "rwd")) {
-			String textToWrite = json + "]";
-			if (hasWrittenAtLeastOneExecution) {
-				textToWrite = "," + textToWrite;
-				// overwrite the trailing "]"
-				file.seek(file.length() - 1);
+		byte[] line = (testExecutionAdapter.toJson(testExecution) + "\n").getBytes(StandardCharsets.UTF_8);
+		uncommittedExecutions.write(line, 0, line.length);
+		uncommittedExecutionCount++;
+
+		long now = System.currentTimeMillis();
+		if (uncommittedExecutionCount >= MAX_UNCOMMITTED_EXECUTIONS ||
+				now - lastCommitTimestamp >= MAX_UNCOMMITTED_MILLIS) {
+			commit(now);
+		}
+	}
+
+	/** Appends the buffered test executions to the file in a single write and forces them to the disk. */
+	private void commit(long now) throws IOException {
+		lastCommitTimestamp = now;
+		if (uncommittedExecutionCount == 0) {
+			return;
+		}
+		if (channel == null) {
+			if (hasCreatedFile) {
+				channel = FileChannel.open(testExecutionFile.toPath(), CREATE, APPEND);
 			} else {
-				textToWrite = "[" + textToWrite;
+				channel = FileChannel.open(testExecutionFile.toPath(), CREATE, TRUNCATE_EXISTING, WRITE);
+				hasCreatedFile = true;
 			}
+		}
 
-			file.write(textToWrite.getBytes(StandardCharsets.UTF_8));
+		ByteBuffer buffer = ByteBuffer.wrap(uncommittedExecutions.toByteArray());
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
 		}
+		channel.force(false);
+		uncommittedExecutions.reset();
+		uncommittedExecutionCount = 0;
+	}
 
-		hasWrittenAtLeastOneExecution = true;
+	/** Commits all buffered test executions and closes the file. */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			commit(System.currentTimeMillis());
+		} finally {
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+		}
 	}
 
 }
@@ -54,11 +54,23 @@ public class TestwiseCoverageAgent extends AgentBase {
 	private final JsonAdapter<List<ClusteredTestDetails>> clusteredTestDetailsAdapter = new Moshi.Builder().build()
 			.adapter(Types.newParameterizedType(List.class, ClusteredTestDetails.class));
 
+	/** JSON adapter for the uniform paths of the running tests. */
+	private final JsonAdapter<List<String>> runningTestsAdapter = new Moshi.Builder().build()
+			.adapter(Types.newParameterizedType(List.class, String.class));
+
 	private final TestEventHandlerStrategyBase testEventHandler;
 
+	/** Writes the test executions in exec-file and sparse-exec-file mode. May be null in other modes. */
+	private final TestExecutionWriter testExecutionWriter;
+
+	/** Converts the coverage of the tests. Holds the archives of lazily analyzed class files open until shutdown. */
+	private final JaCoCoTestwiseReportGenerator reportGenerator;
+
 	public TestwiseCoverageAgent(AgentOptions options, TestExecutionWriter testExecutionWriter,
 								 JaCoCoTestwiseReportGenerator reportGenerator) throws IllegalStateException {
 		super(options);
+		this.testExecutionWriter = testExecutionWriter;
+		this.reportGenerator = reportGenerator;
 
 		switch (options.getTestwiseCoverageMode()) {
 			case TEAMSCALE_UPLOAD:
@@ -67,6 +79,9 @@ public class TestwiseCoverageAgent extends AgentBase {
 			case HTTP:
 				testEventHandler = new CoverageViaHttpStrategy(controller, options, reportGenerator);
 				break;
+			case SPARSE_EXEC_FILE:
+				testEventHandler = new CoverageToSparseExecFileStrategy(controller, options, testExecutionWriter);
+				break;
 			default:
 				testEventHandler = new CoverageToExecFileStrategy(controller, options, testExecutionWriter);
 				break;
@@ -76,6 +91,7 @@ public class TestwiseCoverageAgent extends AgentBase {
 	@Override
 	protected void initServerEndpoints(Service spark) {
 		spark.get("/test", (request, response) -> controller.getSessionId());
+		spark.get("/tests", this::handleGetRunningTests);
 		spark.get("/revision", (request, response) -> this.getRevisionInfo());
 		spark.post("/test/start/" + TEST_ID_PARAMETER, this::handleTestStart);
 		spark.post("/test/end/" + TEST_ID_PARAMETER, this::handleTestEnd);
@@ -84,6 +100,26 @@ public class TestwiseCoverageAgent extends AgentBase {
 		spark.exception(Exception.class, this::handleThrowable);
 	}
 
+	@Override
+	protected void prepareShutdown() {
+		testEventHandler.prepareShutdown();
+		if (reportGenerator != null) {
+			try {
+				reportGenerator.close();
+			} catch (IOException e) {
+				logger.error("Failed to close the class file archives", e);
+			}
+		}
+		if (testExecutionWriter == null) {
+			return;
+		}
+		try {
+			testExecutionWriter.close();
+		} catch (IOException e) {
+			logger.error("Failed to close the test execution file", e);
+		}
+	}
+
 	private void handleThrowable(Exception exception, Request request, Response response) {
 		logger.error("Request to {} failed with an exception", request.pathInfo(), exception);
 
@@ -145,8 +181,14 @@ public class TestwiseCoverageAgent extends AgentBase {
 		return "";
 	}
 
+	/** Returns the uniform paths of the tests that have started but not ended yet as a JSON list. */
+	private String handleGetRunningTests(Request request, Response response) {
+		response.type(APPLICATION_JSON.asString());
+		return runningTestsAdapter.toJson(testEventHandler.getRunningTests());
+	}
+
 	/** Handles the start of a new test case by setting the session ID. */
-	private String handleTestStart(Request request, Response response) {
+	private String handleTestStart(Request request, Response response) throws DumpException {
 		String testId = request.params(TEST_ID_PARAMETER);
 		if (testId == null || testId.isEmpty()) {
 			logger.error("Test name missing in " + request.url() + "!");
@@ -163,7 +205,8 @@ public class TestwiseCoverageAgent extends AgentBase {
 	}
 
 	/** Handles the end of a test case by resetting the session ID. */
-	private String handleTestEnd(Request request, Response response) throws DumpException, CoverageGenerationException {
+	private String handleTestEnd(Request request,
+								 Response response) throws DumpException, CoverageGenerationException, IOException {
 		String testId = request.params(TEST_ID_PARAMETER);
 		if (testId == null || testId.isEmpty()) {
 			logger.error("Test name missing in " + request.url() + "!");
@@ -0,0 +1,158 @@
+package com.teamscale.jacoco.agent.upload;
+
+import com.teamscale.report.jacoco.CoverageFile;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The zip that is uploaded by a {@link HttpZipUploaderBase}. It contains the coverage XML and additional metadata files.
+ * <p>
+ * The zip is never stored. It is compressed on the fly while it is written to the request, so uploading it needs
+ * neither a temporary file nor memory proportional to the size of the coverage. Since the length of the zip is unknown
+ * in advance, the request uses chunked transfer encoding. The request can be written more than once (e.g. if OkHttp
+ * retries it) and always produces the same bytes.
+ */
+public class CoverageZipRequestBody extends RequestBody {
+
+	/** The media type of the request. */
+	private static final MediaType ZIP_MEDIA_TYPE = MediaType.parse("application/zip");
+
+	/**
+	 * The modification time of all zip entries. A fixed time makes the zip reproducible, so writing it twice yields the
+	 * same bytes.
+	 */
+	private static final long ENTRY_TIME = new GregorianCalendar(1980, 0, 1).getTimeInMillis();
+
+	/** The coverage XML. */
+	private final CoverageFile coverageFile;
+
+	/** The name of the coverage XML within the zip. */
+	private final String coverageFileEntryName;
+
+	/** Additional files to include in the zip. */
+	private final List<Path> additionalMetaDataFiles;
+
+	/** The compression level, see {@link ZipOutputStream#setLevel(int)}. */
+	private final int compressionLevel;
+
+	/**
+	 * Whether the session infos are removed from the coverage XML, so zips of dumps with the same coverage are
+	 * identical. See {@link SessionInfoFilterOutputStream}.
+	 */
+	private final boolean omitSessionInfo;
+
+	/** Constructor. */
+	public CoverageZipRequestBody(CoverageFile coverageFile, String coverageFileEntryName,
+								  List<Path> additionalMetaDataFiles, int compressionLevel) {
+		this(coverageFile, coverageFileEntryName, additionalMetaDataFiles, compressionLevel, false);
+	}
+
+	/** Constructor. */
+	public CoverageZipRequestBody(CoverageFile coverageFile, String coverageFileEntryName,
+								  List<Path> additionalMetaDataFiles, int compressionLevel, boolean omitSessionInfo) {
+		this.coverageFile = coverageFile;
+		this.coverageFileEntryName = coverageFileEntryName;
+		this.additionalMetaDataFiles = additionalMetaDataFiles;
+		this.compressionLevel = compressionLevel;
+		this.omitSessionInfo = omitSessionInfo;
+	}
+
+	@Override
+	public MediaType contentType() {
+		return ZIP_MEDIA_TYPE;
+	}
+
+	/** Returns -1 since the length is only known after compressing. Use {@link #computeLength()} if it is needed. */
+	@Override
+	public long contentLength() {
+		return -1;
+	}
+
+	@Override
+	public void writeTo(BufferedSink sink) throws IOException {
+		writeZip(sink.outputStream());
+	}
+
+	/**
+	 * Writes the zip to the given stream. The stream is flushed but not closed.
+	 */
+	public void writeZip(OutputStream outputStream) throws IOException {
+		try (ZipOutputStream zipOutputStream = new ZipOutputStream(new UnclosableOutputStream(outputStream))) {
+			zipOutputStream.setLevel(compressionLevel);
+			zipOutputStream.putNextEntry(createEntry(coverageFileEntryName));
+			if (omitSessionInfo) {
+				SessionInfoFilterOutputStream filterOutputStream = new SessionInfoFilterOutputStream(zipOutputStream);
+				coverageFile.copy(filterOutputStream);
+				filterOutputStream.finish();
+			} else {
+				coverageFile.copy(zipOutputStream);
+			}
+
+			for (Path additionalFile : additionalMetaDataFiles) {
+				zipOutputStream.putNextEntry(createEntry(additionalFile.getFileName().toString()));
+				Files.copy(additionalFile, zipOutputStream);
+			}
+		}
+	}
+
+	private static ZipEntry createEntry(String name) {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setTime(ENTRY_TIME);
+		return entry;
+	}
+
+	/**
+	 * Computes the length of the zip by compressing it without storing the result. This is only needed for upload
+	 * targets that must know the length before the upload, since it compresses the coverage twice.
+	 */
+	public long computeLength() throws IOException {
+		CountingOutputStream countingOutputStream = new CountingOutputStream();
+		writeZip(countingOutputStream);
+		return countingOutputStream.count;
+	}
+
+	/** Passes all data to the wrapped stream, but only flushes it on {@link #close()}. */
+	private static class UnclosableOutputStream extends FilterOutputStream {
+
+		private UnclosableOutputStream(OutputStream outputStream) {
+			super(outputStream);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			out.write(bytes, offset, length);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+
+	/** Discards all data and only counts the number of bytes. */
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+			count += length;
+		}
+	}
+}
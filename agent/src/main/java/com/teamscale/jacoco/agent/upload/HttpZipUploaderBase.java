@@ -7,19 +7,13 @@ import com.teamscale.report.jacoco.CoverageFile;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.ResponseBody;
-import org.conqat.lib.commons.filesystem.FileSystemUtils;
 import org.slf4j.Logger;
 import retrofit2.Response;
 import retrofit2.Retrofit;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /** Base class for uploading the coverage zip to a provided url */
 public abstract class HttpZipUploaderBase<T> implements IUploader {
@@ -33,6 +27,9 @@ public abstract class HttpZipUploaderBase<T> implements IUploader {
 	/** Additional files to include in the uploaded zip. */
 	protected final List<Path> additionalMetaDataFiles;
 
+	/** The compression level of the uploaded zip, see {@link java.util.zip.Deflater}. */
+	private final int compressionLevel;
+
 	/** The API class. */
 	private final Class<T> apiClass;
 
@@ -40,9 +37,11 @@ public abstract class HttpZipUploaderBase<T> implements IUploader {
 	private T api;
 
 	/** Constructor. */
-	public HttpZipUploaderBase(HttpUrl uploadUrl, List<Path> additionalMetaDataFiles, Class<T> apiClass) {
+	public HttpZipUploaderBase(HttpUrl uploadUrl, List<Path> additionalMetaDataFiles, int compressionLevel,
+							   Class<T> apiClass) {
 		this.uploadUrl = uploadUrl;
 		this.additionalMetaDataFiles = additionalMetaDataFiles;
+		this.compressionLevel = compressionLevel;
 		this.apiClass = apiClass;
 	}
 
@@ -63,7 +62,7 @@ public abstract class HttpZipUploaderBase<T> implements IUploader {
 
 	/** Uploads the coverage zip to the server */
 	protected abstract Response<ResponseBody> uploadCoverageZip(
-			File coverageFile) throws IOException, UploaderException;
+			CoverageZipRequestBody coverageZip) throws IOException, UploaderException;
 
 	@Override
 	public void upload(CoverageFile coverageFile) {
@@ -84,16 +83,11 @@ public abstract class HttpZipUploaderBase<T> implements IUploader {
 	protected boolean tryUpload(CoverageFile coverageFile) {
 		logger.debug("Uploading coverage to {}", uploadUrl);
 
-		File zipFile;
-		try {
-			zipFile = createZipFile(coverageFile);
-		} catch (IOException e) {
-			logger.error("Failed to compile coverage zip file for upload to {}", uploadUrl, e);
-			return false;
-		}
-
+		CoverageZipRequestBody coverageZip = new CoverageZipRequestBody(coverageFile,
+				getZipEntryCoverageFileName(coverageFile), additionalMetaDataFiles, compressionLevel,
+				shouldOmitSessionInfo());
 		try {
-			Response<ResponseBody> response = uploadCoverageZip(zipFile);
+			Response<ResponseBody> response = uploadCoverageZip(coverageZip);
 			if (response.isSuccessful()) {
 				return true;
 			}
@@ -107,45 +101,24 @@ public abstract class HttpZipUploaderBase<T> implements IUploader {
 					uploadUrl, response.code(), errorBody);
 			return false;
 		} catch (IOException e) {
-			logger.error("Failed to upload coverage to {}. Probably a network problem", uploadUrl, e);
+			logger.error("Failed to upload coverage to {}. Probably a network problem or the coverage file " +
+					"could not be read", uploadUrl, e);
 			return false;
 		} catch (UploaderException e) {
 			logger.error("Failed to upload coverage to {}. The configuration is probably incorrect", uploadUrl, e);
 			return false;
-		} finally {
-			zipFile.delete();
 		}
 	}
 
-	/**
-	 * Creates the zip file in the system temp directory to upload which includes the given coverage XML and all {@link
-	 * #additionalMetaDataFiles}. The file is marked to be deleted on exit.
-	 */
-	private File createZipFile(CoverageFile coverageFile) throws IOException {
-		File zipFile = Files.createTempFile(coverageFile.getNameWithoutExtension(), ".zip").toFile();
-		zipFile.deleteOnExit();
-		try (FileOutputStream fileOutputStream = new FileOutputStream(zipFile);
-			 ZipOutputStream zipOutputStream = new ZipOutputStream(fileOutputStream)) {
-			fillZipFile(zipOutputStream, coverageFile);
-			return zipFile;
-		}
+	protected String getZipEntryCoverageFileName(CoverageFile coverageFile) {
+		return "coverage.xml";
 	}
 
 	/**
-	 * Fills the upload zip file with the given coverage XML and all {@link #additionalMetaDataFiles}.
+	 * Whether the session infos are removed from the uploaded coverage XML, so dumps with the same coverage result in
+	 * identical zips.
 	 */
-	private void fillZipFile(ZipOutputStream zipOutputStream, CoverageFile coverageFile)
-			throws IOException {
-		zipOutputStream.putNextEntry(new ZipEntry(getZipEntryCoverageFileName(coverageFile)));
-		coverageFile.copy(zipOutputStream);
-
-		for (Path additionalFile : additionalMetaDataFiles) {
-			zipOutputStream.putNextEntry(new ZipEntry(additionalFile.getFileName().toString()));
-			zipOutputStream.write(FileSystemUtils.readFileBinary(additionalFile.toFile()));
-		}
-	}
-
-	protected String getZipEntryCoverageFileName(CoverageFile coverageFile) {
-		return "coverage.xml";
+	protected boolean shouldOmitSessionInfo() {
+		return false;
 	}
 }
@@ -0,0 +1,110 @@
+package com.teamscale.jacoco.agent.upload;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Removes the <code>&lt;sessioninfo .../&gt;</code> elements from a JaCoCo XML report that is written to the wrapped
+ * stream. These elements contain the start and dump time of the session, so without them the reports of two dumps with
+ * the same coverage are identical.
+ * <p>
+ * The report is filtered while it is written, so it is never held in memory. Attribute values in JaCoCo XML reports are
+ * escaped, so the first <code>/&gt;</code> after the start of the element always ends it. Call {@link #finish()} after
+ * the report has been written.
+ */
+/* package */ class SessionInfoFilterOutputStream extends FilterOutputStream {
+
+	/** The start of a session info element. */
+	private static final byte[] ELEMENT_START = "<sessioninfo ".getBytes(StandardCharsets.US_ASCII);
+
+	/** The number of bytes of {@link #ELEMENT_START} that have been written last and may start an element. */
+	private int matchedLength = 0;
+
+	/**
+	 * The number of bytes of the current match that have been written by earlier calls and are held back. They are
+	 * only passed on if they turn out not to start an element.
+	 */
+	private int heldBackLength = 0;
+
+	/** Whether the written bytes belong to a session info element and are dropped. */
+	private boolean insideElement = false;
+
+	/** The last dropped byte, used to detect the end of the element. */
+	private int lastDroppedByte = -1;
+
+	/** Constructor. */
+	/* package */ SessionInfoFilterOutputStream(OutputStream outputStream) {
+		super(outputStream);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+
+	/**
+	 * Passes the given bytes on without the session info elements. The bytes between two elements are passed on in a
+	 * single write, since every write to a compressing stream is expensive.
+	 */
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		int end = offset + length;
+		// Start of the bytes of this call that have not been passed on yet
+		int passThroughStart = offset;
+		for (int i = offset; i < end; i++) {
+			byte b = bytes[i];
+			if (insideElement) {
+				if (lastDroppedByte == '/' && b == '>') {
+					insideElement = false;
+					passThroughStart = i + 1;
+				}
+				lastDroppedByte = b;
+				continue;
+			}
+
+			if (b == ELEMENT_START[matchedLength]) {
+				matchedLength++;
+				if (matchedLength == ELEMENT_START.length) {
+					// The held back bytes are dropped together with the rest of the element
+					int elementStart = i + 1 - (matchedLength - heldBackLength);
+					passOn(bytes, passThroughStart, elementStart - passThroughStart);
+					insideElement = true;
+					lastDroppedByte = -1;
+					matchedLength = 0;
+					heldBackLength = 0;
+				}
+			} else if (matchedLength > 0) {
+				// The match did not start an element after all. If it started in an earlier call, nothing of this
+				// call has been passed on yet, so the held back bytes come first.
+				passOn(ELEMENT_START, 0, heldBackLength);
+				heldBackLength = 0;
+				matchedLength = 0;
+				// The current byte may start an element itself
+				i--;
+			}
+		}
+		if (!insideElement) {
+			// The bytes of a match at the end are held back until the next call shows whether they start an element
+			passOn(bytes, passThroughStart, end - (matchedLength - heldBackLength) - passThroughStart);
+			heldBackLength = matchedLength;
+		}
+	}
+
+	private void passOn(byte[] bytes, int offset, int length) throws IOException {
+		if (length > 0) {
+			out.write(bytes, offset, length);
+		}
+	}
+
+	/** Writes the bytes that are still held back. Does not close the wrapped stream. */
+	public void finish() throws IOException {
+		if (matchedLength > 0) {
+			out.write(ELEMENT_START, 0, matchedLength);
+			matchedLength = 0;
+			heldBackLength = 0;
+		}
+		out.flush();
+	}
+}
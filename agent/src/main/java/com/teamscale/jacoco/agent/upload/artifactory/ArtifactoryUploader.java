@@ -3,27 +3,32 @@ package com.teamscale.jacoco.agent.upload.artifactory;
 import com.teamscale.client.HttpUtils;
 import com.teamscale.client.StringUtils;
 import com.teamscale.jacoco.agent.options.ArtifactoryConfig;
+import com.teamscale.jacoco.agent.upload.CoverageZipRequestBody;
 import com.teamscale.jacoco.agent.upload.HttpZipUploaderBase;
 import com.teamscale.report.jacoco.CoverageFile;
 import okhttp3.OkHttpClient;
 import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.HashingSink;
+import okio.Okio;
 import retrofit2.Response;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 
 /**
- * Uploads XMLs to Artifactory.
+ * Uploads XMLs to Artifactory. Zips that Artifactory already stores, e.g. because consecutive dumps contained the same
+ * coverage, are deployed by their checksums without uploading them again. To make such zips identical, the session
+ * infos with the start and dump times are removed from the uploaded XML.
  */
 public class ArtifactoryUploader extends HttpZipUploaderBase<IArtifactoryUploadApi> {
 	private final ArtifactoryConfig artifactoryConfig;
 	private String uploadPath;
 
 	/** Constructor. */
-	public ArtifactoryUploader(ArtifactoryConfig config, List<Path> additionalMetaDataFiles) {
-		super(config.url, additionalMetaDataFiles, IArtifactoryUploadApi.class);
+	public ArtifactoryUploader(ArtifactoryConfig config, List<Path> additionalMetaDataFiles, int compressionLevel) {
+		super(config.url, additionalMetaDataFiles, compressionLevel, IArtifactoryUploadApi.class);
 		this.artifactoryConfig = config;
 	}
 
@@ -42,13 +47,42 @@ public class ArtifactoryUploader extends HttpZipUploaderBase<IArtifactoryUploadA
 	}
 
 	@Override
-	protected Response<ResponseBody> uploadCoverageZip(File zipFile) throws IOException {
-		return getApi().uploadCoverageZip(uploadPath, zipFile);
+	protected Response<ResponseBody> uploadCoverageZip(CoverageZipRequestBody coverageZip) throws IOException {
+		// The checksums must be sent before the zip, so we need an extra pass over the zip to compute them
+		HashingSink sha256Sink = HashingSink.sha256(Okio.blackhole());
+		HashingSink sha1Sink = HashingSink.sha1(sha256Sink);
+		try (BufferedSink sink = Okio.buffer(sha1Sink)) {
+			coverageZip.writeTo(sink);
+		}
+		String sha1 = sha1Sink.hash().hex();
+		String sha256 = sha256Sink.hash().hex();
+
+		Response<ResponseBody> checksumResponse = getApi().deployByChecksum(uploadPath, sha1, sha256).execute();
+		if (checksumResponse.isSuccessful()) {
+			logger.debug("Artifactory already stores a zip with SHA-1 {}. Deployed it without uploading it again.",
+					sha1);
+			return checksumResponse;
+		}
+		if (checksumResponse.errorBody() != null) {
+			checksumResponse.errorBody().close();
+		}
+
+		// Artifactory does not know the checksums (404) or does not support checksum deploys, so upload the zip
+		return getApi().uploadCoverageZip(uploadPath, sha1, sha256, coverageZip);
+	}
+
+	@Override
+	protected boolean shouldOmitSessionInfo() {
+		return true;
 	}
 
+	/**
+	 * Returns the same name for all dumps, since the name of the coverage file contains the time of the dump and would
+	 * make every zip unique. The zip itself is still stored under the name of the coverage file.
+	 */
 	@Override
 	protected String getZipEntryCoverageFileName(CoverageFile coverageFile) {
-		String path = coverageFile.getName();
+		String path = super.getZipEntryCoverageFileName(coverageFile);
 		if (!StringUtils.isEmpty(artifactoryConfig.zipPath)) {
 			path = artifactoryConfig.zipPath + "/" + path;
 		}
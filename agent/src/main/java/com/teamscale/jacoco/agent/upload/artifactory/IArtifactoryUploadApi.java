@@ -5,32 +5,50 @@
 +-------------------------------------------------------------------------*/
 package com.teamscale.jacoco.agent.upload.artifactory;
 
-import okhttp3.MediaType;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Response;
 import retrofit2.Retrofit;
 import retrofit2.http.Body;
+import retrofit2.http.Header;
+import retrofit2.http.Headers;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
 
-import java.io.File;
 import java.io.IOException;
 
 /** {@link Retrofit} API specification for the {@link ArtifactoryUploader}. */
 public interface IArtifactoryUploadApi {
 
-	/** The upload API call. */
+	/** Header with the SHA-1 checksum of the deployed file. */
+	String X_CHECKSUM_SHA1 = "X-Checksum-Sha1";
+
+	/** Header with the SHA-256 checksum of the deployed file. */
+	String X_CHECKSUM_SHA256 = "X-Checksum-Sha256";
+
+	/**
+	 * The upload API call. Artifactory rejects the upload if the uploaded file does not match the given checksums.
+	 */
+	@PUT("{path}")
+	Call<ResponseBody> upload(@Path("path") String path, @Header(X_CHECKSUM_SHA1) String sha1,
+							  @Header(X_CHECKSUM_SHA256) String sha256, @Body RequestBody uploadedFile);
+
+	/**
+	 * Deploys a file that Artifactory already stores with the given checksums to the path without uploading its
+	 * content. Fails with 404 if Artifactory does not know the checksums.
+	 */
 	@PUT("{path}")
-	Call<ResponseBody> upload(@Path("path") String path, @Body RequestBody uploadedFile);
+	@Headers("X-Checksum-Deploy: true")
+	Call<ResponseBody> deployByChecksum(@Path("path") String path, @Header(X_CHECKSUM_SHA1) String sha1,
+										@Header(X_CHECKSUM_SHA256) String sha256);
 
 	/**
-	 * Convenience method to perform an upload for a coverage zip.
+	 * Convenience method to perform an upload for a coverage zip with the given checksums.
 	 */
-	default Response<ResponseBody> uploadCoverageZip(String path, File data) throws IOException {
-		RequestBody body = RequestBody.create(MediaType.parse("application/zip"), data);
-		return upload(path, body).execute();
+	default Response<ResponseBody> uploadCoverageZip(String path, String sha1, String sha256,
+													 RequestBody coverageZip) throws IOException {
+		return upload(path, sha1, sha256, coverageZip).execute();
 	}
 
 }
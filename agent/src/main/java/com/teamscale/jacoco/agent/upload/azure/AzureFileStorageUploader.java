@@ -1,6 +1,7 @@
 package com.teamscale.jacoco.agent.upload.azure;
 
 import com.teamscale.client.EReportFormat;
+import com.teamscale.jacoco.agent.upload.CoverageZipRequestBody;
 import com.teamscale.jacoco.agent.upload.HttpZipUploaderBase;
 import com.teamscale.jacoco.agent.upload.UploaderException;
 import okhttp3.MediaType;
@@ -8,12 +9,13 @@ import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 import retrofit2.Response;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -34,6 +36,15 @@ public class AzureFileStorageUploader extends HttpZipUploaderBase<IAzureUploadAp
 	private static final Pattern AZURE_FILE_STORAGE_HOST_PATTERN = Pattern
 			.compile("^(\\w*)\\.file\\.core\\.windows\\.net$");
 
+	/** The maximum number of ranges of a file that are uploaded at the same time. */
+	private static final int MAX_PARALLEL_RANGES = 4;
+
+	/**
+	 * The directories (prefixed with the account) that are known to exist on the file storage. Directories are never
+	 * deleted by the agent, so they are only checked once per JVM.
+	 */
+	private static final Set<String> EXISTING_DIRECTORIES = ConcurrentHashMap.newKeySet();
+
 	/** The access key for the azure file storage */
 	private final String accessKey;
 
@@ -41,9 +52,9 @@ public class AzureFileStorageUploader extends HttpZipUploaderBase<IAzureUploadAp
 	private final String account;
 
 	/** Constructor. */
-	public AzureFileStorageUploader(AzureFileStorageConfig config, List<Path> additionalMetaDataFiles)
-			throws UploaderException {
-		super(config.url, additionalMetaDataFiles, IAzureUploadApi.class);
+	public AzureFileStorageUploader(AzureFileStorageConfig config, List<Path> additionalMetaDataFiles,
+									int compressionLevel) throws UploaderException {
+		super(config.url, additionalMetaDataFiles, compressionLevel, IAzureUploadApi.class);
 		this.accessKey = config.accessKey;
 		this.account = getAccount();
 
@@ -70,13 +81,14 @@ public class AzureFileStorageUploader extends HttpZipUploaderBase<IAzureUploadAp
 	}
 
 	@Override
-	protected Response<ResponseBody> uploadCoverageZip(File zipFile) throws IOException, UploaderException {
+	protected Response<ResponseBody> uploadCoverageZip(
+			CoverageZipRequestBody coverageZip) throws IOException, UploaderException {
+		// The file name contains the current time, so we do not check whether the file exists already
 		String fileName = createFileName();
-		if (checkFile(fileName).isSuccessful()) {
-			logger.warn(String.format("The file %s does already exists at %s", fileName, uploadUrl));
-		}
 
-		return createAndFillFile(zipFile, fileName);
+		// The file storage must know the size of the file before it is filled
+		long zipLength = coverageZip.computeLength();
+		return createAndFillFile(coverageZip, zipLength, fileName);
 	}
 
 	/**
@@ -109,6 +121,10 @@ public class AzureFileStorageUploader extends HttpZipUploaderBase<IAzureUploadAp
 	private void checkAndCreatePath(List<String> pathParts) throws IOException, UploaderException {
 		for (int i = 2; i <= pathParts.size() - 1; i++) {
 			String directoryPath = String.format("/%s/", String.join("/", pathParts.subList(0, i)));
+			String directoryKey = account + directoryPath;
+			if (EXISTING_DIRECTORIES.contains(directoryKey)) {
+				continue;
+			}
 			if (!checkDirectory(directoryPath).isSuccessful()) {
 				Response<ResponseBody> mkdirResponse = createDirectory(directoryPath);
 				if (!mkdirResponse.isSuccessful()) {
@@ -116,6 +132,7 @@ public class AzureFileStorageUploader extends HttpZipUploaderBase<IAzureUploadAp
 							String.format("Creation of path '/%s' was unsuccessful", directoryPath), mkdirResponse);
 				}
 			}
+			EXISTING_DIRECTORIES.add(directoryKey);
 		}
 	}
 
@@ -124,20 +141,6 @@ public class AzureFileStorageUploader extends HttpZipUploaderBase<IAzureUploadAp
 		return String.format("%s-%s.zip", EReportFormat.JACOCO.name().toLowerCase(), System.currentTimeMillis());
 	}
 
-	/** Checks if the file with the given name exists */
-	private Response<Void> checkFile(String fileName) throws IOException, UploaderException {
-		String filePath = uploadUrl.url().getPath() + fileName;
-
-		Map<String, String> headers = AzureFileStorageHttpUtils.getBaseHeaders();
-		Map<String, String> queryParameters = new HashMap<>();
-
-		String auth = AzureFileStorageHttpUtils
-				.getAuthorizationString(HEAD, account, accessKey, filePath, headers, queryParameters);
-
-		headers.put(AUTHORIZATION, auth);
-		return getApi().head(filePath, headers, queryParameters).execute();
-	}
-
 	/** Checks if the directory given by the specified path does exist. */
 	private Response<Void> checkDirectory(String directoryPath) throws IOException, UploaderException {
 		Map<String, String> headers = AzureFileStorageHttpUtils.getBaseHeaders();
@@ -170,25 +173,25 @@ public class AzureFileStorageUploader extends HttpZipUploaderBase<IAzureUploadAp
 	}
 
 	/** Creates and fills a file with the given data and name. */
-	private Response<ResponseBody> createAndFillFile(File zipFile,
+	private Response<ResponseBody> createAndFillFile(CoverageZipRequestBody coverageZip, long zipLength,
 													 String fileName) throws UploaderException, IOException {
-		Response<ResponseBody> response = createFile(zipFile, fileName);
+		Response<ResponseBody> response = createFile(zipLength, fileName);
 		if (response.isSuccessful()) {
-			return fillFile(zipFile, fileName);
+			return fillFile(coverageZip, fileName);
 		}
 		logger.error(String.format("Creation of file '%s' was unsuccessful.", fileName));
 		return response;
 	}
 
 	/**
-	 * Creates an empty file with the given name. The size is defined by the length of the given byte array.
+	 * Creates an empty file with the given name and size.
 	 */
-	private Response<ResponseBody> createFile(File zipFile,
+	private Response<ResponseBody> createFile(long zipLength,
 											  String fileName) throws IOException, UploaderException {
 		String filePath = uploadUrl.url().getPath() + fileName;
 
 		Map<String, String> headers = AzureFileStorageHttpUtils.getBaseHeaders();
-		headers.put(X_MS_CONTENT_LENGTH, zipFile.length() + "");
+		headers.put(X_MS_CONTENT_LENGTH, zipLength + "");
 		headers.put(X_MS_TYPE, "file");
 
 		Map<String, String> queryParameters = new HashMap<>();
@@ -201,21 +204,38 @@ public class AzureFileStorageUploader extends HttpZipUploaderBase<IAzureUploadAp
 	}
 
 	/**
-	 * Fills the file defined by the name with the given data. Should be used with {@link #createFile(File, String)},
-	 * because the request only writes exactly the length of the given data, so the file should be exactly as big as the
-	 * data, otherwise it will be partially filled or is not big enough.
+	 * Fills the file defined by the name with the given zip. Should be used with {@link #createFile(long, String)},
+	 * because the requests only write exactly the length of the zip, so the file should be exactly as big as the zip,
+	 * otherwise it will be partially filled or is not big enough. The zip is uploaded in ranges, since the file storage
+	 * limits the size of a single range, see {@link ParallelRangeUpload}.
 	 */
-	private Response<ResponseBody> fillFile(File zipFile,
+	private Response<ResponseBody> fillFile(CoverageZipRequestBody coverageZip,
 											String fileName) throws IOException, UploaderException {
+		ParallelRangeUpload rangeUpload = new ParallelRangeUpload(
+				(offset, data, length) -> fillRange(fileName, offset, data, length), MAX_PARALLEL_RANGES);
+		try {
+			coverageZip.writeZip(rangeUpload);
+		} catch (IOException | RuntimeException e) {
+			rangeUpload.abort();
+			throw e;
+		} finally {
+			rangeUpload.close();
+		}
+		return rangeUpload.awaitResult();
+	}
+
+	/** Writes the first <code>length</code> bytes of the given data to the file, starting at the given offset. */
+	private Response<ResponseBody> fillRange(String fileName, long offset, byte[] data,
+											 int length) throws IOException, UploaderException {
 		String filePath = uploadUrl.url().getPath() + fileName;
 
-		String range = "bytes=0-" + (zipFile.length() - 1);
+		String range = "bytes=" + offset + "-" + (offset + length - 1);
 		String contentType = "application/octet-stream";
 
 		Map<String, String> headers = AzureFileStorageHttpUtils.getBaseHeaders();
 		headers.put(X_MS_WRITE, "update");
 		headers.put(X_MS_RANGE, range);
-		headers.put(CONTENT_LENGTH, "" + zipFile.length());
+		headers.put(CONTENT_LENGTH, "" + length);
 		headers.put(CONTENT_TYPE, contentType);
 
 		Map<String, String> queryParameters = new HashMap<>();
@@ -225,7 +245,7 @@ public class AzureFileStorageUploader extends HttpZipUploaderBase<IAzureUploadAp
 				.getAuthorizationString(PUT, account, accessKey, filePath, headers, queryParameters);
 
 		headers.put(AUTHORIZATION, auth);
-		RequestBody content = RequestBody.create(MediaType.parse(contentType), zipFile);
+		RequestBody content = RequestBody.create(MediaType.parse(contentType), data, 0, length);
 		return getApi().putData(filePath, headers, queryParameters, content).execute();
 	}
 }
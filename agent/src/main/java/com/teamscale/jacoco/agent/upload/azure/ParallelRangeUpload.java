@@ -0,0 +1,233 @@
+package com.teamscale.jacoco.agent.upload.azure;
+
+import com.teamscale.jacoco.agent.upload.UploaderException;
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Uploads the data written to this stream to a file on the Azure file storage in ranges. A range is uploaded as soon as
+ * it is full, while the following data is still being written. Only a limited number of ranges are uploaded
+ * concurrently. Writing blocks if that many ranges are being uploaded already, so the memory usage is bounded. A range
+ * whose upload fails is attempted up to {@link #MAX_ATTEMPTS} times.
+ * <p>
+ * {@link #close()} uploads the last range and {@link #awaitResult()} waits until all ranges have been uploaded. If
+ * writing the data fails, {@link #abort()} must be called before {@link #close()}, so the incomplete data is not
+ * uploaded.
+ */
+/* package */ class ParallelRangeUpload extends OutputStream {
+
+	/** The maximum size of a range that the Azure file storage accepts in a single request. */
+	/* package */ static final int MAX_RANGE_SIZE = 4 * 1024 * 1024;
+
+	/** How often the upload of a single range is attempted. */
+	private static final int MAX_ATTEMPTS = 3;
+
+	/** Uploads a single range. */
+	private final IRangeUploader rangeUploader;
+
+	/** Limits the number of ranges that are uploaded at the same time. */
+	private final Semaphore uploadPermits;
+
+	/** Uploads the ranges. */
+	private final ExecutorService executor;
+
+	/** The results of the uploads of the ranges, in the order of the ranges. */
+	private final List<Future<Response<ResponseBody>>> rangeResults = new ArrayList<>();
+
+	/**
+	 * Set once the upload of a range has failed or the upload was aborted, so the remaining ranges are not uploaded
+	 * anymore.
+	 */
+	private volatile boolean failed = false;
+
+	/** The data of the current range. */
+	private byte[] range = new byte[MAX_RANGE_SIZE];
+
+	/** The number of bytes in {@link #range}. */
+	private int rangeLength = 0;
+
+	/** The offset of the current range within the file. */
+	private long rangeOffset = 0;
+
+	/** Constructor. */
+	/* package */ ParallelRangeUpload(IRangeUploader rangeUploader, int maxParallelRanges) {
+		this.rangeUploader = rangeUploader;
+		this.uploadPermits = new Semaphore(maxParallelRanges);
+		this.executor = Executors.newFixedThreadPool(maxParallelRanges, runnable -> {
+			Thread thread = new Thread(runnable, "Azure range upload");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		range[rangeLength++] = (byte) b;
+		if (rangeLength == MAX_RANGE_SIZE) {
+			submitRange();
+		}
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			int copiedLength = Math.min(length, MAX_RANGE_SIZE - rangeLength);
+			System.arraycopy(bytes, offset, range, rangeLength, copiedLength);
+			rangeLength += copiedLength;
+			offset += copiedLength;
+			length -= copiedLength;
+			if (rangeLength == MAX_RANGE_SIZE) {
+				submitRange();
+			}
+		}
+	}
+
+	/** Uploads the current range in the background and starts a new one. */
+	private void submitRange() throws IOException {
+		try {
+			uploadPermits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the upload of a range");
+		}
+
+		byte[] data = range;
+		int length = rangeLength;
+		long offset = rangeOffset;
+		rangeResults.add(executor.submit(() -> {
+			try {
+				return uploadRange(offset, data, length);
+			} catch (IOException | UploaderException | RuntimeException e) {
+				failed = true;
+				throw e;
+			} finally {
+				uploadPermits.release();
+			}
+		}));
+
+		range = new byte[MAX_RANGE_SIZE];
+		rangeOffset += length;
+		rangeLength = 0;
+	}
+
+	/** Uploads the range, retrying it if the upload fails. Returns null if another range has failed already. */
+	private Response<ResponseBody> uploadRange(long offset, byte[] data,
+											   int length) throws IOException, UploaderException {
+		for (int attempt = 1; ; attempt++) {
+			if (failed) {
+				return null;
+			}
+
+			try {
+				Response<ResponseBody> response = rangeUploader.upload(offset, data, length);
+				if (response.isSuccessful() || attempt == MAX_ATTEMPTS || !isRetryable(response)) {
+					failed |= !response.isSuccessful();
+					return response;
+				}
+				if (response.errorBody() != null) {
+					response.errorBody().close();
+				}
+			} catch (IOException e) {
+				if (attempt == MAX_ATTEMPTS) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	/** Only server errors and throttling are retried. Other client errors will not go away. */
+	private static boolean isRetryable(Response<ResponseBody> response) {
+		return response.code() >= 500 || response.code() == 429;
+	}
+
+	/**
+	 * Stops the upload after writing the data has failed. Ranges that are being uploaded are interrupted and the
+	 * remaining ranges are not uploaded anymore.
+	 */
+	/* package */ void abort() {
+		failed = true;
+		stopUploads();
+	}
+
+	/** Uploads the last range, unless the upload has failed or was aborted. */
+	@Override
+	public void close() throws IOException {
+		if (failed) {
+			stopUploads();
+			return;
+		}
+		if (rangeLength > 0) {
+			submitRange();
+		}
+		executor.shutdown();
+	}
+
+	/** Interrupts the running uploads and cancels the waiting ones, so {@link #awaitResult()} skips them. */
+	private void stopUploads() {
+		for (Runnable waitingUpload : executor.shutdownNow()) {
+			((Future<?>) waitingUpload).cancel(false);
+		}
+	}
+
+	/**
+	 * Waits until all ranges have been uploaded. Returns the response of the first range that failed or of the last
+	 * range if all ranges were uploaded successfully. Returns null if no data was written.
+	 */
+	/* package */ Response<ResponseBody> awaitResult() throws IOException, UploaderException {
+		Response<ResponseBody> result = null;
+		for (Future<Response<ResponseBody>> rangeResult : rangeResults) {
+			Response<ResponseBody> response = getResult(rangeResult);
+			if (response == null) {
+				// This range was skipped, since another range failed
+				continue;
+			}
+			if (!response.isSuccessful()) {
+				stopUploads();
+				return response;
+			}
+			result = response;
+		}
+		return result;
+	}
+
+	private static Response<ResponseBody> getResult(
+			Future<Response<ResponseBody>> rangeResult) throws IOException, UploaderException {
+		try {
+			return rangeResult.get();
+		} catch (CancellationException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the upload of a range");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof UploaderException) {
+				throw (UploaderException) cause;
+			}
+			throw new IOException("Uploading a range failed", cause);
+		}
+	}
+
+	/** Uploads a single range of a file. */
+	@FunctionalInterface
+	/* package */ interface IRangeUploader {
+
+		/** Writes the first <code>length</code> bytes of the given data to the file, starting at the given offset. */
+		Response<ResponseBody> upload(long offset, byte[] data, int length) throws IOException, UploaderException;
+	}
+}
@@ -4,28 +4,45 @@ import com.teamscale.jacoco.agent.upload.IUploader;
 import com.teamscale.jacoco.agent.util.DaemonThreadFactory;
 import com.teamscale.jacoco.agent.util.LoggingUtils;
 import com.teamscale.report.jacoco.CoverageFile;
+import com.teamscale.report.jacoco.dump.Dump;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.tools.ExecFileLoader;
 import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
 /**
  * Wraps an {@link IUploader} and in order to delay upload  until a all information describing a commit is
  * asynchronously made available.
+ * <p>
+ * Until then, dumps passed to {@link #cacheDump(Dump)} are merged into a single binary execution data file in the
+ * cache directory, so the cache does not grow with the number of dumps. Once the commit is known, the merged dump is
+ * handed to the {@link #setCachedDumpConsumer(Consumer) cached dump consumer}, which converts and uploads it once.
  */
 public class DelayedUploader<T> implements IUploader {
 
+	/** The name of the file in the cache directory that holds the merged execution data of all cached dumps. */
+	/* package */ static final String CACHED_EXECUTION_DATA_FILE_NAME = "jacoco-cached.exec";
+
 	private final Executor executor;
 	private final Logger logger = LoggingUtils.getLogger(this);
 	private final Function<T, IUploader> wrappedUploaderFactory;
 	private IUploader wrappedUploader = null;
 	private final Path cacheDir;
 
+	/** Receives the merged cached dump once the commit is known. */
+	private Consumer<Dump> cachedDumpConsumer = null;
+
 	public DelayedUploader(Function<T, IUploader> wrappedUploaderFactory,
 						   Path cacheDir) {
 		this(wrappedUploaderFactory, cacheDir, Executors.newSingleThreadExecutor(
@@ -49,12 +66,13 @@ public class DelayedUploader<T> implements IUploader {
 		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
 			if (wrappedUploader == null) {
 				logger.error("The application was shut down before a commit could be found. The recorded coverage" +
-								" is still cached in {} but will not be automatically processed. You configured the" +
-								" agent to auto-detect the commit to which the recorded coverage should be uploaded to" +
-								" Teamscale. In order to fix this problem, you need to provide a git.properties file" +
-								" in all of the profiled Jar/War/Ear/... files. If you're using Gradle or" +
-								" Maven, you can use a plugin to create a proper git.properties file for you, see" +
-								" https://docs.spring.io/spring-boot/docs/current/reference/html/howto.html#howto-git-info",
+								" is still cached in {} but will not be automatically processed. Cached binary" +
+								" execution data (*.exec) can be converted with the convert tool of the agent. You" +
+								" configured the agent to auto-detect the commit to which the recorded coverage" +
+								" should be uploaded to Teamscale. In order to fix this problem, you need to provide" +
+								" a git.properties file in all of the profiled Jar/War/Ear/... files. If you're using" +
+								" Gradle or Maven, you can use a plugin to create a proper git.properties file for" +
+								" you, see https://docs.spring.io/spring-boot/docs/current/reference/html/howto.html#howto-git-info",
 						cacheDir.toAbsolutePath());
 			}
 		}));
@@ -79,15 +97,61 @@ public class DelayedUploader<T> implements IUploader {
 	}
 
 	/**
-	 * Sets the commit to upload the XMLs to and asynchronously triggers the upload of all cached XMLs. This method
-	 * should only be called once.
+	 * Sets the consumer that receives the merged execution data of all dumps cached via {@link #cacheDump(Dump)} once
+	 * the commit is known, e.g. to convert and upload it. Must be set before the commit can be found.
+	 */
+	public synchronized void setCachedDumpConsumer(Consumer<Dump> cachedDumpConsumer) {
+		this.cachedDumpConsumer = cachedDumpConsumer;
+	}
+
+	/**
+	 * Merges the given dump into the cached execution data if the commit is not known yet. Returns false if the dump
+	 * was not cached, because the commit is known already or caching failed. Then the dump must be converted and
+	 * uploaded as usual. The dump may be reused by the caller in any case.
+	 */
+	public synchronized boolean cacheDump(Dump dump) {
+		if (wrappedUploader != null || cachedDumpConsumer == null) {
+			return false;
+		}
+
+		Path cachedExecutionDataFile = cacheDir.resolve(CACHED_EXECUTION_DATA_FILE_NAME);
+		try {
+			ExecFileLoader loader = new ExecFileLoader();
+			if (Files.exists(cachedExecutionDataFile)) {
+				loader.load(cachedExecutionDataFile.toFile());
+			}
+			// Merges the probes of classes that are cached already
+			dump.store.accept(loader.getExecutionDataStore());
+			loader.getSessionInfoStore().visitSessionInfo(dump.info);
+
+			Files.createDirectories(cacheDir);
+			Path temporaryFile = cacheDir.resolve(CACHED_EXECUTION_DATA_FILE_NAME + ".tmp");
+			loader.save(temporaryFile.toFile(), false);
+			Files.move(temporaryFile, cachedExecutionDataFile, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.error("Failed to cache the dump in {}. Caching it as XML instead",
+					cachedExecutionDataFile.toAbsolutePath(), e);
+			return false;
+		}
+		logger.info("The commit to upload to has not yet been found. Merged the coverage into {}",
+				cachedExecutionDataFile.toAbsolutePath());
+		return true;
+	}
+
+	/**
+	 * Sets the commit to upload the XMLs to and asynchronously triggers the upload of all cached XMLs and dumps. This
+	 * method should only be called once.
 	 */
 	public synchronized void setCommitAndTriggerAsynchronousUpload(T information) {
 		if (wrappedUploader == null) {
 			wrappedUploader = wrappedUploaderFactory.apply(information);
-			logger.info("Commit to upload to has been found: {}. Uploading any cached XMLs now to {}", information,
+			logger.info("Commit to upload to has been found: {}. Uploading any cached coverage now to {}", information,
 					wrappedUploader.describe());
-			executor.execute(this::uploadCachedXmls);
+			executor.execute(() -> {
+				uploadCachedXmls();
+				processCachedDump();
+			});
 		} else {
 			logger.error("Tried to set upload commit multiple times (old uploader: {}, new commit: {})." +
 					" This is a programming error. Please report a bug.", wrappedUploader.describe(), information);
@@ -111,4 +175,39 @@ public class DelayedUploader<T> implements IUploader {
 		}
 
 	}
+
+	/** Passes the merged execution data of all cached dumps to the {@link #cachedDumpConsumer}. */
+	private void processCachedDump() {
+		Path cachedExecutionDataFile = cacheDir.resolve(CACHED_EXECUTION_DATA_FILE_NAME);
+		if (cachedDumpConsumer == null || !Files.exists(cachedExecutionDataFile)) {
+			return;
+		}
+
+		ExecFileLoader loader = new ExecFileLoader();
+		try {
+			loader.load(cachedExecutionDataFile.toFile());
+		} catch (IOException e) {
+			logger.error("Failed to read the cached coverage in {}", cachedExecutionDataFile.toAbsolutePath(), e);
+			return;
+		}
+		cachedDumpConsumer.accept(new Dump(getMergedSessionInfo(loader.getSessionInfoStore()),
+				loader.getExecutionDataStore()));
+
+		try {
+			Files.delete(cachedExecutionDataFile);
+		} catch (IOException e) {
+			logger.warn("Failed to delete the cached coverage in {}. You may delete it manually.",
+					cachedExecutionDataFile.toAbsolutePath(), e);
+		}
+	}
+
+	/** Merges the sessions of all cached dumps into one, keeping the ID of the latest one. */
+	private static SessionInfo getMergedSessionInfo(SessionInfoStore sessionInfoStore) {
+		List<SessionInfo> sessionInfos = sessionInfoStore.getInfos();
+		String id = "cached";
+		if (!sessionInfos.isEmpty()) {
+			id = sessionInfos.get(sessionInfos.size() - 1).getId();
+		}
+		return sessionInfoStore.getMerged(id);
+	}
 }
@@ -21,9 +21,16 @@ public class TeamscaleUploader implements IUploader {
 	/** Teamscale server details. */
 	private final TeamscaleServer teamscaleServer;
 
+	/** The minimum size in bytes of uploads that are compressed with gzip. A negative value disables compression. */
+	private final long requestCompressionThreshold;
+
+	/** The API to upload to Teamscale. Created on the first upload and reused afterwards. */
+	private ITeamscaleService api;
+
 	/** Constructor. */
-	public TeamscaleUploader(TeamscaleServer teamscaleServer) {
+	public TeamscaleUploader(TeamscaleServer teamscaleServer, long requestCompressionThreshold) {
 		this.teamscaleServer = teamscaleServer;
+		this.requestCompressionThreshold = requestCompressionThreshold;
 	}
 
 	@Override
@@ -55,14 +62,7 @@ public class TeamscaleUploader implements IUploader {
 		logger.debug("Uploading JaCoCo artifact to {}", teamscaleServer);
 
 		try {
-			// Cannot be executed in the constructor as this causes issues in WildFly server (See #100)
-			ITeamscaleService api = TeamscaleServiceGenerator.createService(
-					ITeamscaleService.class,
-					teamscaleServer.url,
-					teamscaleServer.userName,
-					teamscaleServer.userAccessToken
-			);
-			api.uploadReport(
+			getApi().uploadReport(
 					teamscaleServer.project,
 					teamscaleServer.commit,
 					teamscaleServer.revision,
@@ -78,6 +78,21 @@ public class TeamscaleUploader implements IUploader {
 		}
 	}
 
+	private ITeamscaleService getApi() {
+		if (api == null) {
+			// Cannot be executed in the constructor as this causes issues in WildFly server (See #100)
+			api = TeamscaleServiceGenerator.createService(
+					ITeamscaleService.class,
+					teamscaleServer.url,
+					teamscaleServer.userName,
+					teamscaleServer.userAccessToken,
+					requestCompressionThreshold,
+					null
+			);
+		}
+		return api;
+	}
+
 	@Override
 	public String describe() {
 		return "Uploading to " + teamscaleServer;
@@ -29,6 +29,6 @@ public class Benchmark implements AutoCloseable {
 	@Override
 	public void close() {
 		long endTime = System.nanoTime();
-		logger.debug("{} took {}s", description, (endTime - startTime) / 1_000_000_000L);
+		logger.debug("{} took {}ms", description, (endTime - startTime) / 1_000_000L);
 	}
 }
@@ -0,0 +1,154 @@
+package com.teamscale.jacoco.agent;
+
+import com.teamscale.jacoco.agent.options.EDumpBackpressurePolicy;
+import com.teamscale.jacoco.agent.util.InMemoryUploader;
+import com.teamscale.report.jacoco.CoverageFile;
+import com.teamscale.report.jacoco.dump.Dump;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests the {@link DumpPipeline}. */
+public class DumpPipelineTest {
+
+	@TempDir
+	Path outputDirectory;
+
+	private final InMemoryUploader uploader = new InMemoryUploader();
+
+	/** The class names contained in the converted dumps in the order of the conversion. */
+	private final List<String> convertedClasses = Collections.synchronizedList(new ArrayList<>());
+
+	private final List<Dump> recycledDumps = Collections.synchronizedList(new ArrayList<>());
+
+	/** Counted down once the conversion of the first dump has started. */
+	private final CountDownLatch conversionStarted = new CountDownLatch(1);
+
+	/** Blocks the conversion until it is counted down. */
+	private final CountDownLatch conversionAllowed = new CountDownLatch(1);
+
+	@Test
+	void convertsAndUploadsAllDumps() throws Exception {
+		conversionAllowed.countDown();
+		DumpPipeline pipeline = createPipeline(EDumpBackpressurePolicy.BLOCK);
+		pipeline.submit(createDump(1, "First"));
+		pipeline.submit(createDump(2, "Second"));
+		pipeline.close();
+
+		assertThat(convertedClasses).containsExactly("First", "Second");
+		assertThat(uploader.getUploadedFiles()).hasSize(2);
+		assertThat(recycledDumps).hasSize(2);
+	}
+
+	@Test
+	void dropsOldestDumpIfConversionFallsBehind() throws Exception {
+		DumpPipeline pipeline = createPipeline(EDumpBackpressurePolicy.DROP_OLDEST);
+		submitWhileConversionIsBlocked(pipeline);
+		pipeline.close();
+
+		assertThat(convertedClasses).containsExactly("First", "Third");
+		assertThat(uploader.getUploadedFiles()).hasSize(2);
+		assertThat(recycledDumps).hasSize(3);
+	}
+
+	@Test
+	void mergesDumpsIfConversionFallsBehind() throws Exception {
+		DumpPipeline pipeline = createPipeline(EDumpBackpressurePolicy.MERGE);
+		submitWhileConversionIsBlocked(pipeline);
+		pipeline.close();
+
+		assertThat(convertedClasses).containsExactly("First", "Second,Third");
+		assertThat(uploader.getUploadedFiles()).hasSize(2);
+	}
+
+	@Test
+	void blocksIfConversionFallsBehind() throws Exception {
+		DumpPipeline pipeline = createPipeline(EDumpBackpressurePolicy.BLOCK);
+		pipeline.submit(createDump(1, "First"));
+		assertThat(conversionStarted.await(10, TimeUnit.SECONDS)).isTrue();
+		pipeline.submit(createDump(2, "Second"));
+
+		CountDownLatch thirdDumpSubmitted = new CountDownLatch(1);
+		Thread submitter = new Thread(() -> {
+			try {
+				pipeline.submit(createDump(3, "Third"));
+				thirdDumpSubmitted.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		submitter.start();
+		assertThat(thirdDumpSubmitted.await(200, TimeUnit.MILLISECONDS)).isFalse();
+
+		conversionAllowed.countDown();
+		assertThat(thirdDumpSubmitted.await(10, TimeUnit.SECONDS)).isTrue();
+		pipeline.close();
+
+		assertThat(convertedClasses).containsExactly("First", "Second", "Third");
+	}
+
+	@Test
+	void discardsRemainingDumpsAfterShutdownTimeout() throws Exception {
+		DumpPipeline pipeline = new DumpPipeline(2, EDumpBackpressurePolicy.BLOCK, this::convert, recycledDumps::add,
+				uploader, Duration.ofMillis(100));
+		pipeline.submit(createDump(1, "First"));
+		assertThat(conversionStarted.await(10, TimeUnit.SECONDS)).isTrue();
+		Dump secondDump = createDump(2, "Second");
+		pipeline.submit(secondDump);
+		pipeline.close();
+
+		assertThat(recycledDumps).contains(secondDump);
+		assertThat(convertedClasses).isEmpty();
+		assertThat(uploader.getUploadedFiles()).isEmpty();
+	}
+
+	/**
+	 * Submits three dumps. The second and third one are submitted while the first one is being converted, so the queue
+	 * is full when the third one is submitted.
+	 */
+	private void submitWhileConversionIsBlocked(DumpPipeline pipeline) throws InterruptedException {
+		pipeline.submit(createDump(1, "First"));
+		assertThat(conversionStarted.await(10, TimeUnit.SECONDS)).isTrue();
+		pipeline.submit(createDump(2, "Second"));
+		pipeline.submit(createDump(3, "Third"));
+		conversionAllowed.countDown();
+	}
+
+	private DumpPipeline createPipeline(EDumpBackpressurePolicy backpressurePolicy) {
+		return new DumpPipeline(1, backpressurePolicy, this::convert, recycledDumps::add, uploader);
+	}
+
+	private CoverageFile convert(Dump dump) {
+		conversionStarted.countDown();
+		try {
+			conversionAllowed.await();
+		} catch (InterruptedException e) {
+			throw new AssertionError(e);
+		}
+		String classNames = dump.store.getContents().stream().map(ExecutionData::getName).sorted()
+				.collect(Collectors.joining(","));
+		convertedClasses.add(classNames);
+		File file = outputDirectory.resolve(classNames + ".xml").toFile();
+		return new CoverageFile(file);
+	}
+
+	private static Dump createDump(long classId, String className) {
+		ExecutionDataStore store = new ExecutionDataStore();
+		store.put(new ExecutionData(classId, className, new boolean[]{true}));
+		return new Dump(new SessionInfo("session", classId, classId), store);
+	}
+}
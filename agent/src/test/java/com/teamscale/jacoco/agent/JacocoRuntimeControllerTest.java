@@ -0,0 +1,134 @@
+package com.teamscale.jacoco.agent;
+
+import com.teamscale.report.jacoco.dump.Dump;
+import org.jacoco.agent.rt.internal_43f5073.Agent;
+import org.jacoco.agent.rt.internal_43f5073.IExceptionLogger;
+import org.jacoco.agent.rt.internal_43f5073.core.runtime.AgentOptions;
+import org.jacoco.agent.rt.internal_43f5073.core.runtime.RuntimeData;
+import org.jacoco.core.data.ExecutionData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Constructor;
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests the {@link JacocoRuntimeController}. */
+public class JacocoRuntimeControllerTest {
+
+	private RuntimeData runtimeData;
+	private JacocoRuntimeController controller;
+
+	@BeforeEach
+	public void setup() throws Exception {
+		Agent agent = createAgent();
+		runtimeData = agent.getData();
+		controller = new JacocoRuntimeController(agent);
+		controller.setSessionId("session");
+	}
+
+	@Test
+	public void snapshotMatchesExecFormat() throws Exception {
+		hit(1, "com/example/Foo", 5, 0, 3);
+		hit(2, "com/example/Bar", 3);
+		hit(3, "com/example/Baz", 2, 1);
+
+		Dump execFormatDump = controller.dumpAndResetViaExecFormat();
+
+		hit(1, "com/example/Foo", 5, 0, 3);
+		hit(2, "com/example/Bar", 3);
+		hit(3, "com/example/Baz", 2, 1);
+
+		Dump snapshotDump = controller.dumpAndReset();
+
+		assertThat(snapshotDump.info.getId()).isEqualTo(execFormatDump.info.getId());
+		assertSameExecutionData(snapshotDump.store.getContents(), execFormatDump.store.getContents());
+		assertThat(snapshotDump.store.get(2)).as("classes without hits are skipped").isNull();
+	}
+
+	@Test
+	public void snapshotResetsProbes() throws Exception {
+		hit(1, "com/example/Foo", 5, 0, 3);
+		controller.dumpAndReset();
+
+		assertThat(controller.dumpAndReset().store.getContents()).isEmpty();
+	}
+
+	@Test
+	public void resetClearsTouchedClasses() throws Exception {
+		hit(1, "com/example/Foo", 5, 0, 3);
+		hit(2, "com/example/Bar", 3, 2);
+		controller.reset();
+		hit(3, "com/example/Baz", 2, 1);
+
+		Dump dump = controller.dumpAndReset();
+
+		assertThat(dump.store.getContents()).extracting(ExecutionData::getName).containsExactly("com/example/Baz");
+		assertThat(runtimeData.getExecutionData(1L, "com/example/Foo", 5).getProbes()).containsOnly(false);
+		assertThat(runtimeData.getExecutionData(2L, "com/example/Bar", 3).getProbes()).containsOnly(false);
+	}
+
+	@Test
+	public void sessionStartsWithLastReset() throws Exception {
+		long beforeReset = System.currentTimeMillis();
+		controller.reset();
+		hit(1, "com/example/Foo", 5, 0);
+
+		Dump firstDump = controller.dumpAndReset();
+		hit(1, "com/example/Foo", 5, 0);
+		Dump secondDump = controller.dumpAndReset();
+
+		assertThat(firstDump.info.getStartTimeStamp()).isGreaterThanOrEqualTo(beforeReset);
+		assertThat(secondDump.info.getStartTimeStamp()).isEqualTo(firstDump.info.getDumpTimeStamp());
+	}
+
+	@Test
+	public void recycledDumpsAreNotModifiedByLaterSnapshots() throws Exception {
+		hit(1, "com/example/Foo", 5, 0, 3);
+		Dump firstDump = controller.dumpAndReset();
+		boolean[] firstProbes = firstDump.store.get(1).getProbes().clone();
+
+		hit(1, "com/example/Foo", 5, 4);
+		Dump secondDump = controller.dumpAndReset();
+
+		assertThat(firstDump.store.get(1).getProbes()).isEqualTo(firstProbes);
+		assertThat(secondDump.store.get(1).getProbes()).containsExactly(false, false, false, false, true);
+
+		controller.recycle(secondDump);
+		hit(1, "com/example/Foo", 5, 1);
+		Dump thirdDump = controller.dumpAndReset();
+
+		assertThat(thirdDump.store.get(1)).isSameAs(secondDump.store.get(1));
+		assertThat(thirdDump.store.get(1).getProbes()).containsExactly(false, true, false, false, false);
+	}
+
+	/** Registers the class in the runtime data and sets the given probes. */
+	private void hit(long classId, String className, int probeCount, int... probeIds) {
+		boolean[] probes = runtimeData.getExecutionData(classId, className, probeCount).getProbes();
+		for (int probeId : probeIds) {
+			probes[probeId] = true;
+		}
+	}
+
+	private static void assertSameExecutionData(Collection<ExecutionData> actual, Collection<ExecutionData> expected) {
+		assertThat(actual).hasSameSizeAs(expected);
+		for (ExecutionData expectedData : expected) {
+			ExecutionData actualData = actual.stream().filter(data -> data.getId() == expectedData.getId()).findFirst()
+					.orElseThrow(() -> new AssertionError("Missing class " + expectedData.getName()));
+			assertThat(actualData.getName()).isEqualTo(expectedData.getName());
+			assertThat(actualData.getProbes()).isEqualTo(expectedData.getProbes());
+		}
+	}
+
+	/**
+	 * Creates a JaCoCo agent that is not started. {@link Agent#getInstance(AgentOptions)} would start a global
+	 * singleton, which is shared by all tests, so we call the package-private constructor instead.
+	 */
+	/* package */ static Agent createAgent() throws Exception {
+		Constructor<Agent> constructor = Agent.class.getDeclaredConstructor(AgentOptions.class,
+				IExceptionLogger.class);
+		constructor.setAccessible(true);
+		return constructor.newInstance(new AgentOptions(), IExceptionLogger.SYSTEM_ERR);
+	}
+}
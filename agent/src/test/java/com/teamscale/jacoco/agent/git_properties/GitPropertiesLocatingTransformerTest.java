@@ -0,0 +1,97 @@
+package com.teamscale.jacoco.agent.git_properties;
+
+import com.teamscale.jacoco.agent.upload.delay.DelayedUploader;
+import com.teamscale.jacoco.agent.util.InMemoryUploader;
+import com.teamscale.report.util.ClasspathWildcardIncludeFilter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.lang.instrument.Instrumentation;
+import java.net.URL;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class GitPropertiesLocatingTransformerTest {
+
+	@TempDir
+	Path tempDir;
+
+	private final List<File> searchedJars = new ArrayList<>();
+
+	private final Instrumentation instrumentation = mock(Instrumentation.class);
+
+	@Test
+	public void searchesEachJarOnlyOnce() throws Exception {
+		GitPropertiesLocatingTransformer transformer = createTransformer(null, "com.example.*");
+		ProtectionDomain jar = createProtectionDomain(tempDir.resolve("app.jar").toUri().toURL());
+		ProtectionDomain otherJar = createProtectionDomain(tempDir.resolve("lib.jar").toUri().toURL());
+
+		transformer.transform(null, "com/example/First", null, jar, new byte[0]);
+		transformer.transform(null, "com/example/Second", null, jar, new byte[0]);
+		transformer.transform(null, "com/example/Third", null, otherJar, new byte[0]);
+
+		assertThat(searchedJars).containsExactly(tempDir.resolve("app.jar").toFile(),
+				tempDir.resolve("lib.jar").toFile());
+	}
+
+	@Test
+	public void searchesJarOnceAnIncludedClassIsLoaded() throws Exception {
+		GitPropertiesLocatingTransformer transformer = createTransformer(null, "com.example.*");
+		ProtectionDomain jar = createProtectionDomain(tempDir.resolve("app.jar").toUri().toURL());
+
+		transformer.transform(null, "org/library/Excluded", null, jar, new byte[0]);
+		assertThat(searchedJars).isEmpty();
+
+		transformer.transform(null, "com/example/Included", null, jar, new byte[0]);
+		assertThat(searchedJars).containsExactly(tempDir.resolve("app.jar").toFile());
+	}
+
+	@Test
+	public void ignoresClassFolders() throws Exception {
+		GitPropertiesLocatingTransformer transformer = createTransformer(null, "com.example.*");
+		ProtectionDomain classFolder = createProtectionDomain(tempDir.toUri().toURL());
+
+		transformer.transform(null, "com/example/First", null, classFolder, new byte[0]);
+
+		assertThat(searchedJars).isEmpty();
+	}
+
+	@Test
+	public void unregistersOnceCommitIsFound() throws Exception {
+		GitPropertiesLocatingTransformer transformer = createTransformer("a2afb54566aaa", "com.example.*");
+		verify(instrumentation).addTransformer(transformer);
+		verify(instrumentation, never()).removeTransformer(transformer);
+
+		transformer.transform(null, "com/example/First", null,
+				createProtectionDomain(tempDir.resolve("app.jar").toUri().toURL()), new byte[0]);
+
+		verify(instrumentation).removeTransformer(transformer);
+	}
+
+	/** Creates a registered transformer whose locator searches synchronously and always finds the given revision. */
+	private GitPropertiesLocatingTransformer createTransformer(String revision, String includes) {
+		DelayedUploader<String> uploader = new DelayedUploader<>(commit -> new InMemoryUploader(), tempDir);
+		GitPropertiesLocator<String> locator = new GitPropertiesLocator<>(uploader, jarFile -> {
+			searchedJars.add(jarFile);
+			return revision;
+		}, Runnable::run);
+		GitPropertiesLocatingTransformer transformer = new GitPropertiesLocatingTransformer(locator,
+				new ClasspathWildcardIncludeFilter(includes, null));
+		transformer.register(instrumentation);
+		return transformer;
+	}
+
+	private static ProtectionDomain createProtectionDomain(URL location) {
+		return new ProtectionDomain(new CodeSource(location, (Certificate[]) null), null);
+	}
+}
@@ -2,12 +2,22 @@ package com.teamscale.jacoco.agent.git_properties;
 
 import org.conqat.lib.commons.collections.Pair;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -31,6 +41,96 @@ public class GitPropertiesLocatorTest {
 		}
 	}
 
+	@Test
+	public void testReadingGitPropertiesFromArchiveFile(@TempDir Path tempDir) throws Exception {
+		for (String archiveName : TEST_ARCHIVES) {
+			File archive = copyTestArchive(archiveName, tempDir);
+			assertThat(GitPropertiesLocator.getRevisionFromGitProperties(archive))
+					.isEqualTo("72c7b3f7e6c4802414283cdf7622e6127f3f8976");
+		}
+	}
+
+	@Test
+	public void testReadingGitPropertiesFromArchiveWithBashScript(@TempDir Path tempDir) throws Exception {
+		Path archive = tempDir.resolve("executable.jar");
+		try (OutputStream outputStream = Files.newOutputStream(archive);
+			 InputStream testArchive = getClass().getResourceAsStream("spring-boot-git-properties.jar")) {
+			outputStream.write("#!/bin/bash\necho 'Starting the application'\n".getBytes(StandardCharsets.UTF_8));
+			copy(testArchive, outputStream);
+		}
+
+		assertThat(GitPropertiesLocator.getRevisionFromGitProperties(archive.toFile()))
+				.isEqualTo("72c7b3f7e6c4802414283cdf7622e6127f3f8976");
+	}
+
+	@Test
+	public void testReadingGitPropertiesFromNestedApplicationArchive(@TempDir Path tempDir) throws Exception {
+		Path archive = tempDir.resolve("app.ear");
+		writeArchiveWithNestedArchive(archive, "app.war");
+
+		Pair<String, Properties> entryWithProperties = GitPropertiesLocator.findGitPropertiesInJar(archive.toFile());
+		assertThat(entryWithProperties).isNotNull();
+		assertThat(entryWithProperties.getFirst()).startsWith("app.war!/");
+		assertThat(entryWithProperties.getSecond().getProperty(GitPropertiesLocator.GIT_PROPERTIES_GIT_COMMIT_ID))
+				.isEqualTo("72c7b3f7e6c4802414283cdf7622e6127f3f8976");
+	}
+
+	@Test
+	public void testIgnoringGitPropertiesOfNestedLibraries(@TempDir Path tempDir) throws Exception {
+		Path archive = tempDir.resolve("fat.jar");
+		writeArchiveWithNestedArchive(archive, "BOOT-INF/lib/lib.jar");
+
+		assertThat(GitPropertiesLocator.findGitPropertiesInJar(archive.toFile())).isNull();
+	}
+
+	/** Writes an archive that contains a class file and the given nested archive, which contains a git.properties. */
+	private void writeArchiveWithNestedArchive(Path archive, String nestedArchiveName) throws IOException {
+		ByteArrayOutputStream nestedArchive = new ByteArrayOutputStream();
+		try (InputStream testArchive = getClass().getResourceAsStream("plain-git-properties.jar")) {
+			copy(testArchive, nestedArchive);
+		}
+		try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(archive))) {
+			zipOutputStream.putNextEntry(new ZipEntry("Main.class"));
+			zipOutputStream.write(new byte[]{(byte) 0xCA, (byte) 0xFE});
+			zipOutputStream.putNextEntry(new ZipEntry(nestedArchiveName));
+			zipOutputStream.write(nestedArchive.toByteArray());
+		}
+	}
+
+	@Test
+	public void testSearchingModifiedArchiveAgain(@TempDir Path tempDir) throws Exception {
+		Path archive = tempDir.resolve("app.jar");
+		writeArchiveWithGitProperties(archive, "git.commit.id=1234");
+		assertThat(GitPropertiesLocator.getRevisionFromGitProperties(archive.toFile())).isEqualTo("1234");
+
+		// Changes the size of the archive
+		writeArchiveWithGitProperties(archive, "git.commit.id=56789");
+		assertThat(GitPropertiesLocator.getRevisionFromGitProperties(archive.toFile())).isEqualTo("56789");
+	}
+
+	private File copyTestArchive(String archiveName, Path tempDir) throws IOException {
+		Path archive = tempDir.resolve(archiveName);
+		try (InputStream testArchive = getClass().getResourceAsStream(archiveName)) {
+			Files.copy(testArchive, archive);
+		}
+		return archive.toFile();
+	}
+
+	private static void writeArchiveWithGitProperties(Path archive, String gitProperties) throws IOException {
+		try (ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(archive))) {
+			zipOutputStream.putNextEntry(new ZipEntry("git.properties"));
+			zipOutputStream.write(gitProperties.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = inputStream.read(buffer)) != -1) {
+			outputStream.write(buffer, 0, count);
+		}
+	}
+
 	@Test
 	public void testGitPropertiesWithInvalidTimestamp() {
 		Properties gitProperties = new Properties();
@@ -0,0 +1,104 @@
+package com.teamscale.jacoco.agent.testimpact;
+
+import com.teamscale.report.jacoco.dump.Dump;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Tests the {@link AsyncTestCoverageConverter}. */
+public class AsyncTestCoverageConverterTest {
+
+	/** The IDs of the converted dumps. */
+	private final List<String> convertedTests = Collections.synchronizedList(new ArrayList<>());
+
+	/** Blocks the conversion until it is counted down. */
+	private final CountDownLatch conversionAllowed = new CountDownLatch(1);
+
+	@Test
+	void convertsInBackgroundAndWaitsForConversions() throws Exception {
+		AsyncTestCoverageConverter converter = new AsyncTestCoverageConverter(2, 2, this::blockingConvert);
+		converter.submit(createDump("test1"));
+		converter.submit(createDump("test2"));
+		assertThat(convertedTests).isEmpty();
+
+		conversionAllowed.countDown();
+		converter.awaitConversions();
+		assertThat(convertedTests).containsExactlyInAnyOrder("test1", "test2");
+	}
+
+	@Test
+	void blocksOnlyIfQueueIsFull() throws Exception {
+		AsyncTestCoverageConverter converter = new AsyncTestCoverageConverter(1, 2, this::blockingConvert);
+		converter.submit(createDump("test1"));
+		converter.submit(createDump("test2"));
+
+		CountDownLatch thirdSubmitted = new CountDownLatch(1);
+		Thread submitter = new Thread(() -> {
+			try {
+				converter.submit(createDump("test3"));
+				thirdSubmitted.countDown();
+			} catch (Exception e) {
+				throw new AssertionError(e);
+			}
+		});
+		submitter.start();
+		assertThat(thirdSubmitted.await(200, TimeUnit.MILLISECONDS)).isFalse();
+
+		conversionAllowed.countDown();
+		assertThat(thirdSubmitted.await(10, TimeUnit.SECONDS)).isTrue();
+		converter.awaitConversions();
+		assertThat(convertedTests).containsExactly("test1", "test2", "test3");
+	}
+
+	@Test
+	void reportsFailedConversionOnceAllConversionsFinished() throws Exception {
+		AsyncTestCoverageConverter converter = new AsyncTestCoverageConverter(1, 1, dump -> {
+			if (dump.info.getId().startsWith("failing")) {
+				throw new IllegalStateException("Conversion failed");
+			}
+			convertedTests.add(dump.info.getId());
+		});
+		converter.submit(createDump("failing1"));
+		converter.submit(createDump("failing2"));
+		converter.submit(createDump("test"));
+		assertThatThrownBy(converter::awaitConversions).isInstanceOf(IOException.class)
+				.hasMessageContaining("failing1").hasCauseInstanceOf(IllegalStateException.class);
+		assertThat(convertedTests).containsExactly("test");
+
+		converter.submit(createDump("test2"));
+		converter.awaitConversions();
+		assertThat(convertedTests).containsExactly("test", "test2");
+	}
+
+	@Test
+	void convertsSynchronouslyWithoutQueue() throws Exception {
+		conversionAllowed.countDown();
+		AsyncTestCoverageConverter converter = new AsyncTestCoverageConverter(1, 0, this::blockingConvert);
+		converter.submit(createDump("test"));
+
+		assertThat(convertedTests).containsExactly("test");
+	}
+
+	private void blockingConvert(Dump dump) {
+		try {
+			conversionAllowed.await();
+		} catch (InterruptedException e) {
+			throw new AssertionError(e);
+		}
+		convertedTests.add(dump.info.getId());
+	}
+
+	private static Dump createDump(String testId) {
+		return new Dump(new SessionInfo(testId, 0, 0), new ExecutionDataStore());
+	}
+}
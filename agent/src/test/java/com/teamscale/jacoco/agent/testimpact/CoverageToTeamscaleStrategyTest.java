@@ -24,15 +24,19 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import retrofit2.Response;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Collections;
 import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.ArgumentMatchers.matches;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -47,6 +51,9 @@ public class CoverageToTeamscaleStrategyTest {
 	@Mock
 	private JacocoRuntimeController controller;
 
+	/** The report that was uploaded to the {@link #client}. */
+	private String uploadedReport;
+
 	@Test
 	public void shouldRecordCoverageForTestsEvenIfNotProvidedAsAvailableTest() throws Exception {
 		when(controller.dumpAndReset()).thenReturn(new Dump(new SessionInfo("mytest", 0, 0), new ExecutionDataStore()));
@@ -62,12 +69,12 @@ public class CoverageToTeamscaleStrategyTest {
 
 		// we skip testRunStart and don't provide any available tests
 		strategy.testStart("mytest");
+		assertThat(strategy.getRunningTests()).containsExactly("mytest");
 		strategy.testEnd("mytest", new TestExecution("mytest", 0L, ETestExecutionResult.PASSED));
+		assertThat(strategy.getRunningTests()).isEmpty();
 		strategy.testRunEnd();
 
-		verify(client).uploadReport(eq(EReportFormat.TESTWISE_COVERAGE),
-				matches("\\Q{\"tests\":[{\"duration\":\\E[^,]*\\Q,\"paths\":[{\"files\":[{\"coveredLines\":\"1-4\",\"fileName\":\"Main.java\"}],\"path\":\"src/main/java\"}],\"result\":\"PASSED\",\"sourcePath\":\"mytest\",\"uniformPath\":\"mytest\"}]}\\E"),
-				any(), any(), any(), any());
+		assertThat(uploadedReport).matches("\\Q{\"tests\":[{\"duration\":\\E[^,]*\\Q,\"paths\":[{\"files\":[{\"coveredLines\":\"1-4\",\"fileName\":\"Main.java\"}],\"path\":\"src/main/java\"}],\"result\":\"PASSED\",\"sourcePath\":\"mytest\",\"uniformPath\":\"mytest\"}]}\\E");
 	}
 
 	@Test
@@ -94,9 +101,36 @@ public class CoverageToTeamscaleStrategyTest {
 		strategy.testEnd("mytest", new TestExecution("mytest", 0L, ETestExecutionResult.PASSED));
 		strategy.testRunEnd();
 
-		verify(client).uploadReport(eq(EReportFormat.TESTWISE_COVERAGE),
-				matches("\\Q{\"tests\":[{\"content\":\"content\",\"duration\":\\E[^,]*\\Q,\"paths\":[{\"files\":[{\"coveredLines\":\"1-4\",\"fileName\":\"Main.java\"}],\"path\":\"src/main/java\"}],\"result\":\"PASSED\",\"sourcePath\":\"mytest\",\"uniformPath\":\"mytest\"}]}\\E"),
-				any(), any(), any(), any());
+		assertThat(uploadedReport).matches("\\Q{\"tests\":[{\"content\":\"content\",\"duration\":\\E[^,]*\\Q,\"paths\":[{\"files\":[{\"coveredLines\":\"1-4\",\"fileName\":\"Main.java\"}],\"path\":\"src/main/java\"}],\"result\":\"PASSED\",\"sourcePath\":\"mytest\",\"uniformPath\":\"mytest\"}]}\\E");
+	}
+
+	@Test
+	public void shouldNotUploadCoverageOfPreviousTestRun() throws Exception {
+		when(controller.dumpAndReset()).thenReturn(new Dump(new SessionInfo("mytest", 0, 0), new ExecutionDataStore()));
+		when(reportGenerator.convert(any(Dump.class))).thenReturn(createCoverage("firsttest", "First.java"),
+				createCoverage("secondtest", "Second.java"));
+
+		AgentOptions options = mockOptions();
+		CoverageToTeamscaleStrategy strategy = new CoverageToTeamscaleStrategy(controller, options, reportGenerator);
+
+		strategy.testStart("firsttest");
+		strategy.testEnd("firsttest", new TestExecution("firsttest", 0L, ETestExecutionResult.PASSED));
+		strategy.testRunEnd();
+		assertThat(uploadedReport).contains("First.java");
+
+		strategy.testStart("secondtest");
+		strategy.testEnd("secondtest", new TestExecution("secondtest", 0L, ETestExecutionResult.PASSED));
+		strategy.testRunEnd();
+		assertThat(uploadedReport).contains("secondtest").contains("Second.java");
+		assertThat(uploadedReport).doesNotContain("firsttest").doesNotContain("First.java");
+	}
+
+	private static TestCoverageBuilder createCoverage(String test, String fileName) {
+		TestCoverageBuilder testCoverageBuilder = new TestCoverageBuilder(test);
+		FileCoverageBuilder fileCoverageBuilder = new FileCoverageBuilder("src/main/java", fileName);
+		fileCoverageBuilder.addLineRange(1, 4);
+		testCoverageBuilder.add(fileCoverageBuilder);
+		return testCoverageBuilder;
 	}
 
 	private JacocoRuntimeController mockController() throws JacocoRuntimeController.DumpException {
@@ -105,7 +139,7 @@ public class CoverageToTeamscaleStrategyTest {
 		return controller;
 	}
 
-	private AgentOptions mockOptions() {
+	private AgentOptions mockOptions() throws IOException {
 		AgentOptions options = mock(AgentOptions.class);
 		when(options.createTeamscaleClient()).thenReturn(client);
 
@@ -118,6 +152,11 @@ public class CoverageToTeamscaleStrategyTest {
 		when(options.getTeamscaleServerOptions()).thenReturn(server);
 
 		when(options.createTeamscaleClient()).thenReturn(client);
+		doAnswer(invocation -> {
+			File report = invocation.getArgument(1);
+			uploadedReport = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+			return null;
+		}).when(client).uploadReport(eq(EReportFormat.TESTWISE_COVERAGE), any(File.class), any(), any(), any(), any());
 		return options;
 	}
 
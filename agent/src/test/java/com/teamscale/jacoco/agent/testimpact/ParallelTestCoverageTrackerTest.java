@@ -0,0 +1,69 @@
+package com.teamscale.jacoco.agent.testimpact;
+
+import com.teamscale.jacoco.agent.JacocoRuntimeController;
+import com.teamscale.report.jacoco.dump.Dump;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Tests the {@link ParallelTestCoverageTracker}. */
+public class ParallelTestCoverageTrackerTest {
+
+	@Test
+	void attributesCoverageToAllOverlappingTests() throws Exception {
+		JacocoRuntimeController controller = mock(JacocoRuntimeController.class);
+		when(controller.dumpAndReset()).thenReturn(
+				createDump(1, true, false, false),
+				createDump(1, false, true, false),
+				createDump(2, true));
+		ParallelTestCoverageTracker tracker = new ParallelTestCoverageTracker(controller);
+
+		tracker.testStart("test1");
+		tracker.testStart("test2");
+		verify(controller).reset();
+		assertThat(tracker.getRunningTests()).containsExactly("test1", "test2");
+		assertThat(tracker.getStartTimestamp("test1")).isNotEqualTo(-1);
+
+		Dump test1 = tracker.testEnd("test1");
+		assertThat(test1.info.getId()).isEqualTo("test1");
+		assertThat(test1.store.get(1).getProbes()).containsExactly(true, false, false);
+		assertThat(tracker.getRunningTests()).containsExactly("test2");
+		assertThat(tracker.getStartTimestamp("test1")).isEqualTo(-1);
+
+		tracker.testStart("test3");
+		Dump test2 = tracker.testEnd("test2");
+		assertThat(test2.store.get(1).getProbes()).containsExactly(true, true, false);
+		assertThat(tracker.getRunningTests()).containsExactly("test3");
+
+		Dump test3 = tracker.testEnd("test3");
+		assertThat(test3.store.get(1).getProbes()).containsExactly(false, true, false);
+		assertThat(test3.store.get(2).getProbes()).containsExactly(true);
+		assertThat(tracker.getRunningTests()).isEmpty();
+		verify(controller, times(3)).dumpAndReset();
+	}
+
+	@Test
+	void returnsEmptyCoverageForTestThatWasNotStarted() throws Exception {
+		JacocoRuntimeController controller = mock(JacocoRuntimeController.class);
+		ParallelTestCoverageTracker tracker = new ParallelTestCoverageTracker(controller);
+
+		Dump dump = tracker.testEnd("test");
+		assertThat(dump.info.getId()).isEqualTo("test");
+		assertThat(dump.store.getContents()).isEmpty();
+		verify(controller, never()).dumpAndReset();
+	}
+
+	private static Dump createDump(long classId, boolean... probes) {
+		ExecutionDataStore store = new ExecutionDataStore();
+		store.put(new ExecutionData(classId, "Class" + classId, probes));
+		return new Dump(new SessionInfo("session", 0, 0), store);
+	}
+}
@@ -1,5 +1,7 @@
 package com.teamscale.jacoco.agent.testimpact;
 
+import com.teamscale.report.ReportUtils;
+import com.teamscale.report.testwise.ETestArtifactFormat;
 import com.teamscale.report.testwise.model.ETestExecutionResult;
 import com.teamscale.report.testwise.model.TestExecution;
 import org.junit.jupiter.api.Test;
@@ -7,6 +9,8 @@ import org.junit.jupiter.api.io.TempDir;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -17,8 +21,9 @@ class TestExecutionWriterTest {
 		Path tempFile = tempDir.resolve("executions.json");
 		TestExecutionWriter writer = new TestExecutionWriter(tempFile.toFile());
 		writer.append(new TestExecution("test1", 123, ETestExecutionResult.PASSED));
-		String json = String.join("\n", Files.readAllLines(tempFile));
-		assertThat(json).isEqualTo("[{\"durationMillis\":123,\"result\":\"PASSED\",\"uniformPath\":\"test1\"}]");
+		writer.close();
+		assertThat(Files.readAllLines(tempFile))
+				.containsExactly("{\"durationMillis\":123,\"result\":\"PASSED\",\"uniformPath\":\"test1\"}");
 	}
 
 	@Test
@@ -28,10 +33,43 @@ class TestExecutionWriterTest {
 		writer.append(new TestExecution("test1", 123, ETestExecutionResult.PASSED));
 		writer.append(new TestExecution("test2", 123, ETestExecutionResult.PASSED));
 		writer.append(new TestExecution("test3", 123, ETestExecutionResult.PASSED));
-		String json = String.join("\n", Files.readAllLines(tempFile));
-		assertThat(json).isEqualTo("[{\"durationMillis\":123,\"result\":\"PASSED\",\"uniformPath\":\"test1\"}" +
-				",{\"durationMillis\":123,\"result\":\"PASSED\",\"uniformPath\":\"test2\"}" +
-				",{\"durationMillis\":123,\"result\":\"PASSED\",\"uniformPath\":\"test3\"}]");
+		writer.close();
+		assertThat(Files.readAllLines(tempFile)).containsExactly(
+				"{\"durationMillis\":123,\"result\":\"PASSED\",\"uniformPath\":\"test1\"}",
+				"{\"durationMillis\":123,\"result\":\"PASSED\",\"uniformPath\":\"test2\"}",
+				"{\"durationMillis\":123,\"result\":\"PASSED\",\"uniformPath\":\"test3\"}");
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testOverwritesExistingFileAndAppendsAfterClose(@TempDir Path tempDir) throws Exception {
+		Path tempFile = tempDir.resolve("executions.json");
+		// a longer file, e.g. from a previous run
+		Files.write(tempFile, new byte[1024]);
+		TestExecutionWriter writer = new TestExecutionWriter(tempFile.toFile());
+		writer.append(new TestExecution("test1", 123, ETestExecutionResult.PASSED));
+		writer.close();
+		writer.append(new TestExecution("test2", 123, ETestExecutionResult.PASSED));
+		writer.close();
+		assertThat(Files.readAllLines(tempFile)).containsExactly(
+				"{\"durationMillis\":123,\"result\":\"PASSED\",\"uniformPath\":\"test1\"}",
+				"{\"durationMillis\":123,\"result\":\"PASSED\",\"uniformPath\":\"test2\"}");
+	}
+
+	@Test
+	public void testCommitsBufferedExecutionsInGroups(@TempDir Path tempDir) throws Exception {
+		Path tempFile = tempDir.resolve("test-execution.json");
+		TestExecutionWriter writer = new TestExecutionWriter(tempFile.toFile());
+		for (int i = 0; i < 100; i++) {
+			writer.append(new TestExecution("test" + i, 123, ETestExecutionResult.PASSED));
+		}
+		// The last group is still buffered, unless the test was slow enough to trigger the time limit
+		assertThat(Files.readAllLines(tempFile)).hasSizeBetween(64, 100);
+
+		writer.close();
+		List<TestExecution> executions = ReportUtils.readObjects(ETestArtifactFormat.TEST_EXECUTION,
+				TestExecution[].class, Collections.singletonList(tempFile.toFile()));
+		assertThat(executions).extracting(TestExecution::getUniformPath).hasSize(100).startsWith("test0")
+				.endsWith("test99");
+	}
+
+}
@@ -30,6 +30,9 @@ import retrofit2.converter.moshi.MoshiConverterFactory;
 import retrofit2.http.POST;
 import retrofit2.http.Query;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -39,9 +42,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.ArgumentMatchers.matches;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -53,6 +55,9 @@ public class TestwiseCoverageAgentTest {
 	@Mock
 	private JaCoCoTestwiseReportGenerator reportGenerator;
 
+	/** The report that was uploaded to the {@link #client} by the agent's HTTP server thread. */
+	private volatile String uploadedReport;
+
 	/**
 	 * Ensures that each test case gets it's own port number, so each tested instance of the agent runs it's REST API on
 	 * a separate port.
@@ -75,6 +80,11 @@ public class TestwiseCoverageAgentTest {
 		fileCoverageBuilder.addLineRange(1, 4);
 		testCoverageBuilder.add(fileCoverageBuilder);
 		when(reportGenerator.convert(any(Dump.class))).thenReturn(testCoverageBuilder);
+		doAnswer(invocation -> {
+			File report = invocation.getArgument(1);
+			uploadedReport = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+			return null;
+		}).when(client).uploadReport(eq(EReportFormat.TESTWISE_COVERAGE), any(File.class), any(), any(), any(), any());
 
 		int port = PORT_COUNTER.incrementAndGet();
 		new TestwiseCoverageAgent(mockOptions(port), null, reportGenerator);
@@ -91,9 +101,7 @@ public class TestwiseCoverageAgentTest {
 		runningTest.endTest(new TestRun.TestResultWithMessage(ETestExecutionResult.PASSED, "message"));
 
 		testRun.endTestRun();
-		verify(client).uploadReport(eq(EReportFormat.TESTWISE_COVERAGE),
-				matches("\\Q{\"tests\":[{\"content\":\"content\",\"paths\":[],\"sourcePath\":\"test1\",\"uniformPath\":\"test1\"},{\"content\":\"content\",\"duration\":\\E[^,]*\\Q,\"message\":\"message\",\"paths\":[{\"files\":[{\"coveredLines\":\"1-4\",\"fileName\":\"Main.java\"}],\"path\":\"src/main/java\"}],\"result\":\"PASSED\",\"sourcePath\":\"test2\",\"uniformPath\":\"test2\"}]}\\E"),
-				any(), any(), any(), any());
+		assertThat(uploadedReport).matches("\\Q{\"tests\":[{\"content\":\"content\",\"paths\":[],\"sourcePath\":\"test1\",\"uniformPath\":\"test1\"},{\"content\":\"content\",\"duration\":\\E[^,]*\\Q,\"message\":\"message\",\"paths\":[{\"files\":[{\"coveredLines\":\"1-4\",\"fileName\":\"Main.java\"}],\"path\":\"src/main/java\"}],\"result\":\"PASSED\",\"sourcePath\":\"test2\",\"uniformPath\":\"test2\"}]}\\E");
 	}
 
 	private interface ITestwiseCoverageAgentApiWithoutBody {
@@ -0,0 +1,91 @@
+package com.teamscale.jacoco.agent.upload;
+
+import com.teamscale.report.jacoco.CoverageFile;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests the {@link CoverageZipRequestBody}. */
+public class CoverageZipRequestBodyTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void zipContainsCoverageAndMetaDataFiles() throws IOException {
+		CoverageZipRequestBody coverageZip = createCoverageZip(Deflater.DEFAULT_COMPRESSION);
+
+		Buffer buffer = new Buffer();
+		coverageZip.writeTo(buffer);
+
+		Map<String, String> entries = readZip(buffer.readByteArray());
+		assertThat(entries).containsOnlyKeys("coverage.xml", "version.txt");
+		assertThat(entries.get("coverage.xml")).isEqualTo(createCoverage());
+		assertThat(entries.get("version.txt")).isEqualTo("1.0.0");
+		assertThat(coverageZip.contentLength()).isEqualTo(-1);
+	}
+
+	@Test
+	void zipIsReproducibleAndLengthIsKnownInAdvance() throws IOException {
+		CoverageZipRequestBody coverageZip = createCoverageZip(Deflater.BEST_SPEED);
+
+		Buffer firstBuffer = new Buffer();
+		coverageZip.writeTo(firstBuffer);
+		Buffer secondBuffer = new Buffer();
+		coverageZip.writeTo(secondBuffer);
+
+		assertThat(coverageZip.computeLength()).isEqualTo(firstBuffer.size());
+		assertThat(firstBuffer).isEqualTo(secondBuffer);
+	}
+
+	@Test
+	void compressionLevelIsApplied() throws IOException {
+		long uncompressedLength = createCoverageZip(Deflater.NO_COMPRESSION).computeLength();
+		long compressedLength = createCoverageZip(Deflater.BEST_COMPRESSION).computeLength();
+		assertThat(compressedLength).isLessThan(uncompressedLength / 10);
+	}
+
+	private CoverageZipRequestBody createCoverageZip(int compressionLevel) throws IOException {
+		Path coverageFile = tempDir.resolve("jacoco-1.xml");
+		Files.write(coverageFile, createCoverage().getBytes(StandardCharsets.UTF_8));
+		Path metaDataFile = tempDir.resolve("version.txt");
+		Files.write(metaDataFile, "1.0.0".getBytes(StandardCharsets.UTF_8));
+		return new CoverageZipRequestBody(new CoverageFile(coverageFile.toFile()), "coverage.xml",
+				Arrays.asList(metaDataFile), compressionLevel);
+	}
+
+	private static String createCoverage() {
+		StringBuilder builder = new StringBuilder("<report>");
+		for (int i = 0; i < 1000; i++) {
+			builder.append("<line nr=\"").append(i).append("\" mi=\"0\" ci=\"1\"/>");
+		}
+		return builder.append("</report>").toString();
+	}
+
+	private static Map<String, String> readZip(byte[] zip) throws IOException {
+		Map<String, String> entries = new LinkedHashMap<>();
+		try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip))) {
+			ZipEntry entry;
+			while ((entry = zipInputStream.getNextEntry()) != null) {
+				Buffer content = new Buffer();
+				content.readFrom(zipInputStream);
+				entries.put(entry.getName(), content.readUtf8());
+			}
+		}
+		return entries;
+	}
+}
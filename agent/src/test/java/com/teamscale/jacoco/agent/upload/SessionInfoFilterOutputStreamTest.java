@@ -0,0 +1,73 @@
+package com.teamscale.jacoco.agent.upload;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests the {@link SessionInfoFilterOutputStream}. */
+public class SessionInfoFilterOutputStreamTest {
+
+	private static final String REPORT = "<report name=\"dummybundle\"><sessioninfo id=\"a\" start=\"1\" dump=\"2\"/>" +
+			"<sessioninfo id=\"b/c\" start=\"3\" dump=\"4\"/><package name=\"&lt;sessioninfo\"/></report>";
+
+	private static final String FILTERED_REPORT = "<report name=\"dummybundle\"><package name=\"&lt;sessioninfo\"/>" +
+			"</report>";
+
+	@Test
+	void removesSessionInfos() throws IOException {
+		assertThat(filter(REPORT, REPORT.length())).isEqualTo(FILTERED_REPORT);
+	}
+
+	@Test
+	void removesSessionInfosSplitAcrossWrites() throws IOException {
+		for (int chunkSize = 1; chunkSize < 20; chunkSize++) {
+			assertThat(filter(REPORT, chunkSize)).isEqualTo(FILTERED_REPORT);
+		}
+	}
+
+	@Test
+	void keepsPartialMatches() throws IOException {
+		assertThat(filter("<<session/><sessioninfo", 1)).isEqualTo("<<session/><sessioninfo");
+	}
+
+	@Test
+	void passesBytesBetweenSessionInfosOnInOneWrite() throws IOException {
+		List<Integer> writeLengths = new ArrayList<>();
+		OutputStream outputStream = new OutputStream() {
+			@Override
+			public void write(int b) {
+				writeLengths.add(1);
+			}
+
+			@Override
+			public void write(byte[] bytes, int offset, int length) {
+				writeLengths.add(length);
+			}
+		};
+		SessionInfoFilterOutputStream filterOutputStream = new SessionInfoFilterOutputStream(outputStream);
+		filterOutputStream.write(REPORT.getBytes(StandardCharsets.UTF_8));
+		filterOutputStream.finish();
+
+		// The bytes before the first and after the second session info
+		assertThat(writeLengths).containsExactly(27, FILTERED_REPORT.length() - 27);
+	}
+
+	/** Writes the given content in chunks of the given size through the filter. */
+	private static String filter(String content, int chunkSize) throws IOException {
+		byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		SessionInfoFilterOutputStream filterOutputStream = new SessionInfoFilterOutputStream(outputStream);
+		for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+			filterOutputStream.write(bytes, offset, Math.min(chunkSize, bytes.length - offset));
+		}
+		filterOutputStream.finish();
+		return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,173 @@
+package com.teamscale.jacoco.agent.upload.artifactory;
+
+import com.teamscale.client.CommitDescriptor;
+import com.teamscale.jacoco.agent.options.ArtifactoryConfig;
+import com.teamscale.report.jacoco.CoverageFile;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.ByteString;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests the {@link ArtifactoryUploader} against a local stand-in for Artifactory. */
+public class ArtifactoryUploaderTest {
+
+	@TempDir
+	Path tempDir;
+
+	private final ArtifactoryStandIn artifactory = new ArtifactoryStandIn();
+
+	private final MockWebServer server = new MockWebServer();
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server.setDispatcher(artifactory);
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() throws IOException {
+		server.shutdown();
+	}
+
+	@Test
+	void uploadsUnknownZipAndDeploysKnownZipByChecksum() throws Exception {
+		ArtifactoryUploader uploader = createUploader();
+
+		CoverageFile firstFile = createCoverageFile("first.xml", createReport(1, 2, "<package name=\"a\"/>"));
+		uploader.upload(firstFile);
+		assertThat(artifactory.uploadedPaths).containsExactly("/repo/master/123-abc/first.zip");
+		assertThat(artifactory.deployedByChecksumPaths).isEmpty();
+		assertThat(new File(firstFile.toString())).doesNotExist();
+
+		// Only the times of the session differ, so the zip is identical to the first one
+		CoverageFile secondFile = createCoverageFile("second.xml", createReport(3, 4, "<package name=\"a\"/>"));
+		uploader.upload(secondFile);
+		assertThat(artifactory.uploadedPaths).hasSize(1);
+		assertThat(artifactory.deployedByChecksumPaths).containsExactly("/repo/master/123-abc/second.zip");
+		assertThat(new File(secondFile.toString())).doesNotExist();
+		assertThat(readEntries(artifactory.uploadedZips.get(0))).containsOnlyKeys("coverage.xml")
+				.containsValue("<report name=\"dummybundle\"><package name=\"a\"/></report>");
+	}
+
+	@Test
+	void uploadsChangedZip() throws Exception {
+		ArtifactoryUploader uploader = createUploader();
+
+		uploader.upload(createCoverageFile("first.xml", createReport(1, 2, "<package name=\"a\"/>")));
+		uploader.upload(createCoverageFile("second.xml", createReport(1, 2, "<package name=\"b\"/>")));
+
+		assertThat(artifactory.uploadedPaths).containsExactly("/repo/master/123-abc/first.zip",
+				"/repo/master/123-abc/second.zip");
+		assertThat(artifactory.deployedByChecksumPaths).isEmpty();
+	}
+
+	private ArtifactoryUploader createUploader() {
+		ArtifactoryConfig config = new ArtifactoryConfig();
+		config.url = HttpUrl.parse("http://localhost:" + server.getPort() + "/repo/");
+		config.user = "user";
+		config.password = "password";
+		config.commitInfo = new ArtifactoryConfig.CommitInfo("abc", new CommitDescriptor("master", 123));
+		return new ArtifactoryUploader(config, Collections.emptyList(), Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/** Creates the content of a JaCoCo XML report with the given session times. */
+	private static String createReport(long startTime, long dumpTime, String packages) {
+		return "<report name=\"dummybundle\"><sessioninfo id=\"session\" start=\"" + startTime + "\" dump=\"" +
+				dumpTime + "\"/>" + packages + "</report>";
+	}
+
+	/** Returns the contents of the entries of the given zip by their names. */
+	private static Map<String, String> readEntries(ByteString zip) throws IOException {
+		Map<String, String> entries = new HashMap<>();
+		try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()))) {
+			ZipEntry entry;
+			while ((entry = zipInputStream.getNextEntry()) != null) {
+				Buffer content = new Buffer();
+				content.readFrom(zipInputStream);
+				entries.put(entry.getName(), content.readUtf8());
+			}
+		}
+		return entries;
+	}
+
+	private CoverageFile createCoverageFile(String name, String content) throws IOException {
+		Path file = tempDir.resolve(name);
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		return new CoverageFile(file.toFile());
+	}
+
+	/**
+	 * Emulates the deploy API of Artifactory: Uploaded files are only accepted if they match the given checksums and
+	 * checksum deploys only succeed if a file with the given checksums has been uploaded before.
+	 */
+	private static class ArtifactoryStandIn extends Dispatcher {
+
+		/** The contents of all uploaded files by their SHA-1 checksum. */
+		private final Map<String, ByteString> filesBySha1 = new HashMap<>();
+
+		/** The paths to which the content of a file was uploaded. */
+		private final List<String> uploadedPaths = new ArrayList<>();
+
+		/** The uploaded zips, in the order of {@link #uploadedPaths}. */
+		private final List<ByteString> uploadedZips = new ArrayList<>();
+
+		/** The paths to which a file was deployed by its checksums. */
+		private final List<String> deployedByChecksumPaths = new ArrayList<>();
+
+		@Override
+		public synchronized MockResponse dispatch(RecordedRequest request) {
+			if (request.getHeader("Authorization") == null) {
+				return new MockResponse().setResponseCode(401);
+			}
+			if (!request.getMethod().equals("PUT")) {
+				return new MockResponse().setResponseCode(405);
+			}
+
+			String sha1 = request.getHeader("X-Checksum-Sha1");
+			String sha256 = request.getHeader("X-Checksum-Sha256");
+			// Retrofit encodes the slashes within the upload path, which Artifactory decodes
+			String path = "/" + String.join("/", request.getRequestUrl().pathSegments());
+			if ("true".equals(request.getHeader("X-Checksum-Deploy"))) {
+				ByteString file = filesBySha1.get(sha1);
+				if (file == null || !file.sha256().hex().equals(sha256)) {
+					return new MockResponse().setResponseCode(404);
+				}
+				deployedByChecksumPaths.add(path);
+				return new MockResponse().setResponseCode(201);
+			}
+
+			ByteString file = request.getBody().readByteString();
+			if (!file.sha1().hex().equals(sha1) || !file.sha256().hex().equals(sha256)) {
+				return new MockResponse().setResponseCode(409);
+			}
+			filesBySha1.put(sha1, file);
+			uploadedPaths.add(path);
+			uploadedZips.add(file);
+			return new MockResponse().setResponseCode(201);
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package com.teamscale.jacoco.agent.upload.azure;
+
+import com.teamscale.jacoco.agent.upload.CoverageZipRequestBody;
+import com.teamscale.jacoco.agent.upload.UploaderException;
+import com.teamscale.report.jacoco.CoverageFile;
+import okhttp3.Dns;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests the {@link AzureFileStorageUploader} against a local stand-in for the Azure file storage. */
+public class AzureFileStorageUploaderTest {
+
+	@TempDir
+	Path tempDir;
+
+	private final AzureFileStorageStandIn fileStorage = new AzureFileStorageStandIn();
+
+	private final MockWebServer server = new MockWebServer();
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server.setDispatcher(fileStorage);
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() throws IOException {
+		server.shutdown();
+	}
+
+	@Test
+	void uploadsLargeZipInRangesAndRetriesFailedRanges() throws Exception {
+		// Fails the first attempt of the second range
+		fileStorage.failingRangeOffset = ParallelRangeUpload.MAX_RANGE_SIZE;
+		fileStorage.remainingFailures = 1;
+		fileStorage.failureCode = 503;
+
+		CoverageFile coverageFile = createCoverageFile(2 * ParallelRangeUpload.MAX_RANGE_SIZE + 1000);
+		// The uploader deletes the coverage file, so the expected zip must be created first
+		byte[] expectedZip = createZip(coverageFile);
+		createUploader("large").upload(coverageFile);
+
+		assertThat(fileStorage.files).hasSize(1);
+		byte[] uploadedZip = fileStorage.files.values().iterator().next();
+		assertThat(uploadedZip).isEqualTo(expectedZip);
+		assertThat(fileStorage.rangeSizes).hasSize(4).allMatch(size -> size <= ParallelRangeUpload.MAX_RANGE_SIZE);
+		assertThat(new File(coverageFile.toString())).doesNotExist();
+	}
+
+	@Test
+	void failsIfRangeCannotBeUploaded() throws Exception {
+		fileStorage.failingRangeOffset = 0;
+		fileStorage.remainingFailures = Integer.MAX_VALUE;
+		fileStorage.failureCode = 403;
+
+		CoverageFile coverageFile = createCoverageFile(1000);
+		createUploader("failing").upload(coverageFile);
+
+		// Client errors are not retried
+		assertThat(fileStorage.rangeSizes).hasSize(1);
+		assertThat(new File(coverageFile.toString())).exists();
+	}
+
+	@Test
+	void checksDirectoriesOnlyOnce() throws Exception {
+		createUploader("cached");
+		assertThat(fileStorage.directories).contains("/share/cached/");
+		int requestCount = server.getRequestCount();
+
+		createUploader("cached");
+		assertThat(server.getRequestCount()).isEqualTo(requestCount);
+	}
+
+	private AzureFileStorageUploader createUploader(String directory) throws UploaderException {
+		AzureFileStorageConfig config = new AzureFileStorageConfig();
+		config.url = HttpUrl.parse(
+				"http://account.file.core.windows.net:" + server.getPort() + "/share/" + directory + "/");
+		config.accessKey = Base64.getEncoder().encodeToString("secret".getBytes());
+		return new LocalAzureFileStorageUploader(config);
+	}
+
+	/** Creates an incompressible coverage file, so that the zip has about the same size. */
+	private CoverageFile createCoverageFile(int size) throws IOException {
+		byte[] content = new byte[size];
+		new Random(42).nextBytes(content);
+		Path file = tempDir.resolve("coverage.xml");
+		Files.write(file, content);
+		return new CoverageFile(file.toFile());
+	}
+
+	private static byte[] createZip(CoverageFile coverageFile) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		new CoverageZipRequestBody(coverageFile, "coverage.xml", Collections.emptyList(), Deflater.NO_COMPRESSION)
+				.writeZip(outputStream);
+		return outputStream.toByteArray();
+	}
+
+	/** Sends all requests for the file storage host to the local {@link #server}. */
+	private static class LocalAzureFileStorageUploader extends AzureFileStorageUploader {
+
+		private LocalAzureFileStorageUploader(AzureFileStorageConfig config) throws UploaderException {
+			super(config, Collections.emptyList(), Deflater.NO_COMPRESSION);
+		}
+
+		@Override
+		protected void configureOkHttp(OkHttpClient.Builder builder) {
+			super.configureOkHttp(builder);
+			builder.dns(hostname -> Dns.SYSTEM.lookup("localhost"));
+		}
+	}
+
+	/**
+	 * Emulates the part of the Azure file storage API that is used by the uploader: checking and creating directories,
+	 * creating files and writing ranges of files. Ranges larger than the maximum range size are rejected.
+	 */
+	private static class AzureFileStorageStandIn extends Dispatcher {
+
+		private final Set<String> directories = new HashSet<>();
+
+		private final Map<String, byte[]> files = new HashMap<>();
+
+		/** The sizes of all ranges that were written, including failed attempts. */
+		private final List<Integer> rangeSizes = new ArrayList<>();
+
+		/** The offset of the range whose upload fails. */
+		private long failingRangeOffset = -1;
+
+		/** How often the upload of the range at {@link #failingRangeOffset} still fails. */
+		private int remainingFailures = 0;
+
+		/** The status code that is returned if the upload of a range fails. */
+		private int failureCode = 500;
+
+		@Override
+		public synchronized MockResponse dispatch(RecordedRequest request) {
+			HttpUrl url = request.getRequestUrl();
+			String path = url.encodedPath();
+			boolean isDirectoryRequest = "directory".equals(url.queryParameter("restype"));
+			if (request.getHeader("Authorization") == null) {
+				return new MockResponse().setResponseCode(403);
+			}
+
+			if (request.getMethod().equals("HEAD") && isDirectoryRequest) {
+				return new MockResponse().setResponseCode(directories.contains(path) ? 200 : 404);
+			}
+			if (request.getMethod().equals("PUT") && isDirectoryRequest) {
+				directories.add(path);
+				return new MockResponse().setResponseCode(201);
+			}
+			if (request.getMethod().equals("PUT") && "file".equals(request.getHeader("x-ms-type"))) {
+				files.put(path, new byte[Integer.parseInt(request.getHeader("x-ms-content-length"))]);
+				return new MockResponse().setResponseCode(201);
+			}
+			if (request.getMethod().equals("PUT") && "range".equals(url.queryParameter("comp"))) {
+				return writeRange(request, path);
+			}
+			return new MockResponse().setResponseCode(400);
+		}
+
+		private MockResponse writeRange(RecordedRequest request, String path) {
+			String[] range = request.getHeader("x-ms-range").replace("bytes=", "").split("-");
+			int start = Integer.parseInt(range[0]);
+			int end = Integer.parseInt(range[1]);
+			byte[] data = request.getBody().readByteArray();
+			rangeSizes.add(data.length);
+
+			byte[] file = files.get(path);
+			if (file == null || data.length != end - start + 1 || data.length > ParallelRangeUpload.MAX_RANGE_SIZE
+					|| end >= file.length) {
+				return new MockResponse().setResponseCode(400);
+			}
+			if (start == failingRangeOffset && remainingFailures > 0) {
+				remainingFailures--;
+				return new MockResponse().setResponseCode(failureCode);
+			}
+			System.arraycopy(data, 0, file, start, data.length);
+			return new MockResponse().setResponseCode(201);
+		}
+	}
+}
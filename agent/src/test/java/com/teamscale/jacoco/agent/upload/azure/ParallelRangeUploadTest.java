@@ -0,0 +1,46 @@
+package com.teamscale.jacoco.agent.upload.azure;
+
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+import retrofit2.Response;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests the {@link ParallelRangeUpload}. */
+public class ParallelRangeUploadTest {
+
+	/** The offsets of the uploaded ranges. */
+	private final List<Long> uploadedOffsets = Collections.synchronizedList(new ArrayList<>());
+
+	@Test
+	void uploadsLastRangeOnClose() throws Exception {
+		ParallelRangeUpload rangeUpload = createRangeUpload();
+		rangeUpload.write(new byte[ParallelRangeUpload.MAX_RANGE_SIZE + 10]);
+		rangeUpload.close();
+
+		assertThat(rangeUpload.awaitResult().isSuccessful()).isTrue();
+		assertThat(uploadedOffsets).containsExactlyInAnyOrder(0L, (long) ParallelRangeUpload.MAX_RANGE_SIZE);
+	}
+
+	@Test
+	void doesNotUploadLastRangeIfAborted() throws Exception {
+		ParallelRangeUpload rangeUpload = createRangeUpload();
+		rangeUpload.write(new byte[ParallelRangeUpload.MAX_RANGE_SIZE + 10]);
+		rangeUpload.abort();
+		rangeUpload.close();
+
+		rangeUpload.awaitResult();
+		assertThat(uploadedOffsets).doesNotContain((long) ParallelRangeUpload.MAX_RANGE_SIZE);
+	}
+
+	private ParallelRangeUpload createRangeUpload() {
+		return new ParallelRangeUpload((offset, data, length) -> {
+			uploadedOffsets.add(offset);
+			return Response.success(ResponseBody.create(null, ""));
+		}, 2);
+	}
+}
@@ -2,6 +2,10 @@ package com.teamscale.jacoco.agent.upload.delay;
 
 import com.teamscale.jacoco.agent.util.InMemoryUploader;
 import com.teamscale.report.jacoco.CoverageFile;
+import com.teamscale.report.jacoco.dump.Dump;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -9,6 +13,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -71,4 +77,47 @@ public class DelayedUploaderTest {
 				.doesNotContain(coverageFilePath);
 		assertThat(destination.getUploadedFiles()).contains(coverageFile);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void shouldMergeCachedDumpsAndPassThemOnOnceCommitIsKnown(@TempDir Path outputPath) throws IOException {
+		InMemoryUploader destination = new InMemoryUploader();
+		DelayedUploader<String> store = new DelayedUploader<>(commit -> destination, outputPath, Runnable::run);
+		List<Dump> cachedDumps = new ArrayList<>();
+		store.setCachedDumpConsumer(cachedDumps::add);
+
+		assertThat(store.cacheDump(createDump("first", 10, 20, true, false, false))).isTrue();
+		assertThat(store.cacheDump(createDump("second", 30, 40, false, true, false))).isTrue();
+		assertThat(Files.list(outputPath).collect(Collectors.toList()))
+				.containsExactly(outputPath.resolve(DelayedUploader.CACHED_EXECUTION_DATA_FILE_NAME));
+
+		store.setCommitAndTriggerAsynchronousUpload("a2afb54566aaa");
+
+		assertThat(cachedDumps).hasSize(1);
+		Dump mergedDump = cachedDumps.get(0);
+		assertThat(mergedDump.store.get(1).getProbes()).containsExactly(true, true, false);
+		assertThat(mergedDump.info.getId()).isEqualTo("second");
+		assertThat(mergedDump.info.getStartTimeStamp()).isEqualTo(10);
+		assertThat(mergedDump.info.getDumpTimeStamp()).isEqualTo(40);
+		assertThat(Files.list(outputPath).collect(Collectors.toList())).isEmpty();
+	}
+
+	@Test
+	public void shouldNotCacheDumpsIfCommitIsKnown(@TempDir Path outputPath) throws IOException {
+		InMemoryUploader destination = new InMemoryUploader();
+		DelayedUploader<String> store = new DelayedUploader<>(commit -> destination, outputPath, Runnable::run);
+		List<Dump> cachedDumps = new ArrayList<>();
+		store.setCachedDumpConsumer(cachedDumps::add);
+
+		store.setCommitAndTriggerAsynchronousUpload("a2afb54566aaa");
+
+		assertThat(store.cacheDump(createDump("first", 10, 20, true, false, false))).isFalse();
+		assertThat(cachedDumps).isEmpty();
+		assertThat(Files.list(outputPath).collect(Collectors.toList())).isEmpty();
+	}
+
+	private static Dump createDump(String sessionId, long startTimestamp, long dumpTimestamp, boolean... probes) {
+		ExecutionDataStore store = new ExecutionDataStore();
+		store.put(new ExecutionData(1, "Foo", probes));
+		return new Dump(new SessionInfo(sessionId, startTimestamp, dumpTimestamp), store);
+	}
+}
@@ -46,6 +46,7 @@ public class ImpactedTestsProvider {
 			LOGGER.info(() -> "Getting impacted tests...");
 			Response<List<PrioritizableTestCluster>> response = client
 					.getImpactedTests(availableTestDetails, baseline, endCommit, partition, includeNonImpacted);
+			LOGGER.debug(() -> "HTTP requests sent so far:\n" + client.getMetrics());
 			if (response.isSuccessful()) {
 				List<PrioritizableTestCluster> testClusters = response.body();
 				if (testClusters != null && testCountIsPlausible(testClusters, availableTestDetails)) {
@@ -15,6 +15,11 @@ public class ServerOptions {
 	/** The access token of the user. */
 	private String userAccessToken;
 
+	/**
+	 * The minimum size in bytes of requests that are compressed with gzip. May be null to never compress requests.
+	 */
+	private Long requestCompressionThreshold;
+
 	/** @see #url */
 	public String getUrl() {
 		return url;
@@ -35,6 +40,11 @@ public class ServerOptions {
 		return userAccessToken;
 	}
 
+	/** @see #requestCompressionThreshold */
+	public Long getRequestCompressionThreshold() {
+		return requestCompressionThreshold;
+	}
+
 	/** Returns the builder for {@link ServerOptions}. */
 	public static Builder builder() {
 		return new Builder();
@@ -73,6 +83,12 @@ public class ServerOptions {
 			return this;
 		}
 
+		/** @see #requestCompressionThreshold */
+		public Builder requestCompressionThreshold(Long requestCompressionThreshold) {
+			serverOptions.requestCompressionThreshold = requestCompressionThreshold;
+			return this;
+		}
+
 		/** Checks field conditions and returns the built {@link ServerOptions}. */
 		public ServerOptions build() {
 			TestEngineOptionUtils.assertNotBlank(serverOptions.url, "The server URL must be set.");
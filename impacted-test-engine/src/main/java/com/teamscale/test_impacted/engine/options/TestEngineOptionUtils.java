@@ -22,6 +22,7 @@ public class TestEngineOptionUtils {
 				.project(propertyReader.getString("server.project"))
 				.userName(propertyReader.getString("server.userName"))
 				.userAccessToken(propertyReader.getString("server.userAccessToken"))
+				.requestCompressionThreshold(propertyReader.getLong("server.requestCompressionThreshold"))
 				.build();
 
 		return TestEngineOptions.builder()
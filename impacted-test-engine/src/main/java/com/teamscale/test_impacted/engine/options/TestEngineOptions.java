@@ -75,9 +75,13 @@ public class TestEngineOptions {
 			return new DelegatingTestExecutor();
 		}
 
+		long requestCompressionThreshold = -1;
+		if (serverOptions.getRequestCompressionThreshold() != null) {
+			requestCompressionThreshold = serverOptions.getRequestCompressionThreshold();
+		}
 		TeamscaleClient client = new TeamscaleClient(serverOptions.getUrl(), serverOptions.getUserName(),
 				serverOptions.getUserAccessToken(), serverOptions.getProject(),
-				new File(reportDirectory, "server-request.txt"));
+				new File(reportDirectory, "server-request.txt"), requestCompressionThreshold);
 		ImpactedTestsProvider testsProvider = new ImpactedTestsProvider(client, baseline, endCommit, partition,
 				isRunAllTests());
 		return new ImpactedTestsExecutor(testwiseCoverageAgentApis, testsProvider);
@@ -1,6 +1,7 @@
 package com.teamscale.report;
 
 import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonDataException;
 import com.squareup.moshi.Moshi;
 import com.squareup.moshi.Types;
 import com.teamscale.client.FileSystemUtils;
@@ -16,6 +17,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /** Utilities for generating reports. */
@@ -63,22 +65,66 @@ public class ReportUtils {
 		}
 	}
 
-	/** Recursively lists all files in the given directory that match the specified extension. */
+	/**
+	 * Reads the objects from all files of the given artifact format in the given directories or files. Each file
+	 * contains either a JSON array or one JSON object per line (JSON Lines).
+	 */
 	public static <T> List<T> readObjects(ETestArtifactFormat format, Class<T[]> clazz,
 										  List<File> directoriesOrFiles) throws IOException {
 		List<File> files = listFiles(format, directoriesOrFiles);
 		ArrayList<T> result = new ArrayList<>();
 		for (File file : files) {
 			try (BufferedSource source = Okio.buffer(Okio.source(file))) {
-				T[] t = moshi.adapter(clazz).fromJson(source);
-				if (t != null) {
-					result.addAll(Arrays.asList(t));
-				}
+				result.addAll(readObjects(source, clazz, file));
 			}
 		}
 		return result;
 	}
 
+	/**
+	 * Reads the objects from a JSON array or from JSON Lines. JSON Lines files are only ever appended to, e.g. by the
+	 * agent's test execution writer, so a crash of the writing process can leave an incomplete last line. Such a line
+	 * is ignored, since the line could not have been completed anyway.
+	 */
+	private static <T> List<T> readObjects(BufferedSource source, Class<T[]> clazz, File file) throws IOException {
+		while (source.request(1) && Character.isWhitespace(source.getBuffer().getByte(0))) {
+			source.skip(1);
+		}
+		if (source.exhausted()) {
+			return Collections.emptyList();
+		}
+		if (source.getBuffer().getByte(0) == '[') {
+			T[] objects = moshi.adapter(clazz).fromJson(source);
+			if (objects == null) {
+				return Collections.emptyList();
+			}
+			return Arrays.asList(objects);
+		}
+
+		@SuppressWarnings("unchecked")
+		JsonAdapter<T> adapter = moshi.adapter((Class<T>) clazz.getComponentType());
+		List<T> objects = new ArrayList<>();
+		while (!source.exhausted()) {
+			boolean isTerminated = source.indexOf((byte) '\n') != -1;
+			String line = source.readUtf8Line();
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				T object = adapter.fromJson(line);
+				if (object != null) {
+					objects.add(object);
+				}
+			} catch (IOException | JsonDataException e) {
+				if (isTerminated) {
+					throw new IOException("Invalid line in " + file + ": " + line, e);
+				}
+				// The writing process crashed while writing the last line
+			}
+		}
+		return objects;
+	}
+
 	/** Recursively lists all files of the given artifact type. */
 	public static List<File> listFiles(ETestArtifactFormat format, List<File> directoriesOrFiles) {
 		List<File> filesWithSpecifiedArtifactType = new ArrayList<>();
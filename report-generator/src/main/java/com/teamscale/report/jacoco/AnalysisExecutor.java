@@ -0,0 +1,106 @@
+package com.teamscale.report.jacoco;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the analysis of class files on a bounded thread pool. Callers keep the futures in the order in which the class
+ * files have been found and consume the results in that order, so the outcome (e.g. the handling of duplicate classes)
+ * is the same as with a sequential analysis.
+ * <p>
+ * With a parallelism of 1 all tasks are run directly in the calling thread.
+ */
+public class AnalysisExecutor implements AutoCloseable {
+
+	/** Maximum number of submitted but not yet finished tasks per thread. Bounds the number of buffered class files. */
+	private static final int MAX_PENDING_TASKS_PER_THREAD = 4;
+
+	/** The thread pool or null if tasks are run in the calling thread. */
+	private final ExecutorService threadPool;
+
+	/** The executor to run the tasks on. */
+	private final Executor executor;
+
+	/** Limits the number of pending tasks or null if tasks are run in the calling thread. */
+	private final Semaphore pendingTasks;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param parallelism the number of threads to use for the analysis. Must be at least 1.
+	 */
+	public AnalysisExecutor(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1 but was " + parallelism);
+		}
+		if (parallelism == 1) {
+			threadPool = null;
+			executor = Runnable::run;
+			pendingTasks = null;
+			return;
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		threadPool = Executors.newFixedThreadPool(parallelism, runnable -> {
+			Thread thread = new Thread(runnable, "Class analysis " + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor = threadPool;
+		pendingTasks = new Semaphore(parallelism * MAX_PENDING_TASKS_PER_THREAD);
+	}
+
+	/**
+	 * Runs the given task. Blocks if too many tasks are pending, so class files are not read into memory much faster
+	 * than they can be analyzed.
+	 */
+	public <T> CompletableFuture<T> supply(Supplier<T> task) {
+		if (pendingTasks == null) {
+			return CompletableFuture.supplyAsync(task, executor);
+		}
+		pendingTasks.acquireUninterruptibly();
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return task.get();
+			} finally {
+				pendingTasks.release();
+			}
+		}, executor);
+	}
+
+	/** Runs the given function with the result of the given future once it is available. */
+	public <T, R> CompletableFuture<R> thenApply(CompletableFuture<T> future, Function<T, R> function) {
+		return future.thenApplyAsync(function, executor);
+	}
+
+	/**
+	 * Waits for the given future and returns its result. Runtime exceptions of the task are rethrown as {@link
+	 * IOException}s for the given location, just like {@link org.jacoco.core.analysis.Analyzer} does.
+	 */
+	public static <T> T await(CompletableFuture<T> future, String location) throws IOException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(String.format("Error while analyzing %s.", location), cause);
+		}
+	}
+
+	/** Shuts down the thread pool. Tasks that are still running are finished in the background. */
+	@Override
+	public void close() {
+		if (threadPool != null) {
+			threadPool.shutdown();
+		}
+	}
+}
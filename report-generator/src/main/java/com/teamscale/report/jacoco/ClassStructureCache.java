@@ -0,0 +1,305 @@
+package com.teamscale.report.jacoco;
+
+import com.teamscale.report.util.ClasspathWildcardIncludeFilter;
+import com.teamscale.report.util.ILogger;
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.ICoverageVisitor;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.internal.analysis.ClassStructure;
+import org.jacoco.core.internal.analysis.StringPool;
+import org.jacoco.core.internal.data.CRC64;
+import org.jacoco.core.internal.instr.InstrSupport;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Caches the {@link ClassStructure}s of all class files in a set of directories and archives, so that repeated reports
+ * only need to annotate the cached structures with new execution data instead of reading and analyzing all class files
+ * again.
+ * <p>
+ * Entries are cached per file and are invalidated when the size or the last modified time of the file changes. Files
+ * are traversed in the same order as {@link Analyzer#analyzeAll(File)} does, so the coverage visitor receives exactly
+ * the same class coverages in the same order as with an uncached {@link FilteringAnalyzer}.
+ * <p>
+ * Both the analysis of the class files and the computation of their coverage run on an {@link AnalysisExecutor}, i.e.
+ * possibly in parallel. The results are consumed in traversal order, so errors are reported for the same class file as
+ * in a sequential analysis.
+ */
+/* package */ class ClassStructureCache {
+
+	/** Include filter to apply to all locations during class file traversal. */
+	private final ClasspathWildcardIncludeFilter locationIncludeFilter;
+
+	/** The logger. */
+	private final ILogger logger;
+
+	/** The number of threads to use for analyzing the class files. */
+	private final int analysisThreads;
+
+	/**
+	 * Pools to minimize the number of {@link String} instances. JaCoCo's {@link StringPool} is not thread-safe, so every
+	 * analysis thread uses its own pool.
+	 */
+	private final ThreadLocal<StringPool> stringPools = ThreadLocal.withInitial(StringPool::new);
+
+	/** The cached files by their path. */
+	private Map<String, CachedFile> cachedFiles = new HashMap<>();
+
+	/* package */ ClassStructureCache(ClasspathWildcardIncludeFilter locationIncludeFilter, int analysisThreads,
+									  ILogger logger) {
+		this.locationIncludeFilter = locationIncludeFilter;
+		this.analysisThreads = analysisThreads;
+		this.logger = logger;
+	}
+
+	/**
+	 * Passes the coverage of all classes in the given directories and archives to the coverage visitor. Only files that
+	 * are not cached yet or have changed since they were cached are analyzed.
+	 */
+	/* package */ synchronized void analyzeAll(List<File> codeDirectoriesOrArchives, ExecutionDataStore store,
+											   ICoverageVisitor coverageVisitor) throws IOException {
+		Map<Long, CompletableFuture<ClassStructure>> knownClasses = new HashMap<>();
+		for (CachedFile cachedFile : cachedFiles.values()) {
+			for (AnalyzedClass analyzedClass : cachedFile.classes) {
+				knownClasses.put(analyzedClass.structure.getId(),
+						CompletableFuture.completedFuture(analyzedClass.structure));
+			}
+		}
+
+		try (AnalysisExecutor executor = new AnalysisExecutor(analysisThreads)) {
+			List<PendingFile> pendingFiles = new ArrayList<>();
+			for (File file : codeDirectoriesOrArchives) {
+				startAnalysis(file, executor, knownClasses, pendingFiles);
+			}
+			for (PendingFile pendingFile : pendingFiles) {
+				for (FoundClass foundClass : pendingFile.classes) {
+					foundClass.coverage = executor.thenApply(foundClass.structure,
+							structure -> createCoverage(structure, store));
+				}
+			}
+
+			Map<String, CachedFile> currentFiles = new HashMap<>();
+			for (PendingFile pendingFile : pendingFiles) {
+				currentFiles.put(pendingFile.path, pendingFile.annotateCoverage(coverageVisitor));
+			}
+			// drops files that have been deleted or are no longer configured
+			cachedFiles = currentFiles;
+		}
+	}
+
+	/** Mirrors the traversal of {@link Analyzer#analyzeAll(File)} and starts the analysis of all uncached files. */
+	private void startAnalysis(File file, AnalysisExecutor executor,
+							   Map<Long, CompletableFuture<ClassStructure>> knownClasses,
+							   List<PendingFile> pendingFiles) {
+		if (file.isDirectory()) {
+			for (File child : file.listFiles()) {
+				startAnalysis(child, executor, knownClasses, pendingFiles);
+			}
+			return;
+		}
+
+		String path = file.getPath();
+		long size = file.length();
+		long lastModified = file.lastModified();
+		CachedFile cachedFile = cachedFiles.get(path);
+		if (cachedFile != null && cachedFile.size == size && cachedFile.lastModified == lastModified) {
+			List<FoundClass> classes = new ArrayList<>();
+			for (AnalyzedClass analyzedClass : cachedFile.classes) {
+				classes.add(new FoundClass(CompletableFuture.completedFuture(analyzedClass.structure),
+						analyzedClass.location));
+			}
+			pendingFiles.add(new PendingFile(path, size, lastModified, classes, null));
+			return;
+		}
+
+		StructureCollectingAnalyzer analyzer = new StructureCollectingAnalyzer(executor, knownClasses);
+		IOException readError = null;
+		try (InputStream input = new FileInputStream(file)) {
+			analyzer.analyzeAll(input, path);
+		} catch (IOException e) {
+			readError = e;
+		}
+		pendingFiles.add(new PendingFile(path, size, lastModified, analyzer.foundClasses, readError));
+	}
+
+	/**
+	 * Creates the coverage of the class for the given execution data. Mirrors Analyzer.createAnalyzingVisitor. Returns
+	 * null if the class has been skipped during analysis.
+	 */
+	private static IClassCoverage createCoverage(ClassStructure structure, ExecutionDataStore store) {
+		if (structure == null) {
+			return null;
+		}
+		ExecutionData data = store.get(structure.getId());
+		boolean[] probes = null;
+		boolean noMatch = false;
+		if (data == null) {
+			noMatch = store.contains(structure.getName());
+		} else {
+			probes = data.getProbes();
+		}
+		return structure.createCoverage(probes, noMatch);
+	}
+
+	/** A file whose classes are being analyzed. */
+	private static class PendingFile {
+
+		private final String path;
+		private final long size;
+		private final long lastModified;
+
+		/** The classes in the order in which they have been found in the file. */
+		private final List<FoundClass> classes;
+
+		/** The error that occurred while reading the file or null. */
+		private final IOException readError;
+
+		private PendingFile(String path, long size, long lastModified, List<FoundClass> classes,
+							IOException readError) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.classes = classes;
+			this.readError = readError;
+		}
+
+		/**
+		 * Waits for the analysis of the file to finish and passes the coverage of its classes to the coverage visitor.
+		 * Like the sequential analysis, this fails before visiting any class of the file if one of its classes could
+		 * not be analyzed or the file could not be read.
+		 */
+		private CachedFile annotateCoverage(ICoverageVisitor coverageVisitor) throws IOException {
+			List<AnalyzedClass> analyzedClasses = new ArrayList<>();
+			for (FoundClass foundClass : classes) {
+				ClassStructure structure = AnalysisExecutor.await(foundClass.structure, foundClass.location);
+				if (structure != null) {
+					analyzedClasses.add(new AnalyzedClass(structure, foundClass.location));
+				}
+			}
+			if (readError != null) {
+				throw readError;
+			}
+
+			for (FoundClass foundClass : classes) {
+				IClassCoverage coverage = AnalysisExecutor.await(foundClass.coverage, foundClass.location);
+				if (coverage == null) {
+					continue;
+				}
+				try {
+					coverageVisitor.visitCoverage(coverage);
+				} catch (RuntimeException cause) {
+					throw new IOException(String.format("Error while analyzing %s.", foundClass.location), cause);
+				}
+			}
+			return new CachedFile(size, lastModified, analyzedClasses);
+		}
+	}
+
+	/** A class file that has been found in a file and whose analysis has been started. */
+	private static class FoundClass {
+
+		/** The structure of the class or null if the class is skipped. */
+		private final CompletableFuture<ClassStructure> structure;
+
+		private final String location;
+
+		/** The coverage of the class or null if the class is skipped. */
+		private CompletableFuture<IClassCoverage> coverage;
+
+		private FoundClass(CompletableFuture<ClassStructure> structure, String location) {
+			this.structure = structure;
+			this.location = location;
+		}
+	}
+
+	/** The classes found in a file together with the file attributes that are used to detect changes. */
+	private static class CachedFile {
+
+		private final long size;
+		private final long lastModified;
+
+		/** The classes in the order in which they have been found in the file. */
+		private final List<AnalyzedClass> classes;
+
+		private CachedFile(long size, long lastModified, List<AnalyzedClass> classes) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.classes = classes;
+		}
+	}
+
+	/** A class structure together with the location at which the class file has been found. */
+	private static class AnalyzedClass {
+
+		private final ClassStructure structure;
+		private final String location;
+
+		private AnalyzedClass(ClassStructure structure, String location) {
+			this.structure = structure;
+			this.location = location;
+		}
+	}
+
+	/**
+	 * {@link FilteringAnalyzer} that collects the {@link ClassStructure}s of the found class files instead of passing
+	 * coverage to a coverage visitor.
+	 * <p>
+	 * Like {@link com.teamscale.report.testwise.jacoco.cache.AnalyzerCache}, this needs to override {@link
+	 * Analyzer#analyzeClass(byte[], String)}, since {@link Analyzer}'s analyzeClass(byte[]) is private.
+	 */
+	private class StructureCollectingAnalyzer extends FilteringAnalyzer {
+
+		/** The executor that runs the analysis of the individual class files. */
+		private final AnalysisExecutor executor;
+
+		/** Already found classes by class ID. */
+		private final Map<Long, CompletableFuture<ClassStructure>> knownClasses;
+
+		/** The classes found so far. */
+		private final List<FoundClass> foundClasses = new ArrayList<>();
+
+		private StructureCollectingAnalyzer(AnalysisExecutor executor,
+											Map<Long, CompletableFuture<ClassStructure>> knownClasses) {
+			super(null, null, locationIncludeFilter, logger);
+			this.executor = executor;
+			this.knownClasses = knownClasses;
+		}
+
+		/**
+		 * @inheritDoc <p> Replaces the method from {@link Analyzer#analyzeClass(byte[], String)}, because it calls the
+		 * private {@link Analyzer}'s analyzeClass(byte[]) method, which we therefore cannot override. Errors during the
+		 * analysis are reported by {@link PendingFile#annotateCoverage(ICoverageVisitor)}.
+		 */
+		@Override
+		public void analyzeClass(final byte[] buffer, final String location) {
+			long classId = CRC64.classId(buffer);
+			CompletableFuture<ClassStructure> structure = knownClasses.computeIfAbsent(classId,
+					id -> executor.supply(() -> analyzeClass(buffer, id)));
+			foundClasses.add(new FoundClass(structure, location));
+		}
+
+		/** Mirrors Analyzer.analyzeClass(byte[]). Returns null for classes that are skipped. */
+		private ClassStructure analyzeClass(byte[] source, long classId) {
+			ClassReader reader = InstrSupport.classReaderFor(source);
+			if ((reader.getAccess() & Opcodes.ACC_MODULE) != 0) {
+				return null;
+			}
+			if ((reader.getAccess() & Opcodes.ACC_SYNTHETIC) != 0) {
+				return null;
+			}
+			return ClassStructure.analyze(classId, reader, stringPools.get());
+		}
+	}
+}
@@ -28,8 +28,9 @@ public class CoverageFile {
 	 * into memory.
 	 */
 	public void copy(OutputStream outputStream) throws IOException {
-		FileInputStream inputStream = new FileInputStream(coverageFile);
-		FileSystemUtils.copy(inputStream, outputStream);
+		try (FileInputStream inputStream = new FileInputStream(coverageFile)) {
+			FileSystemUtils.copy(inputStream, outputStream);
+		}
 	}
 
 	/**
@@ -5,7 +5,6 @@ import com.teamscale.report.jacoco.dump.Dump;
 import com.teamscale.report.util.ClasspathWildcardIncludeFilter;
 import com.teamscale.report.util.ILogger;
 
-import org.jacoco.core.analysis.Analyzer;
 import org.jacoco.core.analysis.CoverageBuilder;
 import org.jacoco.core.analysis.IBundleCoverage;
 import org.jacoco.core.data.ExecutionDataStore;
@@ -39,6 +38,12 @@ public class JaCoCoXmlReportGenerator {
 
 	/** Whether to remove uncovered classes from the report. */
 	private final boolean ignoreUncoveredClasses;
+
+	/**
+	 * Caches the structure of the analyzed class files, so repeated conversions don't have to analyze all class files
+	 * again.
+	 */
+	private final ClassStructureCache classStructureCache;
 	
 	/** Part of the error message logged when validating the coverage report fails. */
 	private static final String MOST_LIKELY_CAUSE_MESSAGE = "Most likely you did not configure the agent correctly." +
@@ -49,12 +54,14 @@ public class JaCoCoXmlReportGenerator {
 
 	public JaCoCoXmlReportGenerator(List<File> codeDirectoriesOrArchives,
 									ClasspathWildcardIncludeFilter locationIncludeFilter,
-									EDuplicateClassFileBehavior duplicateClassFileBehavior, boolean ignoreUncoveredClasses, ILogger logger) {
+									EDuplicateClassFileBehavior duplicateClassFileBehavior, boolean ignoreUncoveredClasses,
+									int analysisThreads, ILogger logger) {
 		this.codeDirectoriesOrArchives = codeDirectoriesOrArchives;
 		this.duplicateClassFileBehavior = duplicateClassFileBehavior;
 		this.locationIncludeFilter = locationIncludeFilter;
 		this.ignoreUncoveredClasses = ignoreUncoveredClasses;
 		this.logger = logger;
+		this.classStructureCache = new ClassStructureCache(locationIncludeFilter, analysisThreads, logger);
 	}
 
 
@@ -103,17 +110,14 @@ public class JaCoCoXmlReportGenerator {
 
 	/**
 	 * Analyzes the structure of the class files in {@link #codeDirectoriesOrArchives} and builds an in-memory coverage
-	 * report with the coverage in the given store.
+	 * report with the coverage in the given store. The structure of class files that have not changed since the last
+	 * conversion is taken from the {@link #classStructureCache}.
 	 */
 	private IBundleCoverage analyzeStructureAndAnnotateCoverage(ExecutionDataStore store) throws IOException {
 		CoverageBuilder coverageBuilder = new TeamscaleCoverageBuilder(this.logger,
 				duplicateClassFileBehavior, ignoreUncoveredClasses);
 
-		Analyzer analyzer = new FilteringAnalyzer(store, coverageBuilder, locationIncludeFilter, logger);
-
-		for (File file : codeDirectoriesOrArchives) {
-			analyzer.analyzeAll(file);
-		}
+		classStructureCache.analyzeAll(codeDirectoriesOrArchives, store, coverageBuilder);
 
 		return coverageBuilder.getBundle("dummybundle");
 	}
@@ -0,0 +1,137 @@
+package com.teamscale.report.testwise;
+
+import com.teamscale.report.testwise.model.TestwiseCoverage;
+import com.teamscale.report.testwise.model.builder.FileCoverageBuilder;
+import com.teamscale.report.testwise.model.builder.TestCoverageBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Container for coverage produced by multiple tests like {@link TestwiseCoverage}, which appends the coverage of every
+ * test to a file instead of keeping it in memory. Only the offsets of the tests' records in the file are kept in
+ * memory, so the heap usage does not grow with the size of the coverage. The coverage of a single test is read back
+ * with {@link #load(String)}.
+ */
+public class DiskBackedTestwiseCoverage implements AutoCloseable {
+
+	/** The file to which the coverage is appended. */
+	private final File file;
+
+	/** Stream to the end of the {@link #file}. */
+	private final DataOutputStream output;
+
+	/** Maps the uniform path of every test to the offsets of its records in the {@link #file}. */
+	private final Map<String, List<Long>> recordOffsets = new LinkedHashMap<>();
+
+	/** The number of bytes written to the {@link #file}. */
+	private long fileLength = 0;
+
+	/** Constructor. The given file is overwritten and deleted once this is closed. */
+	public DiskBackedTestwiseCoverage(File file) throws IOException {
+		this.file = file;
+		this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+	}
+
+	/**
+	 * Appends the coverage of the given test to the file. If there is already coverage for a test with the same ID, the
+	 * coverage is merged once it is loaded.
+	 */
+	public synchronized void add(TestCoverageBuilder coverage) throws IOException {
+		if (coverage == null || coverage.isEmpty()) {
+			return;
+		}
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		writeRecord(coverage, new DataOutputStream(record));
+		output.writeInt(record.size());
+		record.writeTo(output);
+
+		recordOffsets.computeIfAbsent(coverage.getUniformPath(), uniformPath -> new ArrayList<>()).add(fileLength);
+		fileLength += Integer.BYTES + record.size();
+	}
+
+	/** Returns the uniform paths of all tests with coverage. */
+	public synchronized Collection<String> getUniformPaths() {
+		return new ArrayList<>(recordOffsets.keySet());
+	}
+
+	/** Reads the coverage of the test with the given uniform path from the file. */
+	public synchronized TestCoverageBuilder load(String uniformPath) throws IOException {
+		output.flush();
+		TestCoverageBuilder coverage = new TestCoverageBuilder(uniformPath);
+		List<Long> offsets = recordOffsets.get(uniformPath);
+		if (offsets == null) {
+			return coverage;
+		}
+		try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+			for (long offset : offsets) {
+				input.seek(offset);
+				byte[] record = new byte[input.readInt()];
+				input.readFully(record);
+				readRecord(new DataInputStream(new ByteArrayInputStream(record)), coverage);
+			}
+		}
+		return coverage;
+	}
+
+	/** Closes and deletes the file. */
+	@Override
+	public synchronized void close() throws IOException {
+		output.close();
+		Files.deleteIfExists(file.toPath());
+	}
+
+	private static void writeRecord(TestCoverageBuilder coverage, DataOutputStream record) throws IOException {
+		List<FileCoverageBuilder> files = coverage.getFiles();
+		record.writeInt(files.size());
+		for (FileCoverageBuilder fileCoverage : files) {
+			record.writeUTF(fileCoverage.getPath());
+			record.writeUTF(fileCoverage.getFileName());
+			// The ranges of large generated files may exceed the 64 KiB limit of writeUTF
+			writeLongString(record, fileCoverage.computeCompactifiedRangesAsString());
+		}
+	}
+
+	private static void readRecord(DataInputStream record, TestCoverageBuilder coverage) throws IOException {
+		int fileCount = record.readInt();
+		for (int i = 0; i < fileCount; i++) {
+			FileCoverageBuilder fileCoverage = new FileCoverageBuilder(record.readUTF(), record.readUTF());
+			for (String range : readLongString(record).split(",")) {
+				int separatorIndex = range.indexOf('-');
+				if (separatorIndex == -1) {
+					fileCoverage.addLine(Integer.parseInt(range));
+				} else {
+					fileCoverage.addLineRange(Integer.parseInt(range.substring(0, separatorIndex)),
+							Integer.parseInt(range.substring(separatorIndex + 1)));
+				}
+			}
+			coverage.add(fileCoverage);
+		}
+	}
+
+	private static void writeLongString(DataOutputStream output, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readLongString(DataInputStream input) throws IOException {
+		byte[] bytes = new byte[input.readInt()];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
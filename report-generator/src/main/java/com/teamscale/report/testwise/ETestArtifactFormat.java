@@ -6,12 +6,18 @@ public enum ETestArtifactFormat {
 	/** A json list of tests ({@link com.teamscale.client.TestDetails}). */
 	TEST_LIST("Test List", "test-list", "json"),
 
-	/** A json list of test executions ({@link com.teamscale.report.testwise.model.TestExecution}). */
+	/**
+	 * A json list of test executions ({@link com.teamscale.report.testwise.model.TestExecution}) or one json test
+	 * execution per line.
+	 */
 	TEST_EXECUTION("Test Execution", "test-execution", "json"),
 
 	/** Binary jacoco test coverage (.exec file). */
 	JACOCO("Jacoco", "", "exec"),
 
+	/** Sparse binary test coverage (.sexec file) written by the agent with `tia-mode=sparse-exec-file`. */
+	SPARSE_JACOCO("Sparse Jacoco", "", "sexec"),
+
 	/** Google closure coverage files with additional uniformPath entries. */
 	CLOSURE("Closure Coverage", "closure-coverage", "json");
 
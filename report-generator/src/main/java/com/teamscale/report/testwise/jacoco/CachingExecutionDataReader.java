@@ -1,9 +1,12 @@
 package com.teamscale.report.testwise.jacoco;
 
 import com.teamscale.report.EDuplicateClassFileBehavior;
+import com.teamscale.report.jacoco.AnalysisExecutor;
 import com.teamscale.report.jacoco.dump.Dump;
 import com.teamscale.report.testwise.jacoco.cache.AnalyzerCache;
+import com.teamscale.report.testwise.jacoco.cache.ClassFileIndex;
 import com.teamscale.report.testwise.jacoco.cache.CoverageGenerationException;
+import com.teamscale.report.testwise.jacoco.cache.PersistentLookupCache;
 import com.teamscale.report.testwise.jacoco.cache.ProbesCache;
 import com.teamscale.report.testwise.model.builder.TestCoverageBuilder;
 import com.teamscale.report.util.ClasspathWildcardIncludeFilter;
@@ -13,7 +16,9 @@ import org.jacoco.core.data.ExecutionDataStore;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -26,43 +31,94 @@ class CachingExecutionDataReader {
 	private final Collection<File> classesDirectories;
 	private final ClasspathWildcardIncludeFilter locationIncludeFilter;
 	private final EDuplicateClassFileBehavior duplicateClassFileBehavior;
+
+	/** The number of threads to use for analyzing the class files. */
+	private final int analysisThreads;
+
+	/** Persistent cache of lookups from earlier conversions or null if not used. */
+	private final PersistentLookupCache persistentCache;
+
+	/** Whether classes are only analyzed once coverage of them is converted. */
+	private final boolean analyzeClassesLazily;
 	private ProbesCache probesCache;
 
+	/** The index of the class files if classes are analyzed lazily. Null if they are analyzed upfront. */
+	private ClassFileIndex classFileIndex;
+
 	public CachingExecutionDataReader(ILogger logger, Collection<File> classesDirectories,
 									  ClasspathWildcardIncludeFilter locationIncludeFilter,
-									  EDuplicateClassFileBehavior duplicateClassFileBehavior) {
+									  EDuplicateClassFileBehavior duplicateClassFileBehavior, int analysisThreads,
+									  PersistentLookupCache persistentCache, boolean analyzeClassesLazily) {
 		this.logger = logger;
 		this.classesDirectories = classesDirectories;
 		this.locationIncludeFilter = locationIncludeFilter;
 		this.duplicateClassFileBehavior = duplicateClassFileBehavior;
+		this.analysisThreads = analysisThreads;
+		this.persistentCache = persistentCache;
+		this.analyzeClassesLazily = analyzeClassesLazily;
 	}
 
 	/**
-	 * Analyzes the class/jar/war/... files and creates a lookup of which probes belong to which method.
+	 * Analyzes the class/jar/war/... files and creates a lookup of which probes belong to which method. The class
+	 * files of all directories are analyzed in parallel, but added to the cache in the order of the directories.
+	 * <p>
+	 * If classes are analyzed lazily, only an index of the class files is built instead. Only class files that cannot
+	 * be read on demand are analyzed right away.
 	 */
-	private void analyzeClassDirs() throws CoverageGenerationException {
+	private synchronized void analyzeClassDirs() throws CoverageGenerationException {
 		if (probesCache != null) {
 			return;
 		}
 		probesCache = new ProbesCache(logger, duplicateClassFileBehavior);
-		AnalyzerCache analyzer = new AnalyzerCache(probesCache, locationIncludeFilter, logger);
-		for (File classDir : classesDirectories) {
-			if (classDir.exists()) {
+		try (AnalysisExecutor executor = new AnalysisExecutor(analysisThreads)) {
+			AnalyzerCache analyzer = new AnalyzerCache(probesCache, locationIncludeFilter, executor, persistentCache,
+					logger);
+			if (analyzeClassesLazily) {
+				classFileIndex = new ClassFileIndex(analyzer, locationIncludeFilter, logger);
+			}
+			List<AnalyzerCache.PendingAnalysis> pendingAnalyses = new ArrayList<>();
+			for (File classDir : classesDirectories) {
+				if (!classDir.exists()) {
+					continue;
+				}
+				if (classFileIndex == null) {
+					pendingAnalyses.add(analyzer.startAnalysis(classDir));
+					continue;
+				}
+				try {
+					pendingAnalyses.addAll(classFileIndex.add(classDir));
+				} catch (IOException e) {
+					logger.error("Failed to index class files in " + classDir + "! " +
+							"Coverage for class files in this folder will be ignored.", e);
+				}
+			}
+			for (AnalyzerCache.PendingAnalysis pendingAnalysis : pendingAnalyses) {
 				try {
-					analyzer.analyzeAll(classDir);
+					pendingAnalysis.addToCache();
 				} catch (IOException e) {
-					logger.error("Failed to analyze class files in " + classDir + "! " +
+					logger.error("Failed to analyze class files in " + pendingAnalysis.getFile() + "! " +
 							"Maybe the folder contains incompatible class files. " +
 							"Coverage for class files in this folder will be ignored.", e);
 				}
 			}
 		}
-		if (probesCache.isEmpty()) {
+		if (persistentCache != null) {
+			persistentCache.evictIfTooLarge();
+		}
+		probesCache.setClassFileIndex(classFileIndex);
+		if (probesCache.isEmpty() && (classFileIndex == null || classFileIndex.isEmpty())) {
 			String directoryList = classesDirectories.stream().map(File::getPath).collect(Collectors.joining(","));
 			throw new CoverageGenerationException("No class files found in the given directories! " + directoryList);
 		}
 	}
 
+	/** Closes the archives of the {@link #classFileIndex}. */
+	public synchronized void close() throws IOException {
+		if (classFileIndex != null) {
+			classFileIndex.close();
+		}
+	}
+
 	/**
 	 * Converts the given store to coverage data. The coverage will only contain line range coverage information.
 	 */
@@ -0,0 +1,340 @@
+package com.teamscale.report.testwise.jacoco;
+
+import com.teamscale.report.jacoco.dump.Dump;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads single sessions of a JaCoCo *.exec file in any order and from multiple threads. The offsets of the sessions in
+ * the file are indexed once, which only requires skipping over the execution data instead of decoding it. The index can
+ * be persisted next to the file, so later conversions of the same file can skip this step. The file is memory-mapped in
+ * windows that consist of whole sessions, so reading a session does not require any system calls.
+ */
+public class IndexedExecutionDataReader {
+
+	/** Identifies persisted indices. */
+	private static final int INDEX_MAGIC_NUMBER = 0x54494458;
+
+	/** The maximum size of a window of the file that is mapped at once. */
+	private static final long MAX_WINDOW_SIZE = 512L * 1024 * 1024;
+
+	/** The extension of persisted indices, which is appended to the name of the *.exec file. */
+	public static final String INDEX_FILE_EXTENSION = ".index";
+
+	/** The header block at the start of the file, which must precede each session that is read on its own. */
+	private final byte[] header;
+
+	/**
+	 * The offsets of the sessions in the file. Each session ends where the next one starts. The last element is the
+	 * length of the file.
+	 */
+	private final long[] sessionOffsets;
+
+	/** The mapped windows of the file. */
+	private final List<MappedByteBuffer> windows = new ArrayList<>();
+
+	/** The offsets in the file at which the {@link #windows} start. */
+	private final List<Long> windowOffsets = new ArrayList<>();
+
+	/** The index of the window that contains each session. */
+	private final int[] sessionWindows;
+
+	/**
+	 * Constructor. Indexes the given file or reads its index if it has been persisted before.
+	 *
+	 * @param executionDataFile The *.exec file to read
+	 * @param persistIndex      Whether to write the index next to the file, so it can be reused
+	 */
+	public IndexedExecutionDataReader(File executionDataFile, boolean persistIndex) throws IOException {
+		File indexFile = new File(executionDataFile.getPath() + INDEX_FILE_EXTENSION);
+		long[] offsets = readIndex(indexFile, executionDataFile);
+		if (offsets == null) {
+			offsets = buildIndex(executionDataFile);
+			if (persistIndex) {
+				writeIndex(indexFile, executionDataFile, offsets);
+			}
+		}
+		this.sessionOffsets = offsets;
+		this.sessionWindows = new int[getSessionCount()];
+		if (getSessionCount() == 0) {
+			this.header = new byte[0];
+			return;
+		}
+
+		try (FileChannel channel = FileChannel.open(executionDataFile.toPath(), StandardOpenOption.READ)) {
+			this.header = readHeader(channel);
+			mapWindows(channel);
+		}
+	}
+
+	/** Returns the number of sessions in the file. */
+	public int getSessionCount() {
+		return sessionOffsets.length - 1;
+	}
+
+	/** Reads the session with the given index. May be called from multiple threads. */
+	public Dump readSession(int index) throws IOException {
+		ByteBuffer session = windows.get(sessionWindows[index]).duplicate();
+		long windowOffset = windowOffsets.get(sessionWindows[index]);
+		session.limit((int) (sessionOffsets[index + 1] - windowOffset));
+		session.position((int) (sessionOffsets[index] - windowOffset));
+
+		SessionCollector collector = new SessionCollector();
+		ExecutionDataReader reader = new ExecutionDataReader(
+				new SequenceInputStream(new ByteBufferInputStream(ByteBuffer.wrap(header)),
+						new ByteBufferInputStream(session)));
+		reader.setSessionInfoVisitor(collector);
+		reader.setExecutionDataVisitor(collector.store::put);
+		reader.read();
+		return new Dump(collector.info, collector.store);
+	}
+
+	/** Maps the file in windows of at most {@link #MAX_WINDOW_SIZE} that contain whole sessions. */
+	private void mapWindows(FileChannel channel) throws IOException {
+		int sessionIndex = 0;
+		while (sessionIndex < getSessionCount()) {
+			long windowStart = sessionOffsets[sessionIndex];
+			int windowEndIndex = sessionIndex + 1;
+			while (windowEndIndex < getSessionCount()
+					&& sessionOffsets[windowEndIndex + 1] - windowStart <= MAX_WINDOW_SIZE) {
+				windowEndIndex++;
+			}
+			long windowSize = sessionOffsets[windowEndIndex] - windowStart;
+			if (windowSize > Integer.MAX_VALUE) {
+				throw new IOException("Session at offset " + windowStart + " is too large to be mapped");
+			}
+
+			windowOffsets.add(windowStart);
+			windows.add(channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize));
+			Arrays.fill(sessionWindows, sessionIndex, windowEndIndex, windows.size() - 1);
+			sessionIndex = windowEndIndex;
+		}
+	}
+
+	private static byte[] readHeader(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(5);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) == -1) {
+				throw new EOFException("Execution data file is too short");
+			}
+		}
+		if (header.get(0) != ExecutionDataWriter.BLOCK_HEADER) {
+			throw new IOException("Invalid execution data file");
+		}
+		return header.array();
+	}
+
+	/** Returns the offsets of all sessions in the given file followed by the length of the file. */
+	private static long[] buildIndex(File executionDataFile) throws IOException {
+		List<Long> offsets = new ArrayList<>();
+		try (CountingInputStream counter = new CountingInputStream(
+				new BufferedInputStream(new FileInputStream(executionDataFile)))) {
+			DataInputStream input = new DataInputStream(counter);
+			while (true) {
+				long position = counter.count;
+				int block = input.read();
+				if (block == -1) {
+					offsets.add(position);
+					break;
+				}
+				if (block == ExecutionDataWriter.BLOCK_SESSIONINFO) {
+					offsets.add(position);
+				}
+				skipBlock(input, (byte) block);
+			}
+		}
+
+		long[] result = new long[offsets.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = offsets.get(i);
+		}
+		return result;
+	}
+
+	/** Skips the content of a block of the given type. */
+	private static void skipBlock(DataInputStream input, byte block) throws IOException {
+		switch (block) {
+			case ExecutionDataWriter.BLOCK_HEADER:
+				// magic number and version
+				skipFully(input, 4);
+				break;
+			case ExecutionDataWriter.BLOCK_SESSIONINFO:
+				// id, start and dump timestamp
+				skipFully(input, input.readUnsignedShort() + 16);
+				break;
+			case ExecutionDataWriter.BLOCK_EXECUTIONDATA:
+				// class id, name and probes, which are stored as a bit set
+				skipFully(input, 8);
+				skipFully(input, input.readUnsignedShort());
+				skipFully(input, (readVarInt(input) + 7) / 8);
+				break;
+			default:
+				throw new IOException("Unknown block type " + block);
+		}
+	}
+
+	/** Reads a variable-length int as written by JaCoCo. */
+	private static long readVarInt(DataInputStream input) throws IOException {
+		long value = 0;
+		int shift = 0;
+		int currentByte;
+		do {
+			currentByte = input.readUnsignedByte();
+			value |= (long) (currentByte & 0x7F) << shift;
+			shift += 7;
+		} while ((currentByte & 0x80) != 0);
+		return value;
+	}
+
+	private static void skipFully(DataInputStream input, long count) throws IOException {
+		while (count > 0) {
+			int skipped = input.skipBytes((int) Math.min(count, Integer.MAX_VALUE));
+			if (skipped <= 0) {
+				throw new EOFException("Unexpected end of execution data file");
+			}
+			count -= skipped;
+		}
+	}
+
+	/**
+	 * Reads a persisted index if it exists and matches the given file. Returns null if there is no such index. The
+	 * index is considered outdated if the length or the modification time of the file have changed.
+	 */
+	private static long[] readIndex(File indexFile, File executionDataFile) throws IOException {
+		if (!indexFile.isFile()) {
+			return null;
+		}
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (input.readInt() != INDEX_MAGIC_NUMBER || input.readLong() != executionDataFile.length()
+					|| input.readLong() != executionDataFile.lastModified()) {
+				return null;
+			}
+			long[] offsets = new long[input.readInt()];
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = input.readLong();
+			}
+			return offsets;
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	private static void writeIndex(File indexFile, File executionDataFile, long[] offsets) throws IOException {
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+			output.writeInt(INDEX_MAGIC_NUMBER);
+			output.writeLong(executionDataFile.length());
+			output.writeLong(executionDataFile.lastModified());
+			output.writeInt(offsets.length);
+			for (long offset : offsets) {
+				output.writeLong(offset);
+			}
+		}
+	}
+
+	/** Collects the session info and execution data of a single session. */
+	private static class SessionCollector implements ISessionInfoVisitor {
+
+		/** The info of the session. */
+		private SessionInfo info;
+
+		/** The execution data of the session. */
+		private final ExecutionDataStore store = new ExecutionDataStore();
+
+		@Override
+		public void visitSessionInfo(SessionInfo info) {
+			this.info = info;
+		}
+	}
+
+	/** Counts the bytes that have been read or skipped. */
+	private static class CountingInputStream extends FilterInputStream {
+
+		/** The number of bytes that have been read or skipped. */
+		private long count = 0;
+
+		private CountingInputStream(InputStream input) {
+			super(input);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int result = super.read();
+			if (result != -1) {
+				count++;
+			}
+			return result;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			int result = super.read(bytes, offset, length);
+			if (result != -1) {
+				count += result;
+			}
+			return result;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long result = super.skip(n);
+			count += result;
+			return result;
+		}
+	}
+
+	/** Reads the remaining bytes of a {@link ByteBuffer}. */
+	private static class ByteBufferInputStream extends InputStream {
+
+		/** The buffer to read. */
+		private final ByteBuffer buffer;
+
+		private ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			return buffer.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			return count;
+		}
+	}
+}
@@ -1,8 +1,11 @@
 package com.teamscale.report.testwise.jacoco;
 
+import com.teamscale.client.FileSystemUtils;
 import com.teamscale.report.EDuplicateClassFileBehavior;
 import com.teamscale.report.jacoco.dump.Dump;
+import com.teamscale.report.testwise.ETestArtifactFormat;
 import com.teamscale.report.testwise.jacoco.cache.CoverageGenerationException;
+import com.teamscale.report.testwise.jacoco.cache.PersistentLookupCache;
 import com.teamscale.report.testwise.model.TestwiseCoverage;
 import com.teamscale.report.testwise.model.builder.TestCoverageBuilder;
 import com.teamscale.report.util.ClasspathWildcardIncludeFilter;
@@ -15,6 +18,7 @@ import org.jacoco.core.data.ISessionInfoVisitor;
 import org.jacoco.core.data.SessionInfo;
 
 import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -27,9 +31,10 @@ import java.util.function.Consumer;
 /**
  * Creates a XML report for an execution data store. The report is grouped by session.
  * <p>
- * The class files under test must be compiled with debug information otherwise no coverage will be collected.
+ * The class files under test must be compiled with debug information otherwise no coverage will be collected. Must be
+ * closed once no more coverage is converted, since archives with lazily analyzed class files are kept open.
  */
-public class JaCoCoTestwiseReportGenerator {
+public class JaCoCoTestwiseReportGenerator implements Closeable {
 
 	/** The execution data reader and converter. */
 	private CachingExecutionDataReader executionDataReader;
@@ -42,15 +47,21 @@ public class JaCoCoTestwiseReportGenerator {
 	 *
 	 * @param codeDirectoriesOrArchives Root directory that contains the projects class files.
 	 * @param locationIncludeFilter     Filter for class files
+	 * @param analysisThreads           Number of threads to use for analyzing the class files
+	 * @param persistentCache           Cache of the analysis results of earlier conversions (may be null)
+	 * @param analyzeClassesLazily      Whether to analyze classes only once coverage of them is converted instead of
+	 *                                  analyzing all class files upfront
 	 * @param logger                    The logger
 	 */
 	public JaCoCoTestwiseReportGenerator(Collection<File> codeDirectoriesOrArchives,
 										 ClasspathWildcardIncludeFilter locationIncludeFilter,
 										 EDuplicateClassFileBehavior duplicateClassFileBehavior,
-										 ILogger logger) {
+										 int analysisThreads, PersistentLookupCache persistentCache,
+										 boolean analyzeClassesLazily, ILogger logger) {
 		this.locationIncludeFilter = locationIncludeFilter;
 		this.executionDataReader = new CachingExecutionDataReader(logger, codeDirectoriesOrArchives,
-				locationIncludeFilter, duplicateClassFileBehavior);
+				locationIncludeFilter, duplicateClassFileBehavior, analysisThreads, persistentCache,
+				analyzeClassesLazily);
 	}
 
 	/** Converts the given dumps to a report. */
@@ -75,6 +86,19 @@ public class JaCoCoTestwiseReportGenerator {
 		}
 	}
 
+	/**
+	 * Converts the given dumps to a report. Up to the given number of sessions of an *.exec file are read and converted
+	 * in parallel.
+	 *
+	 * @see #convertAndConsume(File, Consumer, int, boolean)
+	 */
+	public TestwiseCoverage convert(File executionDataFile, int conversionThreads,
+									boolean persistIndex) throws IOException, CoverageGenerationException {
+		TestwiseCoverage testwiseCoverage = new TestwiseCoverage();
+		convertAndConsume(executionDataFile, testwiseCoverage::add, conversionThreads, persistIndex);
+		return testwiseCoverage;
+	}
+
 	/** Converts the given dumps to a report. */
 	public void convertAndConsume(File executionDataFile,
 								  Consumer<TestCoverageBuilder> consumer) throws IOException, CoverageGenerationException {
@@ -83,8 +107,44 @@ public class JaCoCoTestwiseReportGenerator {
 		readAndConsumeDumps(executionDataFile, dumpConsumer);
 	}
 
-	/** Reads the dumps from the given *.exec file. */
+	/**
+	 * Converts the given dumps to a report. Up to the given number of sessions of an *.exec file are read and converted
+	 * in parallel, see {@link IndexedExecutionDataReader}. The results are passed to the consumer in the order of the
+	 * sessions in the file. *.sexec files are read one session after the other.
+	 *
+	 * @param conversionThreads The number of threads that read and convert sessions
+	 * @param persistIndex      Whether the index of the sessions should be persisted next to the *.exec file, so later
+	 *                          conversions of the same file do not need to build it again
+	 */
+	public void convertAndConsume(File executionDataFile, Consumer<TestCoverageBuilder> consumer, int conversionThreads,
+								  boolean persistIndex) throws IOException, CoverageGenerationException {
+		if (conversionThreads <= 1 || isSparseExecutionDataFile(executionDataFile)) {
+			convertAndConsume(executionDataFile, consumer);
+			return;
+		}
+
+		IndexedExecutionDataReader reader = new IndexedExecutionDataReader(executionDataFile, persistIndex);
+		try (ParallelDumpConverter converter = new ParallelDumpConverter(conversionThreads, this::convert, consumer)) {
+			for (int i = 0; i < reader.getSessionCount(); i++) {
+				int sessionIndex = i;
+				converter.submit(() -> reader.readSession(sessionIndex));
+			}
+			converter.finish();
+		}
+	}
+
+	/** Releases the archives that are kept open for lazily analyzed class files. */
+	@Override
+	public void close() throws IOException {
+		executionDataReader.close();
+	}
+
+	/** Reads the dumps from the given *.exec or *.sexec file. */
 	private void readAndConsumeDumps(File executionDataFile, Consumer<Dump> dumpConsumer) throws IOException {
+		if (isSparseExecutionDataFile(executionDataFile)) {
+			new SparseExecutionDataReader(executionDataFile).read(dumpConsumer);
+			return;
+		}
 		try (InputStream input = new BufferedInputStream(new FileInputStream(executionDataFile))) {
 			ExecutionDataReader executionDataReader = new ExecutionDataReader(input);
 			DumpCallback dumpCallback = new DumpCallback(dumpConsumer);
@@ -96,6 +156,11 @@ public class JaCoCoTestwiseReportGenerator {
 		}
 	}
 
+	private static boolean isSparseExecutionDataFile(File executionDataFile) {
+		return ETestArtifactFormat.SPARSE_JACOCO.extension
+				.equalsIgnoreCase(FileSystemUtils.getFileExtension(executionDataFile));
+	}
+
 	/** Collects execution information per session and passes it to the consumer . */
 	private static class DumpCallback implements IExecutionDataVisitor, ISessionInfoVisitor {
 
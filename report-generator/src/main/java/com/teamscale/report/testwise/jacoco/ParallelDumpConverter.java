@@ -0,0 +1,114 @@
+package com.teamscale.report.testwise.jacoco;
+
+import com.teamscale.report.jacoco.dump.Dump;
+import com.teamscale.report.testwise.jacoco.cache.CoverageGenerationException;
+import com.teamscale.report.testwise.model.builder.TestCoverageBuilder;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Reads and converts dumps on a pool of threads and passes the results to a consumer in the order in which the dumps
+ * were submitted, so the resulting reports do not depend on the scheduling of the threads. The consumer is only called
+ * from the thread that submits the dumps. Only a limited number of dumps is pending at the same time, so the memory
+ * usage does not depend on the number of dumps.
+ */
+/* package */ class ParallelDumpConverter implements AutoCloseable {
+
+	/** The maximum number of pending dumps per thread. */
+	private static final int MAX_PENDING_DUMPS_PER_THREAD = 4;
+
+	/** Converts a single dump. */
+	private final IDumpConverter converter;
+
+	/** Receives the converted dumps. */
+	private final Consumer<TestCoverageBuilder> consumer;
+
+	/** Runs the conversions. */
+	private final ExecutorService executor;
+
+	/** The maximum number of pending dumps. */
+	private final int maxPendingDumps;
+
+	/** The conversions that have not been passed to the {@link #consumer} yet, in the order of their submission. */
+	private final Queue<Future<TestCoverageBuilder>> pendingConversions = new ArrayDeque<>();
+
+	/** Constructor. */
+	/* package */ ParallelDumpConverter(int threads, IDumpConverter converter,
+										Consumer<TestCoverageBuilder> consumer) {
+		this.converter = converter;
+		this.consumer = consumer;
+		this.maxPendingDumps = threads * MAX_PENDING_DUMPS_PER_THREAD;
+		AtomicInteger threadCounter = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "Coverage conversion " + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Reads the dump with the given reader and converts it in the background. Passes the results of earlier dumps to
+	 * the consumer if too many dumps are pending.
+	 */
+	/* package */ void submit(Callable<Dump> dumpReader) throws IOException, CoverageGenerationException {
+		while (pendingConversions.size() >= maxPendingDumps) {
+			consumeOldest();
+		}
+		pendingConversions.add(executor.submit(() -> converter.convert(dumpReader.call())));
+	}
+
+	/** Waits for all pending conversions and passes their results to the consumer. */
+	/* package */ void finish() throws IOException, CoverageGenerationException {
+		while (!pendingConversions.isEmpty()) {
+			consumeOldest();
+		}
+	}
+
+	private void consumeOldest() throws IOException, CoverageGenerationException {
+		TestCoverageBuilder testCoverage;
+		try {
+			testCoverage = pendingConversions.remove().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while converting coverage", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof CoverageGenerationException) {
+				throw (CoverageGenerationException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException("Converting coverage failed", cause);
+		}
+		if (testCoverage != null) {
+			consumer.accept(testCoverage);
+		}
+	}
+
+	/** Stops the conversion threads. Conversions that have not been finished are cancelled. */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/** Converts a single dump. */
+	@FunctionalInterface
+	/* package */ interface IDumpConverter {
+
+		/** Converts the given dump or returns null if it does not belong to a test. */
+		TestCoverageBuilder convert(Dump dump) throws CoverageGenerationException;
+	}
+}
@@ -0,0 +1,112 @@
+package com.teamscale.report.testwise.jacoco;
+
+import com.teamscale.report.jacoco.dump.Dump;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.teamscale.report.testwise.jacoco.SparseExecutionDataWriter.BLOCK_SESSION;
+import static com.teamscale.report.testwise.jacoco.SparseExecutionDataWriter.FORMAT_VERSION;
+import static com.teamscale.report.testwise.jacoco.SparseExecutionDataWriter.MAGIC_NUMBER;
+
+/**
+ * Reads a segment written by {@link SparseExecutionDataWriter} and passes every session to a consumer of {@link Dump}s,
+ * e.g. a {@link CachingExecutionDataReader.DumpConsumer}. The session of a test that was written incompletely, e.g.
+ * because the JVM crashed, is skipped.
+ */
+public class SparseExecutionDataReader {
+
+	/** The segment to read. */
+	private final File file;
+
+	/** Constructor. */
+	public SparseExecutionDataReader(File file) {
+		this.file = file;
+	}
+
+	/** Reads all sessions from the file and passes them to the given consumer one after the other. */
+	public void read(Consumer<Dump> dumpConsumer) throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (input.readInt() != MAGIC_NUMBER) {
+				throw new IOException(file + " is not a sparse execution data file");
+			}
+			byte version = input.readByte();
+			if (version != FORMAT_VERSION) {
+				throw new IOException("Unsupported version " + version + " of sparse execution data file " + file);
+			}
+
+			List<ExecutionData> classes = new ArrayList<>();
+			int block;
+			while ((block = input.read()) != -1) {
+				if (block != BLOCK_SESSION) {
+					throw new IOException("Unexpected block type " + block + " in " + file);
+				}
+				Dump dump;
+				try {
+					dump = readSession(input, classes);
+				} catch (EOFException e) {
+					// The last session has not been written completely
+					return;
+				}
+				dumpConsumer.accept(dump);
+			}
+		}
+	}
+
+	/**
+	 * Reads a single session. The given list holds the classes of the segment in the order of their indices, where
+	 * the probes of each class are only used as a template for their length.
+	 */
+	private static Dump readSession(DataInputStream input, List<ExecutionData> classes) throws IOException {
+		SessionInfo info = new SessionInfo(input.readUTF(), input.readLong(), input.readLong());
+		ExecutionDataStore store = new ExecutionDataStore();
+		int classCount = readVarInt(input);
+		for (int i = 0; i < classCount; i++) {
+			int classIndex = readVarInt(input);
+			if (classIndex == classes.size()) {
+				long id = input.readLong();
+				String name = input.readUTF();
+				classes.add(new ExecutionData(id, name, readVarInt(input)));
+			} else if (classIndex > classes.size()) {
+				throw new IOException("Invalid class index " + classIndex);
+			}
+			ExecutionData template = classes.get(classIndex);
+
+			boolean[] probes = new boolean[template.getProbes().length];
+			int hitCount = readVarInt(input);
+			int probeIndex = -1;
+			for (int j = 0; j < hitCount; j++) {
+				probeIndex += readVarInt(input) + 1;
+				if (probeIndex >= probes.length) {
+					throw new IOException("Invalid probe index " + probeIndex + " for class " + template.getName());
+				}
+				probes[probeIndex] = true;
+			}
+			store.put(new ExecutionData(template.getId(), template.getName(), probes));
+		}
+		return new Dump(info, store);
+	}
+
+	/** Reads a value written by {@link SparseExecutionDataWriter}. */
+	private static int readVarInt(DataInputStream input) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+			int currentByte = input.readUnsignedByte();
+			value |= (currentByte & 0x7F) << shift;
+			if ((currentByte & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+}
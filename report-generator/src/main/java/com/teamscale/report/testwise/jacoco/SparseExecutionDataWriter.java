@@ -0,0 +1,192 @@
+package com.teamscale.report.testwise.jacoco;
+
+import com.teamscale.report.jacoco.dump.Dump;
+import com.teamscale.report.testwise.ETestArtifactFormat;
+import org.jacoco.core.data.ExecutionData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the coverage of single tests to files in a sparse alternative to JaCoCo's exec format. JaCoCo stores the
+ * complete probe array of every class that was executed during a session. This format only stores the indices of the
+ * covered probes, delta and varint encoded, which is much smaller since a single test usually covers only few probes
+ * of a class. The name and probe count of a class are only written the first time the class occurs in a file and later
+ * sessions refer to the class by a small index.
+ * <p>
+ * The sessions are split into segments: A new file is started once a segment contains a given number of sessions or
+ * has reached a given size. The segments are named {@code <prefix>-<number>.sexec} and can be read with {@link
+ * SparseExecutionDataReader}.
+ * <p>
+ * Format of a segment:
+ * <pre>
+ * file    := MAGIC_NUMBER:int FORMAT_VERSION:byte session*
+ * session := BLOCK_SESSION:byte id:utf start:long dump:long classCount:varint class{classCount}
+ * class   := classIndex:varint [classId:long name:utf probeCount:varint] hitCount:varint delta{hitCount}
+ * </pre>
+ * The part in brackets is only present if the class index is used for the first time in the segment. Each delta is
+ * the difference between a covered probe index and the previous one minus one, starting at -1.
+ */
+public class SparseExecutionDataWriter implements AutoCloseable {
+
+	/** Identifies segments of this format. */
+	/* package */ static final int MAGIC_NUMBER = 0x54534558;
+
+	/** The version of the format. */
+	/* package */ static final byte FORMAT_VERSION = 1;
+
+	/** Starts the block of a session. */
+	/* package */ static final byte BLOCK_SESSION = 0x10;
+
+	/** The directory to which the segments are written. */
+	private final File directory;
+
+	/** The prefix of the names of the segments. */
+	private final String namePrefix;
+
+	/** The maximum number of sessions in a segment. */
+	private final int maxSessionsPerSegment;
+
+	/** The size in bytes after which a new segment is started. */
+	private final long maxSegmentSize;
+
+	/** The stream to the current segment. Null before the first session has been written and after closing. */
+	private DataOutputStream output;
+
+	/** The number of the current segment. */
+	private int segmentNumber = 0;
+
+	/** The number of sessions in the current segment. */
+	private int sessionsInSegment = 0;
+
+	/** The number of bytes in the current segment. */
+	private long segmentSize = 0;
+
+	/** Maps the IDs of the classes in the current segment to their indices. */
+	private final Map<Long, Integer> classIndices = new HashMap<>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory             The directory to which the segments are written
+	 * @param namePrefix            The prefix of the segments' names
+	 * @param maxSessionsPerSegment The maximum number of sessions in a segment
+	 * @param maxSegmentSize        The size in bytes after which a new segment is started
+	 */
+	public SparseExecutionDataWriter(File directory, String namePrefix, int maxSessionsPerSegment,
+									 long maxSegmentSize) {
+		this.directory = directory;
+		this.namePrefix = namePrefix;
+		this.maxSessionsPerSegment = maxSessionsPerSegment;
+		this.maxSegmentSize = maxSegmentSize;
+	}
+
+	/** Appends the given dump as a session to the current segment. Classes without covered probes are skipped. */
+	public synchronized void write(Dump dump) throws IOException {
+		if (output == null || sessionsInSegment >= maxSessionsPerSegment || segmentSize >= maxSegmentSize) {
+			startSegment();
+		}
+
+		ByteArrayOutputStream session = new ByteArrayOutputStream();
+		writeSession(dump, new DataOutputStream(session));
+		try {
+			session.writeTo(output);
+		} catch (IOException e) {
+			// The classes of the session are already registered in the segment, so it cannot be continued
+			close();
+			throw e;
+		}
+		sessionsInSegment++;
+		segmentSize += session.size();
+	}
+
+	private void writeSession(Dump dump, DataOutputStream session) throws IOException {
+		int classCount = 0;
+		for (ExecutionData data : dump.store.getContents()) {
+			if (data.hasHits()) {
+				classCount++;
+			}
+		}
+
+		session.writeByte(BLOCK_SESSION);
+		session.writeUTF(dump.info.getId());
+		session.writeLong(dump.info.getStartTimeStamp());
+		session.writeLong(dump.info.getDumpTimeStamp());
+		writeVarInt(session, classCount);
+		for (ExecutionData data : dump.store.getContents()) {
+			if (data.hasHits()) {
+				writeClass(data, session);
+			}
+		}
+	}
+
+	private void writeClass(ExecutionData data, DataOutputStream session) throws IOException {
+		boolean[] probes = data.getProbes();
+		Integer classIndex = classIndices.get(data.getId());
+		if (classIndex == null) {
+			writeVarInt(session, classIndices.size());
+			classIndices.put(data.getId(), classIndices.size());
+			session.writeLong(data.getId());
+			session.writeUTF(data.getName());
+			writeVarInt(session, probes.length);
+		} else {
+			writeVarInt(session, classIndex);
+		}
+
+		int hitCount = 0;
+		for (boolean probe : probes) {
+			if (probe) {
+				hitCount++;
+			}
+		}
+		writeVarInt(session, hitCount);
+		int previousIndex = -1;
+		for (int i = 0; i < probes.length; i++) {
+			if (probes[i]) {
+				writeVarInt(session, i - previousIndex - 1);
+				previousIndex = i;
+			}
+		}
+	}
+
+	/** Closes the current segment and starts a new one. */
+	private void startSegment() throws IOException {
+		if (output != null) {
+			output.close();
+		}
+		segmentNumber++;
+		File segment = new File(directory, String.format("%s-%04d.%s", namePrefix, segmentNumber,
+				ETestArtifactFormat.SPARSE_JACOCO.extension));
+		// Not buffered, since every session is written at once. This way, the sessions of finished tests are kept if
+		// the JVM crashes
+		output = new DataOutputStream(new FileOutputStream(segment));
+		output.writeInt(MAGIC_NUMBER);
+		output.writeByte(FORMAT_VERSION);
+		sessionsInSegment = 0;
+		segmentSize = output.size();
+		classIndices.clear();
+	}
+
+	/** Writes the given non-negative value with 7 bits per byte, least significant bits first. */
+	private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			output.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		output.writeByte(value);
+	}
+
+	/** Closes the current segment. */
+	@Override
+	public synchronized void close() throws IOException {
+		if (output != null) {
+			output.close();
+			output = null;
+		}
+	}
+}
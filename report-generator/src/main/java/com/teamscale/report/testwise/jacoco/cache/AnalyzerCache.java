@@ -1,5 +1,6 @@
 package com.teamscale.report.testwise.jacoco.cache;
 
+import com.teamscale.report.jacoco.AnalysisExecutor;
 import com.teamscale.report.jacoco.FilteringAnalyzer;
 import com.teamscale.report.util.ClasspathWildcardIncludeFilter;
 import com.teamscale.report.util.ILogger;
@@ -13,7 +14,14 @@ import org.jacoco.core.internal.instr.InstrSupport;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An {@link AnalyzerCache} instance processes a set of Java class/jar/war/... files and builds a {@link
@@ -33,27 +41,90 @@ public class AnalyzerCache extends FilteringAnalyzer {
 	/** The probes cache. */
 	private final ProbesCache probesCache;
 
+	/** The executor that runs the analysis of the individual class files. */
+	private final AnalysisExecutor executor;
 
-	private final StringPool stringPool = new StringPool();
+	/** Persistent cache of lookups from earlier conversions or null if not used. */
+	private final PersistentLookupCache persistentCache;
 
-	/** Creates a new analyzer filling the given cache. */
+	/**
+	 * Pools to minimize the number of {@link String} instances. JaCoCo's {@link StringPool} is not thread-safe, so every
+	 * analysis thread uses its own pool.
+	 */
+	private final ThreadLocal<StringPool> stringPools = ThreadLocal.withInitial(StringPool::new);
+
+	/**
+	 * The lookups of the classes that have been found but not yet added to the {@link #probesCache} by class ID. Lets
+	 * directories and archives that contain the same class share its analysis.
+	 */
+	private final Map<Long, CompletableFuture<ClassCoverageLookup>> lookups = new HashMap<>();
+
+	/** The classes found by the currently running {@link #startAnalysis(File)}. */
+	private List<FoundClass> foundClasses;
+
+	/**
+	 * Creates a new analyzer filling the given cache.
+	 *
+	 * @param persistentCache cache of lookups from earlier conversions. Classes found in it are not analyzed again.
+	 *                        May be null.
+	 */
 	public AnalyzerCache(ProbesCache probesCache, ClasspathWildcardIncludeFilter locationIncludeFilter,
-						 ILogger logger) {
+						 AnalysisExecutor executor, PersistentLookupCache persistentCache, ILogger logger) {
 		super(null, null, locationIncludeFilter, logger);
 		this.probesCache = probesCache;
+		this.executor = executor;
+		this.persistentCache = persistentCache;
+	}
+
+	/**
+	 * Reads all class files in the given directory or archive and starts their analysis. The classes are added to the
+	 * probes cache when {@link PendingAnalysis#addToCache()} is called on the result.
+	 */
+	public PendingAnalysis startAnalysis(File file) {
+		return startAnalysis(file, () -> analyzeAll(file));
+	}
+
+	/**
+	 * Reads all class files in the given stream and starts their analysis.
+	 *
+	 * @param file     the directory or archive that contains the stream
+	 * @param location the location of the stream within the file
+	 * @see #startAnalysis(File)
+	 */
+	/* package */ PendingAnalysis startAnalysis(File file, InputStream input, String location) {
+		return startAnalysis(file, () -> analyzeAll(input, location));
+	}
+
+	private PendingAnalysis startAnalysis(File file, IReadAction readAction) {
+		foundClasses = new ArrayList<>();
+		IOException readError = null;
+		try {
+			readAction.read();
+		} catch (IOException e) {
+			readError = e;
+		}
+		PendingAnalysis pendingAnalysis = new PendingAnalysis(file, foundClasses, readError);
+		foundClasses = null;
+		return pendingAnalysis;
 	}
 
 	/**
 	 * Analyses the given class. Instead of the original implementation in {@link Analyzer#analyzeClass(byte[])} we
 	 * don't use concrete execution data, but instead build a probe cache to speed up repeated lookups.
 	 */
-	private void analyzeClass(final byte[] source) {
-		long classId = CRC64.classId(source);
-		if (probesCache.containsClassId(classId)) {
-			return;
+	/* package */ ClassCoverageLookup analyzeClass(final byte[] source, long classId) {
+		StringPool stringPool = stringPools.get();
+		if (persistentCache != null) {
+			ClassCoverageLookup cachedLookup = persistentCache.load(classId, stringPool);
+			if (cachedLookup != null) {
+				return cachedLookup;
+			}
 		}
+
 		final ClassReader reader = InstrSupport.classReaderFor(source);
-		ClassCoverageLookup classCoverageLookup = probesCache.createClass(classId, reader.getClassName());
+		String className = reader.getClassName();
+		ClassCoverageLookup classCoverageLookup = new ClassCoverageLookup(className,
+				stringPool.get(ClassCoverageLookup.getPackageName(className)));
 
 		// Dummy class coverage object that allows us to subclass ClassAnalyzer with CachingClassAnalyzer and reuse its
 		// IFilterContext implementation
@@ -64,18 +135,100 @@ public class AnalyzerCache extends FilteringAnalyzer {
 				stringPool);
 		final ClassVisitor visitor = new ClassProbesAdapter(classAnalyzer, false);
 		reader.accept(visitor, 0);
+
+		if (persistentCache != null) {
+			persistentCache.store(classId, classCoverageLookup);
+		}
+		return classCoverageLookup;
 	}
 
 	/**
 	 * @inheritDoc <p> Copy of the method from {@link Analyzer#analyzeClass(byte[], String)}, because it calls the
-	 * private {@link Analyzer#analyzeClass(byte[])} method, which we therefore cannot override.
+	 * private {@link Analyzer#analyzeClass(byte[])} method, which we therefore cannot override. Errors during the
+	 * analysis are reported by {@link PendingAnalysis#addToCache()}.
 	 */
 	@Override
-	public void analyzeClass(final byte[] buffer, final String location) throws IOException {
-		try {
-			analyzeClass(buffer);
-		} catch (RuntimeException cause) {
-			throw new IOException(String.format("Error while analyzing %s.", location), cause);
+	public void analyzeClass(final byte[] buffer, final String location) {
+		long classId = CRC64.classId(buffer);
+		if (probesCache.containsClassId(classId)) {
+			return;
+		}
+		CompletableFuture<ClassCoverageLookup> lookup = lookups.computeIfAbsent(classId,
+				id -> executor.supply(() -> analyzeClass(buffer, id)));
+		foundClasses.add(new FoundClass(classId, location, lookup));
+	}
+
+	/** Reads class files and passes them to {@link #analyzeClass(byte[], String)}. */
+	private interface IReadAction {
+
+		/** Reads the class files. */
+		void read() throws IOException;
+
+	}
+
+	/** A class file that has been found in a directory or archive and whose analysis has been started. */
+	private static class FoundClass {
+
+		private final long classId;
+		private final String location;
+		private final CompletableFuture<ClassCoverageLookup> lookup;
+
+		private FoundClass(long classId, String location, CompletableFuture<ClassCoverageLookup> lookup) {
+			this.classId = classId;
+			this.location = location;
+			this.lookup = lookup;
+		}
+	}
+
+	/** The classes of a directory or archive whose analysis has been started by {@link #startAnalysis(File)}. */
+	public class PendingAnalysis {
+
+		/** The analyzed directory or archive. */
+		private final File file;
+
+		/** The found classes in the order in which they have been found. */
+		private final List<FoundClass> classes;
+
+		/** The error that occurred while reading the directory or archive or null. */
+		private final IOException readError;
+
+		private PendingAnalysis(File file, List<FoundClass> classes, IOException readError) {
+			this.file = file;
+			this.classes = classes;
+			this.readError = readError;
+		}
+
+		/** @see #file */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Waits for the analysis to finish and adds the classes to the probes cache in the order in which they have
+		 * been found. Stops at the first class that could not be analyzed or added, just like a sequential analysis
+		 * would do. Afterwards, the lookups of the classes are only referenced by the probes cache.
+		 */
+		public void addToCache() throws IOException {
+			try {
+				for (FoundClass foundClass : classes) {
+					if (probesCache.containsClassId(foundClass.classId)) {
+						continue;
+					}
+					ClassCoverageLookup lookup = AnalysisExecutor.await(foundClass.lookup, foundClass.location);
+					try {
+						probesCache.addClass(foundClass.classId, lookup);
+					} catch (RuntimeException cause) {
+						throw new IOException(String.format("Error while analyzing %s.", foundClass.location), cause);
+					}
+				}
+			} finally {
+				for (FoundClass foundClass : classes) {
+					lookups.remove(foundClass.classId);
+				}
+			}
+			if (readError != null) {
+				throw readError;
+			}
 		}
 	}
-}
\ No newline at end of file
+}
@@ -7,8 +7,8 @@ import com.teamscale.report.util.SortedIntList;
 import org.jacoco.core.data.ExecutionData;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Holds information about a class' probes and to which line ranges they refer.
@@ -16,23 +16,47 @@ import java.util.Set;
  * <ul>
  * <li> Create an instance of this class for every analyzed java class.
  * <li> Set the file name of the java source file from which the class has been created.
- * <li> Then call {@link #addProbe(int, Set)} for all probes and lines that belong to that probe.
+ * <li> Then call {@link #addProbe(int, SortedIntList)} for all probes and lines that belong to that probe.
+ * <li> Call {@link #setTotalProbeCount(int)} once all probes have been added.
  * <li> Afterwards call {@link #getFileCoverage(ExecutionData, ILogger)} to transform probes ({@link
  * ExecutionData}) for this class into covered lines ({@link FileCoverageBuilder}).
  * </ul>
+ * <p>
+ * Once the total probe count has been set, the lines of all probes are stored in a single array. The lines of probe
+ * {@code i} are {@code lines[probeOffsets[i]]} to {@code lines[probeOffsets[i + 1] - 1]}. This needs much less memory
+ * than one list per probe, which matters since the lookups of all classes of the application are kept in memory.
  */
 public class ClassCoverageLookup {
 
 	/** Fully qualified name of the class (with / as separators). */
-	private String className;
+	private final String className;
+
+	/** Name of the package of the class (with / as separators). The default package is the empty string. */
+	private final String packageName;
 
 	/** Name of the java source file. */
 	private String sourceFileName;
 
 	/**
-	 * Mapping from probe IDs to sets of covered lines. The index in this list corresponds to the probe ID.
+	 * Mapping from probe IDs to sets of covered lines while the class is being analyzed. The index in this list
+	 * corresponds to the probe ID. Null once {@link #setTotalProbeCount(int)} has been called.
 	 */
-	private final List<SortedIntList> probes = new ArrayList<>();
+	private List<SortedIntList> probes = new ArrayList<>();
+
+	/**
+	 * Start index of the lines of each probe in {@link #lines}. Contains one more element than there are probes, so
+	 * the end of the lines of the last probe can be determined in the same way as for all other probes.
+	 */
+	private int[] probeOffsets;
+
+	/** The lines of all probes. */
+	private int[] lines;
+
+	/**
+	 * The probes that are outside of any method (e.g. in methods generated by Lombok) or null if there are no such
+	 * probes.
+	 */
+	private BitSet unmatchedProbes;
 
 	/**
 	 * Constructor.
@@ -40,7 +64,64 @@ public class ClassCoverageLookup {
 	 * @param className Classname as stored in the bytecode e.g. com/company/Example
 	 */
 	ClassCoverageLookup(String className) {
+		this(className, getPackageName(className));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param className   Classname as stored in the bytecode e.g. com/company/Example
+	 * @param packageName Package name of the class e.g. com/company. Allows callers to share the instances between
+	 *                    classes.
+	 */
+	ClassCoverageLookup(String className, String packageName) {
 		this.className = className;
+		this.packageName = packageName;
+	}
+
+	/** Creates an already compacted lookup, e.g. when it is loaded by the {@link PersistentLookupCache}. */
+	/* package */ ClassCoverageLookup(String className, String packageName, String sourceFileName, int[] probeOffsets,
+									  int[] lines, BitSet unmatchedProbes) {
+		this(className, packageName);
+		this.sourceFileName = sourceFileName;
+		this.probeOffsets = probeOffsets;
+		this.lines = lines;
+		this.unmatchedProbes = unmatchedProbes;
+		this.probes = null;
+	}
+
+	/** Returns the package name of the given class name (with / as separators). */
+	/* package */ static String getPackageName(String className) {
+		// we model the default package as the empty string
+		if (className.contains("/")) {
+			return StringUtils.removeLastPart(className, '/');
+		}
+		return "";
+	}
+
+	/** Returns the fully qualified name of the class (with / as separators). */
+	public String getClassName() {
+		return className;
+	}
+
+	/** @see #sourceFileName */
+	/* package */ String getSourceFileName() {
+		return sourceFileName;
+	}
+
+	/** @see #probeOffsets */
+	/* package */ int[] getProbeOffsets() {
+		return probeOffsets;
+	}
+
+	/** @see #lines */
+	/* package */ int[] getLines() {
+		return lines;
+	}
+
+	/** @see #unmatchedProbes */
+	/* package */ BitSet getUnmatchedProbes() {
+		return unmatchedProbes;
 	}
 
 	/** Sets the file name of the currently analyzed class (without path). */
@@ -48,9 +129,13 @@ public class ClassCoverageLookup {
 		this.sourceFileName = sourceFileName;
 	}
 
-	/** Adjusts the size of the probes list to the total probes count. */
+	/**
+	 * Adjusts the size of the probes list to the total probes count and stores the lines of all probes in their
+	 * compact representation. Must be called after all probes have been added.
+	 */
 	public void setTotalProbeCount(int count) {
 		ensureArraySize(count - 1);
+		compact();
 	}
 
 	/** Adds the probe with the given id to the method. */
@@ -69,6 +154,36 @@ public class ClassCoverageLookup {
 		}
 	}
 
+	/** Copies the lines of all probes from {@link #probes} to {@link #lines}. */
+	private void compact() {
+		int lineCount = 0;
+		for (SortedIntList probeLines : probes) {
+			if (probeLines != null) {
+				lineCount += probeLines.size();
+			}
+		}
+
+		probeOffsets = new int[probes.size() + 1];
+		lines = new int[lineCount];
+		int offset = 0;
+		for (int i = 0; i < probes.size(); i++) {
+			probeOffsets[i] = offset;
+			SortedIntList probeLines = probes.get(i);
+			if (probeLines == null) {
+				if (unmatchedProbes == null) {
+					unmatchedProbes = new BitSet();
+				}
+				unmatchedProbes.set(i);
+				continue;
+			}
+			for (int j = 0; j < probeLines.size(); j++) {
+				lines[offset++] = probeLines.get(j);
+			}
+		}
+		probeOffsets[probes.size()] = offset;
+		probes = null;
+	}
+
 	/**
 	 * Generates {@link FileCoverageBuilder} from an {@link ExecutionData}. {@link ExecutionData} holds coverage of
 	 * exactly one class (whereby inner classes are a separate class). This method returns a {@link FileCoverageBuilder}
@@ -80,7 +195,7 @@ public class ClassCoverageLookup {
 
 		if (checkProbeInvariant(executedProbes)) {
 			throw new CoverageGenerationException("Probe lookup does not match with actual probe size for " +
-					sourceFileName + " " + className + " (" + probes.size() + " vs " + executedProbes.length + ")! " +
+					sourceFileName + " " + className + " (" + getProbeCount() + " vs " + executedProbes.length + ")! " +
 					"This is a bug in the profiler tooling. Please report it back to CQSE.");
 		}
 		if (sourceFileName == null) {
@@ -90,11 +205,6 @@ public class ClassCoverageLookup {
 			return null;
 		}
 
-		// we model the default package as the empty string
-		String packageName = "";
-		if (className.contains("/")) {
-			packageName = StringUtils.removeLastPart(className, '/');
-		}
 		final FileCoverageBuilder fileCoverage = new FileCoverageBuilder(packageName, sourceFileName);
 		fillFileCoverage(fileCoverage, executedProbes, logger);
 
@@ -102,32 +212,35 @@ public class ClassCoverageLookup {
 	}
 
 	private void fillFileCoverage(FileCoverageBuilder fileCoverage, boolean[] executedProbes, ILogger logger) {
-		for (int i = 0; i < probes.size(); i++) {
-			SortedIntList coveredLines = probes.get(i);
+		for (int i = 0; i < getProbeCount(); i++) {
 			if (!executedProbes[i]) {
 				continue;
 			}
-			// coveredLines is null if the probe is outside of a method
 			// Happens e.g. for methods generated by Lombok
-			if (coveredLines == null) {
+			if (unmatchedProbes != null && unmatchedProbes.get(i)) {
 				logger.info(sourceFileName + " " + className + " did contain a covered probe " + i + "(of " +
 						executedProbes.length + ") that could not be " +
 						"matched to any method. This could be a bug in the profiler tooling. Please report it back " +
 						"to CQSE.");
 				continue;
 			}
-			if (coveredLines.isEmpty()) {
+			if (probeOffsets[i] == probeOffsets[i + 1]) {
 				logger.debug(
 						sourceFileName + " " + className + " did contain a method with no line information. " +
 								"Does the class contain debug information?");
 				continue;
 			}
-			fileCoverage.addLines(coveredLines);
+			fileCoverage.addLines(lines, probeOffsets[i], probeOffsets[i + 1]);
 		}
 	}
 
+	/** Returns the number of probes of the class. */
+	private int getProbeCount() {
+		return probeOffsets.length - 1;
+	}
+
 	/** Checks that the executed probes is not smaller than the cached probes. */
 	private boolean checkProbeInvariant(boolean[] executedProbes) {
-		return probes.size() > executedProbes.length;
+		return getProbeCount() > executedProbes.length;
 	}
 }
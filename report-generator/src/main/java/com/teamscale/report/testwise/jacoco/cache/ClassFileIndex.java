@@ -0,0 +1,250 @@
+package com.teamscale.report.testwise.jacoco.cache;
+
+import com.teamscale.report.util.ClasspathWildcardIncludeFilter;
+import com.teamscale.report.util.ILogger;
+import org.jacoco.core.internal.ContentTypeDetector;
+import org.jacoco.core.internal.InputStreams;
+import org.jacoco.core.internal.data.CRC64;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Index of the class files in a set of directories and archives, which allows to analyze classes on demand, i.e. only
+ * once coverage of them has to be converted. Building the index does not read the class files. Archives are opened
+ * with {@link ZipFile}, which only reads their central directory, and are kept open until the index is closed, so class
+ * files can be read from them later on.
+ * <p>
+ * Class files in nested archives (e.g. jars in a war) cannot be read on demand and are analyzed right away with the
+ * {@link AnalyzerCache}, just like classes in other content that is not supported by the index (e.g. pack200 files).
+ * <p>
+ * The index must be built by a single thread. Afterwards, classes may be analyzed from multiple threads.
+ */
+public class ClassFileIndex implements Closeable {
+
+	/** The analyzer for the class files. */
+	private final AnalyzerCache analyzer;
+
+	/** The filter for the locations of the class files. */
+	private final ClasspathWildcardIncludeFilter locationIncludeFilter;
+
+	/** The logger. */
+	private final ILogger logger;
+
+	/**
+	 * The found class files by their file name, e.g. Foo$Bar.class. The file name is used as key, because the paths of
+	 * class files may have prefixes like WEB-INF/classes.
+	 */
+	private final Map<String, List<IndexedClassFile>> classFilesByFileName = new HashMap<>();
+
+	/** IDs of classes for which no class file has been found. Prevents searching them again for every test. */
+	private final Set<Long> missingClassIds = ConcurrentHashMap.newKeySet();
+
+	/** The archives that contain indexed class files and are therefore kept open. */
+	private final List<ZipFile> openArchives = new ArrayList<>();
+
+	/** Constructor. */
+	public ClassFileIndex(AnalyzerCache analyzer, ClasspathWildcardIncludeFilter locationIncludeFilter,
+						  ILogger logger) {
+		this.analyzer = analyzer;
+		this.locationIncludeFilter = locationIncludeFilter;
+		this.logger = logger;
+	}
+
+	/**
+	 * Adds all class files in the given directory or archive to the index. Returns the analyses of the content that
+	 * cannot be indexed and has therefore been started right away.
+	 */
+	public List<AnalyzerCache.PendingAnalysis> add(File directoryOrArchive) throws IOException {
+		List<AnalyzerCache.PendingAnalysis> pendingAnalyses = new ArrayList<>();
+		add(directoryOrArchive, directoryOrArchive, pendingAnalyses);
+		return pendingAnalyses;
+	}
+
+	/** Traverses the given file in the same way as {@link org.jacoco.core.analysis.Analyzer#analyzeAll(File)}. */
+	private void add(File root, File file, List<AnalyzerCache.PendingAnalysis> pendingAnalyses) throws IOException {
+		if (file.isDirectory()) {
+			for (File child : file.listFiles()) {
+				add(root, child, pendingAnalyses);
+			}
+			return;
+		}
+
+		String location = file.getPath();
+		if (location.endsWith(".class")) {
+			addClassFile(location, new IndexedClassFile(
+					file.getAbsolutePath().replace(File.separatorChar, '/'), null));
+			return;
+		}
+
+		int contentType;
+		try (InputStream input = new FileInputStream(file)) {
+			contentType = new ContentTypeDetector(input).getType();
+		}
+		// Executable jars start with a shell script, so their content type cannot be detected
+		if (contentType == ContentTypeDetector.ZIPFILE || location.endsWith(".jar")) {
+			ZipFile archive;
+			try {
+				archive = new ZipFile(file);
+			} catch (IOException e) {
+				logger.debug("Cannot index " + location + ", analyzing it right away: " + e.getMessage());
+				pendingAnalyses.add(analyzer.startAnalysis(file));
+				return;
+			}
+			addArchive(root, archive, location, pendingAnalyses);
+		} else if (contentType != ContentTypeDetector.UNKNOWN) {
+			pendingAnalyses.add(analyzer.startAnalysis(file));
+		}
+	}
+
+	/**
+	 * Adds the entries of the given archive. The archive is kept open until {@link #close()} if it contains class files
+	 * and closed right away otherwise.
+	 */
+	private void addArchive(File root, ZipFile archive, String location,
+							List<AnalyzerCache.PendingAnalysis> pendingAnalyses) throws IOException {
+		boolean containsClassFiles = false;
+		try {
+			Enumeration<? extends ZipEntry> entries = archive.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				if (entry.isDirectory()) {
+					continue;
+				}
+				String entryLocation = location + "@" + entry.getName();
+				if (entry.getName().endsWith(".class")) {
+					containsClassFiles |= addClassFile(entryLocation, new IndexedClassFile("/" + entry.getName(),
+							archive));
+					continue;
+				}
+				try (InputStream input = archive.getInputStream(entry)) {
+					ContentTypeDetector detector = new ContentTypeDetector(input);
+					if (detector.getType() != ContentTypeDetector.UNKNOWN) {
+						pendingAnalyses.add(analyzer.startAnalysis(root, detector.getInputStream(), entryLocation));
+					}
+				}
+			}
+		} finally {
+			if (containsClassFiles) {
+				openArchives.add(archive);
+			} else {
+				archive.close();
+			}
+		}
+	}
+
+	/** Adds the given class file if its location is included. Returns whether it has been added. */
+	private boolean addClassFile(String location, IndexedClassFile classFile) {
+		if (!locationIncludeFilter.isIncluded(location)) {
+			logger.debug("Excluding class file " + location);
+			return false;
+		}
+		String fileName = classFile.path.substring(classFile.path.lastIndexOf('/') + 1);
+		classFilesByFileName.computeIfAbsent(fileName, name -> new ArrayList<>(1)).add(classFile);
+		return true;
+	}
+
+	/** Returns whether the index does not contain any class files. */
+	public boolean isEmpty() {
+		return classFilesByFileName.isEmpty();
+	}
+
+	/**
+	 * Searches the class file with the given class ID (CRC64 of the class file) and analyzes it. Returns null if there
+	 * is no such class file.
+	 *
+	 * @param className the name of the class as stored in the bytecode, e.g. com/company/Example
+	 */
+	/* package */ ClassCoverageLookup analyzeClass(long classId, String className) {
+		if (missingClassIds.contains(classId)) {
+			return null;
+		}
+		String pathSuffix = "/" + className + ".class";
+		List<IndexedClassFile> candidates = classFilesByFileName
+				.get(pathSuffix.substring(pathSuffix.lastIndexOf('/') + 1));
+		if (candidates != null) {
+			for (IndexedClassFile candidate : candidates) {
+				if (!candidate.path.endsWith(pathSuffix)) {
+					continue;
+				}
+				try {
+					byte[] source = candidate.read();
+					// Different versions of the class may exist, only the one with a matching ID is the executed one
+					if (CRC64.classId(source) == classId) {
+						return analyzer.analyzeClass(source, classId);
+					}
+				} catch (IOException | RuntimeException e) {
+					logger.error("Failed to analyze class file " + candidate.path + "! Coverage for the class will " +
+							"be ignored.", e);
+				}
+			}
+		}
+		missingClassIds.add(classId);
+		return null;
+	}
+
+	/** Closes all archives. Classes cannot be analyzed anymore afterwards. */
+	@Override
+	public void close() throws IOException {
+		IOException firstException = null;
+		for (ZipFile archive : openArchives) {
+			try {
+				archive.close();
+			} catch (IOException e) {
+				if (firstException == null) {
+					firstException = e;
+				}
+			}
+		}
+		openArchives.clear();
+		if (firstException != null) {
+			throw firstException;
+		}
+	}
+
+	/** A class file in a directory or in an archive. */
+	private static class IndexedClassFile {
+
+		/**
+		 * The absolute path of the file with / as separator. For class files in archives it is the path of the entry
+		 * with a leading /.
+		 */
+		private final String path;
+
+		/** The archive that contains the class file or null for class files in directories. */
+		private final ZipFile archive;
+
+		private IndexedClassFile(String path, ZipFile archive) {
+			this.path = path;
+			this.archive = archive;
+		}
+
+		/** Reads the content of the class file. */
+		private byte[] read() throws IOException {
+			if (archive == null) {
+				try (InputStream input = new FileInputStream(path.replace('/', File.separatorChar))) {
+					return InputStreams.readFully(input);
+				}
+			}
+			ZipEntry entry = archive.getEntry(path.substring(1));
+			if (entry == null) {
+				throw new IOException("Entry " + path + " not found in " + archive.getName());
+			}
+			try (InputStream input = archive.getInputStream(entry)) {
+				return InputStreams.readFully(input);
+			}
+		}
+	}
+}
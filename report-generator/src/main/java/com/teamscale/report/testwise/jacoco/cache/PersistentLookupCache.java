@@ -0,0 +1,332 @@
+package com.teamscale.report.testwise.jacoco.cache;
+
+import com.teamscale.report.util.ILogger;
+import org.jacoco.core.JaCoCo;
+import org.jacoco.core.internal.analysis.StringPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persists {@link ClassCoverageLookup}s in a directory, so that unchanged class files don't need to be analyzed again
+ * by later conversions. Entries are keyed by the class ID (CRC64 of the class file) and stored in a compact binary
+ * format, one file per class. Entries are stored per version of JaCoCo, since its analysis determines the probes.
+ * <p>
+ * The directory may be shared by several processes, e.g. parallel CI jobs on the same machine. Entries are written to a
+ * temporary file first and then atomically moved into place, so readers never see partially written entries. Entries
+ * that cannot be read are treated as missing. Errors never fail the conversion, they only cause the class to be
+ * analyzed again.
+ * <p>
+ * The size of the cache is bounded. The last modified time of the entries is used to evict the least recently used
+ * entries once the cache grows too large.
+ */
+public class PersistentLookupCache {
+
+	/**
+	 * Version of the entry format. Must be increased whenever the format or our part of the analysis changes. Changes
+	 * of JaCoCo's analysis are covered by the JaCoCo version in the directory name.
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	/** Marks the beginning of an entry file ("TSPL"). */
+	private static final int MAGIC = 0x5453504C;
+
+	/** File extension of the entry files. */
+	private static final String ENTRY_EXTENSION = ".lookup";
+
+	/** The last modified time of entries is only updated on a hit if it is older than this. */
+	private static final long TOUCH_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	/** When evicting, entries are deleted until the cache has shrunk to this fraction of its maximum size. */
+	private static final double EVICTION_TARGET_RATIO = 0.8;
+
+	/** The directory that contains the entries of the current format and JaCoCo version. */
+	private final Path directory;
+
+	/** The maximum size of all entries in bytes. */
+	private final long maxSizeInBytes;
+
+	/** The logger. */
+	private final ILogger logger;
+
+	/** Whether entries have been added since the last eviction check, i.e. whether the cache may have grown. */
+	private final AtomicBoolean hasGrown = new AtomicBoolean();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory      The directory to store the entries in. Is created if it does not exist.
+	 * @param maxSizeInBytes The maximum size of all entries
+	 */
+	public PersistentLookupCache(Path directory, long maxSizeInBytes, ILogger logger) {
+		this.directory = directory.resolve("v" + FORMAT_VERSION + "-jacoco-" + JaCoCo.VERSION);
+		this.maxSizeInBytes = maxSizeInBytes;
+		this.logger = logger;
+	}
+
+	/**
+	 * Returns the cached lookup for the given class ID or null if there is no valid entry for it.
+	 *
+	 * @param stringPool pool for the names of the class and its package
+	 */
+	/* package */ ClassCoverageLookup load(long classId, StringPool stringPool) {
+		Path entry = getEntryPath(classId);
+		try {
+			// Entries are only a few hundred bytes, so reading them is cheaper than mapping them
+			ClassCoverageLookup lookup = read(ByteBuffer.wrap(Files.readAllBytes(entry)), classId, stringPool);
+			if (lookup == null) {
+				logger.debug("Ignoring invalid probe cache entry " + entry);
+				return null;
+			}
+			touch(entry);
+			return lookup;
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException | RuntimeException e) {
+			logger.debug("Failed to read probe cache entry " + entry + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/** Stores the given lookup for the given class ID. The lookup must already contain all probes. */
+	/* package */ void store(long classId, ClassCoverageLookup lookup) {
+		Path entry = getEntryPath(classId);
+		Path temporaryFile = entry.resolveSibling(entry.getFileName() + "." + UUID.randomUUID() + ".tmp");
+		try {
+			Files.createDirectories(entry.getParent());
+			try (OutputStream output = Files.newOutputStream(temporaryFile)) {
+				output.write(serialize(classId, lookup));
+			}
+			moveAtomically(temporaryFile, entry);
+			hasGrown.set(true);
+		} catch (IOException | RuntimeException e) {
+			logger.debug("Failed to write probe cache entry " + entry + ": " + e.getMessage());
+			try {
+				Files.deleteIfExists(temporaryFile);
+			} catch (IOException ignored) {
+				// best effort cleanup
+			}
+		}
+	}
+
+	private static void moveAtomically(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Marks the entry as recently used. Only done if the last update is a while ago to avoid writing file metadata on
+	 * every read.
+	 */
+	private void touch(Path entry) {
+		long now = System.currentTimeMillis();
+		try {
+			if (now - Files.getLastModifiedTime(entry).toMillis() > TOUCH_INTERVAL_MILLIS) {
+				Files.setLastModifiedTime(entry, FileTime.fromMillis(now));
+			}
+		} catch (IOException e) {
+			// The entry may have been evicted by another process in the meantime
+			logger.debug("Failed to update the last modified time of probe cache entry " + entry + ": " +
+					e.getMessage());
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries if the cache has grown beyond its maximum size. Only checks the size if
+	 * entries have been added since the last call.
+	 */
+	public void evictIfTooLarge() {
+		if (!hasGrown.getAndSet(false) || !Files.isDirectory(directory)) {
+			return;
+		}
+		List<CacheEntry> entries;
+		try (Stream<Path> paths = Files.walk(directory)) {
+			entries = paths.filter(path -> path.getFileName().toString().endsWith(ENTRY_EXTENSION))
+					.map(CacheEntry::read).filter(entry -> entry != null).collect(Collectors.toList());
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Failed to determine the size of the probe cache in " + directory, e);
+			return;
+		}
+
+		long totalSize = entries.stream().mapToLong(entry -> entry.size).sum();
+		if (totalSize <= maxSizeInBytes) {
+			return;
+		}
+		entries.sort(Comparator.comparing(entry -> entry.lastModified));
+		long targetSize = (long) (maxSizeInBytes * EVICTION_TARGET_RATIO);
+		int deletedEntries = 0;
+		for (CacheEntry entry : entries) {
+			if (totalSize <= targetSize) {
+				break;
+			}
+			try {
+				// Another process may already have deleted the entry
+				Files.deleteIfExists(entry.path);
+				deletedEntries++;
+			} catch (IOException e) {
+				// e.g. on Windows, if the entry is currently read by another process
+				logger.debug("Failed to delete probe cache entry " + entry.path + ": " + e.getMessage());
+			}
+			totalSize -= entry.size;
+		}
+		logger.debug("Evicted " + deletedEntries + " entries from the probe cache in " + directory);
+	}
+
+	/** Returns the file of the entry for the given class ID. Entries are spread over 256 subdirectories. */
+	private Path getEntryPath(long classId) {
+		String hexId = String.format("%016x", classId);
+		return directory.resolve(hexId.substring(0, 2)).resolve(hexId + ENTRY_EXTENSION);
+	}
+
+	/** Serializes the given lookup. All numbers are written in big-endian order. */
+	private static byte[] serialize(long classId, ClassCoverageLookup lookup) throws IOException {
+		int[] probeOffsets = lookup.getProbeOffsets();
+		int[] lines = lookup.getLines();
+		BitSet unmatchedProbes = lookup.getUnmatchedProbes();
+		if (probeOffsets == null) {
+			throw new IllegalStateException("Lookup for class " + lookup.getClassName() + " is not complete");
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeInt(MAGIC);
+		output.writeInt(FORMAT_VERSION);
+		output.writeLong(classId);
+		writeString(output, lookup.getClassName());
+		writeString(output, lookup.getSourceFileName());
+		output.writeInt(probeOffsets.length);
+		for (int probeOffset : probeOffsets) {
+			output.writeInt(probeOffset);
+		}
+		output.writeInt(lines.length);
+		for (int line : lines) {
+			output.writeInt(line);
+		}
+		if (unmatchedProbes == null) {
+			output.writeInt(0);
+		} else {
+			output.writeInt(unmatchedProbes.cardinality());
+			for (int i = unmatchedProbes.nextSetBit(0); i >= 0; i = unmatchedProbes.nextSetBit(i + 1)) {
+				output.writeInt(i);
+			}
+		}
+		output.flush();
+		return bytes.toByteArray();
+	}
+
+	/** Writes the given string as UTF-8 prefixed with its length. Null is written as length -1. */
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		if (value == null) {
+			output.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	/** Reads a lookup written by {@link #serialize(long, ClassCoverageLookup)} or returns null if it is not valid. */
+	private static ClassCoverageLookup read(ByteBuffer buffer, long classId, StringPool stringPool) {
+		if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getLong() != classId) {
+			return null;
+		}
+		String className = stringPool.get(readString(buffer));
+		String sourceFileName = readString(buffer);
+		int[] probeOffsets = readInts(buffer);
+		int[] lines = readInts(buffer);
+		int[] unmatchedProbeIndices = readInts(buffer);
+		if (className == null || probeOffsets == null || probeOffsets.length == 0 || lines == null ||
+				unmatchedProbeIndices == null || buffer.hasRemaining()) {
+			return null;
+		}
+		BitSet unmatchedProbes = null;
+		if (unmatchedProbeIndices.length > 0) {
+			unmatchedProbes = new BitSet();
+			for (int index : unmatchedProbeIndices) {
+				if (index < 0) {
+					return null;
+				}
+				unmatchedProbes.set(index);
+			}
+		}
+		return new ClassCoverageLookup(className, stringPool.get(ClassCoverageLookup.getPackageName(className)),
+				sourceFileName, probeOffsets, lines, unmatchedProbes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(DataOutputStream, String)}. Since null is a valid value, a length
+	 * that exceeds the remaining bytes of a corrupt entry is reported with a {@link BufferUnderflowException}, before
+	 * anything is allocated.
+	 */
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Reads a length-prefixed array of ints or returns null if the length does not fit into the remaining bytes. */
+	private static int[] readInts(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining() / Integer.BYTES) {
+			return null;
+		}
+		int[] values = new int[length];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + values.length * Integer.BYTES);
+		return values;
+	}
+
+	/** The size and the last modified time of an entry file. */
+	private static class CacheEntry {
+
+		private final Path path;
+		private final long size;
+		private final FileTime lastModified;
+
+		private CacheEntry(Path path, long size, FileTime lastModified) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		/** Reads the attributes of the given entry or returns null if it has been deleted in the meantime. */
+		private static CacheEntry read(Path path) {
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				return new CacheEntry(path, attributes.size(), attributes.lastModifiedTime());
+			} catch (IOException e) {
+				return null;
+			}
+		}
+	}
+}
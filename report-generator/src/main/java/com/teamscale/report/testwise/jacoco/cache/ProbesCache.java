@@ -4,32 +4,54 @@ import com.teamscale.report.EDuplicateClassFileBehavior;
 import com.teamscale.report.testwise.model.builder.FileCoverageBuilder;
 import com.teamscale.report.util.ClasspathWildcardIncludeFilter;
 import com.teamscale.report.util.ILogger;
+import com.teamscale.report.util.LongObjectHashMap;
 import org.jacoco.core.data.ExecutionData;
 import org.jacoco.report.JavaNames;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * Holds {@link ClassCoverageLookup}s for all analyzed classes.
+ * Holds {@link ClassCoverageLookup}s for all analyzed classes. Can be queried from multiple threads.
  */
 public class ProbesCache {
 
 	/** The logger. */
 	private final ILogger logger;
 
-	/** A mapping from class ID (CRC64 of the class file) to {@link ClassCoverageLookup}. */
-	private final HashMap<Long, ClassCoverageLookup> classCoverageLookups = new HashMap<>();
+	/**
+	 * A mapping from class ID (CRC64 of the class file) to {@link ClassCoverageLookup}. Uses primitive keys, since
+	 * there is one entry per class of the application.
+	 */
+	private final LongObjectHashMap<ClassCoverageLookup> classCoverageLookups = new LongObjectHashMap<>();
 
 	/** Holds all fully-qualified class names that are already contained in the cache. */
 	private final Set<String> containedClasses = new HashSet<>();
 
+	/** Guards {@link #classCoverageLookups} and {@link #containedClasses}. */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
 	/** Whether to ignore non-identical duplicates of class files. */
 	private final EDuplicateClassFileBehavior duplicateClassFileBehavior;
 
 	private final ClassNotFoundLogger classNotFoundLogger;
 
+	/**
+	 * Index of the class files from which classes are analyzed once coverage of them is converted or null if all
+	 * classes are analyzed upfront.
+	 */
+	private ClassFileIndex classFileIndex;
+
+	/**
+	 * Locks of the classes that are currently analyzed on demand by their class ID. Prevents that the same class is
+	 * analyzed by several threads, while different classes are analyzed in parallel.
+	 */
+	private final ConcurrentMap<Long, Object> onDemandAnalysisLocks = new ConcurrentHashMap<>();
+
 	/** Constructor. */
 	public ProbesCache(ILogger logger, EDuplicateClassFileBehavior duplicateClassFileBehavior) {
 		this.logger = logger;
@@ -39,6 +61,26 @@ public class ProbesCache {
 
 	/** Adds a new class entry to the cache and returns its {@link ClassCoverageLookup}. */
 	public ClassCoverageLookup createClass(long classId, String className) {
+		ClassCoverageLookup classCoverageLookup = new ClassCoverageLookup(className);
+		addClass(classId, classCoverageLookup);
+		return classCoverageLookup;
+	}
+
+	/**
+	 * Adds the given, already filled {@link ClassCoverageLookup} to the cache. Warns or fails according to the {@link
+	 * #duplicateClassFileBehavior} if a different class file with the same name has already been added.
+	 */
+	public void addClass(long classId, ClassCoverageLookup classCoverageLookup) {
+		lock.writeLock().lock();
+		try {
+			addClassLocked(classId, classCoverageLookup);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void addClassLocked(long classId, ClassCoverageLookup classCoverageLookup) {
+		String className = classCoverageLookup.getClassName();
 		if (containedClasses.contains(className)) {
 			if (duplicateClassFileBehavior != EDuplicateClassFileBehavior.IGNORE) {
 				logger.warn("Non-identical class file for class " + className + "."
@@ -53,14 +95,30 @@ public class ProbesCache {
 			}
 		}
 		containedClasses.add(className);
-		ClassCoverageLookup classCoverageLookup = new ClassCoverageLookup(className);
 		classCoverageLookups.put(classId, classCoverageLookup);
-		return classCoverageLookup;
+	}
+
+	/**
+	 * Sets the index from which classes that are not contained in the cache yet are analyzed once coverage of them is
+	 * converted.
+	 */
+	public void setClassFileIndex(ClassFileIndex classFileIndex) {
+		this.classFileIndex = classFileIndex;
 	}
 
 	/** Returns whether a class with the given class ID has already been analyzed. */
 	public boolean containsClassId(long classId) {
-		return classCoverageLookups.containsKey(classId);
+		return getLookup(classId) != null;
+	}
+
+	/** Returns the lookup for the given class ID or null if the class has not been analyzed. */
+	private ClassCoverageLookup getLookup(long classId) {
+		lock.readLock().lock();
+		try {
+			return classCoverageLookups.get(classId);
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
 	/**
@@ -69,8 +127,15 @@ public class ProbesCache {
 	 */
 	public FileCoverageBuilder getCoverage(ExecutionData executionData,
 										   ClasspathWildcardIncludeFilter locationIncludeFilter) throws CoverageGenerationException {
-		long classId = executionData.getId();
-		if (!containsClassId(classId)) {
+		ClassCoverageLookup classCoverageLookup = getLookup(executionData.getId());
+		if (classCoverageLookup == null && classFileIndex != null) {
+			if (!executionData.hasHits()) {
+				// Classes are only analyzed on demand once they have been executed
+				return null;
+			}
+			classCoverageLookup = analyzeOnDemand(executionData);
+		}
+		if (classCoverageLookup == null) {
 			String fullyQualifiedClassName = new JavaNames().getQualifiedClassName(executionData.getName());
 			if (locationIncludeFilter.isIncluded(fullyQualifiedClassName + ".class")) {
 				classNotFoundLogger.log(fullyQualifiedClassName);
@@ -81,12 +146,47 @@ public class ProbesCache {
 			return null;
 		}
 
-		return classCoverageLookups.get(classId).getFileCoverage(executionData, logger);
+		return classCoverageLookup.getFileCoverage(executionData, logger);
+	}
+
+	/**
+	 * Analyzes the class of the given {@link ExecutionData} with the {@link #classFileIndex} and adds it to the cache.
+	 * Returns null if the index does not contain the class.
+	 */
+	private ClassCoverageLookup analyzeOnDemand(ExecutionData executionData) throws CoverageGenerationException {
+		long classId = executionData.getId();
+		Object classLock = onDemandAnalysisLocks.computeIfAbsent(classId, id -> new Object());
+		try {
+			synchronized (classLock) {
+				// Another thread may have analyzed the class in the meantime
+				ClassCoverageLookup classCoverageLookup = getLookup(classId);
+				if (classCoverageLookup != null) {
+					return classCoverageLookup;
+				}
+				classCoverageLookup = classFileIndex.analyzeClass(classId, executionData.getName());
+				if (classCoverageLookup != null) {
+					try {
+						addClass(classId, classCoverageLookup);
+					} catch (IllegalStateException e) {
+						throw new CoverageGenerationException(e.getMessage());
+					}
+				}
+				return classCoverageLookup;
+			}
+		} finally {
+			// Threads that arrive later find the lookup in the cache or the class in the index's missing classes
+			onDemandAnalysisLocks.remove(classId, classLock);
+		}
 	}
 
 	/** Returns true if the cache does not contain coverage for any class. */
 	public boolean isEmpty() {
-		return classCoverageLookups.isEmpty();
+		lock.readLock().lock();
+		try {
+			return classCoverageLookups.isEmpty();
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
 	/** Prints a the collected class not found messages. */
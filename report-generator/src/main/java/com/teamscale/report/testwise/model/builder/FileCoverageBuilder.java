@@ -18,9 +18,9 @@ public class FileCoverageBuilder {
 	private final String fileName;
 
 	/**
-	 * A list of line numbers that have been covered. Using a set here is too memory intensive.
+	 * The line numbers that have been covered. Using a set of boxed integers here is too memory intensive.
 	 */
-	private final SortedIntList coveredLines = new SortedIntList();
+	private final LineSet coveredLines = new LineSet();
 
 	/** Constructor. */
 	public FileCoverageBuilder(String path, String fileName) {
@@ -45,9 +45,7 @@ public class FileCoverageBuilder {
 
 	/** Adds a line range as covered. */
 	public void addLineRange(int start, int end) {
-		for (int i = start; i <= end; i++) {
-			coveredLines.add(i);
-		}
+		coveredLines.addRange(start, end);
 	}
 
 	/** Adds set of lines as covered. */
@@ -55,6 +53,11 @@ public class FileCoverageBuilder {
 		coveredLines.addAll(range);
 	}
 
+	/** Adds the lines from the given index (inclusive) to the given index (exclusive) of the given array as covered. */
+	public void addLines(int[] lines, int fromIndex, int toIndex) {
+		coveredLines.addAll(lines, fromIndex, toIndex);
+	}
+
 	/** Merges the list of ranges into the current list. */
 	public void merge(FileCoverageBuilder other) {
 		if (!other.fileName.equals(fileName) || !other.path.equals(path)) {
@@ -95,13 +98,13 @@ public class FileCoverageBuilder {
 	 * sorted. Individual ranges are separated by commas. E.g. 1-5,7,9-11.
 	 */
 	public String computeCompactifiedRangesAsString() {
-		List<LineRange> coveredRanges = compactifyToRanges(coveredLines);
+		List<LineRange> coveredRanges = coveredLines.toRanges();
 		return coveredRanges.stream().map(LineRange::toReportString).collect(Collectors.joining(","));
 	}
 
 	/** Returns true if there is no coverage for the file yet. */
 	public boolean isEmpty() {
-		return coveredLines.size() == 0;
+		return coveredLines.isEmpty();
 	}
 
 	/** Builds the {@link FileCoverage} object, which is serialized into the report. */
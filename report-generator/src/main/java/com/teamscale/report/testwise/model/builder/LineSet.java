@@ -0,0 +1,127 @@
+package com.teamscale.report.testwise.model.builder;
+
+import com.teamscale.report.testwise.model.LineRange;
+import com.teamscale.report.util.SortedIntList;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Set of line numbers that supports fast merging. Lines are stored in a {@link BitSet}, so merging two sets is a
+ * word-wise OR and continuous ranges can be extracted directly. Since the size of a bit set depends on the largest line
+ * number, sets that contain lines beyond {@link #MAX_DENSE_LINE} (e.g. of huge generated files) switch to a sparse
+ * {@link SortedIntList}.
+ */
+public class LineSet {
+
+	/** The largest line that is stored in the bit set. Bounds the bit set to 8 KiB. */
+	/* package */ static final int MAX_DENSE_LINE = (1 << 16) - 1;
+
+	/** The lines as long as all lines are between 0 and {@link #MAX_DENSE_LINE}, null afterwards. */
+	private BitSet denseLines = new BitSet(0);
+
+	/** The lines once a line outside of the range of {@link #denseLines} has been added, null before. */
+	private SortedIntList sparseLines;
+
+	/** Adds the given line. */
+	public void add(int line) {
+		if (denseLines != null && isDense(line)) {
+			denseLines.set(line);
+			return;
+		}
+		switchToSparseLines().add(line);
+	}
+
+	/** Adds all lines from start to end (both inclusive). */
+	public void addRange(int start, int end) {
+		if (start > end) {
+			return;
+		}
+		if (denseLines != null && isDense(start) && isDense(end)) {
+			denseLines.set(start, end + 1);
+			return;
+		}
+		SortedIntList lines = switchToSparseLines();
+		for (int line = start; line <= end; line++) {
+			lines.add(line);
+		}
+	}
+
+	/** Adds the lines from the given index (inclusive) to the given index (exclusive) of the given array. */
+	public void addAll(int[] lines, int fromIndex, int toIndex) {
+		for (int i = fromIndex; i < toIndex; i++) {
+			add(lines[i]);
+		}
+	}
+
+	/** Adds all lines of the given list. */
+	public void addAll(SortedIntList lines) {
+		for (int i = 0; i < lines.size(); i++) {
+			add(lines.get(i));
+		}
+	}
+
+	/** Adds all lines of the given set. */
+	public void addAll(LineSet other) {
+		if (denseLines != null && other.denseLines != null) {
+			denseLines.or(other.denseLines);
+			return;
+		}
+		if (other.denseLines != null) {
+			SortedIntList lines = switchToSparseLines();
+			for (int line = other.denseLines.nextSetBit(0); line >= 0; line = other.denseLines.nextSetBit(line + 1)) {
+				lines.add(line);
+			}
+			return;
+		}
+		addAll(other.sparseLines);
+	}
+
+	/** Returns whether the set does not contain any lines. */
+	public boolean isEmpty() {
+		if (denseLines != null) {
+			return denseLines.isEmpty();
+		}
+		return sparseLines.isEmpty();
+	}
+
+	/** Returns the number of lines in the set. */
+	public int size() {
+		if (denseLines != null) {
+			return denseLines.cardinality();
+		}
+		return sparseLines.size();
+	}
+
+	/** Returns the lines as sorted list of ranges in which neighboring lines are merged, e.g. [1-3, 5, 7-8]. */
+	public List<LineRange> toRanges() {
+		if (denseLines == null) {
+			return FileCoverageBuilder.compactifyToRanges(sparseLines);
+		}
+		List<LineRange> ranges = new ArrayList<>();
+		int start = denseLines.nextSetBit(0);
+		while (start >= 0) {
+			int end = denseLines.nextClearBit(start);
+			ranges.add(new LineRange(start, end - 1));
+			start = denseLines.nextSetBit(end);
+		}
+		return ranges;
+	}
+
+	private static boolean isDense(int line) {
+		return line >= 0 && line <= MAX_DENSE_LINE;
+	}
+
+	/** Moves the lines from the bit set to a sparse list if that has not happened yet and returns the list. */
+	private SortedIntList switchToSparseLines() {
+		if (sparseLines == null) {
+			sparseLines = new SortedIntList();
+			for (int line = denseLines.nextSetBit(0); line >= 0; line = denseLines.nextSetBit(line + 1)) {
+				sparseLines.add(line);
+			}
+			denseLines = null;
+		}
+		return sparseLines;
+	}
+}
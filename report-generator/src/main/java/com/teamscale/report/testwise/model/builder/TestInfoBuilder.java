@@ -76,6 +76,18 @@ public class TestInfoBuilder {
 		this.coverage = coverage;
 	}
 
+	/**
+	 * Adds the given coverage to the coverage of this test. Parameterized tests have one coverage per invocation, which
+	 * all belong to the same test.
+	 */
+	public void addCoverage(TestCoverageBuilder coverage) {
+		if (this.coverage == null) {
+			this.coverage = coverage;
+		} else {
+			this.coverage.addAll(coverage.getFiles());
+		}
+	}
+
 	/** Builds a {@link TestInfo} object of the data in this container. */
 	public TestInfo build() {
 		TestInfo testInfo = new TestInfo(uniformPath, sourcePath, content, durationSeconds, result, message);
@@ -1,14 +1,20 @@
 package com.teamscale.report.testwise.model.builder;
 
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonWriter;
+import com.squareup.moshi.Moshi;
 import com.teamscale.client.TestDetails;
 import com.teamscale.report.testwise.model.TestExecution;
 import com.teamscale.report.testwise.model.TestInfo;
 import com.teamscale.report.testwise.model.TestwiseCoverageReport;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -20,7 +26,8 @@ public class TestwiseCoverageReportBuilder {
 
 	/**
 	 * Adds the {@link TestCoverageBuilder} to the map. If there is already a test with the same ID the coverage is
-	 * merged.
+	 * merged. This is the case for the invocations of a parameterized test, whose uniform paths only differ in their
+	 * arguments.
 	 */
 	public static TestwiseCoverageReport createFrom(
 			Collection<? extends TestDetails> testDetailsList,
@@ -28,26 +35,76 @@ public class TestwiseCoverageReportBuilder {
 			Collection<TestExecution> testExecutions
 	) {
 		TestwiseCoverageReportBuilder report = new TestwiseCoverageReportBuilder();
-		for (TestDetails testDetails : testDetailsList) {
-			TestInfoBuilder container = new TestInfoBuilder(testDetails.uniformPath);
-			container.setDetails(testDetails);
-			report.tests.put(testDetails.uniformPath, container);
-		}
+		report.addDetails(testDetailsList);
 		for (TestCoverageBuilder coverage : testCoverage) {
 			TestInfoBuilder container = resolveUniformPath(report, coverage.getUniformPath());
 			if (container == null) {
 				continue;
 			}
-			container.setCoverage(coverage);
+			container.addCoverage(coverage);
+		}
+		report.addExecutions(testExecutions);
+		return report.build();
+	}
+
+	/**
+	 * Writes the same report as {@link #createFrom(Collection, Collection, Collection)} to the given writer, one test
+	 * after the other. The coverage of a test is loaded with the given loader right before the test is written, so only
+	 * the coverage of a single test is kept in memory at a time.
+	 *
+	 * @param coveredUniformPaths The uniform paths for which the loader provides coverage.
+	 */
+	public static void writeTo(
+			JsonWriter writer,
+			Collection<? extends TestDetails> testDetailsList,
+			Collection<String> coveredUniformPaths,
+			ICoverageLoader coverageLoader,
+			Collection<TestExecution> testExecutions
+	) throws IOException {
+		TestwiseCoverageReportBuilder report = new TestwiseCoverageReportBuilder();
+		report.addDetails(testDetailsList);
+		Map<TestInfoBuilder, List<String>> coveredUniformPathsOfContainers = new IdentityHashMap<>();
+		for (String uniformPath : coveredUniformPaths) {
+			TestInfoBuilder container = resolveUniformPath(report, uniformPath);
+			if (container == null) {
+				continue;
+			}
+			coveredUniformPathsOfContainers.computeIfAbsent(container, key -> new ArrayList<>()).add(uniformPath);
+		}
+		report.addExecutions(testExecutions);
+
+		JsonAdapter<TestInfo> testInfoJsonAdapter = new Moshi.Builder().build().adapter(TestInfo.class);
+		writer.beginObject();
+		writer.name("tests");
+		writer.beginArray();
+		for (TestInfoBuilder container : report.getSortedTestInfoBuilders()) {
+			for (String uniformPath : coveredUniformPathsOfContainers
+					.getOrDefault(container, Collections.emptyList())) {
+				container.addCoverage(coverageLoader.load(uniformPath));
+			}
+			testInfoJsonAdapter.toJson(writer, container.build());
+			container.setCoverage(null);
 		}
+		writer.endArray();
+		writer.endObject();
+	}
+
+	private void addDetails(Collection<? extends TestDetails> testDetailsList) {
+		for (TestDetails testDetails : testDetailsList) {
+			TestInfoBuilder container = new TestInfoBuilder(testDetails.uniformPath);
+			container.setDetails(testDetails);
+			tests.put(testDetails.uniformPath, container);
+		}
+	}
+
+	private void addExecutions(Collection<TestExecution> testExecutions) {
 		for (TestExecution testExecution : testExecutions) {
-			TestInfoBuilder container = resolveUniformPath(report, testExecution.getUniformPath());
+			TestInfoBuilder container = resolveUniformPath(this, testExecution.getUniformPath());
 			if (container == null) {
 				continue;
 			}
 			container.setExecution(testExecution);
 		}
-		return report.build();
 	}
 
 	private static TestInfoBuilder resolveUniformPath(TestwiseCoverageReportBuilder report, String uniformPath) {
@@ -70,11 +127,15 @@ public class TestwiseCoverageReportBuilder {
 		return uniformPath.replaceFirst("(.*\\))\\[.*]", "$1");
 	}
 
-	private TestwiseCoverageReport build() {
-		TestwiseCoverageReport report = new TestwiseCoverageReport();
+	private List<TestInfoBuilder> getSortedTestInfoBuilders() {
 		List<TestInfoBuilder> testInfoBuilders = new ArrayList<>(tests.values());
 		testInfoBuilders.sort(Comparator.comparing(TestInfoBuilder::getUniformPath));
-		for (TestInfoBuilder testInfoBuilder : testInfoBuilders) {
+		return testInfoBuilders;
+	}
+
+	private TestwiseCoverageReport build() {
+		TestwiseCoverageReport report = new TestwiseCoverageReport();
+		for (TestInfoBuilder testInfoBuilder : getSortedTestInfoBuilders()) {
 			TestInfo testInfo = testInfoBuilder.build();
 			if (testInfo == null) {
 				System.err.println("No coverage for test '" + testInfoBuilder.getUniformPath() + "'");
@@ -84,4 +145,12 @@ public class TestwiseCoverageReportBuilder {
 		}
 		return report;
 	}
+
+	/** Loads the coverage of a single test while the report is written. */
+	@FunctionalInterface
+	public interface ICoverageLoader {
+
+		/** Returns the coverage of the test with the given uniform path. */
+		TestCoverageBuilder load(String uniformPath) throws IOException;
+	}
 }
@@ -6,12 +6,11 @@
 package com.teamscale.report.util;
 
 import com.teamscale.client.AntPatternUtils;
+import com.teamscale.client.CombinedAntPatternMatcher;
 import com.teamscale.client.FileSystemUtils;
 
 import java.util.List;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * Applies ANT include and exclude patterns to paths.
@@ -19,17 +18,15 @@ import java.util.stream.Collectors;
 public class AntPatternIncludeFilter implements Predicate<String> {
 
 	/** The include filters. Empty means include everything. */
-	private final List<Pattern> locationIncludeFilters;
+	private final CombinedAntPatternMatcher locationIncludeFilters;
 
 	/** The exclude filters. Empty means exclude nothing. */
-	private final List<Pattern> locationExcludeFilters;
+	private final CombinedAntPatternMatcher locationExcludeFilters;
 
 	/** Constructor. */
 	public AntPatternIncludeFilter(List<String> locationIncludeFilters, List<String> locationExcludeFilters) {
-		this.locationIncludeFilters = locationIncludeFilters.stream().map(
-				filter -> AntPatternUtils.convertPattern(filter, false)).collect(Collectors.toList());
-		this.locationExcludeFilters = locationExcludeFilters.stream().map(
-				filter -> AntPatternUtils.convertPattern(filter, false)).collect(Collectors.toList());
+		this.locationIncludeFilters = AntPatternUtils.convertPatterns(locationIncludeFilters, false);
+		this.locationExcludeFilters = AntPatternUtils.convertPatterns(locationExcludeFilters, false);
 	}
 
 	/** {@inheritDoc} */
@@ -46,12 +43,11 @@ public class AntPatternIncludeFilter implements Predicate<String> {
 	 */
 	private boolean isFiltered(String location) {
 		// first check includes
-		if (!locationIncludeFilters.isEmpty()
-				&& locationIncludeFilters.stream().noneMatch(filter -> filter.matcher(location).matches())) {
+		if (!locationIncludeFilters.isEmpty() && !locationIncludeFilters.matchesAny(location)) {
 			return true;
 		}
 		// only if they match, check excludes
-		return locationExcludeFilters.stream().anyMatch(filter -> filter.matcher(location).matches());
+		return locationExcludeFilters.matchesAny(location);
 	}
 
 }
@@ -1,25 +1,41 @@
 package com.teamscale.report.util;
 
-import com.teamscale.client.FileSystemUtils;
-import com.teamscale.client.StringUtils;
 import org.jacoco.core.runtime.WildcardMatcher;
-import org.jacoco.report.JavaNames;
 
 /***
  * Tests given class file paths against call name patterns.
  * E.g. "/some/file/path/test.jar@my/package/Test.class" matches "my/package/*" or "my/package/Test"
+ * <p>
+ * This is called for every analyzed and loaded class, so the patterns are compiled into a
+ * {@link CompiledWildcardMatcher}, the class name is matched without extracting it from the path and the results for
+ * recently tested paths are cached.
  */
 public class ClasspathWildcardIncludeFilter {
 
+	/** Separates the path of an archive from the path of a class file inside of it. */
+	private static final char ARCHIVE_SEPARATOR = '@';
+
+	/** The extension of class files, which is not part of the class name. */
+	private static final String CLASS_FILE_EXTENSION = ".class";
+
+	/** The number of recently tested paths whose results are cached. Must be a power of two. */
+	private static final int CACHE_SIZE = 1024;
+
 	/**
 	 * Include patterns to apply during JaCoCo's traversal of class files. If null then everything is included.
 	 */
-	private WildcardMatcher locationIncludeFilters = null;
+	private final CompiledWildcardMatcher locationIncludeFilters;
 
 	/**
 	 * Exclude patterns to apply during JaCoCo's traversal of class files. If null then nothing is excluded.
 	 */
-	private WildcardMatcher locationExcludeFilters = null;
+	private final CompiledWildcardMatcher locationExcludeFilters;
+
+	/**
+	 * The results for recently tested paths by the hash code of the path. Entries are immutable, so they can be
+	 * replaced concurrently without locking. A slot holds the most recent path with its hash code.
+	 */
+	private final CachedResult[] cachedResults = new CachedResult[CACHE_SIZE];
 
 	/**
 	 * Constructor.
@@ -30,25 +46,45 @@ public class ClasspathWildcardIncludeFilter {
 	 *                               or null for no excludes.See {@link WildcardMatcher} for the pattern syntax.
 	 */
 	public ClasspathWildcardIncludeFilter(String locationIncludeFilters, String locationExcludeFilters) {
-		if (locationIncludeFilters != null && !locationIncludeFilters.isEmpty()) {
-			this.locationIncludeFilters = new WildcardMatcher(locationIncludeFilters);
-		}
-		if (locationExcludeFilters != null && !locationExcludeFilters.isEmpty()) {
-			this.locationExcludeFilters = new WildcardMatcher(locationExcludeFilters);
+		this.locationIncludeFilters = compile(locationIncludeFilters);
+		this.locationExcludeFilters = compile(locationExcludeFilters);
+	}
+
+	private static CompiledWildcardMatcher compile(String filters) {
+		if (filters == null || filters.isEmpty()) {
+			return null;
 		}
+		return new CompiledWildcardMatcher(filters);
 	}
 
 	/**
 	 * Tests if the given file path (e.g. "/some/file/path/test.jar@my/package/Test.class" or "org/mypackage/MyClass"
 	 */
 	public boolean isIncluded(String path) {
-		String className = getClassName(path);
+		if (locationIncludeFilters == null && locationExcludeFilters == null) {
+			return true;
+		}
+
+		int slot = path.hashCode() & (CACHE_SIZE - 1);
+		CachedResult cachedResult = cachedResults[slot];
+		if (cachedResult != null && cachedResult.path.equals(path)) {
+			return cachedResult.isIncluded;
+		}
+
+		boolean isIncluded = computeIsIncluded(path);
+		cachedResults[slot] = new CachedResult(path, isIncluded);
+		return isIncluded;
+	}
+
+	private boolean computeIsIncluded(String path) {
+		int end = getClassNameEnd(path);
+		int start = getClassNameStart(path, end);
 		// first check includes
-		if (locationIncludeFilters != null && !locationIncludeFilters.matches(className)) {
+		if (locationIncludeFilters != null && !locationIncludeFilters.matches(path, start, end)) {
 			return false;
 		}
 		// if they match, check excludes
-		return locationExcludeFilters == null || !locationExcludeFilters.matches(className);
+		return locationExcludeFilters == null || !locationExcludeFilters.matches(path, start, end);
 	}
 
 	/**
@@ -57,15 +93,44 @@ public class ClasspathWildcardIncludeFilter {
 	 */
 	/* package */
 	static String getClassName(String path) {
-		String[] parts = FileSystemUtils.normalizeSeparators(path).split("@");
-		if (parts.length == 0) {
-			return "";
+		int end = getClassNameEnd(path);
+		int start = getClassNameStart(path, end);
+		StringBuilder className = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			className.append(CompiledWildcardMatcher.toClassNameChar(path.charAt(i)));
+		}
+		return className.toString();
+	}
+
+	/** Returns the end index (exclusive) of the class name in the path, i.e. without a .class extension. */
+	private static int getClassNameEnd(String path) {
+		int end = path.length();
+		if (path.regionMatches(true, end - CLASS_FILE_EXTENSION.length(), CLASS_FILE_EXTENSION, 0,
+				CLASS_FILE_EXTENSION.length())) {
+			return end - CLASS_FILE_EXTENSION.length();
+		}
+		// Trailing separators are ignored, like the trailing empty parts when splitting the path at them
+		while (end > 0 && path.charAt(end - 1) == ARCHIVE_SEPARATOR) {
+			end--;
 		}
+		return end;
+	}
+
+	/** Returns the start index of the class name in the path, i.e. the index after the last archive separator. */
+	private static int getClassNameStart(String path, int end) {
+		return path.lastIndexOf(ARCHIVE_SEPARATOR, end - 1) + 1;
+	}
+
+	/** The result of testing a path. */
+	private static class CachedResult {
+
+		private final String path;
+
+		private final boolean isIncluded;
 
-		String pathInsideJar = parts[parts.length - 1];
-		if (path.toLowerCase().endsWith(".class")) {
-			pathInsideJar = StringUtils.removeLastPart(pathInsideJar, '.');
+		private CachedResult(String path, boolean isIncluded) {
+			this.path = path;
+			this.isIncluded = isIncluded;
 		}
-		return new JavaNames().getQualifiedClassName(pathInsideJar);
 	}
 }
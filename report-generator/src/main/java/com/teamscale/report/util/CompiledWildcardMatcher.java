@@ -0,0 +1,132 @@
+package com.teamscale.report.util;
+
+import com.teamscale.client.PrefixTrieNode;
+import org.jacoco.core.runtime.WildcardMatcher;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Matches class names against a colon separated list of wildcard patterns with the same semantics as JaCoCo's {@link
+ * WildcardMatcher}: <code>*</code> matches any number of characters and <code>?</code> matches a single character.
+ * Instead of one large regex, the patterns are stored in a trie over their literal prefixes, i.e. the part before the
+ * first wildcard, see {@link PrefixTrieNode}. Thus, a class name is only matched against the remainder of the patterns
+ * whose prefix it starts with, which is usually a small fraction of all patterns.
+ * <p>
+ * The class name is matched where it appears inside a class file path, e.g. <code>com/foo/Bar$Baz</code> in
+ * <code>/app.jar@com/foo/Bar$Baz.class</code>, so matching does not allocate any memory. The separators of the path
+ * are treated like the dots of the class name.
+ */
+/* package */ class CompiledWildcardMatcher {
+
+	/** The node of the empty prefix. */
+	private final PrefixTrieNode<String> root = new PrefixTrieNode<>();
+
+	/** Constructor. */
+	/* package */ CompiledWildcardMatcher(String expression) {
+		// Same splitting as in WildcardMatcher, which matches only the empty string if there are no patterns
+		String[] patterns = expression.split("\\:");
+		if (patterns.length == 0) {
+			add("");
+		}
+		for (String pattern : patterns) {
+			add(pattern);
+		}
+	}
+
+	private void add(String pattern) {
+		PrefixTrieNode<String> node = root;
+		int i = 0;
+		while (i < pattern.length() && !isWildcard(pattern.charAt(i))) {
+			node = node.getOrCreateChild(pattern.charAt(i));
+			i++;
+		}
+		if (i == pattern.length()) {
+			node.setMatchesExactly();
+		} else {
+			node.addRemainder(pattern.substring(i));
+		}
+	}
+
+	private static boolean isWildcard(char c) {
+		return c == '*' || c == '?';
+	}
+
+	/**
+	 * Returns whether the class name between the given start (inclusive) and end (exclusive) index of the given path
+	 * matches any of the patterns. The characters in this range are normalized with {@link #toClassNameChar(char)}.
+	 */
+	/* package */ boolean matches(String path, int start, int end) {
+		PrefixTrieNode<String> node = root;
+		int i = start;
+		while (true) {
+			if (node.matchesExactly() && i == end) {
+				return true;
+			}
+			List<String> remainders = node.getRemainders();
+			// Iterates by index, since an iterator would be allocated for every character
+			for (int j = 0; j < remainders.size(); j++) {
+				if (matchesRemainder(remainders.get(j), path, i, end)) {
+					return true;
+				}
+			}
+			if (i == end) {
+				return false;
+			}
+			node = node.getChild(toClassNameChar(path.charAt(i)));
+			if (node == null) {
+				return false;
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * Matches the part of a pattern that starts with its first wildcard. When a mismatch occurs after a
+	 * <code>*</code>, matching resumes with the <code>*</code> consuming one more character, so this needs no
+	 * recursion and is linear for the usual patterns.
+	 */
+	private static boolean matchesRemainder(String pattern, String path, int start, int end) {
+		int patternIndex = 0;
+		int pathIndex = start;
+		int starPatternIndex = -1;
+		int starPathIndex = -1;
+		while (pathIndex < end) {
+			if (patternIndex < pattern.length()) {
+				char patternChar = pattern.charAt(patternIndex);
+				if (patternChar == '*') {
+					starPatternIndex = patternIndex++;
+					starPathIndex = pathIndex;
+					continue;
+				}
+				if (patternChar == '?' || patternChar == toClassNameChar(path.charAt(pathIndex))) {
+					patternIndex++;
+					pathIndex++;
+					continue;
+				}
+			}
+			if (starPatternIndex == -1) {
+				return false;
+			}
+			patternIndex = starPatternIndex + 1;
+			pathIndex = ++starPathIndex;
+		}
+		while (patternIndex < pattern.length() && pattern.charAt(patternIndex) == '*') {
+			patternIndex++;
+		}
+		return patternIndex == pattern.length();
+	}
+
+	/**
+	 * Returns the character of the qualified class name for the given character of a class file path, i.e. replaces
+	 * the path separators and the <code>$</code> of inner classes with dots like {@link org.jacoco.report.JavaNames}
+	 * does.
+	 */
+	/* package */
+	static char toClassNameChar(char c) {
+		if (c == '/' || c == '$' || c == File.separatorChar) {
+			return '.';
+		}
+		return c;
+	}
+}
@@ -0,0 +1,122 @@
+package com.teamscale.report.util;
+
+/**
+ * Memory efficient hash map from primitive long keys to non-null values. Uses open addressing with linear probing, so
+ * no entry objects and no boxed keys are created. Does not support removal. Not thread-safe.
+ */
+public class LongObjectHashMap<V> {
+
+	/** The maximum fill ratio of the table before it is grown. */
+	private static final double MAX_LOAD_FACTOR = 0.5;
+
+	/** The keys. A slot is empty if the value at the same index is null. */
+	private long[] keys;
+
+	/** The values. */
+	private Object[] values;
+
+	/** The number of entries in the map. */
+	private int size;
+
+	/** The number of entries after which the table is grown. */
+	private int resizeThreshold;
+
+	public LongObjectHashMap() {
+		this(16);
+	}
+
+	/** Creates a map that can hold the given number of entries without growing. */
+	public LongObjectHashMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(2, (int) (expectedSize / MAX_LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+	}
+
+	/** Returns the value for the given key or null if the map does not contain the key. */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return (V) values[i];
+			}
+		}
+		return null;
+	}
+
+	/** Returns whether the map contains the given key. */
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/** Associates the given value with the given key and returns the previous value or null. */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not supported");
+		}
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V previousValue = (V) values[i];
+				values[i] = value;
+				return previousValue;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		if (size > resizeThreshold) {
+			grow();
+		}
+		return null;
+	}
+
+	/** Doubles the capacity of the table and rehashes all entries. */
+	private void grow() {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(keys.length * 2);
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] == null) {
+				continue;
+			}
+			int i = hash(oldKeys[j]) & mask;
+			while (values[i] != null) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+		}
+	}
+
+	/** Returns the number of entries. */
+	public int size() {
+		return size;
+	}
+
+	/** Returns whether the map is empty. */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Mixes the bits of the key, so that keys that only differ in their upper bits don't collide (finalizer of
+	 * MurmurHash3).
+	 */
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+}
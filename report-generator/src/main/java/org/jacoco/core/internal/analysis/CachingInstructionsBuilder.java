@@ -7,13 +7,12 @@ import org.jacoco.core.internal.flow.LabelInfo;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.tree.AbstractInsnNode;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Stateful builder for the {@link Instruction}s of a method. All instructions of a method must be added in their
@@ -41,6 +40,13 @@ public class CachingInstructionsBuilder extends InstructionsBuilder {
 	private final ClassCoverageLookup classCoverageLookup;
 	private final List<CoveredProbe> coveredProbes = new ArrayList<>();
 
+	/**
+	 * ADDED The predecessor of each instruction, i.e. the preceding node according to the control flow graph of the
+	 * method. Mirrors the private field predecessor of {@link Instruction}, which is set by {@link
+	 * Instruction#addBranch(Instruction, int)}, so we don't need reflection to access it.
+	 */
+	private final Map<Instruction, Instruction> predecessors = new IdentityHashMap<>();
+
 	/** The line which belong to subsequently added instructions. */
 	private int currentLine;
 
@@ -118,6 +124,8 @@ public class CachingInstructionsBuilder extends InstructionsBuilder {
 		}
 		if (currentInsn != null) {
 			currentInsn.addBranch(insn, 0);
+			// ADDED
+			predecessors.put(insn, currentInsn);
 		}
 		currentInsn = insn;
 		instructions.put(node, insn);
@@ -171,35 +179,57 @@ public class CachingInstructionsBuilder extends InstructionsBuilder {
 		// Traces back all instructions that are executed before reaching a probe
 		// and stores the mapping from probe to lines in #classCoverageLookup
 		// We need this because JaCoCo does not insert a probe after every line.
+		// The lines of probes are remembered, so the trace of another probe can stop
+		// as soon as it reaches the instruction of a probe whose lines are already known.
+		Map<Instruction, SortedIntList> linesOfProbeInstructions = new IdentityHashMap<>();
+		int[] lineBuffer = new int[16];
 		for (CoveredProbe coveredProbe : coveredProbes) {
 			Instruction instruction = coveredProbe.instruction;
-			SortedIntList coveredLines = new SortedIntList();
+			SortedIntList knownLines = null;
+			int lineCount = 0;
 			while (instruction != null) {
+				knownLines = linesOfProbeInstructions.get(instruction);
+				if (knownLines != null) {
+					break;
+				}
 				if (instruction.getLine() != -1) {
 					// Only add the line number if one is associated with the instruction.
 					// This is not the case for e.g. Lombok generated code.
-					coveredLines.add(instruction.getLine());
+					if (lineCount == lineBuffer.length) {
+						lineBuffer = Arrays.copyOf(lineBuffer, lineCount * 2);
+					}
+					lineBuffer[lineCount++] = instruction.getLine();
 				}
-				instruction = getPredecessor(instruction);
+				instruction = predecessors.get(instruction);
 			}
+			SortedIntList coveredLines = merge(lineBuffer, lineCount, knownLines);
+			linesOfProbeInstructions.put(coveredProbe.instruction, coveredLines);
 			classCoverageLookup.addProbe(coveredProbe.probeId, coveredLines);
 		}
 	}
 
 	/**
-	 * ADDED Helper to get the private field predecessor from an instruction. The predecessor of an instruction is the
-	 * preceding node according to the control flow graph of the method.
+	 * ADDED Returns a sorted list of the first lineCount lines in the given buffer and the given known lines (which may
+	 * be null). Sorts the buffer. Values are added in ascending order, which is the fast path of {@link
+	 * SortedIntList#add(int)}.
 	 */
-	private Instruction getPredecessor(Instruction instruction) {
-		try {
-			Field predecessorField = instruction.getClass().getDeclaredField("predecessor");
-			predecessorField.setAccessible(true);
-			instruction = (Instruction) predecessorField.get(instruction);
-		} catch (NoSuchFieldException | IllegalAccessException e) {
-			// This means we have a serious coding mistake here there is no way to recover from this anyway
-			throw new RuntimeException("Instruction has no field named predecessor! This is a programming error!", e);
+	private static SortedIntList merge(int[] lineBuffer, int lineCount, SortedIntList knownLines) {
+		Arrays.sort(lineBuffer, 0, lineCount);
+		SortedIntList mergedLines = new SortedIntList();
+		int knownLineCount = 0;
+		if (knownLines != null) {
+			knownLineCount = knownLines.size();
+		}
+		int i = 0;
+		int j = 0;
+		while (i < lineCount || j < knownLineCount) {
+			if (j == knownLineCount || (i < lineCount && lineBuffer[i] < knownLines.get(j))) {
+				mergedLines.add(lineBuffer[i++]);
+			} else {
+				mergedLines.add(knownLines.get(j++));
+			}
 		}
-		return instruction;
+		return mergedLines;
 	}
 
 	// ADDED
@@ -216,7 +246,8 @@ public class CachingInstructionsBuilder extends InstructionsBuilder {
 		}
 	}
 
-	private static class Jump {
+	// ADDED non-static to record the predecessors
+	private class Jump {
 
 		private final Instruction source;
 		private final Label target;
@@ -229,7 +260,10 @@ public class CachingInstructionsBuilder extends InstructionsBuilder {
 		}
 
 		void wire() {
-			source.addBranch(LabelInfo.getInstruction(target), branch);
+			// ADDED local variable and recording of the predecessor
+			Instruction targetInstruction = LabelInfo.getInstruction(target);
+			source.addBranch(targetInstruction, branch);
+			predecessors.put(targetInstruction, source);
 		}
 
 	}
@@ -0,0 +1,77 @@
+package org.jacoco.core.internal.analysis;
+
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.internal.flow.ClassProbesAdapter;
+import org.objectweb.asm.ClassReader;
+
+import java.util.List;
+
+/**
+ * The structure of a class file, i.e. its meta data, methods and their instructions including the mapping from probes
+ * to instructions. Can be used to compute the {@link IClassCoverage} of the class for arbitrary probes without
+ * analyzing the class file again. The result is the same as the one of JaCoCo's {@link ClassAnalyzer}.
+ */
+public class ClassStructure {
+
+	private final String name;
+	private final long id;
+	private final String signature;
+	private final String superName;
+	private final String[] interfaces;
+	private final String sourceFileName;
+
+	/** The structures of all methods of the class in the order in which JaCoCo visits them. */
+	private final MethodStructure[] methods;
+
+	/* package */ ClassStructure(ClassCoverageImpl analyzedClass, List<MethodStructure> methods) {
+		this.name = analyzedClass.getName();
+		this.id = analyzedClass.getId();
+		this.signature = analyzedClass.getSignature();
+		this.superName = analyzedClass.getSuperName();
+		this.interfaces = analyzedClass.getInterfaceNames();
+		this.sourceFileName = analyzedClass.getSourceFileName();
+		this.methods = methods.toArray(new MethodStructure[0]);
+	}
+
+	/**
+	 * Analyzes the class read by the given reader.
+	 *
+	 * @param classId    the class ID (CRC64 of the class file)
+	 * @param reader     reader for the class file
+	 * @param stringPool shared pool to minimize the number of {@link String} instances
+	 */
+	public static ClassStructure analyze(long classId, ClassReader reader, StringPool stringPool) {
+		ClassCoverageImpl analyzedClass = new ClassCoverageImpl(reader.getClassName(), classId, false);
+		StructureRecordingClassAnalyzer analyzer = new StructureRecordingClassAnalyzer(analyzedClass, stringPool);
+		reader.accept(new ClassProbesAdapter(analyzer, false), 0);
+		return analyzer.getClassStructure();
+	}
+
+	/** Returns the VM name of the class. */
+	public String getName() {
+		return name;
+	}
+
+	/** Returns the class ID (CRC64 of the class file). */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Creates the coverage of the class for the given probes. If the probes are null, all code is reported as not
+	 * covered.
+	 *
+	 * @param noMatch whether execution data for a class with the same name but a different class ID exists
+	 */
+	public IClassCoverage createCoverage(boolean[] probes, boolean noMatch) {
+		ClassCoverageImpl coverage = new ClassCoverageImpl(name, id, noMatch);
+		coverage.setSignature(signature);
+		coverage.setSuperName(superName);
+		coverage.setInterfaces(interfaces);
+		coverage.setSourceFileName(sourceFileName);
+		for (MethodStructure method : methods) {
+			method.addCoverage(coverage, probes);
+		}
+		return coverage;
+	}
+}
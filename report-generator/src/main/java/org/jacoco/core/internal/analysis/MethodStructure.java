@@ -0,0 +1,174 @@
+package org.jacoco.core.internal.analysis;
+
+import org.jacoco.core.internal.analysis.filter.IFilterOutput;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The structure of a single method as recorded by {@link StructureRecordingInstructionsBuilder} together with the
+ * output of JaCoCo's filters for this method. Allows to compute the method's coverage for arbitrary probes without the
+ * original class file.
+ */
+/* package */ class MethodStructure {
+
+	private final String name;
+	private final String desc;
+	private final String signature;
+
+	/** Number of instructions of the method. */
+	private final int instructionCount;
+
+	/** The operations recorded by {@link StructureRecordingInstructionsBuilder}. */
+	private final int[] operations;
+
+	/** Indices of the instructions that are ignored by the filters. */
+	private final int[] ignoredInstructions;
+
+	/** Pairs of instruction indices that are merged by the filters. */
+	private final int[] mergedInstructions;
+
+	/**
+	 * Branch replacements of the filters. The first element of each array is the index of the source instruction, the
+	 * remaining elements are the indices of the new branch targets.
+	 */
+	private final int[][] branchReplacements;
+
+	private MethodStructure(String name, String desc, String signature, int instructionCount, int[] operations,
+							int[] ignoredInstructions, int[] mergedInstructions, int[][] branchReplacements) {
+		this.name = name;
+		this.desc = desc;
+		this.signature = signature;
+		this.instructionCount = instructionCount;
+		this.operations = operations;
+		this.ignoredInstructions = ignoredInstructions;
+		this.mergedInstructions = mergedInstructions;
+		this.branchReplacements = branchReplacements;
+	}
+
+	/**
+	 * Computes the coverage of this method for the given probes (which may be null) and adds it to the given class
+	 * coverage, just like {@link ClassAnalyzer} would do.
+	 */
+	/* package */ void addCoverage(ClassCoverageImpl classCoverage, boolean[] probes) {
+		Instruction[] instructions = new Instruction[instructionCount];
+		int instructionIndex = 0;
+		int i = 0;
+		while (i < operations.length) {
+			switch (operations[i]) {
+				case StructureRecordingInstructionsBuilder.CREATE_INSTRUCTION:
+					instructions[instructionIndex++] = new Instruction(operations[i + 1]);
+					i += 2;
+					break;
+				case StructureRecordingInstructionsBuilder.ADD_JUMP:
+					instructions[operations[i + 1]].addBranch(instructions[operations[i + 2]], operations[i + 3]);
+					i += 4;
+					break;
+				case StructureRecordingInstructionsBuilder.ADD_PROBE:
+					boolean executed = probes != null && probes[operations[i + 2]];
+					instructions[operations[i + 1]].addBranch(executed, operations[i + 3]);
+					i += 4;
+					break;
+				default:
+					throw new IllegalStateException("Unknown operation " + operations[i]);
+			}
+		}
+
+		// The calculator only uses the nodes as keys, so we can use placeholders for the original nodes
+		AbstractInsnNode[] nodes = new AbstractInsnNode[instructionCount];
+		Map<AbstractInsnNode, Instruction> instructionsByNode = new HashMap<>();
+		for (int j = 0; j < instructionCount; j++) {
+			nodes[j] = new InsnNode(Opcodes.NOP);
+			instructionsByNode.put(nodes[j], instructions[j]);
+		}
+
+		MethodCoverageCalculator calculator = new MethodCoverageCalculator(instructionsByNode);
+		for (int ignoredInstruction : ignoredInstructions) {
+			calculator.ignore(nodes[ignoredInstruction], nodes[ignoredInstruction]);
+		}
+		for (int j = 0; j < mergedInstructions.length; j += 2) {
+			calculator.merge(nodes[mergedInstructions[j]], nodes[mergedInstructions[j + 1]]);
+		}
+		for (int[] replacement : branchReplacements) {
+			Set<AbstractInsnNode> newTargets = new LinkedHashSet<>();
+			for (int j = 1; j < replacement.length; j++) {
+				newTargets.add(nodes[replacement[j]]);
+			}
+			calculator.replaceBranches(nodes[replacement[0]], newTargets);
+		}
+
+		MethodCoverageImpl methodCoverage = new MethodCoverageImpl(name, desc, signature);
+		calculator.calculate(methodCoverage);
+		if (methodCoverage.containsCode()) {
+			// Only consider methods that actually contain code
+			classCoverage.addMethod(methodCoverage);
+		}
+	}
+
+	/**
+	 * {@link IFilterOutput} that records the output of JaCoCo's filters for a single method and creates the {@link
+	 * MethodStructure} from it.
+	 */
+	/* package */ static class Recorder implements IFilterOutput {
+
+		private final StructureRecordingInstructionsBuilder builder;
+		private final List<Integer> ignoredInstructions = new ArrayList<>();
+		private final List<Integer> mergedInstructions = new ArrayList<>();
+		private final List<int[]> branchReplacements = new ArrayList<>();
+
+		/* package */ Recorder(StructureRecordingInstructionsBuilder builder) {
+			this.builder = builder;
+		}
+
+		@Override
+		public void ignore(AbstractInsnNode fromInclusive, AbstractInsnNode toInclusive) {
+			// Same iteration as in MethodCoverageCalculator#ignore, but we only keep actual instructions
+			for (AbstractInsnNode node = fromInclusive; node != toInclusive; node = node.getNext()) {
+				addIfInstruction(node);
+			}
+			addIfInstruction(toInclusive);
+		}
+
+		private void addIfInstruction(AbstractInsnNode node) {
+			Integer index = builder.getInstructionIndex(node);
+			if (index != null) {
+				ignoredInstructions.add(index);
+			}
+		}
+
+		@Override
+		public void merge(AbstractInsnNode i1, AbstractInsnNode i2) {
+			mergedInstructions.add(builder.getInstructionIndex(i1));
+			mergedInstructions.add(builder.getInstructionIndex(i2));
+		}
+
+		@Override
+		public void replaceBranches(AbstractInsnNode source, Set<AbstractInsnNode> newTargets) {
+			int[] replacement = new int[newTargets.size() + 1];
+			replacement[0] = builder.getInstructionIndex(source);
+			int i = 1;
+			for (AbstractInsnNode newTarget : newTargets) {
+				replacement[i++] = builder.getInstructionIndex(newTarget);
+			}
+			branchReplacements.add(replacement);
+		}
+
+		/** Creates the structure of the method from the builder's operations and the recorded filter output. */
+		/* package */ MethodStructure createMethodStructure(String name, String desc, String signature) {
+			return new MethodStructure(name, desc, signature, builder.getInstructionCount(), builder.getOperations(),
+					toArray(ignoredInstructions), toArray(mergedInstructions),
+					branchReplacements.toArray(new int[0][]));
+		}
+
+		private static int[] toArray(List<Integer> list) {
+			return list.stream().mapToInt(Integer::intValue).toArray();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package org.jacoco.core.internal.analysis;
+
+import org.jacoco.core.internal.analysis.filter.Filters;
+import org.jacoco.core.internal.analysis.filter.IFilter;
+import org.jacoco.core.internal.flow.MethodProbesVisitor;
+import org.jacoco.core.internal.instr.InstrSupport;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Analyzes a class without probes and records the structure of its methods, so that the coverage can later be computed
+ * for arbitrary probes via {@link ClassStructure}.
+ * <p>
+ * The recording of the instructions happens in {@link StructureRecordingInstructionsBuilder}. The filters are applied
+ * just like in {@link ClassAnalyzer}, but their output is recorded by {@link MethodStructure.Recorder} instead of being
+ * applied directly.
+ */
+/* package */ class StructureRecordingClassAnalyzer extends ClassAnalyzer {
+
+	/** Same filters as used by {@link ClassAnalyzer}. */
+	private final IFilter filter = Filters.all();
+
+	/** The class coverage into which {@link ClassAnalyzer} writes the class' meta data. */
+	private final ClassCoverageImpl coverage;
+
+	private final StringPool stringPool;
+
+	/** The structures of all methods of the class in the order in which they have been visited. */
+	private final List<MethodStructure> methods = new ArrayList<>();
+
+	/* package */ StructureRecordingClassAnalyzer(ClassCoverageImpl coverage, StringPool stringPool) {
+		super(coverage, null, stringPool);
+		this.coverage = coverage;
+		this.stringPool = stringPool;
+	}
+
+	@Override
+	public MethodProbesVisitor visitMethod(final int access, final String name, final String desc,
+										   final String signature, final String[] exceptions) {
+		InstrSupport.assertNotInstrumented(name, coverage.getName());
+		final StructureRecordingInstructionsBuilder builder = new StructureRecordingInstructionsBuilder();
+
+		return new MethodAnalyzer(builder) {
+
+			@Override
+			public void accept(final MethodNode methodNode, final MethodVisitor methodVisitor) {
+				super.accept(methodNode, methodVisitor);
+				builder.getInstructions();
+				MethodStructure.Recorder recorder = new MethodStructure.Recorder(builder);
+				filter.filter(methodNode, StructureRecordingClassAnalyzer.this, recorder);
+				methods.add(recorder.createMethodStructure(stringPool.get(name), stringPool.get(desc),
+						stringPool.get(signature)));
+			}
+		};
+	}
+
+	/** Returns the recorded structure of the analyzed class. */
+	/* package */ ClassStructure getClassStructure() {
+		return new ClassStructure(coverage, methods);
+	}
+}
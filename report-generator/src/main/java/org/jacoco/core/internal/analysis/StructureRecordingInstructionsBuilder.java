@@ -0,0 +1,233 @@
+package org.jacoco.core.internal.analysis;
+
+import org.jacoco.core.analysis.ISourceNode;
+import org.jacoco.core.internal.flow.LabelInfo;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stateful builder for the {@link Instruction}s of a method, which additionally records every operation it performs on
+ * the {@link Instruction}s. The recorded operations can be replayed with arbitrary probes by {@link MethodStructure}
+ * without having to parse the class file again.
+ * <p>
+ * It's core is a copy of {@link org.jacoco.core.internal.analysis.InstructionsBuilder}. The instructions are built
+ * without probes, i.e. all of them are reported as not covered.
+ * <p>
+ * Changes that have been applied to the original class are marked with ADDED and REMOVED comments to make it as easy as
+ * possible to adjust the implementation to new versions of JaCoCo.
+ * <p>
+ * When updating JaCoCo make a diff of the previous {@link org.jacoco.core.internal.analysis.InstructionsBuilder}
+ * implementation and the new implementation and update this class accordingly.
+ */
+/* package */ class StructureRecordingInstructionsBuilder extends InstructionsBuilder {
+
+	/** ADDED Operation that creates a new instruction. Followed by the line of the instruction. */
+	/* package */ static final int CREATE_INSTRUCTION = 0;
+
+	/**
+	 * ADDED Operation that adds a branch to another instruction. Followed by the index of the source instruction, the
+	 * index of the target instruction and the branch number.
+	 */
+	/* package */ static final int ADD_JUMP = 1;
+
+	/**
+	 * ADDED Operation that adds a probe to an instruction. Followed by the index of the instruction, the probe ID and
+	 * the branch number.
+	 */
+	/* package */ static final int ADD_PROBE = 2;
+
+	/** Probe array of the class the analyzed method belongs to. */
+	// REMOVED private final boolean[] probes;
+
+	/** The line which belong to subsequently added instructions. */
+	private int currentLine;
+
+	/** The last instruction which has been added. */
+	private Instruction currentInsn;
+
+	/**
+	 * All instructions of a method mapped from the ASM node to the corresponding {@link Instruction} instance.
+	 */
+	private final Map<AbstractInsnNode, Instruction> instructions;
+
+	/**
+	 * The labels which mark the subsequent instructions.
+	 * <p>
+	 * Due to ASM issue #315745 there can be more than one label per instruction
+	 */
+	private final List<Label> currentLabel;
+
+	/**
+	 * List of all jumps within the control flow. We need to store jumps temporarily as the target {@link Instruction}
+	 * may not been known yet.
+	 */
+	private final List<Jump> jumps;
+
+	// ADDED fields to record the operations on the instructions
+	private final Map<Instruction, Integer> instructionIndices = new IdentityHashMap<>();
+	private final Map<AbstractInsnNode, Integer> nodeIndices = new HashMap<>();
+	private int[] operations = new int[64];
+	private int operationsLength = 0;
+
+	/**
+	 * Creates a new builder instance which can be used to analyze a single method.
+	 * <p>
+	 * REMOVED final boolean[] probes
+	 */
+	/* package */ StructureRecordingInstructionsBuilder() {
+		super(null);
+		this.currentLine = ISourceNode.UNKNOWN_LINE;
+		this.currentInsn = null;
+		this.instructions = new HashMap<>();
+		this.currentLabel = new ArrayList<>(2);
+		this.jumps = new ArrayList<>();
+	}
+
+	/**
+	 * Sets the current source line. All subsequently added instructions will be assigned to this line. If no line is
+	 * set (e.g. for classes compiled without debug information) {@link ISourceNode#UNKNOWN_LINE} is assigned to the
+	 * instructions.
+	 */
+	void setCurrentLine(final int line) {
+		currentLine = line;
+	}
+
+	/**
+	 * Adds a label which applies to the subsequently added instruction. Due to ASM internals multiple {@link Label}s
+	 * can be added to an instruction.
+	 */
+	void addLabel(final Label label) {
+		currentLabel.add(label);
+		if (!LabelInfo.isSuccessor(label)) {
+			noSuccessor();
+		}
+	}
+
+	/**
+	 * Adds a new instruction. Instructions are by default linked with the previous instruction unless specified
+	 * otherwise.
+	 */
+	void addInstruction(final AbstractInsnNode node) {
+		final Instruction insn = new Instruction(currentLine);
+		// ADDED
+		int index = instructionIndices.size();
+		instructionIndices.put(insn, index);
+		nodeIndices.put(node, index);
+		record(CREATE_INSTRUCTION, currentLine);
+
+		final int labelCount = currentLabel.size();
+		if (labelCount > 0) {
+			for (int i = labelCount; --i >= 0; ) {
+				LabelInfo.setInstruction(currentLabel.get(i), insn);
+			}
+			currentLabel.clear();
+		}
+		if (currentInsn != null) {
+			currentInsn.addBranch(insn, 0);
+			// ADDED
+			record(ADD_JUMP, instructionIndices.get(currentInsn), index, 0);
+		}
+		currentInsn = insn;
+		instructions.put(node, insn);
+	}
+
+	/**
+	 * Declares that the next instruction will not be a successor of the current instruction. This is the case with an
+	 * unconditional jump or technically when a probe was inserted before.
+	 */
+	void noSuccessor() {
+		currentInsn = null;
+	}
+
+	/**
+	 * Adds a jump from the last added instruction.
+	 *
+	 * @param target jump target
+	 * @param branch unique branch number
+	 */
+	void addJump(final Label target, final int branch) {
+		jumps.add(new Jump(currentInsn, target, branch));
+	}
+
+	/**
+	 * Adds a new probe for the last instruction.
+	 *
+	 * @param probeId index in the probe array
+	 * @param branch  unique branch number for the last instruction
+	 */
+	void addProbe(final int probeId, final int branch) {
+		// REMOVED final boolean executed = probes != null && probes[probeId];
+		currentInsn.addBranch(false, branch);
+		// ADDED
+		record(ADD_PROBE, instructionIndices.get(currentInsn), probeId, branch);
+	}
+
+	/**
+	 * Returns the status for all instructions of this method. This method must be called exactly once after the
+	 * instructions have been added.
+	 *
+	 * @return map of ASM nodes to corresponding {@link Instruction} instances
+	 */
+	Map<AbstractInsnNode, Instruction> getInstructions() {
+		// Wire jumps:
+		for (final Jump j : jumps) {
+			j.wire();
+		}
+
+		return instructions;
+	}
+
+	/** ADDED Returns the index of the instruction created for the given node or null if there is none. */
+	/* package */ Integer getInstructionIndex(AbstractInsnNode node) {
+		return nodeIndices.get(node);
+	}
+
+	/** ADDED Returns the number of instructions that have been created. */
+	/* package */ int getInstructionCount() {
+		return instructionIndices.size();
+	}
+
+	/** ADDED Returns the recorded operations. Must be called after {@link #getInstructions()}. */
+	/* package */ int[] getOperations() {
+		return Arrays.copyOf(operations, operationsLength);
+	}
+
+	/** ADDED Appends an operation with its arguments to {@link #operations}. */
+	private void record(int... operation) {
+		if (operationsLength + operation.length > operations.length) {
+			operations = Arrays.copyOf(operations, Math.max(operations.length * 2, operationsLength + operation.length));
+		}
+		System.arraycopy(operation, 0, operations, operationsLength, operation.length);
+		operationsLength += operation.length;
+	}
+
+	// CHANGED to non-static to be able to record the jump
+	private class Jump {
+
+		private final Instruction source;
+		private final Label target;
+		private final int branch;
+
+		Jump(final Instruction source, final Label target, final int branch) {
+			this.source = source;
+			this.target = target;
+			this.branch = branch;
+		}
+
+		void wire() {
+			Instruction targetInstruction = LabelInfo.getInstruction(target);
+			source.addBranch(targetInstruction, branch);
+			// ADDED
+			record(ADD_JUMP, instructionIndices.get(source), instructionIndices.get(targetInstruction), branch);
+		}
+
+	}
+
+}
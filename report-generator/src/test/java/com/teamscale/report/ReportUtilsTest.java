@@ -0,0 +1,77 @@
+package com.teamscale.report;
+
+import com.teamscale.report.testwise.ETestArtifactFormat;
+import com.teamscale.report.testwise.model.TestExecution;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Tests the {@link ReportUtils} class. */
+class ReportUtilsTest {
+
+	private static final String TEST_1 = "{\"durationMillis\":123,\"result\":\"PASSED\",\"uniformPath\":\"test1\"}";
+
+	private static final String TEST_2 = "{\"durationMillis\":456,\"result\":\"FAILURE\",\"uniformPath\":\"test2\"}";
+
+	@Test
+	void readsJsonArray(@TempDir Path tempDir) throws Exception {
+		File file = write(tempDir, "[" + TEST_1 + "," + TEST_2 + "]");
+		assertThat(readTestExecutions(file)).containsExactly("test1", "test2");
+	}
+
+	@Test
+	void readsJsonLines(@TempDir Path tempDir) throws Exception {
+		File file = write(tempDir, TEST_1 + "\n\n" + TEST_2 + "\n");
+		assertThat(readTestExecutions(file)).containsExactly("test1", "test2");
+
+		File fileWithoutTrailingNewline = write(tempDir, TEST_1 + "\n" + TEST_2);
+		assertThat(readTestExecutions(fileWithoutTrailingNewline)).containsExactly("test1", "test2");
+	}
+
+	@Test
+	void ignoresTruncatedLastLine(@TempDir Path tempDir) throws Exception {
+		File file = write(tempDir, TEST_1 + "\n" + TEST_2.substring(0, 20));
+		assertThat(readTestExecutions(file)).containsExactly("test1");
+
+		// e.g. a block of the file that was allocated but not written before the OS crashed
+		File fileWithZeros = write(tempDir, TEST_1 + "\n" + TEST_2 + "\n\0\0\0\0");
+		assertThat(readTestExecutions(fileWithZeros)).containsExactly("test1", "test2");
+	}
+
+	@Test
+	void failsOnInvalidLineBeforeTheLastLine(@TempDir Path tempDir) throws Exception {
+		File file = write(tempDir, TEST_1.substring(0, 20) + "\n" + TEST_2 + "\n");
+		assertThatThrownBy(() -> readTestExecutions(file)).isInstanceOf(IOException.class)
+				.hasMessageContaining(file.getName());
+	}
+
+	@Test
+	void readsEmptyFile(@TempDir Path tempDir) throws Exception {
+		assertThat(readTestExecutions(write(tempDir, ""))).isEmpty();
+	}
+
+	/** Returns the uniform paths of the test executions in the given file. */
+	private static List<String> readTestExecutions(File file) throws IOException {
+		List<TestExecution> executions = ReportUtils.readObjects(ETestArtifactFormat.TEST_EXECUTION,
+				TestExecution[].class, Collections.singletonList(file));
+		assertThat(executions).allMatch(execution -> execution.getResult() != null);
+		return executions.stream().map(TestExecution::getUniformPath).collect(Collectors.toList());
+	}
+
+	private static File write(Path directory, String content) throws IOException {
+		Path file = Files.createTempFile(directory, ETestArtifactFormat.TEST_EXECUTION.filePrefix, ".json");
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		return file.toFile();
+	}
+}
@@ -0,0 +1,125 @@
+package com.teamscale.report.jacoco;
+
+import com.teamscale.report.EDuplicateClassFileBehavior;
+import com.teamscale.report.util.ClasspathWildcardIncludeFilter;
+import com.teamscale.report.util.ILogger;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.report.IReportVisitor;
+import org.jacoco.report.xml.XMLFormatter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/** Tests that the {@link ClassStructureCache} produces the same reports as an uncached {@link FilteringAnalyzer}. */
+public class ClassStructureCacheTest {
+
+	private static final File TESTWISE_TEST_DATA = new File("test-data/com.teamscale.report.testwise.jacoco/jacoco");
+
+	private final ILogger logger = mock(ILogger.class);
+
+	private final ClasspathWildcardIncludeFilter filter = new ClasspathWildcardIncludeFilter(null, null);
+
+	@Test
+	void cachedReportIsIdenticalToUncachedReport() throws Exception {
+		for (String project : new String[]{"cqddl", "sample", "default-package"}) {
+			List<File> classes = Collections.singletonList(new File(TESTWISE_TEST_DATA, project + "/classes.zip"));
+			ExecutionDataStore store = readMergedStore(new File(TESTWISE_TEST_DATA, project + "/coverage.exec"));
+			ClassStructureCache cache = new ClassStructureCache(filter, 1, logger);
+
+			String expected = createUncachedReport(classes, store);
+			assertThat(createCachedReport(cache, classes, store)).as(project).isEqualTo(expected);
+			assertThat(createCachedReport(cache, classes, store)).as(project + " (from cache)").isEqualTo(expected);
+		}
+	}
+
+	@Test
+	void parallelReportIsIdenticalToUncachedReport() throws Exception {
+		for (String project : new String[]{"cqddl", "sample", "default-package"}) {
+			List<File> classes = Collections.singletonList(new File(TESTWISE_TEST_DATA, project + "/classes.zip"));
+			ExecutionDataStore store = readMergedStore(new File(TESTWISE_TEST_DATA, project + "/coverage.exec"));
+			ClassStructureCache cache = new ClassStructureCache(filter, 4, logger);
+
+			String expected = createUncachedReport(classes, store);
+			assertThat(createCachedReport(cache, classes, store)).as(project).isEqualTo(expected);
+			assertThat(createCachedReport(cache, classes, store)).as(project + " (from cache)").isEqualTo(expected);
+		}
+	}
+
+	@Test
+	void changedArchivesAreAnalyzedAgain(@TempDir Path tempDir) throws Exception {
+		Path classesZip = tempDir.resolve("classes.zip");
+		List<File> classes = Collections.singletonList(classesZip.toFile());
+		ClassStructureCache cache = new ClassStructureCache(filter, 1, logger);
+
+		Files.copy(new File(TESTWISE_TEST_DATA, "sample/classes.zip").toPath(), classesZip);
+		ExecutionDataStore sampleStore = readMergedStore(new File(TESTWISE_TEST_DATA, "sample/coverage.exec"));
+		assertThat(createCachedReport(cache, classes, sampleStore))
+				.isEqualTo(createUncachedReport(classes, sampleStore));
+
+		Files.copy(new File(TESTWISE_TEST_DATA, "cqddl/classes.zip").toPath(), classesZip,
+				StandardCopyOption.REPLACE_EXISTING);
+		ExecutionDataStore cqddlStore = readMergedStore(new File(TESTWISE_TEST_DATA, "cqddl/coverage.exec"));
+		assertThat(createCachedReport(cache, classes, cqddlStore))
+				.isEqualTo(createUncachedReport(classes, cqddlStore));
+	}
+
+	private String createUncachedReport(List<File> classes, ExecutionDataStore store) throws IOException {
+		CoverageBuilder coverageBuilder = createCoverageBuilder();
+		FilteringAnalyzer analyzer = new FilteringAnalyzer(store, coverageBuilder, filter, logger);
+		for (File file : classes) {
+			analyzer.analyzeAll(file);
+		}
+		return createXml(coverageBuilder, store);
+	}
+
+	private String createCachedReport(ClassStructureCache cache, List<File> classes,
+									  ExecutionDataStore store) throws IOException {
+		CoverageBuilder coverageBuilder = createCoverageBuilder();
+		cache.analyzeAll(classes, store, coverageBuilder);
+		return createXml(coverageBuilder, store);
+	}
+
+	private CoverageBuilder createCoverageBuilder() {
+		return new TeamscaleCoverageBuilder(logger, EDuplicateClassFileBehavior.IGNORE, false);
+	}
+
+	private static String createXml(CoverageBuilder coverageBuilder, ExecutionDataStore store) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		IReportVisitor visitor = new XMLFormatter().createVisitor(output);
+		visitor.visitInfo(Collections.singletonList(new SessionInfo("session", 1, 2)), store.getContents());
+		visitor.visitBundle(coverageBuilder.getBundle("dummybundle"), null);
+		visitor.visitEnd();
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/** Reads all sessions of the given exec file into a single store. */
+	private static ExecutionDataStore readMergedStore(File execFile) throws IOException {
+		ExecutionDataStore store = new ExecutionDataStore();
+		try (InputStream input = new FileInputStream(execFile)) {
+			ExecutionDataReader reader = new ExecutionDataReader(input);
+			reader.setExecutionDataVisitor(store::put);
+			reader.setSessionInfoVisitor(info -> {
+				// not needed
+			});
+			reader.read();
+		}
+		return store;
+	}
+}
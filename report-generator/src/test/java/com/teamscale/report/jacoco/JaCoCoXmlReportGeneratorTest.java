@@ -163,7 +163,7 @@ public class JaCoCoXmlReportGeneratorTest extends TestDataBase {
 		long currentTime = System.currentTimeMillis();
 		String outputFilePath = "test-coverage-" + currentTime + ".xml";
 		return new JaCoCoXmlReportGenerator(Collections.singletonList(classFileFolder), filter,
-				duplicateClassFileBehavior, ignoreUncoveredClasses,
+				duplicateClassFileBehavior, ignoreUncoveredClasses, 1,
 				mock(ILogger.class)).convert(dump, Paths.get(outputFilePath));
 	}
 }
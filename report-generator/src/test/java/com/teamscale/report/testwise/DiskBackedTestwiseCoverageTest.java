@@ -0,0 +1,53 @@
+package com.teamscale.report.testwise;
+
+import com.teamscale.report.testwise.model.builder.FileCoverageBuilder;
+import com.teamscale.report.testwise.model.builder.TestCoverageBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for the {@link DiskBackedTestwiseCoverage}. */
+class DiskBackedTestwiseCoverageTest {
+
+	@Test
+	void loadsAndMergesCoverageOfTests(@TempDir Path directory) throws Exception {
+		File file = directory.resolve("coverage.bin").toFile();
+		try (DiskBackedTestwiseCoverage coverage = new DiskBackedTestwiseCoverage(file)) {
+			coverage.add(createCoverage("test1", "com/example", "Foo.java", 1, 4));
+			coverage.add(createCoverage("test2", "com/example", "Bar.java", 10, 10));
+			coverage.add(createCoverage("test1", "com/example", "Foo.java", 8, 9));
+			coverage.add(createCoverage("test1", "com/other", "Baz.java", 3, 3));
+			coverage.add(new TestCoverageBuilder("empty"));
+
+			assertThat(coverage.getUniformPaths()).containsExactly("test1", "test2");
+
+			TestCoverageBuilder test1 = coverage.load("test1");
+			assertThat(test1.getUniformPath()).isEqualTo("test1");
+			assertThat(test1.getPaths()).hasSize(2);
+			assertThat(test1.getPaths().get(0).getPath()).isEqualTo("com/example");
+			assertThat(test1.getPaths().get(0).getFiles().get(0).coveredLines).isEqualTo("1-4,8-9");
+			assertThat(test1.getPaths().get(1).getFiles().get(0).coveredLines).isEqualTo("3");
+
+			TestCoverageBuilder test2 = coverage.load("test2");
+			assertThat(test2.getFiles()).hasSize(1);
+			assertThat(test2.getFiles().get(0).getFileName()).isEqualTo("Bar.java");
+			assertThat(test2.getFiles().get(0).computeCompactifiedRangesAsString()).isEqualTo("10");
+
+			assertThat(coverage.load("unknown").isEmpty()).isTrue();
+		}
+		assertThat(file).doesNotExist();
+	}
+
+	private static TestCoverageBuilder createCoverage(String uniformPath, String path, String fileName, int start,
+													  int end) {
+		TestCoverageBuilder testCoverage = new TestCoverageBuilder(uniformPath);
+		FileCoverageBuilder fileCoverage = new FileCoverageBuilder(path, fileName);
+		fileCoverage.addLineRange(start, end);
+		testCoverage.add(fileCoverage);
+		return testCoverage;
+	}
+}
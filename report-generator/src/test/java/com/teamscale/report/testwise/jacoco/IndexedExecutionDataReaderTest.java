@@ -0,0 +1,81 @@
+package com.teamscale.report.testwise.jacoco;
+
+import com.teamscale.report.jacoco.dump.Dump;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests the {@link IndexedExecutionDataReader}. */
+class IndexedExecutionDataReaderTest {
+
+	@Test
+	void readsSessionsInAnyOrder(@TempDir Path directory) throws Exception {
+		File file = writeExecFile(directory, 3);
+
+		IndexedExecutionDataReader reader = new IndexedExecutionDataReader(file, false);
+		assertThat(reader.getSessionCount()).isEqualTo(3);
+
+		Dump lastDump = reader.readSession(2);
+		assertThat(lastDump.info.getId()).isEqualTo("test2");
+		assertThat(lastDump.store.getContents()).hasSize(2);
+		assertThat(lastDump.store.get(2).getName()).isEqualTo("Bar");
+		assertThat(lastDump.store.get(2).getProbes()).containsExactly(false, true, false);
+
+		Dump firstDump = reader.readSession(0);
+		assertThat(firstDump.info.getId()).isEqualTo("test0");
+		assertThat(firstDump.store.get(1).getProbes()).containsExactly(true, false, false);
+		assertThat(new File(file.getPath() + IndexedExecutionDataReader.INDEX_FILE_EXTENSION)).doesNotExist();
+	}
+
+	@Test
+	void reusesPersistedIndexOfUnchangedFile(@TempDir Path directory) throws Exception {
+		File file = writeExecFile(directory, 2);
+		File indexFile = new File(file.getPath() + IndexedExecutionDataReader.INDEX_FILE_EXTENSION);
+
+		new IndexedExecutionDataReader(file, true);
+		assertThat(indexFile).exists();
+		long indexModificationTime = indexFile.lastModified();
+
+		IndexedExecutionDataReader reader = new IndexedExecutionDataReader(file, true);
+		assertThat(indexFile.lastModified()).isEqualTo(indexModificationTime);
+		assertThat(reader.getSessionCount()).isEqualTo(2);
+		assertThat(reader.readSession(1).info.getId()).isEqualTo("test1");
+
+		writeExecFile(directory, 4);
+		assertThat(new IndexedExecutionDataReader(file, false).getSessionCount()).isEqualTo(4);
+	}
+
+	@Test
+	void readsFileWithoutSessions(@TempDir Path directory) throws Exception {
+		assertThat(new IndexedExecutionDataReader(writeExecFile(directory, 0), false).getSessionCount()).isEqualTo(0);
+	}
+
+	/** Writes an exec file with the given number of sessions, which each cover a single probe of two classes. */
+	private static File writeExecFile(Path directory, int sessionCount) throws IOException {
+		File file = directory.resolve("jacoco.exec").toFile();
+		try (FileOutputStream output = new FileOutputStream(file)) {
+			ExecutionDataWriter writer = new ExecutionDataWriter(output);
+			for (int i = 0; i < sessionCount; i++) {
+				writer.visitSessionInfo(new SessionInfo("test" + i, i, i + 1));
+				writer.visitClassExecution(new ExecutionData(1, "Foo", createProbes(3, i % 3)));
+				writer.visitClassExecution(new ExecutionData(2, "Bar", createProbes(3, (i + 2) % 3)));
+			}
+		}
+		return file;
+	}
+
+	private static boolean[] createProbes(int probeCount, int coveredProbe) {
+		boolean[] probes = new boolean[probeCount];
+		probes[coveredProbe] = true;
+		return probes;
+	}
+}
@@ -3,10 +3,12 @@ package com.teamscale.report.testwise.jacoco;
 import com.teamscale.client.TestDetails;
 import com.teamscale.report.EDuplicateClassFileBehavior;
 import com.teamscale.report.ReportUtils;
+import com.teamscale.report.testwise.jacoco.cache.PersistentLookupCache;
 import com.teamscale.report.testwise.model.ETestExecutionResult;
 import com.teamscale.report.testwise.model.TestExecution;
 import com.teamscale.report.testwise.model.TestwiseCoverage;
 import com.teamscale.report.testwise.model.TestwiseCoverageReport;
+import com.teamscale.report.testwise.model.builder.FileCoverageBuilder;
 import com.teamscale.report.testwise.model.builder.TestCoverageBuilder;
 import com.teamscale.report.testwise.model.builder.TestwiseCoverageReportBuilder;
 import com.teamscale.report.util.ClasspathWildcardIncludeFilter;
@@ -14,13 +16,17 @@ import com.teamscale.report.util.ILogger;
 import com.teamscale.test.TestDataBase;
 import org.conqat.lib.commons.filesystem.FileSystemUtils;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 
 /** Tests for the {@link JaCoCoTestwiseReportGenerator} class. */
@@ -40,6 +46,46 @@ public class JaCoCoTestwiseReportGeneratorTest extends TestDataBase {
 		JSONAssert.assertEquals(expected, report, JSONCompareMode.STRICT);
 	}
 
+	@Test
+	void testParallelTestwiseReportGeneration() throws Exception {
+		String report = runReportGenerator("jacoco/cqddl/classes.zip", "jacoco/cqddl/coverage.exec", 4);
+		String expected = FileSystemUtils.readFileUTF8(useTestFile("jacoco/cqddl/report.json.expected"));
+		JSONAssert.assertEquals(expected, report, JSONCompareMode.STRICT);
+	}
+
+	@Test
+	void parallelConversionMatchesSequentialConversion() throws Exception {
+		List<String> sequentialTests = convertInSessionOrder("jacoco/cqddl/classes.zip", "jacoco/cqddl/coverage.exec",
+				1);
+		List<String> parallelTests = convertInSessionOrder("jacoco/cqddl/classes.zip", "jacoco/cqddl/coverage.exec",
+				4);
+
+		assertThat(sequentialTests).hasSizeGreaterThan(1);
+		assertThat(parallelTests).containsExactlyElementsOf(sequentialTests);
+	}
+
+	@Test
+	void testTestwiseReportGenerationWithPersistentCache(@TempDir Path cacheDirectory) throws Exception {
+		String expected = FileSystemUtils.readFileUTF8(useTestFile("jacoco/cqddl/report.json.expected"));
+		for (int run = 0; run < 2; run++) {
+			PersistentLookupCache cache = new PersistentLookupCache(cacheDirectory, 1024 * 1024,
+					mock(ILogger.class));
+			String report = runReportGenerator("jacoco/cqddl/classes.zip", "jacoco/cqddl/coverage.exec", 1, cache);
+			JSONAssert.assertEquals(expected, report, JSONCompareMode.STRICT);
+		}
+	}
+
+	@Test
+	void testLazyTestwiseReportGeneration() throws Exception {
+		for (String testDataFolder : new String[]{"cqddl", "sample", "default-package"}) {
+			String report = runReportGenerator("jacoco/" + testDataFolder + "/classes.zip",
+					"jacoco/" + testDataFolder + "/coverage.exec", 1, null, true);
+			String expected = FileSystemUtils
+					.readFileUTF8(useTestFile("jacoco/" + testDataFolder + "/report.json.expected"));
+			JSONAssert.assertEquals(expected, report, JSONCompareMode.STRICT);
+		}
+	}
+
 	@Test
 	void defaultPackageIsHandledAsEmptyPath() throws Exception {
 		String report = runReportGenerator("jacoco/default-package/classes.zip", "jacoco/default-package/coverage.exec");
@@ -48,13 +94,57 @@ public class JaCoCoTestwiseReportGeneratorTest extends TestDataBase {
 	}
 
 	private String runReportGenerator(String testDataFolder, String execFileName) throws Exception {
+		return runReportGenerator(testDataFolder, execFileName, 1);
+	}
+
+	private String runReportGenerator(String testDataFolder, String execFileName,
+									  int analysisThreads) throws Exception {
+		return runReportGenerator(testDataFolder, execFileName, analysisThreads, null);
+	}
+
+	private String runReportGenerator(String testDataFolder, String execFileName, int analysisThreads,
+									  PersistentLookupCache persistentCache) throws Exception {
+		return runReportGenerator(testDataFolder, execFileName, analysisThreads, persistentCache, false);
+	}
+
+	private String runReportGenerator(String testDataFolder, String execFileName, int analysisThreads,
+									  PersistentLookupCache persistentCache,
+									  boolean analyzeClassesLazily) throws Exception {
 		File classFileFolder = useTestFile(testDataFolder);
 		ClasspathWildcardIncludeFilter includeFilter = new ClasspathWildcardIncludeFilter(null, null);
-		TestwiseCoverage testwiseCoverage = new JaCoCoTestwiseReportGenerator(
+		try (JaCoCoTestwiseReportGenerator generator = new JaCoCoTestwiseReportGenerator(
 				Collections.singletonList(classFileFolder),
-				includeFilter, EDuplicateClassFileBehavior.IGNORE,
-				mock(ILogger.class)).convert(useTestFile(execFileName));
-		return ReportUtils.getTestwiseCoverageReportAsString(generateDummyReportFrom(testwiseCoverage));
+				includeFilter, EDuplicateClassFileBehavior.IGNORE, analysisThreads, persistentCache,
+				analyzeClassesLazily, mock(ILogger.class))) {
+			TestwiseCoverage testwiseCoverage = generator.convert(useTestFile(execFileName));
+			return ReportUtils.getTestwiseCoverageReportAsString(generateDummyReportFrom(testwiseCoverage));
+		}
+	}
+
+	/**
+	 * Converts all sessions of the given *.exec file with the given number of threads. Returns the uniform path and the
+	 * covered lines of each test in the order in which the tests were passed to the consumer.
+	 */
+	private List<String> convertInSessionOrder(String testDataFolder, String execFileName,
+											   int conversionThreads) throws Exception {
+		List<String> tests = new ArrayList<>();
+		try (JaCoCoTestwiseReportGenerator generator = new JaCoCoTestwiseReportGenerator(
+				Collections.singletonList(useTestFile(testDataFolder)),
+				new ClasspathWildcardIncludeFilter(null, null), EDuplicateClassFileBehavior.IGNORE, 1, null, false,
+				mock(ILogger.class))) {
+			generator.convertAndConsume(useTestFile(execFileName), test -> tests.add(describe(test)), conversionThreads,
+					false);
+		}
+		return tests;
+	}
+
+	private static String describe(TestCoverageBuilder test) {
+		StringBuilder description = new StringBuilder(test.getUniformPath());
+		for (FileCoverageBuilder file : test.getFiles()) {
+			description.append('\n').append(file.getPath()).append('/').append(file.getFileName()).append(": ")
+					.append(file.computeCompactifiedRangesAsString());
+		}
+		return description.toString();
 	}
 
 	/** Generates a dummy coverage report object that wraps the given {@link TestwiseCoverage}. */
@@ -0,0 +1,110 @@
+package com.teamscale.report.testwise.jacoco;
+
+import com.teamscale.report.jacoco.dump.Dump;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests the {@link SparseExecutionDataWriter} together with the {@link SparseExecutionDataReader}. */
+class SparseExecutionDataWriterTest {
+
+	@Test
+	void readsWrittenSessions(@TempDir Path directory) throws Exception {
+		try (SparseExecutionDataWriter writer = new SparseExecutionDataWriter(directory.toFile(), "jacoco", 10,
+				1024 * 1024)) {
+			writer.write(createDump("test1", createData(1, "Foo", 200, 0, 7, 199), createData(2, "Bar", 3)));
+			writer.write(createDump("test2", createData(1, "Foo", 200, 128)));
+		}
+
+		List<Dump> dumps = read(directory.resolve("jacoco-0001.sexec").toFile());
+		assertThat(dumps).hasSize(2);
+
+		assertThat(dumps.get(0).info.getId()).isEqualTo("test1");
+		assertThat(dumps.get(0).info.getStartTimeStamp()).isEqualTo(10);
+		assertThat(dumps.get(0).info.getDumpTimeStamp()).isEqualTo(20);
+		assertThat(dumps.get(0).store.getContents()).hasSize(1);
+		ExecutionData foo = dumps.get(0).store.get(1);
+		assertThat(foo.getName()).isEqualTo("Foo");
+		assertThat(getCoveredProbes(foo)).containsExactly(0, 7, 199);
+		assertThat(foo.getProbes()).hasSize(200);
+
+		assertThat(getCoveredProbes(dumps.get(1).store.get(1))).containsExactly(128);
+	}
+
+	@Test
+	void startsNewSegmentAfterMaximumNumberOfSessions(@TempDir Path directory) throws Exception {
+		try (SparseExecutionDataWriter writer = new SparseExecutionDataWriter(directory.toFile(), "jacoco", 2,
+				1024 * 1024)) {
+			for (int i = 0; i < 5; i++) {
+				writer.write(createDump("test" + i, createData(1, "Foo", 10, i)));
+			}
+		}
+
+		assertThat(directory.toFile().list()).containsExactlyInAnyOrder("jacoco-0001.sexec", "jacoco-0002.sexec",
+				"jacoco-0003.sexec");
+		List<Dump> dumps = read(directory.resolve("jacoco-0003.sexec").toFile());
+		assertThat(dumps).hasSize(1);
+		assertThat(dumps.get(0).store.get(1).getName()).isEqualTo("Foo");
+		assertThat(getCoveredProbes(dumps.get(0).store.get(1))).containsExactly(4);
+	}
+
+	@Test
+	void skipsIncompleteLastSession(@TempDir Path directory) throws Exception {
+		try (SparseExecutionDataWriter writer = new SparseExecutionDataWriter(directory.toFile(), "jacoco", 10,
+				1024 * 1024)) {
+			writer.write(createDump("test1", createData(1, "Foo", 10, 1)));
+			writer.write(createDump("test2", createData(2, "Bar", 10, 2)));
+		}
+		File file = directory.resolve("jacoco-0001.sexec").toFile();
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(randomAccessFile.length() - 3);
+		}
+
+		List<Dump> dumps = read(file);
+		assertThat(dumps).hasSize(1);
+		assertThat(dumps.get(0).info.getId()).isEqualTo("test1");
+	}
+
+	private static List<Dump> read(File file) throws Exception {
+		List<Dump> dumps = new ArrayList<>();
+		new SparseExecutionDataReader(file).read(dumps::add);
+		return dumps;
+	}
+
+	private static List<Integer> getCoveredProbes(ExecutionData data) {
+		List<Integer> coveredProbes = new ArrayList<>();
+		boolean[] probes = data.getProbes();
+		for (int i = 0; i < probes.length; i++) {
+			if (probes[i]) {
+				coveredProbes.add(i);
+			}
+		}
+		return coveredProbes;
+	}
+
+	private static Dump createDump(String testId, ExecutionData... data) {
+		ExecutionDataStore store = new ExecutionDataStore();
+		for (ExecutionData executionData : data) {
+			store.put(executionData);
+		}
+		return new Dump(new SessionInfo(testId, 10, 20), store);
+	}
+
+	private static ExecutionData createData(long id, String name, int probeCount, int... coveredProbes) {
+		boolean[] probes = new boolean[probeCount];
+		for (int coveredProbe : coveredProbes) {
+			probes[coveredProbe] = true;
+		}
+		return new ExecutionData(id, name, probes);
+	}
+}
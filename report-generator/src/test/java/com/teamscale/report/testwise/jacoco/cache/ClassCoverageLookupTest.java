@@ -0,0 +1,74 @@
+package com.teamscale.report.testwise.jacoco.cache;
+
+import com.teamscale.report.testwise.model.builder.FileCoverageBuilder;
+import com.teamscale.report.util.ILogger;
+import com.teamscale.report.util.SortedIntList;
+import org.jacoco.core.data.ExecutionData;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/** Tests the compact layout of the {@link ClassCoverageLookup}. */
+class ClassCoverageLookupTest {
+
+	private final ILogger logger = mock(ILogger.class);
+
+	@Test
+	void storesLinesOfAllProbesInOneArray() {
+		ClassCoverageLookup lookup = createLookup();
+
+		assertThat(lookup.getLines()).containsExactly(3, 4, 10, 12);
+		assertThat(lookup.getProbeOffsets()).containsExactly(0, 2, 2, 2, 4, 4);
+		assertThat(lookup.getUnmatchedProbes().stream()).containsExactly(1, 4);
+	}
+
+	@Test
+	void mapsExecutedProbesToLines() throws Exception {
+		ClassCoverageLookup lookup = createLookup();
+
+		assertThat(getCoveredLines(lookup, true, true, true, false, true)).isEqualTo("3-4");
+		assertThat(getCoveredLines(lookup, false, false, false, true, false)).isEqualTo("10,12");
+		assertThat(getCoveredLines(lookup, true, false, false, true, false)).isEqualTo("3-4,10,12");
+		assertThat(getCoveredLines(lookup, false, true, true, false, true)).isEmpty();
+	}
+
+	@Test
+	void rejectsExecutionDataWithFewerProbes() {
+		ClassCoverageLookup lookup = createLookup();
+
+		ExecutionData executionData = new ExecutionData(1, "com/example/Foo", new boolean[4]);
+		assertThatThrownBy(() -> lookup.getFileCoverage(executionData, logger))
+				.isInstanceOf(CoverageGenerationException.class);
+	}
+
+	/**
+	 * Creates a lookup with five probes. Probe 0 covers lines 3 and 4, probe 2 covers no lines and probe 3 covers lines
+	 * 10 and 12. Probes 1 and 4 do not belong to any method.
+	 */
+	private static ClassCoverageLookup createLookup() {
+		ClassCoverageLookup lookup = new ClassCoverageLookup("com/example/Foo");
+		lookup.setSourceFileName("Foo.java");
+		lookup.addProbe(0, createLines(3, 4));
+		lookup.addProbe(2, createLines());
+		lookup.addProbe(3, createLines(10, 12));
+		lookup.setTotalProbeCount(5);
+		return lookup;
+	}
+
+	private String getCoveredLines(ClassCoverageLookup lookup, boolean... probes) throws Exception {
+		FileCoverageBuilder fileCoverage = lookup.getFileCoverage(new ExecutionData(1, "com/example/Foo", probes),
+				logger);
+		assertThat(fileCoverage.getPath()).isEqualTo("com/example");
+		return fileCoverage.computeCompactifiedRangesAsString();
+	}
+
+	private static SortedIntList createLines(int... lines) {
+		SortedIntList list = new SortedIntList();
+		for (int line : lines) {
+			list.add(line);
+		}
+		return list;
+	}
+}
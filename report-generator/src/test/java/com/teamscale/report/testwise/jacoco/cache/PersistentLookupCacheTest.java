@@ -0,0 +1,152 @@
+package com.teamscale.report.testwise.jacoco.cache;
+
+import com.teamscale.report.testwise.model.builder.FileCoverageBuilder;
+import com.teamscale.report.util.ILogger;
+import com.teamscale.report.util.SortedIntList;
+import org.jacoco.core.JaCoCo;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.internal.analysis.StringPool;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/** Tests for the {@link PersistentLookupCache}. */
+class PersistentLookupCacheTest {
+
+	private final ILogger logger = mock(ILogger.class);
+
+	private final StringPool stringPool = new StringPool();
+
+	@Test
+	void loadsStoredLookup(@TempDir Path directory) throws Exception {
+		PersistentLookupCache cache = new PersistentLookupCache(directory, 1024 * 1024, logger);
+		cache.store(42, createLookup("com/example/Foo", 10, 30));
+
+		ClassCoverageLookup lookup = new PersistentLookupCache(directory, 1024 * 1024, logger).load(42, stringPool);
+
+		assertThat(lookup).isNotNull();
+		assertThat(lookup.getClassName()).isEqualTo("com/example/Foo");
+		FileCoverageBuilder coverage = lookup.getFileCoverage(
+				new ExecutionData(42, "com/example/Foo", new boolean[]{true, false, true, false}), logger);
+		assertThat(coverage.getPath()).isEqualTo("com/example");
+		assertThat(coverage.getFileName()).isEqualTo("Foo.java");
+		assertThat(coverage.computeCompactifiedRangesAsString()).isEqualTo("10-11,30-31");
+	}
+
+	@Test
+	void missingAndInvalidEntriesAreIgnored(@TempDir Path directory) throws Exception {
+		PersistentLookupCache cache = new PersistentLookupCache(directory, 1024 * 1024, logger);
+		assertThat(cache.load(42, stringPool)).isNull();
+
+		cache.store(42, createLookup("com/example/Foo", 10));
+		for (Path entry : listEntries(directory)) {
+			Files.write(entry, new byte[]{1, 2, 3});
+		}
+		assertThat(cache.load(42, stringPool)).isNull();
+	}
+
+	@Test
+	void entriesWithTooLargeLengthsAreIgnored(@TempDir Path directory) throws Exception {
+		PersistentLookupCache cache = new PersistentLookupCache(directory, 1024 * 1024, logger);
+		cache.store(42, createLookup("com/example/Foo", 10));
+		Path entry = getEntry(directory, 42);
+		byte[] validEntry = Files.readAllBytes(entry);
+
+		// The length of the class name follows the magic number, the format version and the class ID
+		int classNameLengthOffset = 2 * Integer.BYTES + Long.BYTES;
+		Files.write(entry, withIntAt(validEntry, classNameLengthOffset, Integer.MAX_VALUE));
+		assertThat(cache.load(42, stringPool)).isNull();
+
+		// The length of the probe offsets follows the class name and the source file name
+		int probeOffsetsLengthOffset = classNameLengthOffset + Integer.BYTES + "com/example/Foo".length() +
+				Integer.BYTES + "Foo.java".length();
+		Files.write(entry, withIntAt(validEntry, probeOffsetsLengthOffset, Integer.MAX_VALUE));
+		assertThat(cache.load(42, stringPool)).isNull();
+
+		Files.write(entry, validEntry);
+		assertThat(cache.load(42, stringPool)).isNotNull();
+	}
+
+	@Test
+	void separatesEntriesOfDifferentJaCoCoVersions(@TempDir Path directory) throws Exception {
+		new PersistentLookupCache(directory, 1024 * 1024, logger).store(42, createLookup("com/example/Foo", 10));
+
+		assertThat(listEntries(directory)).hasSize(1)
+				.allSatisfy(entry -> assertThat(directory.relativize(entry).getName(0).toString())
+						.endsWith("-jacoco-" + JaCoCo.VERSION));
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedEntries(@TempDir Path directory) throws Exception {
+		PersistentLookupCache cache = new PersistentLookupCache(directory, 1024 * 1024, logger);
+		for (int i = 0; i < 10; i++) {
+			cache.store(i, createLookup(getClassName(i), i));
+			// entries with lower IDs have been used less recently
+			Files.setLastModifiedTime(getEntry(directory, i), FileTime.fromMillis(i * 1000L));
+		}
+		long entrySize = Files.size(getEntry(directory, 0));
+
+		// room for 5 entries, eviction shrinks the cache to 80% of that
+		PersistentLookupCache smallCache = new PersistentLookupCache(directory, entrySize * 5, logger);
+		smallCache.store(10, createLookup(getClassName(10), 10));
+		smallCache.evictIfTooLarge();
+
+		assertThat(listEntries(directory)).hasSize(4);
+		assertThat(smallCache.load(6, stringPool)).isNull();
+		assertThat(smallCache.load(7, stringPool)).isNotNull();
+		assertThat(smallCache.load(10, stringPool)).isNotNull();
+	}
+
+	/** Returns class names of equal length, so all entries have the same size. */
+	private static String getClassName(int index) {
+		return "com/example/Class" + (char) ('A' + index);
+	}
+
+	private static Path getEntry(Path directory, long classId) throws IOException {
+		String fileName = String.format("%016x.lookup", classId);
+		return listEntries(directory).stream().filter(path -> path.getFileName().toString().equals(fileName))
+				.findFirst().get();
+	}
+
+	/**
+	 * Creates a lookup with 4 probes. For each of the given lines, one of the even probes covers the line and the line
+	 * after it.
+	 */
+	private static ClassCoverageLookup createLookup(String className, int... firstLines) {
+		ClassCoverageLookup lookup = new ClassCoverageLookup(className);
+		String simpleName = className.substring(className.lastIndexOf('/') + 1);
+		lookup.setSourceFileName(simpleName + ".java");
+		for (int i = 0; i < firstLines.length; i++) {
+			SortedIntList lines = new SortedIntList();
+			lines.add(firstLines[i]);
+			lines.add(firstLines[i] + 1);
+			lookup.addProbe(i * 2, lines);
+		}
+		lookup.setTotalProbeCount(4);
+		return lookup;
+	}
+
+	/** Returns a copy of the given bytes in which the int at the given offset is replaced. */
+	private static byte[] withIntAt(byte[] bytes, int offset, int value) {
+		byte[] copy = bytes.clone();
+		ByteBuffer.wrap(copy).putInt(offset, value);
+		return copy;
+	}
+
+	private static List<Path> listEntries(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			return paths.filter(path -> path.toString().endsWith(".lookup")).collect(Collectors.toList());
+		}
+	}
+}
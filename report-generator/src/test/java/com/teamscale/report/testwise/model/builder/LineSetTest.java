@@ -0,0 +1,78 @@
+package com.teamscale.report.testwise.model.builder;
+
+import com.teamscale.report.util.SortedIntList;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests the {@link LineSet} class. */
+class LineSetTest {
+
+	@Test
+	void emptySet() {
+		LineSet lineSet = new LineSet();
+		assertThat(lineSet.isEmpty()).isTrue();
+		assertThat(lineSet.size()).isEqualTo(0);
+		assertThat(lineSet.toRanges()).isEmpty();
+	}
+
+	@Test
+	void addLinesAndRanges() {
+		LineSet lineSet = new LineSet();
+		lineSet.add(10);
+		lineSet.add(1);
+		lineSet.addRange(3, 5);
+		lineSet.addRange(5, 4);
+		lineSet.addAll(new int[]{0, 6, 12, 99}, 1, 3);
+		assertThat(lineSet.isEmpty()).isFalse();
+		assertThat(lineSet.size()).isEqualTo(7);
+		assertThat(lineSet.toRanges()).hasToString("[1, 3-6, 10, 12]");
+	}
+
+	@Test
+	void mergeSets() {
+		LineSet lineSet = lineSetOf(1, 2, 3, 7);
+		lineSet.addAll(lineSetOf(4, 8, 200));
+		assertThat(lineSet.toRanges()).hasToString("[1-4, 7-8, 200]");
+	}
+
+	@Test
+	void switchesToSparseStorageForHugeLines() {
+		int hugeLine = LineSet.MAX_DENSE_LINE + 10;
+		LineSet lineSet = lineSetOf(1, 2, 5);
+		lineSet.addRange(hugeLine, hugeLine + 1);
+		lineSet.add(3);
+		assertThat(lineSet.size()).isEqualTo(6);
+		assertThat(lineSet.toRanges()).hasToString("[1-3, 5, " + hugeLine + "-" + (hugeLine + 1) + "]");
+	}
+
+	@Test
+	void mergeDenseAndSparseSets() {
+		int hugeLine = LineSet.MAX_DENSE_LINE + 1;
+		LineSet sparseSet = lineSetOf(4, hugeLine);
+		sparseSet.addAll(lineSetOf(1, 2));
+		assertThat(sparseSet.toRanges()).hasToString("[1-2, 4, " + hugeLine + "]");
+
+		LineSet denseSet = lineSetOf(1, 2);
+		denseSet.addAll(lineSetOf(4, hugeLine));
+		assertThat(denseSet.toRanges()).hasToString("[1-2, 4, " + hugeLine + "]");
+	}
+
+	@Test
+	void addSortedIntList() {
+		SortedIntList lines = new SortedIntList();
+		lines.add(2);
+		lines.add(3);
+		LineSet lineSet = lineSetOf(1);
+		lineSet.addAll(lines);
+		assertThat(lineSet.toRanges()).hasToString("[1-3]");
+	}
+
+	private static LineSet lineSetOf(int... lines) {
+		LineSet lineSet = new LineSet();
+		for (int line : lines) {
+			lineSet.add(line);
+		}
+		return lineSet;
+	}
+}
@@ -0,0 +1,92 @@
+package com.teamscale.report.testwise.model.builder;
+
+import com.squareup.moshi.JsonWriter;
+import com.squareup.moshi.Moshi;
+import com.teamscale.client.TestDetails;
+import com.teamscale.report.testwise.model.ETestExecutionResult;
+import com.teamscale.report.testwise.model.PathCoverage;
+import com.teamscale.report.testwise.model.TestExecution;
+import com.teamscale.report.testwise.model.TestInfo;
+import com.teamscale.report.testwise.model.TestwiseCoverageReport;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests the {@link TestwiseCoverageReportBuilder} class. */
+class TestwiseCoverageReportBuilderTest {
+
+	private static final String TEST = "com/example/FooTest/testBar()";
+
+	private static final List<String> INVOCATIONS = Arrays.asList(TEST + "[1]", TEST + "[2]");
+
+	private static final List<TestDetails> DETAILS = Collections.singletonList(
+			new TestDetails(TEST, "com/example/FooTest.java", "content"));
+
+	private static final List<TestExecution> EXECUTIONS = Collections.singletonList(
+			new TestExecution(TEST, 1000, ETestExecutionResult.PASSED));
+
+	/** The coverage of all invocations of a parameterized test is merged into a single test. */
+	@Test
+	void mergesCoverageOfParameterizedTest() {
+		TestwiseCoverageReport report = TestwiseCoverageReportBuilder.createFrom(DETAILS,
+				createCoverage().values(), EXECUTIONS);
+
+		assertThat(report.tests).hasSize(1);
+		TestInfo test = report.tests.get(0);
+		assertThat(test.uniformPath).isEqualTo(TEST);
+		assertThat(test.paths).hasSize(1);
+		PathCoverage path = test.paths.get(0);
+		assertThat(path.getFiles()).hasSize(2);
+		assertThat(path.getFiles().stream().map(file -> file.fileName + ":" + file.coveredLines))
+				.containsExactlyInAnyOrder("Bar.java:1-3", "Foo.java:5,10");
+	}
+
+	/** Writing the report test by test must produce the same report as building it in memory. */
+	@Test
+	void writesSameReportAsCreateFrom() throws IOException {
+		TestwiseCoverageReport report = TestwiseCoverageReportBuilder.createFrom(DETAILS,
+				createCoverage().values(), EXECUTIONS);
+		String expectedJson = new Moshi.Builder().build().adapter(TestwiseCoverageReport.class).toJson(report);
+
+		Map<String, TestCoverageBuilder> coverage = createCoverage();
+		Buffer buffer = new Buffer();
+		try (JsonWriter writer = JsonWriter.of(buffer)) {
+			TestwiseCoverageReportBuilder.writeTo(writer, DETAILS, INVOCATIONS, coverage::get, EXECUTIONS);
+		}
+
+		assertThat(buffer.readUtf8()).isEqualTo(expectedJson);
+	}
+
+	/**
+	 * Creates the coverage of two invocations of a parameterized test by uniform path. Both cover Foo.java, but only
+	 * the second one covers Bar.java. New builders are created for each report, since merging modifies them.
+	 */
+	private static Map<String, TestCoverageBuilder> createCoverage() {
+		TestCoverageBuilder first = new TestCoverageBuilder(INVOCATIONS.get(0));
+		first.add(createFileCoverage("Foo.java", 5));
+
+		TestCoverageBuilder second = new TestCoverageBuilder(INVOCATIONS.get(1));
+		second.add(createFileCoverage("Foo.java", 10));
+		second.add(createFileCoverage("Bar.java", 1, 2, 3));
+
+		return Arrays.asList(first, second).stream()
+				.collect(Collectors.toMap(TestCoverageBuilder::getUniformPath, Function.identity()));
+	}
+
+	private static FileCoverageBuilder createFileCoverage(String fileName, int... lines) {
+		FileCoverageBuilder fileCoverage = new FileCoverageBuilder("com/example", fileName);
+		for (int line : lines) {
+			fileCoverage.addLine(line);
+		}
+		return fileCoverage;
+	}
+}
@@ -1,7 +1,11 @@
 package com.teamscale.report.util;
 
+import org.jacoco.core.runtime.WildcardMatcher;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static com.teamscale.report.util.ClasspathWildcardIncludeFilter.getClassName;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -28,4 +32,43 @@ public class ClasspathWildcardIncludeFilterTest {
 		assertThat(new ClasspathWildcardIncludeFilter(null, "org.junit.*")
 				.isIncluded("org/junit/platform/commons/util/ModuleUtils$ModuleReferenceScanner.class")).isFalse();
 	}
-}
\ No newline at end of file
+
+	@Test
+	void testMatchingWildcards() {
+		ClasspathWildcardIncludeFilter filter = new ClasspathWildcardIncludeFilter(
+				"com.foo.*:com.bar.Exact:*.util.*Helper:org.?ql.*", "com.foo.generated.*:*Test");
+
+		assertThat(filter.isIncluded("app.jar@com/foo/Bar.class")).isTrue();
+		assertThat(filter.isIncluded("app.jar@com/foo/Bar$Inner.class")).isTrue();
+		assertThat(filter.isIncluded("app.jar@com/foo/generated/Bar.class")).isFalse();
+		assertThat(filter.isIncluded("app.jar@com/foo/BarTest.class")).isFalse();
+		assertThat(filter.isIncluded("com/bar/Exact")).isTrue();
+		assertThat(filter.isIncluded("com/bar/Exactly")).isFalse();
+		assertThat(filter.isIncluded("com/baz/util/StringHelper.class")).isTrue();
+		assertThat(filter.isIncluded("com/baz/util/StringHelpers.class")).isFalse();
+		assertThat(filter.isIncluded("org/sql/Driver.class")).isTrue();
+		assertThat(filter.isIncluded("org/mysql/Driver.class")).isFalse();
+		assertThat(filter.isIncluded("com/other/Bar.class")).isFalse();
+	}
+
+	/** Tests that the compiled patterns match exactly the same class names as JaCoCo's {@link WildcardMatcher}. */
+	@Test
+	void testMatchingIsEquivalentToWildcardMatcher() {
+		List<String> expressions = Arrays.asList("*", "com.*", "com.foo.*:com.foobar.*", "*.Foo", "*Foo*Bar*",
+				"com.?oo.*", "com.foo.Bar", "com.foo.Bar:com.foo.Bar.*", "**.Bar", "com.*.*.Baz", "???.foo.*",
+				"com.foo*:com.fo?");
+		List<String> classNames = Arrays.asList("com.foo.Bar", "com.foo.Bar.Baz", "com.foobar.Foo", "com.fo",
+				"com.foo", "org.foo.Foo", "FooBar", "com.FooXBar", "com.boo.Bar", "com.foo.x.Baz", "com.Baz", "",
+				"com.foo.Bar.Inner.Baz");
+
+		for (String expression : expressions) {
+			WildcardMatcher expected = new WildcardMatcher(expression);
+			CompiledWildcardMatcher actual = new CompiledWildcardMatcher(expression);
+			for (String className : classNames) {
+				String path = "app.jar@" + className.replace('.', '/') + ".class";
+				assertThat(actual.matches(path, path.indexOf('@') + 1, path.length() - ".class".length()))
+						.as("%s matches %s", expression, className).isEqualTo(expected.matches(className));
+			}
+		}
+	}
+}
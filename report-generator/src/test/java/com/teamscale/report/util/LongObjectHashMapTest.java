@@ -0,0 +1,52 @@
+package com.teamscale.report.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongObjectHashMapTest {
+
+	@Test
+	void emptyMap() {
+		LongObjectHashMap<String> map = new LongObjectHashMap<>();
+		assertThat(map.isEmpty()).isTrue();
+		assertThat(map.get(0)).isNull();
+		assertThat(map.containsKey(42)).isFalse();
+	}
+
+	@Test
+	void putAndGet() {
+		LongObjectHashMap<String> map = new LongObjectHashMap<>();
+		assertThat(map.put(0, "zero")).isNull();
+		assertThat(map.put(-1, "minus one")).isNull();
+		assertThat(map.put(Long.MAX_VALUE, "max")).isNull();
+		assertThat(map.put(0, "null")).isEqualTo("zero");
+
+		assertThat(map.size()).isEqualTo(3);
+		assertThat(map.get(0)).isEqualTo("null");
+		assertThat(map.get(-1)).isEqualTo("minus one");
+		assertThat(map.get(Long.MAX_VALUE)).isEqualTo("max");
+		assertThat(map.containsKey(1)).isFalse();
+	}
+
+	@Test
+	void behavesLikeHashMapWhenGrowing() {
+		LongObjectHashMap<Long> map = new LongObjectHashMap<>(1);
+		Map<Long, Long> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 10_000; i++) {
+			// Keys that only differ in their upper bits must not all collide
+			long key = random.nextBoolean() ? random.nextLong() : ((long) i) << 40;
+			assertThat(map.put(key, (long) i)).isEqualTo(expected.put(key, (long) i));
+		}
+
+		assertThat(map.size()).isEqualTo(expected.size());
+		for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+			assertThat(map.get(entry.getKey())).isEqualTo(entry.getValue());
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package org.jacoco.core.internal.analysis;
+
+import com.teamscale.report.testwise.jacoco.cache.ClassCoverageLookup;
+import com.teamscale.report.util.SortedIntList;
+import org.jacoco.core.internal.flow.ClassProbesAdapter;
+import org.jacoco.core.internal.flow.MethodProbesVisitor;
+import org.jacoco.core.internal.instr.InstrSupport;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the {@link CachingInstructionsBuilder} against a reference implementation that traces back the lines of each
+ * probe separately by reading the predecessors of the instructions via reflection, just like the builder did before
+ * probes shared the lines of their common predecessors.
+ */
+class CachingInstructionsBuilderTest {
+
+	/** Real-world class files that are analyzed by the test. */
+	private static final File[] CLASS_FILE_ARCHIVES = {
+			new File("test-data/com.teamscale.report.testwise.jacoco/jacoco/cqddl/classes.zip"),
+			new File("test-data/com.teamscale.report.testwise.jacoco/jacoco/sample/classes.zip"),
+			new File("test-data/com.teamscale.report.testwise.jacoco/jacoco/default-package/classes.zip"),
+			new File("src/test/resources/com/teamscale/report/util/normal.jar"),
+	};
+
+	@Test
+	void linesOfProbesAreTheSameAsWithReferenceImplementation() throws IOException {
+		int analyzedClasses = 0;
+		for (File archive : CLASS_FILE_ARCHIVES) {
+			try (ZipFile zipFile = new ZipFile(archive)) {
+				Enumeration<? extends ZipEntry> entries = zipFile.entries();
+				while (entries.hasMoreElements()) {
+					ZipEntry entry = entries.nextElement();
+					if (!entry.getName().endsWith(".class")) {
+						continue;
+					}
+					byte[] classFile = readFully(zipFile.getInputStream(entry));
+					assertThat(analyze(classFile, false)).describedAs(archive + "!" + entry.getName())
+							.isEqualTo(analyze(classFile, true));
+					analyzedClasses++;
+				}
+			}
+		}
+		assertThat(analyzedClasses).isGreaterThan(600);
+	}
+
+	/** Returns the lines of all probes of the given class in the order in which they have been added. */
+	private static Map<Integer, List<Integer>> analyze(byte[] classFile, boolean useReferenceImplementation) {
+		Map<Integer, List<Integer>> linesOfProbes = new LinkedHashMap<>();
+		ClassCoverageLookup lookup = mock(ClassCoverageLookup.class);
+		doAnswer(invocation -> {
+			SortedIntList lines = invocation.getArgument(1);
+			List<Integer> lineList = new ArrayList<>();
+			for (int i = 0; i < lines.size(); i++) {
+				lineList.add(lines.get(i));
+			}
+			linesOfProbes.put(invocation.getArgument(0), lineList);
+			return null;
+		}).when(lookup).addProbe(anyInt(), any());
+
+		ClassReader reader = InstrSupport.classReaderFor(classFile);
+		ClassCoverageImpl dummyClassCoverage = new ClassCoverageImpl(reader.getClassName(), 0, false);
+		CachingClassAnalyzer analyzer;
+		if (useReferenceImplementation) {
+			analyzer = new ReferenceClassAnalyzer(lookup, dummyClassCoverage);
+		} else {
+			analyzer = new CachingClassAnalyzer(lookup, dummyClassCoverage, new StringPool());
+		}
+		reader.accept(new ClassProbesAdapter(analyzer, false), 0);
+		return linesOfProbes;
+	}
+
+	private static byte[] readFully(InputStream inputStream) throws IOException {
+		try (InputStream input = inputStream) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = input.read(buffer)) != -1) {
+				output.write(buffer, 0, count);
+			}
+			return output.toByteArray();
+		}
+	}
+
+	/** Analyzes the methods of a class with the {@link ReferenceInstructionsBuilder}. */
+	private static class ReferenceClassAnalyzer extends CachingClassAnalyzer {
+
+		private final ClassCoverageLookup classCoverageLookup;
+
+		private ReferenceClassAnalyzer(ClassCoverageLookup classCoverageLookup, ClassCoverageImpl coverage) {
+			super(classCoverageLookup, coverage, new StringPool());
+			this.classCoverageLookup = classCoverageLookup;
+		}
+
+		@Override
+		public MethodProbesVisitor visitMethod(int access, String name, String desc, String signature,
+											   String[] exceptions) {
+			ReferenceInstructionsBuilder builder = new ReferenceInstructionsBuilder(classCoverageLookup);
+			return new MethodAnalyzer(builder) {
+
+				@Override
+				public void accept(MethodNode methodNode, MethodVisitor methodVisitor) {
+					super.accept(methodNode, methodVisitor);
+					builder.fillCache();
+				}
+			};
+		}
+	}
+
+	/**
+	 * Uses the unmodified {@link InstructionsBuilder} of JaCoCo to build the control flow graph and traces back the
+	 * lines of each probe separately by following the predecessors of the instructions.
+	 */
+	private static class ReferenceInstructionsBuilder extends InstructionsBuilder {
+
+		private final ClassCoverageLookup classCoverageLookup;
+
+		private final Map<Integer, Instruction> instructionsOfProbes = new LinkedHashMap<>();
+
+		private ReferenceInstructionsBuilder(ClassCoverageLookup classCoverageLookup) {
+			super(null);
+			this.classCoverageLookup = classCoverageLookup;
+		}
+
+		@Override
+		void addProbe(int probeId, int branch) {
+			super.addProbe(probeId, branch);
+			instructionsOfProbes.put(probeId, (Instruction) readField(InstructionsBuilder.class, this, "currentInsn"));
+		}
+
+		private void fillCache() {
+			// Wires the jumps
+			getInstructions();
+
+			for (Map.Entry<Integer, Instruction> probe : instructionsOfProbes.entrySet()) {
+				Instruction instruction = probe.getValue();
+				SortedIntList coveredLines = new SortedIntList();
+				while (instruction != null) {
+					if (instruction.getLine() != -1) {
+						coveredLines.add(instruction.getLine());
+					}
+					instruction = (Instruction) readField(Instruction.class, instruction, "predecessor");
+				}
+				classCoverageLookup.addProbe(probe.getKey(), coveredLines);
+			}
+		}
+
+		private static Object readField(Class<?> declaringClass, Object object, String fieldName) {
+			try {
+				Field field = declaringClass.getDeclaredField(fieldName);
+				field.setAccessible(true);
+				return field.get(object);
+			} catch (NoSuchFieldException | IllegalAccessException e) {
+				throw new AssertionError("Cannot read field " + fieldName + " of " + declaringClass, e);
+			}
+		}
+	}
+}
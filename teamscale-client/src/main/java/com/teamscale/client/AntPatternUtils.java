@@ -16,6 +16,7 @@
 +-------------------------------------------------------------------------*/
 package com.teamscale.client;
 
+import java.util.Collection;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -29,19 +30,56 @@ public class AntPatternUtils {
 
 	/** Converts an ANT pattern to a regex pattern. */
 	public static Pattern convertPattern(String antPattern, boolean caseSensitive) throws PatternSyntaxException {
+		return convertPattern(antPattern, 0, caseSensitive);
+	}
+
+	/**
+	 * Compiles the given ANT patterns into a single matcher, which checks whether a path matches any of them in one
+	 * pass over the path.
+	 */
+	public static CombinedAntPatternMatcher convertPatterns(Collection<String> antPatterns,
+															boolean caseSensitive) throws PatternSyntaxException {
+		return new CombinedAntPatternMatcher(antPatterns, caseSensitive);
+	}
 
+	/**
+	 * Returns the literal prefix of the given ANT pattern, i.e. the part before its first wildcard, with which every
+	 * matching path starts.
+	 */
+	/* package */
+	static String getLiteralPrefix(String antPattern) {
+		String plainPattern = stripTrailAll(normalizePattern(antPattern));
+		int prefixLength = 0;
+		while (prefixLength < plainPattern.length() && plainPattern.charAt(prefixLength) != '*'
+				&& plainPattern.charAt(prefixLength) != '?') {
+			prefixLength++;
+		}
+		return plainPattern.substring(0, prefixLength);
+	}
+
+	/**
+	 * Converts the part of the ANT pattern after its {@link #getLiteralPrefix(String) literal prefix} to a regex
+	 * pattern. A path matches the ANT pattern if it starts with the literal prefix and the rest of it matches this
+	 * regex.
+	 */
+	/* package */
+	static Pattern convertPatternAfterLiteralPrefix(String antPattern,
+													boolean caseSensitive) throws PatternSyntaxException {
+		return convertPattern(antPattern, getLiteralPrefix(antPattern).length(), caseSensitive);
+	}
+
+	/** Converts the ANT pattern to a regex pattern, starting at the given index of the normalized pattern. */
+	private static Pattern convertPattern(String antPattern, int startIndex,
+										  boolean caseSensitive) throws PatternSyntaxException {
 		antPattern = normalizePattern(antPattern);
 
 		// ant specialty: trailing /** is optional
 		// for example **/e*/** will also match foo/entry
-		boolean addTrailAll = false;
-		if (antPattern.endsWith("/**")) {
-			addTrailAll = true;
-			antPattern = StringUtils.stripSuffix(antPattern, "/**");
-		}
+		boolean addTrailAll = antPattern.endsWith("/**");
+		antPattern = stripTrailAll(antPattern);
 
 		StringBuilder patternBuilder = new StringBuilder();
-		convertPlainPattern(antPattern, patternBuilder);
+		convertPlainPattern(antPattern, startIndex, patternBuilder);
 
 		if (addTrailAll) {
 			// the tail pattern is optional (i.e. we do not require the '/'),
@@ -74,6 +112,14 @@ public class AntPatternUtils {
 		return flags;
 	}
 
+	/** Removes a trailing '/**' from the given normalized pattern. */
+	private static String stripTrailAll(String antPattern) {
+		if (antPattern.endsWith("/**")) {
+			return StringUtils.stripSuffix(antPattern, "/**");
+		}
+		return antPattern;
+	}
+
 	/**
 	 * Normalizes the given pattern by ensuring forward slashes and mapping trailing slash to '/**'.
 	 */
@@ -91,10 +137,11 @@ public class AntPatternUtils {
 	/**
 	 * Converts a plain ANT pattern to a regular expression, by replacing special characters, such as '?', '*', and
 	 * '**'. The created pattern is appended to the given {@link StringBuilder}. The pattern must be plain, i.e. all ANT
-	 * specialties, such as trailing double stars have to be dealt with beforehand.
+	 * specialties, such as trailing double stars have to be dealt with beforehand. The conversion starts at the given
+	 * index.
 	 */
-	private static void convertPlainPattern(String antPattern, StringBuilder patternBuilder) {
-		for (int i = 0; i < antPattern.length(); ++i) {
+	private static void convertPlainPattern(String antPattern, int startIndex, StringBuilder patternBuilder) {
+		for (int i = startIndex; i < antPattern.length(); ++i) {
 			char c = antPattern.charAt(i);
 			if (c == '?') {
 				patternBuilder.append("[^/]");
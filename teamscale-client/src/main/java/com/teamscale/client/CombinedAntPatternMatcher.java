@@ -0,0 +1,91 @@
+package com.teamscale.client;
+
+import java.util.Collection;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Checks whether a path matches any of a set of ANT patterns, see {@link AntPatternUtils}. Instead of matching the path
+ * against the regex of every pattern, the patterns are stored in a trie over their literal prefixes, i.e. the part
+ * before the first wildcard, see {@link PrefixTrieNode}. A single pass over the path finds all patterns whose prefix
+ * the path starts with and only the remainders of these patterns are matched as regex. With many patterns that start
+ * with different directories, this is a small fraction of them.
+ * <p>
+ * The matcher is immutable and thus thread-safe.
+ */
+public class CombinedAntPatternMatcher {
+
+	/** Whether the patterns are case sensitive. */
+	private final boolean caseSensitive;
+
+	/** The node of the empty prefix. */
+	private final PrefixTrieNode<Pattern> root = new PrefixTrieNode<>();
+
+	/** Whether no patterns were given. */
+	private final boolean isEmpty;
+
+	/** Constructor. Use {@link AntPatternUtils#convertPatterns(Collection, boolean)}. */
+	/* package */ CombinedAntPatternMatcher(Collection<String> antPatterns,
+											 boolean caseSensitive) throws PatternSyntaxException {
+		this.caseSensitive = caseSensitive;
+		this.isEmpty = antPatterns.isEmpty();
+		for (String antPattern : antPatterns) {
+			add(antPattern);
+		}
+	}
+
+	private void add(String antPattern) {
+		String literalPrefix = AntPatternUtils.getLiteralPrefix(antPattern);
+		Pattern remainder = AntPatternUtils.convertPatternAfterLiteralPrefix(antPattern, caseSensitive);
+
+		PrefixTrieNode<Pattern> node = root;
+		for (int i = 0; i < literalPrefix.length(); i++) {
+			node = node.getOrCreateChild(normalize(literalPrefix.charAt(i)));
+		}
+		if (remainder.pattern().isEmpty()) {
+			node.setMatchesExactly();
+		} else {
+			node.addRemainder(remainder);
+		}
+	}
+
+	/** Returns whether no patterns were given, in which case no path matches. */
+	public boolean isEmpty() {
+		return isEmpty;
+	}
+
+	/** Returns whether the given path (normalized to forward slashes) matches any of the patterns. */
+	public boolean matchesAny(String path) {
+		PrefixTrieNode<Pattern> node = root;
+		int i = 0;
+		while (true) {
+			if (node.matchesExactly() && i == path.length()) {
+				return true;
+			}
+			for (Pattern remainder : node.getRemainders()) {
+				if (remainder.matcher(path).region(i, path.length()).matches()) {
+					return true;
+				}
+			}
+			if (i == path.length()) {
+				return false;
+			}
+			node = node.getChild(normalize(path.charAt(i)));
+			if (node == null) {
+				return false;
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * Normalizes the character for the lookup in the trie. Case insensitive patterns ignore the case of ASCII letters
+	 * only, like {@link Pattern#CASE_INSENSITIVE}.
+	 */
+	private char normalize(char c) {
+		if (!caseSensitive && c >= 'A' && c <= 'Z') {
+			return (char) (c + ('a' - 'A'));
+		}
+		return c;
+	}
+}
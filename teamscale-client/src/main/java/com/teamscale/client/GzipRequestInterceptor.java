@@ -0,0 +1,64 @@
+package com.teamscale.client;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+import java.io.IOException;
+
+/**
+ * Compresses request bodies with gzip if they are at least as large as the threshold. Bodies of unknown length are
+ * streamed and usually compressed already, so they are sent as they are. The server must support the
+ * <code>Content-Encoding: gzip</code> header on requests.
+ */
+/* package */ class GzipRequestInterceptor implements Interceptor {
+
+	/** The minimum size in bytes of request bodies that are compressed. A negative value disables the compression. */
+	private final long threshold;
+
+	/** Constructor. */
+	/* package */ GzipRequestInterceptor(long threshold) {
+		this.threshold = threshold;
+	}
+
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		Request request = chain.request();
+		RequestBody body = request.body();
+		if (threshold < 0 || body == null || request.header("Content-Encoding") != null
+				|| body.contentLength() < threshold) {
+			return chain.proceed(request);
+		}
+
+		Request compressedRequest = request.newBuilder().header("Content-Encoding", "gzip")
+				.method(request.method(), gzip(body)).build();
+		return chain.proceed(compressedRequest);
+	}
+
+	private static RequestBody gzip(RequestBody body) {
+		return new RequestBody() {
+			@Override
+			public MediaType contentType() {
+				return body.contentType();
+			}
+
+			/** Returns -1 since the compressed length is unknown in advance. */
+			@Override
+			public long contentLength() {
+				return -1;
+			}
+
+			@Override
+			public void writeTo(BufferedSink sink) throws IOException {
+				try (BufferedSink gzipSink = Okio.buffer(new GzipSink(sink))) {
+					body.writeTo(gzipSink);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,249 @@
+package com.teamscale.client;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Records the latency and the transferred bytes of requests per endpoint. An endpoint is the HTTP method together with
+ * the URL without query. {@link HttpUtils#getMetrics()} records all requests of the process, {@link
+ * TeamscaleClient#getMetrics()} only those of a single client.
+ */
+public class HttpMetrics implements Interceptor {
+
+	/**
+	 * The maximum number of endpoints that are recorded separately. URLs may contain IDs or timestamps, so requests to
+	 * further endpoints are recorded as {@link #OTHER_ENDPOINTS} to keep the memory usage bounded.
+	 */
+	private static final int MAX_ENDPOINTS = 100;
+
+	/** The name under which all endpoints beyond {@link #MAX_ENDPOINTS} are recorded. */
+	private static final String OTHER_ENDPOINTS = "<other endpoints>";
+
+	/** The metrics per endpoint. */
+	private final ConcurrentMap<String, EndpointMetrics> metricsByEndpoint = new ConcurrentHashMap<>();
+
+	/** Constructor. */
+	public HttpMetrics() {
+		// nothing to do
+	}
+
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		Request request = chain.request();
+		EndpointMetrics metrics = getMetrics(request);
+		if (request.body() != null) {
+			request = request.newBuilder().method(request.method(), countSentBytes(request.body(), metrics)).build();
+		}
+
+		long start = System.nanoTime();
+		Response response;
+		try {
+			response = chain.proceed(request);
+		} catch (IOException | RuntimeException e) {
+			metrics.failedRequests.increment();
+			throw e;
+		}
+		metrics.recordRequest(System.nanoTime() - start);
+		if (!response.isSuccessful()) {
+			metrics.failedRequests.increment();
+		}
+
+		if (response.body() == null) {
+			return response;
+		}
+		return response.newBuilder().body(countReceivedBytes(response.body(), metrics)).build();
+	}
+
+	private EndpointMetrics getMetrics(Request request) {
+		String endpoint = request.method() + " " + request.url().newBuilder().query(null).build();
+		EndpointMetrics metrics = metricsByEndpoint.get(endpoint);
+		if (metrics != null) {
+			return metrics;
+		}
+		if (metricsByEndpoint.size() >= MAX_ENDPOINTS) {
+			endpoint = OTHER_ENDPOINTS;
+		}
+		return metricsByEndpoint.computeIfAbsent(endpoint, EndpointMetrics::new);
+	}
+
+	private static RequestBody countSentBytes(RequestBody body, EndpointMetrics metrics) {
+		return new RequestBody() {
+			@Override
+			public MediaType contentType() {
+				return body.contentType();
+			}
+
+			@Override
+			public long contentLength() throws IOException {
+				return body.contentLength();
+			}
+
+			@Override
+			public void writeTo(BufferedSink sink) throws IOException {
+				CountingSink countingSink = new CountingSink(sink, metrics);
+				BufferedSink bufferedSink = Okio.buffer(countingSink);
+				body.writeTo(bufferedSink);
+				if (!countingSink.closed) {
+					bufferedSink.emit();
+				}
+			}
+		};
+	}
+
+	private static ResponseBody countReceivedBytes(ResponseBody body, EndpointMetrics metrics) {
+		ForwardingSource countingSource = new ForwardingSource(body.source()) {
+			@Override
+			public long read(Buffer sink, long byteCount) throws IOException {
+				long bytesRead = super.read(sink, byteCount);
+				if (bytesRead > 0) {
+					metrics.receivedBytes.add(bytesRead);
+				}
+				return bytesRead;
+			}
+		};
+		return ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(countingSource));
+	}
+
+	/**
+	 * Counts the bytes that are written to the sink of the request. Does not close the sink of the request, since
+	 * OkHttp closes it after the body has been written.
+	 */
+	private static class CountingSink extends ForwardingSink {
+
+		private final EndpointMetrics metrics;
+
+		/** Whether the request body closed this sink, which it may do after writing everything. */
+		private boolean closed = false;
+
+		private CountingSink(BufferedSink delegate, EndpointMetrics metrics) {
+			super(delegate);
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void write(Buffer source, long byteCount) throws IOException {
+			super.write(source, byteCount);
+			metrics.sentBytes.add(byteCount);
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			flush();
+		}
+	}
+
+	/** Returns the metrics of all endpoints that have been requested so far, sorted by endpoint. */
+	public List<EndpointMetrics> getMetrics() {
+		List<EndpointMetrics> metrics = new ArrayList<>(metricsByEndpoint.values());
+		metrics.sort(Comparator.comparing(EndpointMetrics::getEndpoint));
+		return metrics;
+	}
+
+	/** Returns a human-readable summary with one line per endpoint. */
+	@Override
+	public String toString() {
+		return getMetrics().stream().map(EndpointMetrics::toString).collect(Collectors.joining("\n"));
+	}
+
+	/** The metrics of a single endpoint. */
+	public static class EndpointMetrics {
+
+		/** The HTTP method and URL of the endpoint. */
+		private final String endpoint;
+
+		/** The number of requests for which a response was received. */
+		private final LongAdder requests = new LongAdder();
+
+		/** The number of requests that failed with an exception or an unsuccessful response. */
+		private final LongAdder failedRequests = new LongAdder();
+
+		/** The total time between sending the requests and receiving the response headers. */
+		private final LongAdder totalLatencyNanos = new LongAdder();
+
+		/** The maximum time between sending a request and receiving the response headers. */
+		private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+		/** The number of bytes of all request bodies. */
+		private final LongAdder sentBytes = new LongAdder();
+
+		/** The number of bytes of all response bodies that have been read. */
+		private final LongAdder receivedBytes = new LongAdder();
+
+		private EndpointMetrics(String endpoint) {
+			this.endpoint = endpoint;
+		}
+
+		private void recordRequest(long latencyNanos) {
+			requests.increment();
+			totalLatencyNanos.add(latencyNanos);
+			maxLatencyNanos.accumulate(latencyNanos);
+		}
+
+		/** @see #endpoint */
+		public String getEndpoint() {
+			return endpoint;
+		}
+
+		/** @see #requests */
+		public long getRequestCount() {
+			return requests.sum();
+		}
+
+		/** @see #failedRequests */
+		public long getFailedRequestCount() {
+			return failedRequests.sum();
+		}
+
+		/** Returns the average latency in milliseconds, see {@link #totalLatencyNanos}. */
+		public long getAverageLatencyMillis() {
+			long requestCount = getRequestCount();
+			if (requestCount == 0) {
+				return 0;
+			}
+			return TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.sum() / requestCount);
+		}
+
+		/** Returns the maximum latency in milliseconds, see {@link #maxLatencyNanos}. */
+		public long getMaxLatencyMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+		}
+
+		/** @see #sentBytes */
+		public long getSentBytes() {
+			return sentBytes.sum();
+		}
+
+		/** @see #receivedBytes */
+		public long getReceivedBytes() {
+			return receivedBytes.sum();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d requests (%d failed), latency avg %dms max %dms, sent %d bytes, received %d bytes",
+					endpoint, getRequestCount(), getFailedRequestCount(), getAverageLatencyMillis(),
+					getMaxLatencyMillis(), getSentBytes(), getReceivedBytes());
+		}
+	}
+}
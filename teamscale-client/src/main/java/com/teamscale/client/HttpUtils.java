@@ -24,6 +24,10 @@ import java.util.function.Consumer;
 
 /**
  * Utility functions to set up {@link Retrofit} and {@link OkHttpClient}.
+ * <p>
+ * All clients are derived from one process-wide client, so they share its connection pool and dispatcher. Thus,
+ * connections (and their TLS sessions) are reused across clients and uploads, and HTTP/2 is used where the server and
+ * the JVM support it.
  */
 public class HttpUtils {
 
@@ -32,11 +36,31 @@ public class HttpUtils {
 	/** Controls whether {@link OkHttpClient}s built with this class will validate SSL certificates. */
 	private static boolean shouldValidateSsl = false;
 
+	/** Records the metrics of all requests of the process. */
+	private static final HttpMetrics METRICS = new HttpMetrics();
+
+	/** The client from which all clients are derived. Created lazily, since not every process needs HTTP. */
+	private static OkHttpClient sharedClient;
+
+	/**
+	 * The socket factory that accepts all certificates. Cached, since connections are only reused by clients with the
+	 * same socket factory.
+	 */
+	private static SSLSocketFactory trustAllSslSocketFactory;
+
 	/** @see #shouldValidateSsl */
 	public static void setShouldValidateSsl(boolean shouldValidateSsl) {
 		HttpUtils.shouldValidateSsl = shouldValidateSsl;
 	}
 
+	/**
+	 * Returns the latency and byte metrics of all requests sent by clients created with this class since the process
+	 * started. Use {@link TeamscaleClient#getMetrics()} for the requests of a single client.
+	 */
+	public static HttpMetrics getMetrics() {
+		return METRICS;
+	}
+
 	/** Creates a new {@link Retrofit} with proper defaults. The instance can be customized with the given action. */
 	public static Retrofit createRetrofit(Consumer<Retrofit.Builder> retrofitBuilderAction) {
 		return createRetrofit(retrofitBuilderAction, okHttpBuilder -> {
@@ -50,8 +74,7 @@ public class HttpUtils {
 	 */
 	public static Retrofit createRetrofit(Consumer<Retrofit.Builder> retrofitBuilderAction,
 										  Consumer<OkHttpClient.Builder> okHttpBuilderAction) {
-		OkHttpClient.Builder httpClientBuilder = new OkHttpClient.Builder();
-		setDefaults(httpClientBuilder);
+		OkHttpClient.Builder httpClientBuilder = getSharedClient().newBuilder();
 		setUpSslValidation(httpClientBuilder);
 		okHttpBuilderAction.accept(httpClientBuilder);
 
@@ -60,6 +83,16 @@ public class HttpUtils {
 		return builder.build();
 	}
 
+	private static synchronized OkHttpClient getSharedClient() {
+		if (sharedClient == null) {
+			OkHttpClient.Builder builder = new OkHttpClient.Builder();
+			setDefaults(builder);
+			builder.addNetworkInterceptor(METRICS);
+			sharedClient = builder.build();
+		}
+		return sharedClient;
+	}
+
 	/**
 	 * Sets sensible defaults for the {@link OkHttpClient}.
 	 */
@@ -78,13 +111,8 @@ public class HttpUtils {
 			return;
 		}
 
-		SSLSocketFactory sslSocketFactory;
-		try {
-			SSLContext sslContext = SSLContext.getInstance("TLS");
-			sslContext.init(null, new TrustManager[]{TrustAllCertificatesManager.INSTANCE}, new SecureRandom());
-			sslSocketFactory = sslContext.getSocketFactory();
-		} catch (GeneralSecurityException e) {
-			LOGGER.error("Could not disable SSL certificate validation. Leaving it enabled", e);
+		SSLSocketFactory sslSocketFactory = getTrustAllSslSocketFactory();
+		if (sslSocketFactory == null) {
 			return;
 		}
 
@@ -94,6 +122,20 @@ public class HttpUtils {
 		builder.hostnameVerifier((String hostName, SSLSession session) -> true);
 	}
 
+	/** Returns the socket factory that accepts all certificates or null if it cannot be created. */
+	private static synchronized SSLSocketFactory getTrustAllSslSocketFactory() {
+		if (trustAllSslSocketFactory == null) {
+			try {
+				SSLContext sslContext = SSLContext.getInstance("TLS");
+				sslContext.init(null, new TrustManager[]{TrustAllCertificatesManager.INSTANCE}, new SecureRandom());
+				trustAllSslSocketFactory = sslContext.getSocketFactory();
+			} catch (GeneralSecurityException e) {
+				LOGGER.error("Could not disable SSL certificate validation. Leaving it enabled", e);
+			}
+		}
+		return trustAllSslSocketFactory;
+	}
+
 	/**
 	 * A simple implementation of {@link X509TrustManager} that simple trusts every certificate.
 	 */
@@ -0,0 +1,87 @@
+package com.teamscale.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A node of a trie over the literal prefixes of patterns, i.e. the part before the first wildcard. The path from the
+ * root to this node spells a literal prefix. Each node stores the remainders of the patterns with this prefix, so a
+ * path is only matched against the remainders of the patterns whose prefix it starts with.
+ *
+ * @param <R> The type of the remainders, e.g. a compiled regex.
+ */
+public class PrefixTrieNode<R> {
+
+	/** The characters that lead to the {@link #children}, sorted for binary search. */
+	private char[] childChars = new char[0];
+
+	/** The child nodes, in the order of {@link #childChars}. */
+	private PrefixTrieNode<R>[] children = newNodeArray(0);
+
+	/** The remainders of the patterns with this prefix, starting with a wildcard. */
+	private final List<R> remainders = new ArrayList<>();
+
+	/** Whether a pattern without wildcards ends here. */
+	private boolean matchesExactly = false;
+
+	@SuppressWarnings("unchecked")
+	private static <R> PrefixTrieNode<R>[] newNodeArray(int length) {
+		return (PrefixTrieNode<R>[]) new PrefixTrieNode<?>[length];
+	}
+
+	/** Returns the child for the given character or null if there is none. */
+	public PrefixTrieNode<R> getChild(char c) {
+		int index = Arrays.binarySearch(childChars, c);
+		if (index < 0) {
+			return null;
+		}
+		return children[index];
+	}
+
+	/** Returns the child for the given character and creates it if there is none. */
+	public PrefixTrieNode<R> getOrCreateChild(char c) {
+		int index = Arrays.binarySearch(childChars, c);
+		if (index >= 0) {
+			return children[index];
+		}
+
+		int insertionIndex = -index - 1;
+		char[] newChildChars = new char[childChars.length + 1];
+		PrefixTrieNode<R>[] newChildren = newNodeArray(children.length + 1);
+		System.arraycopy(childChars, 0, newChildChars, 0, insertionIndex);
+		System.arraycopy(children, 0, newChildren, 0, insertionIndex);
+		System.arraycopy(childChars, insertionIndex, newChildChars, insertionIndex + 1,
+				childChars.length - insertionIndex);
+		System.arraycopy(children, insertionIndex, newChildren, insertionIndex + 1,
+				children.length - insertionIndex);
+		PrefixTrieNode<R> child = new PrefixTrieNode<>();
+		newChildChars[insertionIndex] = c;
+		newChildren[insertionIndex] = child;
+		childChars = newChildChars;
+		children = newChildren;
+		return child;
+	}
+
+	/** Adds the remainder of a pattern with this prefix. Remainders that are present already are ignored. */
+	public void addRemainder(R remainder) {
+		if (!remainders.contains(remainder)) {
+			remainders.add(remainder);
+		}
+	}
+
+	/** Returns the remainders of the patterns with this prefix. */
+	public List<R> getRemainders() {
+		return remainders;
+	}
+
+	/** Returns whether a pattern without wildcards ends here. */
+	public boolean matchesExactly() {
+		return matchesExactly;
+	}
+
+	/** Marks that a pattern without wildcards ends here. */
+	public void setMatchesExactly() {
+		matchesExactly = true;
+	}
+}
@@ -28,19 +28,38 @@ public class TeamscaleClient {
 	/** The project ID within Teamscale. */
 	private final String projectId;
 
-	/** Constructor. */
+	/** The metrics of the requests sent by this client. */
+	private final HttpMetrics metrics = new HttpMetrics();
+
+	/** Constructor. Does not compress requests. */
 	public TeamscaleClient(String baseUrl, String user, String accessToken, String projectId) {
+		this(baseUrl, user, accessToken, projectId, -1);
+	}
+
+	/**
+	 * Constructor. Request bodies of at least the given size in bytes are compressed with gzip, a negative threshold
+	 * disables the compression.
+	 */
+	public TeamscaleClient(String baseUrl, String user, String accessToken, String projectId,
+						   long requestCompressionThreshold) {
 		this.projectId = projectId;
 		service = TeamscaleServiceGenerator
-				.createService(ITeamscaleService.class, HttpUrl.parse(baseUrl), user, accessToken);
+				.createService(ITeamscaleService.class, HttpUrl.parse(baseUrl), user, accessToken,
+						requestCompressionThreshold, metrics);
 	}
 
-	/** Constructor. */
-	public TeamscaleClient(String baseUrl, String user, String accessToken, String projectId, File file) {
+	/** Constructor, which logs all requests to the given file. See above for the compression threshold. */
+	public TeamscaleClient(String baseUrl, String user, String accessToken, String projectId, File file,
+						   long requestCompressionThreshold) {
 		this.projectId = projectId;
 		service = TeamscaleServiceGenerator
 				.createServiceWithRequestLogging(ITeamscaleService.class, HttpUrl.parse(baseUrl), user, accessToken,
-						file);
+						file, requestCompressionThreshold, metrics);
+	}
+
+	/** Returns the latency and byte metrics of the requests sent by this client. */
+	public HttpMetrics getMetrics() {
+		return metrics;
 	}
 
 	/**
@@ -133,4 +152,11 @@ public class TeamscaleClient {
 		RequestBody requestBody = RequestBody.create(MultipartBody.FORM, report);
 		service.uploadReport(projectId, commitDescriptor, revision, partition, reportFormat, message, requestBody);
 	}
+
+	/** Uploads one report file to Teamscale. The file is streamed into the request instead of being read at once. */
+	public void uploadReport(EReportFormat reportFormat, File report, CommitDescriptor commitDescriptor,
+							 String revision, String partition, String message) throws IOException {
+		RequestBody requestBody = RequestBody.create(MultipartBody.FORM, report);
+		service.uploadReport(projectId, commitDescriptor, revision, partition, reportFormat, message, requestBody);
+	}
 }
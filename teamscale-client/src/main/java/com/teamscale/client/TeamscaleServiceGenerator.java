@@ -20,11 +20,23 @@ public class TeamscaleServiceGenerator {
 	 */
 	public static <S> S createService(Class<S> serviceClass, HttpUrl baseUrl, String username, String accessToken,
 									  Interceptor... interceptors) {
+		return createService(serviceClass, baseUrl, username, accessToken, -1, null, interceptors);
+	}
+
+	/**
+	 * Generates a {@link Retrofit} instance for the given service like {@link #createService(Class, HttpUrl, String,
+	 * String, Interceptor...)}. Request bodies of at least the given size in bytes are compressed with gzip, a negative
+	 * threshold disables the compression. The requests are recorded in the given metrics, unless they are null.
+	 */
+	public static <S> S createService(Class<S> serviceClass, HttpUrl baseUrl, String username, String accessToken,
+									  long requestCompressionThreshold, HttpMetrics metrics,
+									  Interceptor... interceptors) {
 		Retrofit retrofit = HttpUtils.createRetrofit(
 				retrofitBuilder -> retrofitBuilder.baseUrl(baseUrl).addConverterFactory(MoshiConverterFactory.create()),
-				okHttpBuilder -> addInterceptors(okHttpBuilder, interceptors)
+				okHttpBuilder -> addMetrics(addInterceptors(okHttpBuilder, interceptors)
 						.addInterceptor(HttpUtils.getBasicAuthInterceptor(username, accessToken))
 						.addInterceptor(new AcceptJsonInterceptor())
+						.addInterceptor(new GzipRequestInterceptor(requestCompressionThreshold)), metrics)
 		);
 		return retrofit.create(serviceClass);
 	}
@@ -36,14 +48,27 @@ public class TeamscaleServiceGenerator {
 		return builder;
 	}
 
+	private static OkHttpClient.Builder addMetrics(OkHttpClient.Builder builder, HttpMetrics metrics) {
+		if (metrics != null) {
+			builder.addNetworkInterceptor(metrics);
+		}
+		return builder;
+	}
+
+	/**
+	 * Generates a {@link Retrofit} instance for the given service like {@link #createService(Class, HttpUrl, String,
+	 * String, long, HttpMetrics, Interceptor...)}, which additionally logs all requests to the given file.
+	 */
 	public static <S> S createServiceWithRequestLogging(Class<S> serviceClass, HttpUrl baseUrl, String username,
-														String accessToken, File file, Interceptor... interceptors) {
+														String accessToken, File file, long requestCompressionThreshold,
+														HttpMetrics metrics, Interceptor... interceptors) {
 		Retrofit retrofit = HttpUtils.createRetrofit(
 				retrofitBuilder -> retrofitBuilder.baseUrl(baseUrl).addConverterFactory(MoshiConverterFactory.create()),
-				okHttpBuilder -> addInterceptors(okHttpBuilder, interceptors)
+				okHttpBuilder -> addMetrics(addInterceptors(okHttpBuilder, interceptors)
 						.addInterceptor(HttpUtils.getBasicAuthInterceptor(username, accessToken))
 						.addInterceptor(new AcceptJsonInterceptor())
 						.addInterceptor(new FileLoggingInterceptor(file))
+						.addInterceptor(new GzipRequestInterceptor(requestCompressionThreshold)), metrics)
 		);
 		return retrofit.create(serviceClass);
 	}
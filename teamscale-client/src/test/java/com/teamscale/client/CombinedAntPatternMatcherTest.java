@@ -0,0 +1,83 @@
+package com.teamscale.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests that the {@link CombinedAntPatternMatcher} matches exactly the paths that one of its patterns matches. */
+class CombinedAntPatternMatcherTest {
+
+	private static final List<String> PATTERNS = Arrays.asList("**/google-closure-library/**", "**.soy.generated.js",
+			"soyutils_usegoog.js", "src/main/js/", "src/*/js/**/*.js", "lib/**/vendor/*.min.js", "**/test/**",
+			"app/module?/index.js", "docs/**.", "Build/Output/**", "**/*.JS", "*", "**", "");
+
+	private static final List<String> PATHS = Arrays.asList("src/main/js/app.js", "src/main/js", "src/test/js/a/b.js",
+			"foo/google-closure-library/base.js", "google-closure-library", "a/b/c.soy.generated.js",
+			"soyutils_usegoog.js", "x/soyutils_usegoog.js", "lib/a/b/vendor/jquery.min.js", "lib/vendor/jquery.min.js",
+			"lib/vendor/jquery.js", "test/a.js", "a/test", "app/module1/index.js", "app/module12/index.js",
+			"docs/README", "docs/a/LICENSE", "docs/a/readme.md", "build/output/app.js", "BUILD/OUTPUT", "app.js",
+			"APP.JS", "", "/", "a//b");
+
+	@Test
+	void matchesLikeSinglePatterns() {
+		for (boolean caseSensitive : new boolean[]{true, false}) {
+			for (String pattern : PATTERNS) {
+				assertEquivalent(Collections.singletonList(pattern), caseSensitive, PATHS);
+			}
+			assertEquivalent(PATTERNS, caseSensitive, PATHS);
+		}
+	}
+
+	@Test
+	void matchesLikeSinglePatternsForRandomPatterns() {
+		Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			List<String> patterns = new ArrayList<>();
+			for (int j = 0; j < 1 + random.nextInt(5); j++) {
+				patterns.add(createRandomString(random, "aB/.*?"));
+			}
+			List<String> paths = new ArrayList<>();
+			for (int j = 0; j < 20; j++) {
+				paths.add(createRandomString(random, "abAB/."));
+			}
+			assertEquivalent(patterns, random.nextBoolean(), paths);
+		}
+	}
+
+	@Test
+	void matchesNothingWithoutPatterns() {
+		CombinedAntPatternMatcher matcher = AntPatternUtils.convertPatterns(Collections.emptyList(), false);
+		assertThat(matcher.isEmpty()).isTrue();
+		assertThat(matcher.matchesAny("")).isFalse();
+		assertThat(matcher.matchesAny("a.js")).isFalse();
+	}
+
+	private static void assertEquivalent(List<String> patterns, boolean caseSensitive, List<String> paths) {
+		CombinedAntPatternMatcher matcher = AntPatternUtils.convertPatterns(patterns, caseSensitive);
+		for (String path : paths) {
+			boolean expected = false;
+			for (String pattern : patterns) {
+				Pattern regex = AntPatternUtils.convertPattern(pattern, caseSensitive);
+				expected |= regex.matcher(path).matches();
+			}
+			assertThat(matcher.matchesAny(path)).as("%s (case sensitive: %s) match %s", patterns, caseSensitive, path)
+					.isEqualTo(expected);
+		}
+	}
+
+	private static String createRandomString(Random random, String alphabet) {
+		StringBuilder builder = new StringBuilder();
+		int length = random.nextInt(8);
+		for (int i = 0; i < length; i++) {
+			builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,143 @@
+package com.teamscale.client;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.http.Body;
+import retrofit2.http.POST;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests the clients created by {@link HttpUtils}. */
+class HttpUtilsTest {
+
+	private static final String LARGE_BODY = String.join("", Collections.nCopies(1000, "coverage"));
+
+	private final MockWebServer server = new MockWebServer();
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() throws IOException {
+		server.shutdown();
+	}
+
+	@Test
+	void compressesLargeRequestsIfEnabled() throws Exception {
+		ITestApi service = createService(1000, null);
+		upload(service, LARGE_BODY);
+		upload(service, "small");
+
+		RecordedRequest largeRequest = server.takeRequest();
+		assertThat(largeRequest.getHeader("Content-Encoding")).isEqualTo("gzip");
+		assertThat(largeRequest.getBodySize()).isLessThan(LARGE_BODY.length());
+		assertThat(gunzip(largeRequest.getBody())).isEqualTo(LARGE_BODY);
+
+		RecordedRequest smallRequest = server.takeRequest();
+		assertThat(smallRequest.getHeader("Content-Encoding")).isNull();
+		assertThat(smallRequest.getBody().readUtf8()).isEqualTo("small");
+	}
+
+	@Test
+	void doesNotCompressByDefault() throws Exception {
+		upload(createService(), LARGE_BODY);
+
+		RecordedRequest request = server.takeRequest();
+		assertThat(request.getHeader("Content-Encoding")).isNull();
+		assertThat(request.getBody().readUtf8()).isEqualTo(LARGE_BODY);
+	}
+
+	@Test
+	void clientsShareConnections() throws Exception {
+		upload(createService(), "first");
+		upload(createService(), "second");
+
+		assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(0);
+		// The second request is the second one sent over the same connection
+		assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(1);
+	}
+
+	@Test
+	void recordsMetricsPerEndpoint() throws Exception {
+		ITestApi service = createService();
+		upload(service, "12345");
+		upload(service, "67890");
+
+		Optional<HttpMetrics.EndpointMetrics> metrics = findUploadMetrics(HttpUtils.getMetrics());
+		assertThat(metrics).isPresent();
+		assertThat(metrics.get().getRequestCount()).isEqualTo(2);
+		assertThat(metrics.get().getFailedRequestCount()).isEqualTo(0);
+		assertThat(metrics.get().getSentBytes()).isEqualTo(10);
+		assertThat(metrics.get().getReceivedBytes()).isEqualTo(4);
+	}
+
+	@Test
+	void recordsMetricsOfClientSeparately() throws Exception {
+		HttpMetrics clientMetrics = new HttpMetrics();
+		upload(createService(-1, clientMetrics), "12345");
+		upload(createService(), "67890");
+
+		Optional<HttpMetrics.EndpointMetrics> metrics = findUploadMetrics(clientMetrics);
+		assertThat(metrics).isPresent();
+		assertThat(metrics.get().getRequestCount()).isEqualTo(1);
+		assertThat(metrics.get().getSentBytes()).isEqualTo(5);
+	}
+
+	private Optional<HttpMetrics.EndpointMetrics> findUploadMetrics(HttpMetrics metrics) {
+		return metrics.getMetrics().stream()
+				.filter(endpointMetrics -> endpointMetrics.getEndpoint().equals("POST " + server.url("/upload")))
+				.findFirst();
+	}
+
+	private ITestApi createService() {
+		return TeamscaleServiceGenerator.createService(ITestApi.class, server.url("/"), "user", "token");
+	}
+
+	private ITestApi createService(long requestCompressionThreshold, HttpMetrics metrics) {
+		return TeamscaleServiceGenerator.createService(ITestApi.class, server.url("/"), "user", "token",
+				requestCompressionThreshold, metrics);
+	}
+
+	private void upload(ITestApi service, String content) throws IOException {
+		server.enqueue(new MockResponse().setBody("ok"));
+		Response<ResponseBody> response = service.upload(RequestBody.create(MediaType.parse("text/plain"), content))
+				.execute();
+		assertThat(response.isSuccessful()).isTrue();
+		// Reading the body releases the connection so that it can be reused
+		assertThat(response.body().string()).isEqualTo("ok");
+	}
+
+	private static String gunzip(Buffer compressed) throws IOException {
+		Buffer uncompressed = new Buffer();
+		try (GzipSource gzipSource = new GzipSource(compressed)) {
+			while (gzipSource.read(uncompressed, Long.MAX_VALUE) != -1) {
+				// read until the end of the stream
+			}
+		}
+		return uncompressed.readUtf8();
+	}
+
+	/** A minimal API to send requests to the {@link #server}. */
+	private interface ITestApi {
+
+		@POST("upload")
+		Call<ResponseBody> upload(@Body RequestBody body);
+	}
+}
@@ -9,6 +9,7 @@ import com.teamscale.report.ReportUtils
 import com.teamscale.report.testwise.ETestArtifactFormat
 import com.teamscale.report.testwise.closure.ClosureTestwiseCoverageGenerator
 import com.teamscale.report.testwise.jacoco.JaCoCoTestwiseReportGenerator
+import com.teamscale.report.testwise.jacoco.cache.PersistentLookupCache
 import com.teamscale.report.testwise.model.TestExecution
 import com.teamscale.report.testwise.model.TestwiseCoverage
 import com.teamscale.report.testwise.model.builder.TestwiseCoverageReportBuilder
@@ -19,6 +20,9 @@ import org.gradle.api.logging.Logger
 import org.gradle.api.tasks.*
 import java.io.File
 
+/** The maximum size of the probe cache, which is shared by all builds using the same Gradle user home. */
+private const val PROBE_CACHE_SIZE_IN_BYTES = 512L * 1024 * 1024
+
 /** Task which runs the impacted tests. */
 @Suppress("MemberVisibilityCanBePrivate")
 open class TeamscaleReportTask : DefaultTask() {
@@ -53,6 +57,19 @@ open class TeamscaleReportTask : DefaultTask() {
     @InputFiles
     val classDirs = mutableSetOf<FileCollection>()
 
+    /**
+     * The number of threads that read and convert the tests of an exec file. Does not change the generated report.
+     */
+    @Internal
+    var conversionThreads = Runtime.getRuntime().availableProcessors()
+
+    /**
+     * Whether the analysis results of class files are persisted in the Gradle user home, so later builds only need to
+     * analyze changed class files. The cache is shared by all builds using the same Gradle user home.
+     */
+    @Internal
+    var useProbeCache = false
+
     /** The upload task that will be executed afterwards. */
     @Internal
     lateinit var uploadTask: TeamscaleUploadTask
@@ -95,17 +112,32 @@ open class TeamscaleReportTask : DefaultTask() {
             logger.info("Skipping coverage report generation (No reports configured)")
             return
         }
-        val jaCoCoTestwiseReportGenerator = JaCoCoTestwiseReportGenerator(
+        JaCoCoTestwiseReportGenerator(
             classDirs.flatMap { it.files },
             agentFilter.getPredicate(),
             EDuplicateClassFileBehavior.IGNORE,
+            Runtime.getRuntime().availableProcessors(),
+            createProbeCache(),
+            false,
             project.logger.wrapInILogger()
-        )
+        ).use { jaCoCoTestwiseReportGenerator ->
+            logger.info("Generating coverage reports...")
+            for ((reportConfig, artifacts) in reportsToArtifacts.entries) {
+                generateTestwiseCoverageReport(reportConfig, artifacts, jaCoCoTestwiseReportGenerator)
+            }
+        }
+    }
 
-        logger.info("Generating coverage reports...")
-        for ((reportConfig, artifacts) in reportsToArtifacts.entries) {
-            generateTestwiseCoverageReport(reportConfig, artifacts, jaCoCoTestwiseReportGenerator)
+    /** Creates the persistent probe cache if it is enabled. */
+    private fun createProbeCache(): PersistentLookupCache? {
+        if (!useProbeCache) {
+            return null
         }
+        return PersistentLookupCache(
+            project.gradle.gradleUserHomeDir.toPath().resolve("caches/teamscale/probe-cache"),
+            PROBE_CACHE_SIZE_IN_BYTES,
+            project.logger.wrapInILogger()
+        )
     }
 
     /** Generates a testwise coverage report and stores it on disk. */
@@ -140,7 +172,8 @@ open class TeamscaleReportTask : DefaultTask() {
         artifacts: MutableList<File>,
         jaCoCoTestwiseReportGenerator: JaCoCoTestwiseReportGenerator
     ): TestwiseCoverage? {
-        val jacocoExecutionData = ReportUtils.listFiles(ETestArtifactFormat.JACOCO, artifacts)
+        val jacocoExecutionData = ReportUtils.listFiles(ETestArtifactFormat.JACOCO, artifacts) +
+            ReportUtils.listFiles(ETestArtifactFormat.SPARSE_JACOCO, artifacts)
         if (jacocoExecutionData.isEmpty()) {
             logger.error("No execution data provided!")
             return null
@@ -149,7 +182,7 @@ open class TeamscaleReportTask : DefaultTask() {
 
         val testwiseCoverage = TestwiseCoverage()
         for (file in jacocoExecutionData) {
-            testwiseCoverage.add(jaCoCoTestwiseReportGenerator.convert(file))
+            testwiseCoverage.add(jaCoCoTestwiseReportGenerator.convert(file, conversionThreads, false))
         }
 
         val jsCoverageData = ReportUtils.listFiles(ETestArtifactFormat.CLOSURE, artifacts)
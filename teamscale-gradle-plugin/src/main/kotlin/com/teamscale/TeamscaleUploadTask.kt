@@ -49,9 +49,16 @@ open class TeamscaleUploadTask : DefaultTask() {
 
         server.validate()
 
+        // One client per execution, so neither the compression threshold nor the metrics leak into other builds
+        // running in the same Gradle daemon
+        val client = TeamscaleClient(
+            server.url, server.userName, server.userAccessToken, server.project,
+            server.requestCompressionThreshold ?: -1L
+        )
         try {
             logger.info("Uploading to $server at $commitDescriptor...")
-            uploadReports()
+            uploadReports(client)
+            logger.debug("HTTP requests sent to Teamscale:\n${client.metrics}")
         } catch (e: Exception) {
             if (ignoreFailures) {
                 logger.warn("Ignoring failure during upload:")
@@ -62,7 +69,7 @@ open class TeamscaleUploadTask : DefaultTask() {
         }
     }
 
-    private fun uploadReports() {
+    private fun uploadReports(client: TeamscaleClient) {
         // We want to upload e.g. all JUnit test reports that go to the same partition
         // as one commit so we group them before uploading them
         for ((key, reports) in reports.groupBy { Triple(it.format, it.partition, it.message) }) {
@@ -76,8 +83,6 @@ open class TeamscaleUploadTask : DefaultTask() {
 
             try {
                 retry(3) {
-                    val client =
-                        TeamscaleClient(server.url, server.userName, server.userAccessToken, server.project)
                     client.uploadReports(
                         format, reportFiles, commitDescriptor, partition, "$message ($partition)"
                     )
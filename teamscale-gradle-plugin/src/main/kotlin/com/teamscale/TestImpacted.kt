@@ -197,6 +197,7 @@ open class TestImpacted : Test() {
         writeEngineProperty("server.project", serverConfiguration.project!!)
         writeEngineProperty("server.userName", serverConfiguration.userName!!)
         writeEngineProperty("server.userAccessToken", serverConfiguration.userAccessToken!!)
+        writeEngineProperty("server.requestCompressionThreshold", serverConfiguration.requestCompressionThreshold?.toString())
         writeEngineProperty("partition", report.partition)
         writeEngineProperty("endCommit", endCommit.toString())
         writeEngineProperty("baseline", baseline?.toString())
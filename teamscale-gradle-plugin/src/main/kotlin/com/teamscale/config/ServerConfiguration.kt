@@ -17,8 +17,15 @@ class ServerConfiguration : Serializable {
     /** The access token of the user.   */
     var userAccessToken: String? = null
 
+    /**
+     * Requests to Teamscale that are at least this many bytes large are compressed with gzip.
+     * Null to never compress requests. The Teamscale server must accept gzip-compressed requests.
+     */
+    var requestCompressionThreshold: Long? = null
+
     override fun toString(): String {
-        return "ServerConfiguration(url=$url, project=$project, userName=$userName, userAccessToken=$userAccessToken)"
+        return "ServerConfiguration(url=$url, project=$project, userName=$userName, userAccessToken=$userAccessToken, " +
+                "requestCompressionThreshold=$requestCompressionThreshold)"
     }
 
     fun validate() {
@@ -1,6 +1,7 @@
 package com.teamscale.tia.client;
 
 import com.teamscale.client.ClusteredTestDetails;
+import com.teamscale.client.HttpUtils;
 import com.teamscale.client.PrioritizableTestCluster;
 import com.teamscale.report.testwise.model.TestExecution;
 import okhttp3.HttpUrl;
@@ -9,6 +10,7 @@ import retrofit2.Call;
 import retrofit2.Retrofit;
 import retrofit2.converter.moshi.MoshiConverterFactory;
 import retrofit2.http.Body;
+import retrofit2.http.GET;
 import retrofit2.http.POST;
 import retrofit2.http.Path;
 import retrofit2.http.Query;
@@ -22,6 +24,10 @@ public interface ITestwiseCoverageAgentApi {
 	@POST("test/start/{testUniformPath}")
 	Call<ResponseBody> testStarted(@Path("testUniformPath") String testUniformPath);
 
+	/** Returns the uniform paths of the tests that have started but not ended yet. */
+	@GET("tests")
+	Call<List<String>> getRunningTests();
+
 	/** Test finished. */
 	@POST("test/end/{testUniformPath}")
 	Call<ResponseBody> testFinished(
@@ -56,10 +62,9 @@ public interface ITestwiseCoverageAgentApi {
 	 * and which sets the Accept header to JSON.
 	 */
 	static ITestwiseCoverageAgentApi createService(HttpUrl baseUrl) {
-		Retrofit retrofit = new Retrofit.Builder()
-				.baseUrl(baseUrl)
-				.addConverterFactory(MoshiConverterFactory.create())
-				.build();
+		Retrofit retrofit = HttpUtils.createRetrofit(
+				retrofitBuilder -> retrofitBuilder.baseUrl(baseUrl)
+						.addConverterFactory(MoshiConverterFactory.create()));
 		return retrofit.create(ITestwiseCoverageAgentApi.class);
 	}
 }
\ No newline at end of file